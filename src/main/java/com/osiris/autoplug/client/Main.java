@@ -11,8 +11,11 @@ package com.osiris.autoplug.client;
 
 import com.osiris.autoplug.client.configs.*;
 import com.osiris.autoplug.client.console.UserInput;
+import com.osiris.autoplug.client.minecraft.CrashSupervisor;
 import com.osiris.autoplug.client.minecraft.Server;
+import com.osiris.autoplug.client.minecraft.ServerInstances;
 import com.osiris.autoplug.client.network.online.MainConnection;
+import com.osiris.autoplug.client.tasks.updater.BackgroundUpdater;
 import com.osiris.autoplug.client.tasks.updater.plugins.TaskPluginDownload;
 import com.osiris.autoplug.client.utils.ConfigUtils;
 import com.osiris.autoplug.client.utils.GD;
@@ -168,6 +171,12 @@ public class Main {
             TasksConfig tasksConfig = new TasksConfig();
             allModules.addAll(tasksConfig.getAllInEdit());
 
+            TriggersConfig triggersConfig = new TriggersConfig();
+            allModules.addAll(triggersConfig.getAllInEdit());
+
+            InstancesConfig instancesConfig = new InstancesConfig();
+            allModules.addAll(instancesConfig.getAllInEdit());
+
             new ConfigUtils().printAllModulesToDebug(allModules);
             AL.info("Configurations loaded.");
 
@@ -193,16 +202,30 @@ public class Main {
                 generalConfig.save();
             }
 
+            Server.openConsoleScrollback(generalConfig.server_console_scrollback_size.asInt());
+            Server.startResourceMonitor(generalConfig.server_resource_monitor_interval.asInt(),
+                    generalConfig.server_resource_monitor_samples.asInt());
+            if (triggersConfig.triggers_enabled.asBoolean())
+                Server.startConsoleTriggers(triggersConfig.triggers_list.asStringList());
+            if (updaterConfig.staged_updates.asBoolean())
+                new BackgroundUpdater(updaterConfig.staged_updates_interval.asInt()).start();
+
             MainConnection mainConnection = new MainConnection();
             mainConnection.start();
 
             UserInput.keyboard();
 
+            if (restarterConfig.crash_restarter_enabled.asBoolean())
+                new CrashSupervisor(Server.DEFAULT, restarterConfig, Server::start).start();
             if (generalConfig.server_auto_start.asBoolean())
                 Server.start();
 
+            // After the main servers startup tasks, since the instances update their plugins based on its plugins check
+            if (instancesConfig.instances_enabled.asBoolean())
+                ServerInstances.load(instancesConfig, generalConfig, restarterConfig);
+
             // We have to keep this main Thread running.
-            // If we don't, the NonBlockingPipedInputStream stops working
+            // If we don't, the ConsoleLineBus subscribers (daemon threads) stop working
             // and thus no information will be sent to the online console, when the user is online.
             while (true)
                 Thread.sleep(1000);
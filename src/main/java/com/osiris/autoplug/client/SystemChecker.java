@@ -1,6 +1,7 @@
 package com.osiris.autoplug.client;
 
 import com.osiris.autoplug.client.minecraft.Server;
+import com.osiris.autoplug.client.minecraft.ServerInstances;
 import com.osiris.autoplug.client.tasks.scheduler.JobScheduler;
 import com.osiris.autoplug.core.logger.AL;
 
@@ -47,6 +48,8 @@ public class SystemChecker {
         Runtime.getRuntime().addShutdownHook(new Thread(() -> {
             try {
                 if (Server.isRunning()) Server.stop();
+                ServerInstances.stopAll();
+                Server.closeConsoleScrollback();
                 JobScheduler.safeShutdown();
                 if (AL.isStarted) {
                     AL.info("See you soon!");
@@ -9,7 +9,10 @@
 package com.osiris.autoplug.client.configs;
 
 import com.osiris.autoplug.client.managers.FileManager;
+import com.osiris.autoplug.client.minecraft.flags.JvmFlagProfile;
+import com.osiris.autoplug.client.minecraft.flags.JvmFlags;
 import com.osiris.autoplug.client.utils.GD;
+import com.osiris.autoplug.core.logger.AL;
 import com.osiris.dyml.DYModule;
 import com.osiris.dyml.DreamYaml;
 import com.osiris.dyml.exceptions.*;
@@ -24,8 +27,17 @@ public class GeneralConfig extends DreamYaml {
     public DYModule server_jar;
     public DYModule server_flags_enabled;
     public DYModule server_flags_list;
+    public DYModule server_flags_profile;
+    public DYModule server_flags_max_memory;
+    public DYModule server_flags_large_pages;
+    public DYModule server_flags_pre_touch;
+    public DYModule server_flags_numa;
+    public DYModule server_cds_enabled;
     public DYModule server_arguments_enabled;
     public DYModule server_arguments_list;
+    public DYModule server_console_scrollback_size;
+    public DYModule server_resource_monitor_interval;
+    public DYModule server_resource_monitor_samples;
 
     public GeneralConfig() throws IOException, DuplicateKeyException, DYReaderException, IllegalListException, DYWriterException, NotLoadedException, IllegalKeyException {
         super(System.getProperty("user.dir") + "/autoplug-general-config.yml");
@@ -79,6 +91,26 @@ public class GeneralConfig extends DreamYaml {
                 "https://forums.spongepowered.org/t/optimized-startup-flags-for-consistent-garbage-collection/13239",
                 "https://aikar.co/2018/07/02/tuning-the-jvm-g1gc-garbage-collector-flags-for-minecraft/");
         server_flags_list = put(name, "server", "flags", "list").setDefValues("Xms2G", "Xmx2G");
+        server_flags_profile = put(name, "server", "flags", "profile").setDefValues("manual").setComments(
+                "Lets AutoPlug pick tuned flags, based on the memory and CPUs of your host, or container (docker).",
+                "Available profiles:",
+                "manual - Only uses the flags in the list above.",
+                "auto - Picks one of the profiles below: small below 2GB heap, zgc from 16GB heap (Java 15+), otherwise aikar.",
+                "aikar - G1 tuned for Minecraft, see the link above.",
+                "zgc - Very short pauses for big heaps. Needs Java 11 or newer.",
+                "small - Low overhead for heaps below 2GB.",
+                "The flags in the list above get added after the profiles flags, thus override them, except for Xms and Xmx.",
+                "The final flags get logged together with the reason for each one.");
+        server_flags_max_memory = put(name, "server", "flags", "max-memory").setDefValues("auto").setComments(
+                "The heap size (Xms and Xmx) used by the profiles, like 6G or 512M.",
+                "auto calculates it from your containers memory limit, or your hosts RAM, leaving room for the rest.");
+        server_flags_large_pages = put(name, "server", "flags", "large-pages").setDefValues("false").setComments(
+                "Uses large pages for the heap, if your host has huge pages reserved or transparent huge pages enabled.",
+                "Reduces the CPU time spent on memory address translation for big heaps.");
+        server_flags_pre_touch = put(name, "server", "flags", "pre-touch").setDefValues("true").setComments(
+                "Allocates the whole heap at startup, instead of while players are online. Makes the start a bit slower.");
+        server_flags_numa = put(name, "server", "flags", "numa").setDefValues("true").setComments(
+                "Uses NUMA aware memory allocation, if your host has multiple NUMA nodes (multiple CPU sockets).");
 
         server_arguments_enabled = put(name, "server", "arguments", "enable").setDefValues("true").setComments(
                 "If you were using arguments, add them to the list below.\n" +
@@ -91,6 +123,23 @@ public class GeneralConfig extends DreamYaml {
                         "https://www.spigotmc.org/wiki/start-up-parameters");
         server_arguments_list = put(name, "server", "arguments", "list").setDefValues("--nogui");
 
+        server_cds_enabled = put(name, "server", "class-data-sharing").setDefValues("false").setComments(
+                "Speeds up server starts, by archiving the classes loaded by the server (needs Java 13 or newer).",
+                "The first start is a training run: Once the server stops, its classes get written to /autoplug-system/cds.",
+                "The following starts load them from that archive. Once your server jar, plugins or java change, a new archive gets created.",
+                "Enter .startups to compare the startup times with and without the archive.");
+
+        server_console_scrollback_size = put(name, "server", "console-scrollback-size").setDefValues("16").setComments(
+                "The disk space in megabytes, reserved for the history of your servers console (stored in /autoplug-system/console-scrollback.bin).",
+                "Once full, the oldest lines get overwritten. The history survives restarts and is used by the .search command",
+                "and to show recent lines in the Online-Console, when you connect. Set to 0 to disable. Maximum is 1024.");
+
+        server_resource_monitor_interval = put(name, "server", "resource-monitor", "interval").setDefValues("5").setComments(
+                "Seconds between two samples of your servers resource usage (CPU, RAM, threads, open files and disk I/O).",
+                "Shown by the .resources command. Only available on Linux. Set to 0 to disable.");
+        server_resource_monitor_samples = put(name, "server", "resource-monitor", "samples").setDefValues("720").setComments(
+                "The amount of samples to keep in memory. 720 samples with an interval of 5 seconds, are the last hour.");
+
         validateOptions();
         save();
 
@@ -98,6 +147,49 @@ public class GeneralConfig extends DreamYaml {
     }
 
     private void validateOptions() {
+        if (JvmFlagProfile.parse(server_flags_profile.asString()) == null) {
+            AL.warn("Config error -> " + server_flags_profile.getKeys() + " must be manual, auto, aikar, zgc or small. Applied default!");
+            server_flags_profile.setValues("manual");
+        }
+        try {
+            JvmFlags.parseSize(server_flags_max_memory.asString());
+        } catch (Exception e) {
+            AL.warn("Config error -> " + server_flags_max_memory.getKeys() + " must be auto or a size like 6G or 512M. Applied default!");
+            server_flags_max_memory.setValues("auto");
+        }
+
+        int scrollbackSize;
+        try {
+            scrollbackSize = server_console_scrollback_size.asInt();
+        } catch (Exception e) {
+            scrollbackSize = -1;
+        }
+        if (scrollbackSize < 0 || scrollbackSize > 1024) {
+            AL.warn("Config error -> " + server_console_scrollback_size.getKeys() + " must be a number between 0 and 1024. Applied default!");
+            server_console_scrollback_size.setValues("16");
+        }
+
+        int interval;
+        try {
+            interval = server_resource_monitor_interval.asInt();
+        } catch (Exception e) {
+            interval = -1;
+        }
+        if (interval < 0 || interval > 3600) {
+            AL.warn("Config error -> " + server_resource_monitor_interval.getKeys() + " must be a number between 0 and 3600. Applied default!");
+            server_resource_monitor_interval.setValues("5");
+        }
+
+        int samples;
+        try {
+            samples = server_resource_monitor_samples.asInt();
+        } catch (Exception e) {
+            samples = -1;
+        }
+        if (samples < 1 || samples > 100000) {
+            AL.warn("Config error -> " + server_resource_monitor_samples.getKeys() + " must be a number between 1 and 100000. Applied default!");
+            server_resource_monitor_samples.setValues("720");
+        }
     }
 
 
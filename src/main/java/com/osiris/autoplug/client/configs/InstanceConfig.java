@@ -0,0 +1,134 @@
+/*
+ * Copyright Osiris Team
+ * All rights reserved.
+ *
+ * This software is copyrighted work licensed under the terms of the
+ * AutoPlug License.  Please consult the file "LICENSE" for details.
+ */
+
+package com.osiris.autoplug.client.configs;
+
+import com.osiris.autoplug.client.minecraft.flags.JvmFlagProfile;
+import com.osiris.autoplug.client.minecraft.flags.JvmFlags;
+import com.osiris.autoplug.core.logger.AL;
+import com.osiris.dyml.DYModule;
+import com.osiris.dyml.DreamYaml;
+import com.osiris.dyml.exceptions.*;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * The config of an additional server, located in its root directory.
+ * See {@link InstancesConfig}.
+ */
+public class InstanceConfig extends DreamYaml {
+    @NotNull
+    private final File dir;
+
+    public DYModule instance_name;
+    public DYModule instance_auto_start;
+    public DYModule instance_restart_with_main;
+    public DYModule instance_java_version;
+    public DYModule instance_jar;
+    public DYModule instance_flags_list;
+    public DYModule instance_flags_profile;
+    public DYModule instance_flags_max_memory;
+    public DYModule instance_arguments_list;
+    public DYModule instance_cds_enabled;
+
+    public DYModule instance_server_updater;
+    public DYModule instance_server_software;
+    public DYModule instance_server_version;
+    public DYModule instance_build_id;
+    public DYModule instance_plugin_updater;
+    public DYModule instance_backup;
+
+    public InstanceConfig(@NotNull File dir) throws IOException, DuplicateKeyException, DYReaderException, IllegalListException, DYWriterException, NotLoadedException, IllegalKeyException {
+        super(dir + "/autoplug-instance-config.yml");
+        this.dir = dir;
+        load();
+        String name = getFileNameWithoutExt();
+        put(name).setComments(
+                "#######################################################################################################################\n" +
+                        "AutoPlug Instance-Config\n" +
+                        "The settings of this server, when run as additional server by another AutoPlug client.\n" +
+                        "#######################################################################################################################");
+
+        instance_name = put(name, "instance", "name").setDefValues(dir.getName()).setComments(
+                "Unique name of this server, used in logs and console commands.");
+        instance_auto_start = put(name, "instance", "auto-start").setDefValues("true").setComments(
+                "Starts this server with the start of AutoPlug.");
+        instance_restart_with_main = put(name, "instance", "restart-with-main").setDefValues("true").setComments(
+                "Restarts this server too, when the main server gets restarted by the scheduler (see restarter config).");
+        instance_java_version = put(name, "instance", "java-version").setDefValues("java").setComments(
+                "The java executable to run this server with. Same as 'java-version' in the general config.");
+        instance_jar = put(name, "instance", "jar").setDefValues("auto-find").setComments(
+                "The server jar. auto-find uses the only jar in this directory.",
+                "Otherwise enter its file path, or its file name without the .jar extension.");
+        instance_flags_list = put(name, "instance", "flags").setDefValues("Xms1G", "Xmx1G").setComments(
+                "Java startup flags, without the hyphen(-). Same as the flags in the general config.");
+        instance_flags_profile = put(name, "instance", "flags-profile").setDefValues("manual").setComments(
+                "Lets AutoPlug pick tuned flags. Same as the flags profile in the general config.",
+                "The large-pages, pre-touch and numa settings of the general config get used.");
+        instance_flags_max_memory = put(name, "instance", "flags-max-memory").setDefValues("1G").setComments(
+                "The heap size used by the profiles, like 6G or 512M. Keep in mind, that all servers share your hosts RAM.");
+        instance_arguments_list = put(name, "instance", "arguments").setDefValues("--nogui").setComments(
+                "Arguments passed to the server. Same as the arguments in the general config.");
+        instance_cds_enabled = put(name, "instance", "class-data-sharing").setDefValues("false").setComments(
+                "Same as 'class-data-sharing' in the general config. The archive gets stored in this servers /autoplug-system/cds.");
+
+        instance_server_updater = put(name, "instance", "server-updater", "enable").setDefValues("false").setComments(
+                "Updates this servers jar before it starts, with the profile of the updater config.",
+                "Servers with the same software and version share one download.");
+        instance_server_software = put(name, "instance", "server-updater", "software").setDefValues("paper").setComments(
+                "Same as 'software' in the updater config.");
+        instance_server_version = put(name, "instance", "server-updater", "version").setDefValues("1.16.4");
+        instance_build_id = put(name, "instance", "server-updater", "build-id").setDefValues("0").setComments(
+                "The currently installed build. Don't change this, unless you know what you are doing.");
+        instance_plugin_updater = put(name, "instance", "plugins-updater", "enable").setDefValues("true").setComments(
+                "Updates this servers plugins before it starts, with the profile of the updater config.",
+                "Uses the results of the main servers plugins check, thus only plugins also installed there get updated.");
+        instance_backup = put(name, "instance", "backup", "enable").setDefValues("true").setComments(
+                "Backs up this servers worlds and plugins before it starts, into its /autoplug-backups directory.",
+                "Uses the enable, max-days and cool-down settings of the backup config.");
+
+        validateOptions();
+
+        save();
+    }
+
+    private void validateOptions() {
+        if (JvmFlagProfile.parse(instance_flags_profile.asString()) == null) {
+            AL.warn("Config error -> " + instance_flags_profile.getKeys() + " must be manual, auto, aikar, zgc or small. Applied default!");
+            instance_flags_profile.setValues("manual");
+        }
+        try {
+            JvmFlags.parseSize(instance_flags_max_memory.asString());
+        } catch (Exception e) {
+            AL.warn("Config error -> " + instance_flags_max_memory.getKeys() + " must be auto or a size like 6G or 512M. Applied default!");
+            instance_flags_max_memory.setValues("1G");
+        }
+    }
+
+    /**
+     * The server jar set in this config, or null if it couldn't be found.
+     */
+    @Nullable
+    public File findServerJar() {
+        String jar = instance_jar.asString();
+        if (!jar.equals("auto-find")) {
+            File f;
+            if (jar.contains("/") || jar.contains("\\")) {
+                f = new File(jar);
+                if (!f.isAbsolute()) f = new File(dir, jar);
+            } else f = new File(dir, jar + ".jar");
+            return f.exists() ? f : null;
+        }
+        File[] jars = dir.listFiles((d, n) -> n.endsWith(".jar"));
+        if (jars == null || jars.length != 1) return null;
+        return jars[0];
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright Osiris Team
+ * All rights reserved.
+ *
+ * This software is copyrighted work licensed under the terms of the
+ * AutoPlug License.  Please consult the file "LICENSE" for details.
+ */
+
+package com.osiris.autoplug.client.configs;
+
+import com.osiris.autoplug.core.logger.AL;
+import com.osiris.dyml.DYModule;
+import com.osiris.dyml.DreamYaml;
+import com.osiris.dyml.exceptions.*;
+
+import java.io.IOException;
+
+public class InstancesConfig extends DreamYaml {
+
+    public DYModule instances_enabled;
+    public DYModule instances_list;
+    public DYModule instances_parallel_starts;
+    public DYModule instances_console_buffer;
+
+    public InstancesConfig() throws IOException, DuplicateKeyException, DYReaderException, IllegalListException, DYWriterException, NotLoadedException, IllegalKeyException {
+        super(System.getProperty("user.dir") + "/autoplug-instances-config.yml");
+        load();
+        String name = getFileNameWithoutExt();
+        put(name).setComments(
+                "#######################################################################################################################\n" +
+                        "    ___       __       ___  __\n" +
+                        "   / _ |__ __/ /____  / _ \\/ /_ _____ _\n" +
+                        "  / __ / // / __/ _ \\/ ___/ / // / _ `/\n" +
+                        " /_/ |_\\_,_/\\__/\\___/_/  /_/\\_,_/\\_, /\n" +
+                        "                                /___/ Instances-Config\n" +
+                        "Thank you for using AutoPlug!\n" +
+                        "You can find detailed installation instructions at our Spigot post: https://www.spigotmc.org/resources/autoplug-automatic-plugin-updater.78414/\n" +
+                        "If there are any questions or you just wanna chat, join our Discord: https://discord.gg/GGNmtCC\n" +
+                        "\n" +
+                        "#######################################################################################################################");
+
+        instances_enabled = put(name, "instances", "enable").setDefValues("false").setComments(
+                "Enable/Disable running additional servers with this AutoPlug client.\n" +
+                        "The server in this directory is always run, the additional ones are listed below.\n" +
+                        "Enter .instances to see their state.");
+        instances_list = put(name, "instances", "list").setDefValues("./servers/lobby").setComments(
+                "The root directories of the additional servers (absolute or relative to this directory).",
+                "Each one gets its own 'autoplug-instance-config.yml', where its jar, flags and arguments are set.",
+                "Its console and startup history are stored in its own /autoplug-system directory.");
+        instances_parallel_starts = put(name, "instances", "parallel-starts").setDefValues("2").setComments(
+                "The maximum amount of additional servers, that get started/stopped at the same time.",
+                "Starting many servers at once slows down each of them.");
+        instances_console_buffer = put(name, "instances", "console-buffer").setDefValues("1024").setComments(
+                "The amount of console lines buffered in memory for each additional server.");
+
+        validateOptions();
+        save();
+    }
+
+    private void validateOptions() {
+        int parallel;
+        try {
+            parallel = instances_parallel_starts.asInt();
+        } catch (Exception e) {
+            parallel = -1;
+        }
+        if (parallel < 1 || parallel > 64) {
+            AL.warn("Config error -> " + instances_parallel_starts.getKeys() + " must be a number between 1 and 64. Applied default!");
+            instances_parallel_starts.setValues("2");
+        }
+
+        int buffer;
+        try {
+            buffer = instances_console_buffer.asInt();
+        } catch (Exception e) {
+            buffer = -1;
+        }
+        if (buffer < 64 || buffer > 65536) {
+            AL.warn("Config error -> " + instances_console_buffer.getKeys() + " must be a number between 64 and 65536. Applied default!");
+            instances_console_buffer.setValues("1024");
+        }
+    }
+}
@@ -33,6 +33,14 @@ public class RestarterConfig extends DreamYaml {
     public DYModule c_restarter_cron;
     public DYModule c_restarter_commands;
 
+    public DYModule crash_restarter_enabled;
+    public DYModule crash_restarter_min_delay;
+    public DYModule crash_restarter_max_delay;
+    public DYModule crash_restarter_max_crashes;
+    public DYModule crash_restarter_window;
+    public DYModule crash_restarter_stable_after;
+    public DYModule crash_restarter_skip_startup_tasks;
+
     public RestarterConfig() throws IOException, DuplicateKeyException, DYReaderException, IllegalListException, DYWriterException, NotLoadedException, IllegalKeyException {
         super(System.getProperty("user.dir") + "/autoplug-restarter-config.yml");
         load();
@@ -97,11 +105,33 @@ public class RestarterConfig extends DreamYaml {
             );
              */
 
+        crash_restarter_enabled = put(name, "crash-restarter", "enable").setDefValues("true").setComments(
+                "Enable/Disable restarting your server, when it crashes (exits with an error, without being stopped).\n" +
+                        "Crashes a restart can't fix (like an unaccepted EULA or a wrong Java version) are only reported.");
+        crash_restarter_min_delay = put(name, "crash-restarter", "min-delay").setDefValues("2").setComments(
+                "Seconds to wait before restarting after the first crash. The delay doubles with each crash in a row,",
+                "randomized a bit, up to the max-delay.");
+        crash_restarter_max_delay = put(name, "crash-restarter", "max-delay").setDefValues("300");
+        crash_restarter_max_crashes = put(name, "crash-restarter", "max-crashes").setDefValues("5").setComments(
+                "If your server crashes more often than this within the window (minutes) below, restarting is given up,",
+                "to avoid an endless crash loop. Starting the server yourself enables restarting again.");
+        crash_restarter_window = put(name, "crash-restarter", "window").setDefValues("10");
+        crash_restarter_stable_after = put(name, "crash-restarter", "stable-after").setDefValues("5").setComments(
+                "Minutes your server must run, before a crash counts as a new one and the delay starts over.");
+        crash_restarter_skip_startup_tasks = put(name, "crash-restarter", "skip-startup-tasks").setDefValues("true").setComments(
+                "Skips the tasks that run before each server start (backups, updaters), when restarting a server",
+                "that crashed before it ran stable. This keeps the downtime in the seconds range.");
+
         validateOptions();
         save();
     }
 
     private void validateOptions() {
+        validateNumber(crash_restarter_min_delay, 1, 3600, "2");
+        validateNumber(crash_restarter_max_delay, crash_restarter_min_delay.asInt(), 86400, "300");
+        validateNumber(crash_restarter_max_crashes, 1, 1000, "5");
+        validateNumber(crash_restarter_window, 1, 10080, "10");
+        validateNumber(crash_restarter_stable_after, 0, 10080, "5");
 
         //Get the config string list
         //Split each time up into hours and min to validate them
@@ -141,4 +171,17 @@ public class RestarterConfig extends DreamYaml {
 
     }
 
+    private void validateNumber(DYModule module, int min, int max, String defValue) {
+        int value;
+        try {
+            value = module.asInt();
+        } catch (Exception e) {
+            value = min - 1;
+        }
+        if (value < min || value > max) {
+            AL.warn("Config error -> " + module.getKeys() + " must be a number between " + min + " and " + max + ". Applied default!");
+            module.setValues(defValue);
+        }
+    }
+
 }
@@ -0,0 +1,73 @@
+/*
+ * Copyright Osiris Team
+ * All rights reserved.
+ *
+ * This software is copyrighted work licensed under the terms of the
+ * AutoPlug License.  Please consult the file "LICENSE" for details.
+ */
+
+package com.osiris.autoplug.client.configs;
+
+import com.osiris.autoplug.client.minecraft.console.triggers.ConsoleTrigger;
+import com.osiris.autoplug.core.logger.AL;
+import com.osiris.dyml.DYModule;
+import com.osiris.dyml.DreamYaml;
+import com.osiris.dyml.exceptions.*;
+
+import java.io.IOException;
+
+public class TriggersConfig extends DreamYaml {
+
+    public DYModule triggers_enabled;
+    public DYModule triggers_list;
+
+    public TriggersConfig() throws IOException, DuplicateKeyException, DYReaderException, IllegalListException, DYWriterException, NotLoadedException, IllegalKeyException {
+        super(System.getProperty("user.dir") + "/autoplug-triggers-config.yml");
+        load();
+        String name = getFileNameWithoutExt();
+        put(name).setComments(
+                "#######################################################################################################################\n" +
+                        "    ___       __       ___  __\n" +
+                        "   / _ |__ __/ /____  / _ \\/ /_ _____ _\n" +
+                        "  / __ / // / __/ _ \\/ ___/ / // / _ `/\n" +
+                        " /_/ |_\\_,_/\\__/\\___/_/  /_/\\_,_/\\_, /\n" +
+                        "                                /___/ Triggers-Config\n" +
+                        "Thank you for using AutoPlug!\n" +
+                        "You can find detailed installation instructions at our Spigot post: https://www.spigotmc.org/resources/autoplug-automatic-plugin-updater.78414/\n" +
+                        "If there are any questions or you just wanna chat, join our Discord: https://discord.gg/GGNmtCC\n" +
+                        "\n" +
+                        "#######################################################################################################################");
+
+        triggers_enabled = put(name, "triggers", "enable").setDefValues("false").setComments(
+                "Enable/Disable reacting to specific lines of your servers console.\n" +
+                        "Enter .triggers to see how often each trigger matched.");
+        triggers_list = put(name, "triggers", "list").setDefValues(
+                "literal:Can't keep up! -> metric:cant-keep-up",
+                "literal:Saved the game -> metric:saves",
+                "regex:Exception in thread \".+\" -> alert")
+                .setComments(
+                        "Each trigger has this format: <literal|regex>:<pattern> -> <action>",
+                        "Optionally followed by -> cooldown:<seconds>, the min time between two runs of the action. Example: regex:Exception in thread \".+\" -> alert -> cooldown:60",
+                        "literal: The line must contain the pattern (case-sensitive). Example: literal:Done (",
+                        "regex: The line must contain a match of the Java regular expression. Example: regex:\\[\\d+ WARN\\]",
+                        "Available actions:",
+                        "command:<command> - Executes the command in your servers console. Example: command:say Hello!",
+                        "restart - Restarts your server. Has a cooldown of " + ConsoleTrigger.RESTART_COOLDOWN_SECONDS + " seconds by default.",
+                        "metric:<name> - Counts the matching lines under this name.",
+                        "alert or alert:<message> - Logs a warning with the message, or the line itself.",
+                        "All triggers get checked in a single pass over each line, thus having many of them is fine.");
+
+        validateOptions();
+        save();
+    }
+
+    private void validateOptions() {
+        for (String definition : triggers_list.asStringList()) {
+            try {
+                ConsoleTrigger.parse(definition);
+            } catch (IllegalArgumentException e) {
+                AL.warn("Config error -> " + triggers_list.getKeys() + " contains the invalid trigger '" + definition + "': " + e.getMessage() + " It will be ignored!");
+            }
+        }
+    }
+}
@@ -26,10 +26,14 @@ public class UpdaterConfig extends DreamYaml {
     public DYModule server_software;
     public DYModule server_version;
     public DYModule build_id;
+    public DYModule server_updater_prepatch;
 
     public DYModule plugin_updater;
     public DYModule plugin_updater_profile;
 
+    public DYModule staged_updates;
+    public DYModule staged_updates_interval;
+
     public UpdaterConfig() throws IOException, DuplicateKeyException, DYReaderException, IllegalListException, NotLoadedException, IllegalKeyException, DYWriterException {
         super(System.getProperty("user.dir") + "/autoplug-updater-config.yml");
         String name = getFileNameWithoutExt();
@@ -81,6 +85,10 @@ public class UpdaterConfig extends DreamYaml {
                 "Each release/update has its unique build-id. First release was 1, the second 2 and so on...\n" +
                         "If you change your server software or mc-version, remember to change this to 0, to ensure proper update-detection.\n" +
                         "Otherwise don't touch this. It will get incremented after every successful update automatically.");
+        server_updater_prepatch = put(name, "server-updater", "prepatch").setDefValues("true").setComments(
+                "Paper and its forks patch the vanilla server at their first start after an update, which takes a while.",
+                "If enabled, this is done right after the update was downloaded, in a separate process,",
+                "so the next start doesn't have to. Only works with the AUTOMATIC profile.");
 
 
         plugin_updater = put(name, "plugins-updater", "enable").setDefValues("true").setComments(
@@ -89,6 +97,14 @@ public class UpdaterConfig extends DreamYaml {
                 "because the check can be very demanding for the AutoPlug-Webserver.");
         plugin_updater_profile = put(name, "plugins-updater", "profile").setDefValues("MANUAL");
 
+        staged_updates = put(name, "staged-updates", "enable").setDefValues("false").setComments(
+                "If enabled, the updaters above don't run before the server starts, but in the background while it is running.",
+                "With the AUTOMATIC profile, the updates get downloaded, verified and wait in /autoplug-staging.",
+                "At the next restart they only get moved into place, which reduces the downtime from minutes to seconds.");
+        staged_updates_interval = put(name, "staged-updates", "check-interval").setDefValues("6").setComments(
+                "Hours between two background checks. The first check happens once the server is running.",
+                "Note that the plugins updater has its own cool-down of a few hours.");
+
         validateOptions();
         save();
     }
@@ -119,6 +135,17 @@ public class UpdaterConfig extends DreamYaml {
             plugin_updater_profile.setValues(correction);
         }
 
+        int interval;
+        try {
+            interval = staged_updates_interval.asInt();
+        } catch (Exception e) {
+            interval = -1;
+        }
+        if (interval < 1) {
+            AL.warn("Config error -> " + staged_updates_interval.getKeys() + " must be a number bigger than 0. Applied default!");
+            staged_updates_interval.setValues("6");
+        }
+
     }
 
 }
@@ -8,16 +8,32 @@
 
 package com.osiris.autoplug.client.configs;
 
+import com.osiris.autoplug.client.network.online.ConsoleSendFilter;
+import com.osiris.autoplug.core.logger.AL;
 import com.osiris.dyml.DYModule;
 import com.osiris.dyml.DreamYaml;
 import com.osiris.dyml.exceptions.*;
 
 import java.io.IOException;
+import java.util.ArrayList;
 
 public class WebConfig extends DreamYaml {
 
     public DYModule online_console_send;
+    public DYModule online_console_send_overflow_policy;
+    public DYModule online_console_send_replay_lines;
+    public DYModule online_console_send_replay_minutes;
+    public DYModule online_console_send_frame_interval;
+    public DYModule online_console_send_frame_size;
+    public DYModule online_console_send_queue_lines;
+    public DYModule online_console_send_queue_memory;
+    public DYModule online_console_send_filter;
+    public DYModule online_console_send_collapse_seconds;
+    public DYModule online_console_send_collapse_window;
     public DYModule online_console_receive;
+    public DYModule compression;
+    public DYModule multiplex;
+    public DYModule nio;
 
 
     public WebConfig() throws IOException, DuplicateKeyException, DYReaderException, IllegalListException, NotLoadedException, IllegalKeyException, DYWriterException {
@@ -41,9 +57,105 @@ public class WebConfig extends DreamYaml {
         online_console_send = put(name, "online-console", "send").setDefValues("false")
                 .setComments("Sends the recent log messages (and future messages) to the Online-Console.",
                         "To have as little impact on your server as possible, this only happens when you are logged in.");
+        online_console_send_overflow_policy = put(name, "online-console", "send-overflow-policy").setDefValues("SUMMARIZE")
+                .setComments("What to do when the Online-Console can't keep up with your servers output (for example because of a slow connection).",
+                        "Your server never waits for the Online-Console. Available policies: DROP_OLDEST and SUMMARIZE.",
+                        "DROP_OLDEST: Skips the oldest unsent lines.",
+                        "SUMMARIZE: Skips the oldest unsent lines and tells you how many were skipped.");
+        online_console_send_replay_lines = put(name, "online-console", "send-replay-lines").setDefValues("100")
+                .setComments("The amount of recent lines to send to the Online-Console, when you connect.",
+                        "They are read from the console scrollback (see server.console-scrollback-size in the general config). Set to 0 to disable.");
+        online_console_send_replay_minutes = put(name, "online-console", "send-replay-minutes").setDefValues("0")
+                .setComments("If bigger than 0, only the lines of the last X minutes get sent, but not more than send-replay-lines.");
+        online_console_send_frame_interval = put(name, "online-console", "send-frame-interval").setDefValues("50")
+                .setComments("Lines get collected and sent together, which saves bandwidth and CPU when your server logs a lot.",
+                        "This is the max time in milliseconds a line waits, before it gets sent. Lower is more responsive.",
+                        "Your input gets always sent right away. Enter .online-console to see how many lines get sent together.");
+        online_console_send_frame_size = put(name, "online-console", "send-frame-size").setDefValues("16")
+                .setComments("The collected lines get sent earlier, once they are this many kilobytes.");
+        online_console_send_queue_lines = put(name, "online-console", "send-queue-lines").setDefValues("10000")
+                .setComments("The max amount of lines waiting to be sent. Once reached, the send-overflow-policy applies.");
+        online_console_send_queue_memory = put(name, "online-console", "send-queue-memory").setDefValues("4096")
+                .setComments("The max memory in kilobytes, the lines waiting to be sent may use. Once reached, the send-overflow-policy applies.");
+        online_console_send_filter = put(name, "online-console", "send-filter").setDefValues("exclude:^\\s*$")
+                .setComments("Decides which lines get sent to the Online-Console. Each rule has this format: <include|exclude>:<regex>",
+                        "If there are include rules, only lines containing a match of at least one of them get sent.",
+                        "Lines containing a match of any exclude rule never get sent. Example: exclude:\\[SomeSpammyPlugin\\]",
+                        "The default rule skips empty lines.");
+        online_console_send_collapse_seconds = put(name, "online-console", "send-collapse-seconds").setDefValues("10")
+                .setComments("Once a line was sent, the same line (ignoring its timestamp) won't be sent again for this many seconds.",
+                        "Instead a single 'Previous line repeated X time(s)' line gets sent afterwards. Set to 0 to disable.");
+        online_console_send_collapse_window = put(name, "online-console", "send-collapse-window").setDefValues("64")
+                .setComments("The amount of distinct lines remembered for collapsing. Lines repeating after more distinct lines than this get sent again.");
         online_console_receive = put(name, "online-console", "receive").setDefValues("false")
                 .setComments("Receives messages from the Online-Console and executes them.");
+        compression = put(name, "compression", "enable").setDefValues("true")
+                .setComments("Compresses the Online-Console and plugin updater connections, which saves a lot of upload bandwidth.",
+                        "Only used if AutoPlug-Web supports it. Enter .online-console to see how much gets saved.");
+        multiplex = put(name, "multiplex", "enable").setDefValues("true")
+                .setComments("Sends the Online-Console and plugin updater connections through the main connection to AutoPlug-Web,",
+                        "instead of opening a new connection (with its own handshake) for each. Opening the Online-Console then takes a single round-trip.",
+                        "Only used if AutoPlug-Web supports it.");
+        nio = put(name, "multiplex", "non-blocking").setDefValues("true")
+                .setComments("Serves the main connection (and everything multiplexed over it) from a single network thread, shared by all servers,",
+                        "instead of a thread per connection, that mostly waits for data. Disable if you experience connection issues.");
 
+        validateOptions();
         save();
     }
+
+    private void validateOptions() {
+        String policy = online_console_send_overflow_policy.asString();
+        if (!policy.equals("DROP_OLDEST") && !policy.equals("SUMMARIZE")) {
+            AL.warn("Config error -> " + online_console_send_overflow_policy.getKeys() + " must be: DROP_OLDEST or SUMMARIZE. Applied default!");
+            online_console_send_overflow_policy.setValues("SUMMARIZE");
+        }
+        if (!isPositiveNumber(online_console_send_replay_lines.asString())) {
+            AL.warn("Config error -> " + online_console_send_replay_lines.getKeys() + " must be a positive number. Applied default!");
+            online_console_send_replay_lines.setValues("100");
+        }
+        if (!isPositiveNumber(online_console_send_replay_minutes.asString())) {
+            AL.warn("Config error -> " + online_console_send_replay_minutes.getKeys() + " must be a positive number. Applied default!");
+            online_console_send_replay_minutes.setValues("0");
+        }
+        if (!isPositiveNumber(online_console_send_frame_interval.asString())) {
+            AL.warn("Config error -> " + online_console_send_frame_interval.getKeys() + " must be a positive number. Applied default!");
+            online_console_send_frame_interval.setValues("50");
+        }
+        if (!isPositiveNumber(online_console_send_frame_size.asString()) || online_console_send_frame_size.asInt() < 1) {
+            AL.warn("Config error -> " + online_console_send_frame_size.getKeys() + " must be a number bigger than 0. Applied default!");
+            online_console_send_frame_size.setValues("16");
+        }
+        if (!isPositiveNumber(online_console_send_queue_lines.asString()) || online_console_send_queue_lines.asInt() < 1) {
+            AL.warn("Config error -> " + online_console_send_queue_lines.getKeys() + " must be a number bigger than 0. Applied default!");
+            online_console_send_queue_lines.setValues("10000");
+        }
+        if (!isPositiveNumber(online_console_send_queue_memory.asString()) || online_console_send_queue_memory.asInt() < 1) {
+            AL.warn("Config error -> " + online_console_send_queue_memory.getKeys() + " must be a number bigger than 0. Applied default!");
+            online_console_send_queue_memory.setValues("4096");
+        }
+        for (String rule : online_console_send_filter.asStringList()) {
+            try {
+                ConsoleSendFilter.parseRule(rule, new ArrayList<>(), new ArrayList<>());
+            } catch (IllegalArgumentException e) {
+                AL.warn("Config error -> " + online_console_send_filter.getKeys() + " contains the invalid rule '" + rule + "': " + e.getMessage() + " It will be ignored!");
+            }
+        }
+        if (!isPositiveNumber(online_console_send_collapse_seconds.asString())) {
+            AL.warn("Config error -> " + online_console_send_collapse_seconds.getKeys() + " must be a positive number. Applied default!");
+            online_console_send_collapse_seconds.setValues("10");
+        }
+        if (!isPositiveNumber(online_console_send_collapse_window.asString()) || online_console_send_collapse_window.asInt() < 1) {
+            AL.warn("Config error -> " + online_console_send_collapse_window.getKeys() + " must be a number bigger than 0. Applied default!");
+            online_console_send_collapse_window.setValues("64");
+        }
+    }
+
+    private boolean isPositiveNumber(String s) {
+        try {
+            return Integer.parseInt(s) >= 0;
+        } catch (Exception e) {
+            return false;
+        }
+    }
 }
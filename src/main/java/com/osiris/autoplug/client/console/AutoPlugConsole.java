@@ -8,10 +8,32 @@
 
 package com.osiris.autoplug.client.console;
 
+import com.osiris.autoplug.client.minecraft.ProcessResourceMonitor;
 import com.osiris.autoplug.client.minecraft.Server;
+import com.osiris.autoplug.client.minecraft.ServerInstance;
+import com.osiris.autoplug.client.minecraft.ServerInstances;
+import com.osiris.autoplug.client.minecraft.console.ConsoleScrollback;
+import com.osiris.autoplug.client.minecraft.console.triggers.ConsoleTrigger;
+import com.osiris.autoplug.client.minecraft.console.triggers.ConsoleTriggerEngine;
+import com.osiris.autoplug.client.minecraft.flags.CdsArchive;
+import com.osiris.autoplug.client.network.online.CompressionStats;
+import com.osiris.autoplug.client.network.online.ConsoleSendFilter;
+import com.osiris.autoplug.client.network.online.FrameWriter;
+import com.osiris.autoplug.client.network.online.HandshakeStats;
+import com.osiris.autoplug.client.network.online.MainConnection;
+import com.osiris.autoplug.client.network.online.Multiplexer;
+import com.osiris.autoplug.client.network.online.SendQueue;
+import com.osiris.autoplug.client.network.online.connections.OnlineConsoleSendConnection;
 import com.osiris.autoplug.core.logger.AL;
 import org.jetbrains.annotations.NotNull;
 
+import java.io.File;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
 /**
  * Listens for input started with .
  * List the server with .help
@@ -44,6 +66,15 @@ public final class AutoPlugConsole {
                     AL.info(".stop both | Stops, saves your server and closes AutoPlug safely (.stb)");
                     AL.info(".kill      | Kills the server without saving (.k)");
                     AL.info(".kill both | Kills the server without saving and closes AutoPlug (.kb)");
+                    AL.info(".search <text> | Searches the console history for lines containing the text (.se)");
+                    AL.info(".triggers  | Shows how often each console trigger matched (.tr)");
+                    AL.info(".startups  | Shows how long the last server starts took (.su)");
+                    AL.info(".startups plugins | Shows the plugins that slowed down the last server start the most (.sup)");
+                    AL.info(".resources | Shows the servers CPU, RAM, threads, open files and disk usage (.res)");
+                    AL.info(".online-console | Shows the Online-Console send queues, how many lines get sent together and the connection stats (.oc)");
+                    AL.info(".instances | Lists all servers run by this AutoPlug client and their state (.is)");
+                    AL.info(".instance <name> <start|stop|restart|kill> | Starts/stops the server with that name (.i)");
+                    AL.info(".instance <name> cmd <command> | Executes the command in the console of that server (.i)");
                     AL.info("");
                     return true;
                 } else if (command.equals(".start") || command.equals(".s")) {
@@ -69,6 +100,48 @@ public final class AutoPlugConsole {
                     AL.info("Achievement unlocked: Double kill!");
                     System.exit(0);
                     return true;
+                } else if (command.equals(".triggers") || command.equals(".tr")) {
+                    printTriggers();
+                    return true;
+                } else if (command.equals(".startups") || command.equals(".su")) {
+                    Server.STARTUP_PROFILER.printReport(10);
+                    CdsArchive.printReport(Server.STARTUP_PROFILER.getHistory());
+                    return true;
+                } else if (command.equals(".startups plugins") || command.equals(".sup")) {
+                    Server.STARTUP_PROFILER.getPluginTimes().printReport(15,
+                            new File(System.getProperty("user.dir") + "/autoplug-plugins-config.yml"));
+                    return true;
+                } else if (command.equals(".resources") || command.equals(".res")) {
+                    printResources();
+                    return true;
+                } else if (command.equals(".online-console") || command.equals(".oc")) {
+                    FrameWriter writer = OnlineConsoleSendConnection.getFrameWriter();
+                    if (writer == null) AL.info("Online-Console-SEND is not connected.");
+                    else AL.info("Online-Console-SEND: " + writer.getStats() + ".");
+                    ConsoleSendFilter filter = OnlineConsoleSendConnection.getFilter();
+                    if (filter != null)
+                        AL.info("Not sent: " + filter.getFiltered() + " lines because of the filter rules, " + filter.getCollapsed() + " repeated lines.");
+                    Multiplexer mux = MainConnection.getMultiplexer();
+                    if (mux != null) AL.info("Multiplexed main connection: " + mux.getStats() + ".");
+                    for (HandshakeStats stats : HandshakeStats.getAll()) {
+                        AL.info("TLS handshakes CON_TYPE " + stats.getConType() + ": " + stats.getStats() + ".");
+                    }
+                    for (CompressionStats stats : CompressionStats.getAll()) {
+                        AL.info("Compression '" + stats.getName() + "': " + stats.getStats() + ".");
+                    }
+                    for (SendQueue queue : SendQueue.getAll()) {
+                        AL.info("Queue '" + queue.getName() + "' (" + queue.getPolicy() + "): " + queue.getStats() + ".");
+                    }
+                    return true;
+                } else if (command.equals(".instances") || command.equals(".is")) {
+                    printInstances();
+                    return true;
+                } else if (command.startsWith(".instance ") || command.startsWith(".i ")) {
+                    instance(command.substring(command.indexOf(' ') + 1));
+                    return true;
+                } else if (command.startsWith(".search ") || command.startsWith(".se ")) {
+                    search(command.substring(command.indexOf(' ') + 1));
+                    return true;
                 } else {
                     AL.info("Command not found! Enter .help or .h for all available server!");
                     return true;
@@ -81,5 +154,109 @@ public final class AutoPlugConsole {
             return false;
     }
 
+    private static void printTriggers() {
+        ConsoleTriggerEngine engine = Server.getConsoleTriggers();
+        if (engine == null) {
+            AL.info("Console triggers are disabled. Enable them in the triggers config.");
+            return;
+        }
+        AL.info("Checked " + engine.getLinesChecked() + " lines against " + engine.getTriggers().size() + " trigger(s):");
+        for (ConsoleTrigger t : engine.getTriggers()) {
+            AL.info(t.getMatches() + "x | " + t.getDefinition());
+        }
+        for (Map.Entry<String, AtomicLong> metric : engine.getMetrics().entrySet()) {
+            AL.info("Metric '" + metric.getKey() + "': " + metric.getValue().get());
+        }
+    }
+
+    private static void printResources() {
+        ProcessResourceMonitor monitor = Server.getResourceMonitor();
+        if (monitor == null) {
+            AL.info("The resource monitor is disabled or not supported on this system (Linux only). Enable it in the general config.");
+            return;
+        }
+        String summary = monitor.getSummary();
+        if (summary == null) {
+            AL.info("No samples yet. Is the server running?");
+            return;
+        }
+        AL.info(summary);
+        int size = monitor.getSize();
+        AL.info("Over the last " + (size * monitor.getIntervalMs() / 1000) + " seconds: CPU avg "
+                + String.format("%.1f%%", monitor.getAverageCpuPercent(size))
+                + " | RAM max " + ProcessResourceMonitor.formatBytes(monitor.getMaxRssBytes(size)));
+    }
+
+    private static void printInstances() {
+        for (ServerInstance instance : ServerInstances.getAll()) {
+            ProcessResourceMonitor monitor = instance.getResourceMonitor();
+            String resources = monitor == null ? null : monitor.getSummary();
+            AL.info(instance.getName() + " | " + instance.getLifecycle().getState() + " | " + instance.getWorkingDir()
+                    + (resources != null && instance.isRunning() ? " | " + resources : ""));
+        }
+    }
+
+    private static void instance(@NotNull String args) {
+        String[] parts = args.split(" ", 3);
+        if (parts.length < 2) {
+            AL.info("Please enter the name and action. Example: .instance lobby restart");
+            return;
+        }
+        ServerInstance instance = ServerInstances.get(parts[0]);
+        if (instance == null) {
+            AL.info("There is no server named '" + parts[0] + "'. Enter .instances to list them.");
+            return;
+        }
+        if (instance == Server.DEFAULT) {
+            AL.info("That's the main server. Use .start, .stop, .restart or .kill for it.");
+            return;
+        }
+        switch (parts[1]) {
+            case "start":
+                ServerInstances.start(instance);
+                break;
+            case "stop":
+                ServerInstances.stop(instance);
+                break;
+            case "restart":
+                ServerInstances.restart(instance);
+                break;
+            case "kill":
+                ServerInstances.kill(instance);
+                break;
+            case "cmd":
+                if (parts.length < 3) {
+                    AL.info("Please enter the command. Example: .instance lobby cmd say Hello!");
+                    return;
+                }
+                instance.submitCommand(parts[2]).whenComplete((c, e) -> {
+                    if (e != null) AL.warn("Error executing '" + parts[2] + "' command! " + e.getMessage());
+                });
+                break;
+            default:
+                AL.info("Unknown action '" + parts[1] + "'. Available: start, stop, restart, kill, cmd");
+        }
+    }
+
+    private static void search(@NotNull String text) {
+        ConsoleScrollback scrollback = Server.getConsoleScrollback();
+        if (scrollback == null) {
+            AL.info("The console history is disabled. Enable it in the general config (server.console-scrollback-size).");
+            return;
+        }
+        if (text.isEmpty()) {
+            AL.info("Please enter the text to search for. Example: .search Exception");
+            return;
+        }
+        long start = System.currentTimeMillis();
+        List<ConsoleScrollback.Line> matches = scrollback.search(text, 50);
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+        for (ConsoleScrollback.Line line : matches) {
+            AL.info("[" + format.format(new Date(line.getTime())) + "] " + line.getText());
+        }
+        AL.info("Found " + matches.size() + " line(s) containing '" + text + "' in " + (System.currentTimeMillis() - start) + "ms"
+                + (matches.size() == 50 ? " (only showing the newest 50)." : "."));
+    }
+
 
 }
@@ -58,7 +58,10 @@ public class UserInput {
                                 }
 
                             } else if (Server.isRunning()) {
-                                Server.submitCommand(user_input);
+                                String command = user_input;
+                                Server.submitCommand(command).whenComplete((c, e) -> {
+                                    if (e != null) AL.warn("Error executing '" + command + "' command! " + e.getMessage());
+                                });
                             } else {
                                 info("Enter .help for all available server!");
                             }
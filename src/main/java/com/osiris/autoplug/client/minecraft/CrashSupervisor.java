@@ -0,0 +1,291 @@
+/*
+ * Copyright Osiris Team
+ * All rights reserved.
+ *
+ * This software is copyrighted work licensed under the terms of the
+ * AutoPlug License.  Please consult the file "LICENSE" for details.
+ */
+
+package com.osiris.autoplug.client.minecraft;
+
+import com.osiris.autoplug.client.configs.RestarterConfig;
+import com.osiris.autoplug.client.minecraft.console.OverflowPolicy;
+import com.osiris.autoplug.client.utils.Backoff;
+import com.osiris.autoplug.core.logger.AL;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Restarts a server that crashed. <br>
+ * A crash is an exit with a code other than 0, that wasn't requested (by .stop, .kill or a restart).
+ * The last console lines get checked for the cause. Causes that a restart can't fix (like an unaccepted EULA)
+ * are only reported. <br>
+ * The delay between restarts grows exponentially (see {@link Backoff}) and resets once the server ran stable for a while.
+ * If the server crashes too often within a short time, restarting is given up, to avoid an endless crash loop. <br>
+ * All supervisors share a single thread for the timing, while the restarts themselves run on a separate worker pool,
+ * so that a slow start (with backups and updates) doesn't delay the crash handling of other servers.
+ */
+public class CrashSupervisor {
+    public static final int LAST_LINES = 30;
+    /**
+     * Time given to the console subscriber, to receive the last lines after the process exited.
+     */
+    static final long ANALYZE_DELAY_MS = 500;
+    @NotNull
+    private static final ScheduledExecutorService EXECUTOR = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "Crash-Supervisor");
+        t.setDaemon(true);
+        return t;
+    });
+    @NotNull
+    private static final AtomicInteger RESTARTER_COUNT = new AtomicInteger();
+    /**
+     * Runs the restarts, which may block until the server started. Threads only exist while restarts are running.
+     */
+    @NotNull
+    private static final ExecutorService RESTARTERS = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "Crash-Supervisor-Restarter-" + RESTARTER_COUNT.incrementAndGet());
+        t.setDaemon(true);
+        return t;
+    });
+
+    @NotNull
+    private final ServerInstance instance;
+    @NotNull
+    private final Restarter restarter;
+    @NotNull
+    private final Backoff backoff;
+    private final int maxCrashes;
+    private final long windowMs;
+    private final long stableAfterMs;
+    private final boolean skipStartupTasks;
+    @NotNull
+    private final String[] lastLines = new String[LAST_LINES];
+    private int lastLinesIndex;
+    @NotNull
+    private final Deque<Long> crashes = new ArrayDeque<>();
+    private volatile long startedAt;
+    private volatile boolean restarting;
+    private volatile boolean gaveUp;
+    private volatile long restarts;
+
+    public CrashSupervisor(@NotNull ServerInstance instance, @NotNull RestarterConfig config, @NotNull Restarter restarter) {
+        this(instance, restarter,
+                config.crash_restarter_min_delay.asInt() * 1000L,
+                config.crash_restarter_max_delay.asInt() * 1000L,
+                config.crash_restarter_max_crashes.asInt(),
+                TimeUnit.MINUTES.toMillis(config.crash_restarter_window.asInt()),
+                TimeUnit.MINUTES.toMillis(config.crash_restarter_stable_after.asInt()),
+                config.crash_restarter_skip_startup_tasks.asBoolean());
+    }
+
+    CrashSupervisor(@NotNull ServerInstance instance, @NotNull Restarter restarter, long minDelayMs, long maxDelayMs,
+                    int maxCrashes, long windowMs, long stableAfterMs, boolean skipStartupTasks) {
+        this.instance = instance;
+        this.restarter = restarter;
+        this.backoff = new Backoff(minDelayMs, maxDelayMs);
+        this.maxCrashes = maxCrashes;
+        this.windowMs = windowMs;
+        this.stableAfterMs = stableAfterMs;
+        this.skipStartupTasks = skipStartupTasks;
+    }
+
+    /**
+     * Finds the cause of the crash in the provided console lines.
+     */
+    @NotNull
+    public static Cause findCause(@NotNull List<String> lines) {
+        for (int i = lines.size() - 1; i >= 0; i--) {
+            String line = lines.get(i);
+            for (Cause cause : Cause.values()) {
+                for (String pattern : cause.patterns) {
+                    if (line.contains(pattern)) return cause;
+                }
+            }
+        }
+        return Cause.UNKNOWN;
+    }
+
+    /**
+     * Starts watching the instance.
+     */
+    public void start() {
+        // Only the last lines are needed, thus it's fine to skip some, if this gets behind
+        instance.getConsoleBus().subscribe("Crash-Supervisor-" + instance.getName(), OverflowPolicy.DROP_OLDEST, line -> {
+            String s = line.toString();
+            synchronized (lastLines) {
+                lastLines[lastLinesIndex] = s;
+                lastLinesIndex = (lastLinesIndex + 1) % LAST_LINES;
+            }
+        });
+        instance.getLifecycle().addListener((oldState, newState) -> {
+            if (newState == ServerLifecycle.State.STARTING) {
+                startedAt = System.currentTimeMillis();
+                synchronized (lastLines) {
+                    for (int i = 0; i < LAST_LINES; i++) lastLines[i] = null;
+                }
+                if (!restarting) { // Started by the user, thus give it another chance
+                    synchronized (crashes) {
+                        crashes.clear();
+                    }
+                    backoff.reset();
+                    gaveUp = false;
+                }
+            } else if (newState == ServerLifecycle.State.EXITED && oldState != ServerLifecycle.State.STOPPING) {
+                long ranMs = System.currentTimeMillis() - startedAt;
+                // The exit code gets set right after the listeners were notified
+                instance.getLifecycle().getExitFuture().thenAccept(exitCode -> {
+                    if (exitCode != 0)
+                        EXECUTOR.schedule(() -> onCrash(exitCode, ranMs), ANALYZE_DELAY_MS, TimeUnit.MILLISECONDS);
+                });
+            }
+        });
+    }
+
+    private void onCrash(int exitCode, long ranMs) {
+        try {
+            List<String> lines = getLastLines();
+            Cause cause = findCause(lines);
+            long now = System.currentTimeMillis();
+            if (ranMs >= stableAfterMs) backoff.reset();
+            int recentCrashes;
+            synchronized (crashes) {
+                crashes.addLast(now);
+                while (!crashes.isEmpty() && now - crashes.peekFirst() > windowMs) crashes.removeFirst();
+                recentCrashes = crashes.size();
+            }
+
+            AL.warn("Server '" + instance.getName() + "' crashed with exit code " + exitCode + " after " + (ranMs / 1000) + "s. Cause: " + cause.description);
+            int from = Math.max(0, lines.size() - 10);
+            for (int i = from; i < lines.size(); i++) {
+                AL.info("[" + instance.getName() + "] " + lines.get(i));
+            }
+
+            if (!cause.restartable) {
+                gaveUp = true;
+                AL.warn("Not restarting server '" + instance.getName() + "', because a restart won't fix this. Fix the cause and start it again.");
+                return;
+            }
+            if (recentCrashes > maxCrashes) {
+                gaveUp = true;
+                AL.warn("Server '" + instance.getName() + "' crashed " + recentCrashes + " times within " + TimeUnit.MILLISECONDS.toMinutes(windowMs)
+                        + " minutes. Stopped restarting it, to avoid a crash loop. Fix the cause and start it again.");
+                return;
+            }
+
+            long delay = backoff.nextDelayMs();
+            // A server that crashes soon after starting, shouldn't wait for the update checks and backups each time
+            boolean quick = skipStartupTasks && ranMs < stableAfterMs;
+            AL.info("Restarting server '" + instance.getName() + "' in " + String.format("%.1f", delay / 1000.0) + "s"
+                    + " (crash " + recentCrashes + "/" + maxCrashes + (quick ? ", skipping startup tasks" : "") + ")...");
+            EXECUTOR.schedule(() -> RESTARTERS.execute(() -> restart(quick)), delay, TimeUnit.MILLISECONDS);
+        } catch (Exception e) {
+            AL.warn("Failed to handle the crash of server '" + instance.getName() + "'.", e);
+        }
+    }
+
+    /**
+     * The {@link Restarter} must return once the server was started, or failed to start,
+     * since only starts during this call count as restarts (instead of starts by the user).
+     */
+    private void restart(boolean quick) {
+        if (gaveUp || instance.isRunning()) return;
+        try {
+            restarting = true;
+            restarts++;
+            restarter.restart(quick);
+        } catch (Exception e) {
+            AL.warn("Failed to restart server '" + instance.getName() + "' after its crash.", e);
+        } finally {
+            restarting = false;
+        }
+    }
+
+    /**
+     * The last console lines of the current/last run, oldest first.
+     */
+    @NotNull
+    public List<String> getLastLines() {
+        List<String> list = new ArrayList<>(LAST_LINES);
+        synchronized (lastLines) {
+            for (int i = 0; i < LAST_LINES; i++) {
+                String s = lastLines[(lastLinesIndex + i) % LAST_LINES];
+                if (s != null) list.add(s);
+            }
+        }
+        return list;
+    }
+
+    /**
+     * True if restarting was given up, until the server gets started again by the user.
+     */
+    public boolean isGaveUp() {
+        return gaveUp;
+    }
+
+    public long getRestarts() {
+        return restarts;
+    }
+
+    @NotNull
+    public ServerInstance getInstance() {
+        return instance;
+    }
+
+    public enum Cause {
+        OUT_OF_MEMORY(true, "Not enough RAM. Consider increasing -Xmx in your flags.",
+                "java.lang.OutOfMemoryError"),
+        PORT_IN_USE(true, "The servers port is in use, maybe by an old server process.",
+                "FAILED TO BIND TO PORT", "Address already in use"),
+        EULA(false, "The EULA wasn't accepted yet. Set eula=true in eula.txt.",
+                "You need to agree to the EULA", "Failed to load eula.txt"),
+        UNSUPPORTED_JAVA(false, "The server jar needs a newer Java version. Change the java-version in your general config.",
+                "UnsupportedClassVersionError", "Unsupported class file major version"),
+        CORRUPT_JAR(false, "The server jar is corrupt. Delete it, so it gets downloaded again.",
+                "Invalid or corrupt jarfile"),
+        MISSING_JAR(false, "The server jar doesn't exist, or AutoPlug has no permission to read it. Check the jar in your config and the files permissions.",
+                "Error: Unable to access jarfile"),
+        WATCHDOG(true, "The server stopped responding and was stopped by its watchdog.",
+                "The server has stopped responding!", "Considering it to be crashed"),
+        UNKNOWN(true, "Unknown. See the last console lines below.");
+
+        private final boolean restartable;
+        @NotNull
+        private final String description;
+        @NotNull
+        private final String[] patterns;
+
+        Cause(boolean restartable, @NotNull String description, @NotNull String... patterns) {
+            this.restartable = restartable;
+            this.description = description;
+            this.patterns = patterns;
+        }
+
+        public boolean isRestartable() {
+            return restartable;
+        }
+
+        @NotNull
+        public String getDescription() {
+            return description;
+        }
+    }
+
+    public interface Restarter {
+        /**
+         * Starts the server and returns once it was started, or failed to start.
+         *
+         * @param quick true if the startup tasks (backups, updates) should be skipped.
+         */
+        void restart(boolean quick) throws Exception;
+    }
+}
@@ -0,0 +1,350 @@
+/*
+ * Copyright Osiris Team
+ * All rights reserved.
+ *
+ * This software is copyrighted work licensed under the terms of the
+ * AutoPlug License.  Please consult the file "LICENSE" for details.
+ */
+
+package com.osiris.autoplug.client.minecraft;
+
+import com.osiris.autoplug.client.minecraft.console.ConsoleLine;
+import com.osiris.autoplug.core.logger.AL;
+import com.osiris.dyml.DYModule;
+import com.osiris.dyml.DreamYaml;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Attributes the servers startup time to its plugins. <br>
+ * Each "[Plugin] Loading Plugin v1.0" and "[Plugin] Enabling Plugin v1.0" line starts a phase of that plugin,
+ * which ends with the next such line, the "Preparing level" line or the ready line.
+ * The time between is what the plugin costs. <br>
+ * The console timestamps only have a resolution of seconds, thus the time the line was received is used instead. <br>
+ * The costs of the last {@link #MAX_RUNS} starts are kept in a history file,
+ * so that a slower start can be traced back to the plugin (and its update) causing it.
+ */
+public class PluginStartupTimes {
+    public static final int MAX_RUNS = 20;
+    /**
+     * A plugin must be at least this many milliseconds slower than usual, to get reported.
+     */
+    public static final long REGRESSION_MIN_MS = 500;
+    @NotNull
+    private final File historyFile;
+    /**
+     * Oldest first.
+     */
+    @NotNull
+    private final List<Run> history = new ArrayList<>();
+    /**
+     * Replaced by {@link #reset()} on the starting thread and cleared by {@link #abort()} on the exit watcher,
+     * while only the console thread changes the measurement itself. Thus lines of an aborted start
+     * can only change a measurement, that was already discarded.
+     */
+    @Nullable
+    private volatile Measurement current;
+
+    public PluginStartupTimes(@NotNull File historyFile) {
+        this.historyFile = historyFile;
+        load();
+    }
+
+    /**
+     * Starts measuring a new server start.
+     */
+    public void reset() {
+        current = new Measurement();
+    }
+
+    /**
+     * @param now the current time in milliseconds.
+     */
+    public void onConsoleLine(@NotNull ConsoleLine line, long now) {
+        Measurement m = current;
+        if (m == null) return;
+        int enabling = line.indexOf("] Enabling ", 0);
+        int loading = enabling == -1 ? line.indexOf("] Loading ", 0) : -1;
+        if (enabling != -1 || loading != -1) {
+            String rest = line.toString().substring(enabling != -1 ? enabling + "] Enabling ".length() : loading + "] Loading ".length());
+            int v = rest.lastIndexOf(" v");
+            if (v <= 0) return; // Not a plugin, for example "Loading properties"
+            String name = rest.substring(0, v).trim();
+            if (name.startsWith("server plugin ")) name = name.substring("server plugin ".length()); // Paper
+            String version = rest.substring(v + 2).trim();
+            m.closePhase(now);
+            m.openPlugin = m.times.computeIfAbsent(name, n -> new PluginTime(n, version));
+            m.openIsEnable = enabling != -1;
+            m.openSince = now;
+        } else if (m.openPlugin != null && line.contains("Preparing level")) {
+            m.closePhase(now);
+        }
+    }
+
+    /**
+     * Finishes the current measurement, saves it and warns about plugins that took a lot longer than usual.
+     *
+     * @param startedAt the time the server start began, used as id of the run.
+     * @param now       the time the server was ready.
+     * @return the measured run or null, if no start was measured.
+     */
+    @Nullable
+    public Run finish(long startedAt, long now) {
+        Measurement m = current;
+        if (m == null) return null;
+        m.closePhase(now);
+        current = null;
+        if (m.times.isEmpty()) return null; // Vanilla or a proxy without plugins in the log
+
+        Run run = new Run(startedAt, new ArrayList<>(m.times.values()));
+        synchronized (history) {
+            for (PluginTime t : run.plugins) {
+                long baseline = baseline(t.name);
+                String previousVersion = previousVersion(t.name);
+                if (StartupProfiler.isRegression(t.getTotalMs(), baseline) && t.getTotalMs() - baseline >= REGRESSION_MIN_MS)
+                    AL.warn("Plugin " + t.name + " took " + t.getTotalMs() + "ms to load and enable, usually it takes " + baseline + "ms."
+                            + (previousVersion != null && !previousVersion.equals(t.version)
+                            ? " It was updated from " + previousVersion + " to " + t.version + "." : ""));
+            }
+            history.add(run);
+            while (history.size() > MAX_RUNS) history.remove(0);
+            save();
+        }
+        return run;
+    }
+
+    /**
+     * Discards the current measurement.
+     */
+    public void abort() {
+        current = null;
+    }
+
+    /**
+     * The median load+enable time of the plugin over the stored runs, or -1 if it was never measured.
+     */
+    public long baseline(@NotNull String plugin) {
+        synchronized (history) {
+            List<Long> values = new ArrayList<>();
+            for (Run r : history) {
+                PluginTime t = r.get(plugin);
+                if (t != null) values.add(t.getTotalMs());
+            }
+            if (values.isEmpty()) return -1;
+            Collections.sort(values);
+            return values.get(values.size() / 2);
+        }
+    }
+
+    /**
+     * The plugins version in the newest stored run, or null.
+     */
+    @Nullable
+    public String previousVersion(@NotNull String plugin) {
+        synchronized (history) {
+            for (int i = history.size() - 1; i >= 0; i--) {
+                PluginTime t = history.get(i).get(plugin);
+                if (t != null) return t.version;
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Prints the slowest plugins of the last start, compared to their usual times. <br>
+     * The installed and latest versions are taken from the plugins config.
+     */
+    public void printReport(int amount, @Nullable File pluginsConfigFile) {
+        List<Run> runs = getHistory();
+        if (runs.isEmpty()) {
+            AL.info("No plugin startup times measured yet.");
+            return;
+        }
+        Run last = runs.get(runs.size() - 1);
+        Run before = runs.size() > 1 ? runs.get(runs.size() - 2) : null;
+        DreamYaml pluginsConfig = null;
+        if (pluginsConfigFile != null && pluginsConfigFile.exists()) {
+            try {
+                pluginsConfig = new DreamYaml(pluginsConfigFile);
+                pluginsConfig.load();
+            } catch (Exception e) {
+                AL.warn("Failed to read the plugins config.", e);
+                pluginsConfig = null;
+            }
+        }
+
+        List<PluginTime> sorted = new ArrayList<>(last.plugins);
+        sorted.sort((a, b) -> Long.compare(b.getTotalMs(), a.getTotalMs()));
+        long total = 0;
+        for (PluginTime t : sorted) total += t.getTotalMs();
+        AL.info("Plugins took " + total + "ms in total at the last start. Slowest " + Math.min(amount, sorted.size()) + ":");
+        for (int i = 0; i < sorted.size() && i < amount; i++) {
+            PluginTime t = sorted.get(i);
+            long baseline = baseline(t.name);
+            StringBuilder sb = new StringBuilder();
+            sb.append(t.name).append(" ").append(t.version)
+                    .append(" | ").append(t.getTotalMs()).append("ms (load ").append(t.loadMs).append("ms, enable ").append(t.enableMs).append("ms)")
+                    .append(" | usual ").append(baseline).append("ms");
+            PluginTime previous = before != null ? before.get(t.name) : null;
+            if (previous != null && !previous.version.equals(t.version))
+                sb.append(" | updated from ").append(previous.version);
+            if (pluginsConfig != null) {
+                DYModule latest = pluginsConfig.get(pluginsConfig.getFileNameWithoutExt(), t.name, "latest-version");
+                if (latest != null && latest.asString() != null && !latest.asString().equals(t.version))
+                    sb.append(" | latest ").append(latest.asString());
+                DYModule exclude = pluginsConfig.get(pluginsConfig.getFileNameWithoutExt(), t.name, "exclude");
+                if (exclude != null && exclude.asBoolean())
+                    sb.append(" | excluded from updates");
+            }
+            if (StartupProfiler.isRegression(t.getTotalMs(), baseline) && t.getTotalMs() - baseline >= REGRESSION_MIN_MS)
+                sb.append(" | SLOWER THAN USUAL");
+            AL.info(sb.toString());
+        }
+    }
+
+    private void load() {
+        if (!historyFile.exists()) return;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(historyFile), StandardCharsets.UTF_8))) {
+            String line;
+            Run run = null;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty() || line.startsWith("#")) continue;
+                String[] parts = line.split(",");
+                if (parts.length < 5) continue;
+                try {
+                    long startedAt = Long.parseLong(parts[0]);
+                    if (run == null || run.startedAt != startedAt) {
+                        run = new Run(startedAt, new ArrayList<>());
+                        history.add(run);
+                    }
+                    PluginTime t = new PluginTime(parts[1], parts[2]);
+                    t.loadMs = Long.parseLong(parts[3]);
+                    t.enableMs = Long.parseLong(parts[4]);
+                    run.plugins.add(t);
+                } catch (NumberFormatException ignored) {
+                }
+            }
+            while (history.size() > MAX_RUNS) history.remove(0);
+        } catch (Exception e) {
+            AL.warn("Failed to read the plugin startup times.", e);
+        }
+    }
+
+    private void save() {
+        try {
+            if (historyFile.getParentFile() != null) historyFile.getParentFile().mkdirs();
+            try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(historyFile), StandardCharsets.UTF_8))) {
+                writer.write("# started-at,plugin,version,load-ms,enable-ms\n");
+                for (Run r : history) {
+                    for (PluginTime t : r.plugins) {
+                        writer.write(r.startedAt + "," + t.name.replace(',', '_') + "," + t.version.replace(',', '_')
+                                + "," + t.loadMs + "," + t.enableMs + "\n");
+                    }
+                }
+            }
+        } catch (Exception e) {
+            AL.warn("Failed to save the plugin startup times.", e);
+        }
+    }
+
+    /**
+     * A copy of the stored runs, oldest first.
+     */
+    @NotNull
+    public List<Run> getHistory() {
+        synchronized (history) {
+            return new ArrayList<>(history);
+        }
+    }
+
+    /**
+     * The plugin costs of the start being measured. Only changed by the console thread.
+     */
+    private static class Measurement {
+        @NotNull
+        private final Map<String, PluginTime> times = new LinkedHashMap<>();
+        @Nullable
+        private PluginTime openPlugin;
+        private boolean openIsEnable;
+        private long openSince;
+
+        private void closePhase(long now) {
+            PluginTime t = openPlugin;
+            if (t == null) return;
+            if (openIsEnable) t.enableMs += now - openSince;
+            else t.loadMs += now - openSince;
+            openPlugin = null;
+        }
+    }
+
+    /**
+     * The plugin costs of a single server start.
+     */
+    public static class Run {
+        private final long startedAt;
+        @NotNull
+        private final List<PluginTime> plugins;
+
+        Run(long startedAt, @NotNull List<PluginTime> plugins) {
+            this.startedAt = startedAt;
+            this.plugins = plugins;
+        }
+
+        @Nullable
+        public PluginTime get(@NotNull String plugin) {
+            for (PluginTime t : plugins) {
+                if (t.name.equals(plugin)) return t;
+            }
+            return null;
+        }
+
+        public long getStartedAt() {
+            return startedAt;
+        }
+
+        @NotNull
+        public List<PluginTime> getPlugins() {
+            return plugins;
+        }
+    }
+
+    public static class PluginTime {
+        @NotNull
+        private final String name;
+        @NotNull
+        private final String version;
+        private long loadMs;
+        private long enableMs;
+
+        PluginTime(@NotNull String name, @NotNull String version) {
+            this.name = name;
+            this.version = version;
+        }
+
+        @NotNull
+        public String getName() {
+            return name;
+        }
+
+        @NotNull
+        public String getVersion() {
+            return version;
+        }
+
+        public long getLoadMs() {
+            return loadMs;
+        }
+
+        public long getEnableMs() {
+            return enableMs;
+        }
+
+        public long getTotalMs() {
+            return loadMs + enableMs;
+        }
+    }
+}
@@ -0,0 +1,473 @@
+/*
+ * Copyright Osiris Team
+ * All rights reserved.
+ *
+ * This software is copyrighted work licensed under the terms of the
+ * AutoPlug License.  Please consult the file "LICENSE" for details.
+ */
+
+package com.osiris.autoplug.client.minecraft;
+
+import com.osiris.autoplug.core.logger.AL;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Samples the resource usage of the server process at a fixed interval, by reading
+ * /proc/&lt;pid&gt;/stat, /proc/&lt;pid&gt;/status and /proc/&lt;pid&gt;/io (Linux only). <br>
+ * Collected: CPU usage, resident memory (RSS), thread count, open file descriptors and disk I/O. <br>
+ * The samples are stored in fixed-size primitive ring buffers, which get allocated once.
+ * The /proc files stay open and get re-read from the start for each sample, into a reused byte array,
+ * thus sampling allocates nothing. Only counting the open file descriptors needs a directory listing,
+ * which is why that is done every {@link #FD_COUNT_EVERY} samples. <br>
+ * One writer thread, many readers. Readers may see a sample that is being overwritten,
+ * if they are a whole ring behind, which is fine for monitoring.
+ */
+public class ProcessResourceMonitor {
+    public static final int FD_COUNT_EVERY = 12;
+    /**
+     * USER_HZ, the unit of the CPU times in /proc/&lt;pid&gt;/stat. It's 100 on all common Linux platforms.
+     */
+    private static final int CLOCK_TICKS_PER_SECOND = 100;
+    private static final byte[] VM_RSS = "VmRSS:".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] THREADS = "Threads:".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] READ_BYTES = "read_bytes:".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] WRITE_BYTES = "write_bytes:".getBytes(StandardCharsets.US_ASCII);
+
+    private final long intervalMs;
+    private final int capacity;
+    // The rings, index = sample number % capacity
+    @NotNull
+    private final long[] times;
+    @NotNull
+    private final double[] cpuPercent;
+    @NotNull
+    private final long[] rssBytes;
+    @NotNull
+    private final int[] threads;
+    @NotNull
+    private final int[] openFds;
+    @NotNull
+    private final long[] readBytesPerSecond;
+    @NotNull
+    private final long[] writeBytesPerSecond;
+    /**
+     * The total amount of samples taken. Written after the sample, thus readers only see complete samples.
+     */
+    private volatile long sampleCount;
+
+    // Only used by the sampler thread
+    private final byte[] buffer = new byte[4096];
+    @Nullable
+    private RandomAccessFile stat, status, io;
+    @Nullable
+    private File fdDir;
+    private long openedPid = -1;
+    private long lastCpuTicks = -1;
+    private long lastReadBytes = -1;
+    private long lastWriteBytes = -1;
+    private long lastSampleNanos;
+    private int lastOpenFds = -1;
+    private long samplesSinceOpen;
+
+    private volatile long pid = -1;
+    private volatile boolean closed;
+    @Nullable
+    private Thread thread;
+
+    /**
+     * @param intervalMs the time between two samples.
+     * @param capacity   the amount of samples to keep.
+     */
+    public ProcessResourceMonitor(long intervalMs, int capacity) {
+        if (intervalMs <= 0) throw new IllegalArgumentException("Interval must be bigger than 0.");
+        if (capacity <= 0) throw new IllegalArgumentException("Capacity must be bigger than 0.");
+        this.intervalMs = intervalMs;
+        this.capacity = capacity;
+        this.times = new long[capacity];
+        this.cpuPercent = new double[capacity];
+        this.rssBytes = new long[capacity];
+        this.threads = new int[capacity];
+        this.openFds = new int[capacity];
+        this.readBytesPerSecond = new long[capacity];
+        this.writeBytesPerSecond = new long[capacity];
+    }
+
+    /**
+     * True if this system provides the /proc files needed.
+     */
+    public static boolean isSupported() {
+        return new File("/proc/self/stat").exists();
+    }
+
+    /**
+     * The process id of the provided process or -1, if it couldn't be determined. <br>
+     * Uses Process.pid() on Java 9+ and the private pid field of the Unix process class on Java 8.
+     */
+    public static long pidOf(@NotNull Process process) {
+        try {
+            return (Long) Process.class.getMethod("pid").invoke(process);
+        } catch (Exception ignored) {
+        }
+        try {
+            Field f = process.getClass().getDeclaredField("pid");
+            f.setAccessible(true);
+            return f.getLong(process);
+        } catch (Exception e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Starts the sampler thread. It lives until {@link #close()} and samples whatever process is watched.
+     */
+    public synchronized void start() {
+        if (thread != null) return;
+        thread = new Thread(this::run, "Server-Resource-Monitor");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Starts sampling the provided process, replacing the previous one.
+     */
+    public void watch(@NotNull Process process) {
+        long p = pidOf(process);
+        if (p == -1) AL.debug(this.getClass(), "Couldn't determine the servers process id, thus its resources can't be monitored.");
+        pid = p;
+    }
+
+    /**
+     * Stops sampling, until the next {@link #watch(Process)}. The samples are kept.
+     */
+    public void unwatch() {
+        pid = -1;
+    }
+
+    public void close() {
+        closed = true;
+        unwatch();
+        Thread t = thread;
+        if (t != null) t.interrupt();
+    }
+
+    private void run() {
+        try {
+            while (!closed) {
+                Thread.sleep(intervalMs);
+                tick();
+            }
+        } catch (InterruptedException ignored) {
+        } catch (Exception e) {
+            AL.warn("Server resource monitor stopped unexpectedly.", e);
+        } finally {
+            closeFiles();
+        }
+    }
+
+    /**
+     * Takes the next sample of the watched process. <br>
+     * Called by the sampler thread, or by a shared one (see {@link ServerInstances}), if this monitor wasn't started.
+     * Must only be called by one thread at a time.
+     */
+    void tick() {
+        if (closed) {
+            if (openedPid != -1) open(-1);
+            return;
+        }
+        long p = pid;
+        if (p != openedPid) open(p);
+        sample();
+    }
+
+    /**
+     * Opens the /proc files of the provided process. -1 closes them.
+     */
+    void open(long pid) {
+        closeFiles();
+        openedPid = pid;
+        lastCpuTicks = -1;
+        lastReadBytes = -1;
+        lastWriteBytes = -1;
+        lastOpenFds = -1;
+        samplesSinceOpen = 0;
+        if (pid == -1) return;
+        String dir = "/proc/" + pid;
+        try {
+            stat = new RandomAccessFile(dir + "/stat", "r");
+            status = new RandomAccessFile(dir + "/status", "r");
+        } catch (IOException e) {
+            AL.debug(this.getClass(), "Can't monitor the servers resources: " + e.getMessage());
+            closeFiles();
+            return;
+        }
+        try {
+            io = new RandomAccessFile(dir + "/io", "r");
+        } catch (IOException e) {
+            io = null; // Not readable on some systems, the rest still works
+        }
+        fdDir = new File(dir + "/fd");
+    }
+
+    private void closeFiles() {
+        for (RandomAccessFile f : new RandomAccessFile[]{stat, status, io}) {
+            try {
+                if (f != null) f.close();
+            } catch (IOException ignored) {
+            }
+        }
+        stat = null;
+        status = null;
+        io = null;
+        fdDir = null;
+    }
+
+    /**
+     * Takes one sample of the opened process.
+     *
+     * @return false if the process is gone.
+     */
+    boolean sample() {
+        if (stat == null || status == null) return false;
+        long nowNanos = System.nanoTime();
+        try {
+            // CPU time: utime and stime are the 14th and 15th field, counted from the field after the process name
+            int len = readFully(stat);
+            int nameEnd = lastIndexOf(buffer, len, (byte) ')');
+            if (nameEnd == -1) return false;
+            int pos = skipFields(buffer, len, nameEnd + 2, 11); // Now at field 14
+            long utime = parseLong(buffer, len, pos);
+            pos = skipFields(buffer, len, pos, 1);
+            long stime = parseLong(buffer, len, pos);
+            long cpuTicks = utime + stime;
+
+            len = readFully(status);
+            long rssKb = parseLong(buffer, len, indexAfter(buffer, len, VM_RSS));
+            long threadCount = parseLong(buffer, len, indexAfter(buffer, len, THREADS));
+
+            long readBytes = -1, writeBytes = -1;
+            if (io != null) {
+                try {
+                    len = readFully(io);
+                    readBytes = parseLong(buffer, len, indexAfter(buffer, len, READ_BYTES));
+                    writeBytes = parseLong(buffer, len, indexAfter(buffer, len, WRITE_BYTES));
+                } catch (IOException e) { // Permission denied on hardened systems
+                    io.close();
+                    io = null;
+                }
+            }
+
+            if (samplesSinceOpen % FD_COUNT_EVERY == 0 && fdDir != null) {
+                String[] fds = fdDir.list();
+                lastOpenFds = fds == null ? -1 : fds.length;
+            }
+
+            long elapsedNanos = nowNanos - lastSampleNanos;
+            int i = (int) (sampleCount % capacity);
+            times[i] = System.currentTimeMillis();
+            cpuPercent[i] = lastCpuTicks < 0 || elapsedNanos <= 0 ? 0
+                    : (cpuTicks - lastCpuTicks) * (1_000_000_000.0 / CLOCK_TICKS_PER_SECOND) * 100 / elapsedNanos;
+            rssBytes[i] = rssKb < 0 ? -1 : rssKb * 1024;
+            threads[i] = (int) threadCount;
+            openFds[i] = lastOpenFds;
+            readBytesPerSecond[i] = readBytes < 0 || lastReadBytes < 0 ? -1 : (long) ((readBytes - lastReadBytes) * 1_000_000_000.0 / elapsedNanos);
+            writeBytesPerSecond[i] = writeBytes < 0 || lastWriteBytes < 0 ? -1 : (long) ((writeBytes - lastWriteBytes) * 1_000_000_000.0 / elapsedNanos);
+            lastCpuTicks = cpuTicks;
+            lastReadBytes = readBytes;
+            lastWriteBytes = writeBytes;
+            lastSampleNanos = nowNanos;
+            samplesSinceOpen++;
+            sampleCount++;
+            return true;
+        } catch (IOException e) { // Process exited
+            open(-1);
+            return false;
+        }
+    }
+
+    private int readFully(@NotNull RandomAccessFile f) throws IOException {
+        f.seek(0); // Procfs generates the content again when read from the start
+        int len = 0;
+        int read;
+        while (len < buffer.length && (read = f.read(buffer, len, buffer.length - len)) != -1) {
+            len += read;
+        }
+        return len;
+    }
+
+    private static int lastIndexOf(byte[] b, int len, byte value) {
+        for (int i = len - 1; i >= 0; i--) {
+            if (b[i] == value) return i;
+        }
+        return -1;
+    }
+
+    /**
+     * @return the index after the key (may be followed by whitespace) or -1.
+     */
+    private static int indexAfter(byte[] b, int len, byte[] key) {
+        outer:
+        for (int i = 0; i <= len - key.length; i++) {
+            for (int j = 0; j < key.length; j++) {
+                if (b[i + j] != key[j]) continue outer;
+            }
+            return i + key.length;
+        }
+        return -1;
+    }
+
+    private static int skipFields(byte[] b, int len, int pos, int fields) {
+        for (int f = 0; f < fields && pos < len; f++) {
+            while (pos < len && b[pos] != ' ') pos++;
+            pos++;
+        }
+        return pos;
+    }
+
+    /**
+     * Parses the first number at or after pos (skipping whitespace).
+     *
+     * @return the number or -1 if there is none.
+     */
+    private static long parseLong(byte[] b, int len, int pos) {
+        if (pos < 0) return -1;
+        while (pos < len && (b[pos] == ' ' || b[pos] == '\t')) pos++;
+        if (pos >= len || b[pos] < '0' || b[pos] > '9') return -1;
+        long value = 0;
+        while (pos < len && b[pos] >= '0' && b[pos] <= '9') {
+            value = value * 10 + (b[pos] - '0');
+            pos++;
+        }
+        return value;
+    }
+
+    private int index(int ago) {
+        return (int) ((sampleCount - 1 - ago) % capacity);
+    }
+
+    /**
+     * The amount of samples currently stored.
+     */
+    public int getSize() {
+        return (int) Math.min(sampleCount, capacity);
+    }
+
+    public long getSampleCount() {
+        return sampleCount;
+    }
+
+    /**
+     * True if a process is being sampled right now.
+     */
+    public boolean isWatching() {
+        return pid != -1;
+    }
+
+    /**
+     * @param ago 0 is the latest sample, 1 the one before and so on. Must be smaller than {@link #getSize()}.
+     */
+    public long getTime(int ago) {
+        return times[index(ago)];
+    }
+
+    /**
+     * Percent of a single core, thus can be above 100 on multi-core systems.
+     */
+    public double getCpuPercent(int ago) {
+        return cpuPercent[index(ago)];
+    }
+
+    public long getRssBytes(int ago) {
+        return rssBytes[index(ago)];
+    }
+
+    public int getThreads(int ago) {
+        return threads[index(ago)];
+    }
+
+    /**
+     * -1 if unknown.
+     */
+    public int getOpenFds(int ago) {
+        return openFds[index(ago)];
+    }
+
+    /**
+     * -1 if unknown.
+     */
+    public long getReadBytesPerSecond(int ago) {
+        return readBytesPerSecond[index(ago)];
+    }
+
+    /**
+     * -1 if unknown.
+     */
+    public long getWriteBytesPerSecond(int ago) {
+        return writeBytesPerSecond[index(ago)];
+    }
+
+    /**
+     * The average CPU usage over the last samples.
+     *
+     * @return -1 if there are no samples.
+     */
+    public double getAverageCpuPercent(int samples) {
+        int n = Math.min(samples, getSize());
+        if (n == 0) return -1;
+        double sum = 0;
+        for (int i = 0; i < n; i++) sum += getCpuPercent(i);
+        return sum / n;
+    }
+
+    /**
+     * The highest RSS over the last samples.
+     *
+     * @return -1 if there are no samples.
+     */
+    public long getMaxRssBytes(int samples) {
+        int n = Math.min(samples, getSize());
+        long max = -1;
+        for (int i = 0; i < n; i++) max = Math.max(max, getRssBytes(i));
+        return max;
+    }
+
+    public long getIntervalMs() {
+        return intervalMs;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * A single line describing the latest sample, or null if there is none.
+     */
+    @Nullable
+    public String getSummary() {
+        if (getSize() == 0) return null;
+        int fds = getOpenFds(0);
+        long read = getReadBytesPerSecond(0);
+        long write = getWriteBytesPerSecond(0);
+        int lastMinute = (int) Math.max(1, 60_000 / intervalMs);
+        return String.format("CPU %.1f%% (avg %.1f%% last minute) | RAM %s (max %s) | %d threads | %s open files | disk read %s/s, write %s/s",
+                getCpuPercent(0), getAverageCpuPercent(lastMinute),
+                formatBytes(getRssBytes(0)), formatBytes(getMaxRssBytes(getSize())),
+                getThreads(0), fds < 0 ? "?" : String.valueOf(fds),
+                read < 0 ? "?" : formatBytes(read), write < 0 ? "?" : formatBytes(write));
+    }
+
+    @NotNull
+    public static String formatBytes(long bytes) {
+        if (bytes < 0) return "?";
+        if (bytes < 1024) return bytes + "B";
+        if (bytes < 1024 * 1024) return String.format("%.1fKB", bytes / 1024.0);
+        if (bytes < 1024L * 1024 * 1024) return String.format("%.1fMB", bytes / (1024.0 * 1024));
+        return String.format("%.2fGB", bytes / (1024.0 * 1024 * 1024));
+    }
+}
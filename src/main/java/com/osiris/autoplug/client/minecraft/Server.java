@@ -9,9 +9,15 @@
 package com.osiris.autoplug.client.minecraft;
 
 import com.osiris.autoplug.client.configs.GeneralConfig;
+import com.osiris.autoplug.client.configs.UpdaterConfig;
+import com.osiris.autoplug.client.minecraft.console.ConsoleLineBus;
+import com.osiris.autoplug.client.minecraft.console.ConsoleScrollback;
+import com.osiris.autoplug.client.minecraft.console.OverflowPolicy;
+import com.osiris.autoplug.client.minecraft.console.triggers.ConsoleTriggerEngine;
+import com.osiris.autoplug.client.minecraft.flags.JvmFlagProfile;
 import com.osiris.autoplug.client.tasks.BeforeServerStartupTasks;
+import com.osiris.autoplug.client.tasks.updater.server.PaperclipPrepatcher;
 import com.osiris.autoplug.client.utils.GD;
-import com.osiris.autoplug.client.utils.NonBlockingPipedInputStream;
 import com.osiris.autoplug.core.logger.AL;
 import com.osiris.dyml.exceptions.*;
 import net.lingala.zip4j.ZipFile;
@@ -19,30 +25,171 @@ import net.lingala.zip4j.model.FileHeader;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.io.PipedOutputStream;
-import java.nio.charset.StandardCharsets;
+import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 
 public final class Server {
+    public static final String DEFAULT_NAME = "default";
+    /**
+     * The server in AutoPlugs working directory. All static methods of this class refer to it.
+     * Additional servers are managed by {@link ServerInstances}.
+     */
+    @NotNull
+    public static final ServerInstance DEFAULT = new ServerInstance(DEFAULT_NAME, GD.WORKING_DIR, 8192);
+    /**
+     * Contains the servers console output, line by line.
+     * Lives as long as AutoPlug does, thus subscribers stay attached across server restarts.
+     */
+    @NotNull
+    public static final ConsoleLineBus CONSOLE_BUS = DEFAULT.getConsoleBus();
+    /**
+     * Notifies about the servers state (starting, ready, stopping, exited) as soon as it changes.
+     */
+    @NotNull
+    public static final ServerLifecycle LIFECYCLE = DEFAULT.getLifecycle();
+    /**
+     * Measures the phases of each server start and keeps a history of them.
+     */
+    @NotNull
+    public static final StartupProfiler STARTUP_PROFILER = DEFAULT.getStartupProfiler();
+    @Nullable
+    private static ConsoleScrollback scrollback;
+    @Nullable
+    private static ConsoleLineBus.Subscriber scrollbackSubscriber;
     @Nullable
-    public static NonBlockingPipedInputStream NB_PIPED_IN;
-    private static Process process;
-    private static Thread threadServerAliveChecker;
-    private static Thread threadReadOutputStream;
+    private static ConsoleTriggerEngine triggerEngine;
+
+    static {
+        // The local console must never lose a line, thus it's fine if the server waits for it
+        // Writes the lines chars directly, without creating a String for each line
+        PrintWriter localOut = new PrintWriter(System.out, false);
+        CONSOLE_BUS.subscribe("Local-Console", OverflowPolicy.BLOCK, line -> {
+            line.writeTo(localOut);
+            localOut.println();
+            localOut.flush();
+        });
+
+        // Resume the terminal if the server stopped running, to allow the use of AutoPlug-Commands
+        LIFECYCLE.addListener((oldState, newState) -> {
+            if (newState == ServerLifecycle.State.EXITED) {
+                AL.info("Minecraft server was stopped.");
+                AL.info("To stop AutoPlug too, enter '.stop both'.");
+                //TERMINAL.resume();
+            }
+        });
+    }
+
+    /**
+     * Opens the console scrollback file and starts writing the servers console lines to it.
+     *
+     * @param sizeMb the amount of megabytes reserved for lines. 0 disables the scrollback.
+     */
+    public static synchronized void openConsoleScrollback(int sizeMb) {
+        if (sizeMb <= 0 || scrollback != null) return;
+        try {
+            ConsoleScrollback sb = new ConsoleScrollback(
+                    new File(GD.WORKING_DIR + "/autoplug-system/console-scrollback.bin"), sizeMb * 1024L * 1024L);
+            // Never slows down the server, but mentions the skipped lines in the history
+            scrollbackSubscriber = CONSOLE_BUS.subscribe("Console-Scrollback", OverflowPolicy.SUMMARIZE,
+                    line -> sb.append(line, line.getSequence(), System.currentTimeMillis()));
+            scrollback = sb;
+        } catch (Exception e) {
+            AL.warn("Failed to open the console scrollback.", e);
+        }
+    }
+
+    public static synchronized void closeConsoleScrollback() {
+        try {
+            if (scrollbackSubscriber != null) scrollbackSubscriber.close();
+            if (scrollback != null) scrollback.close();
+        } catch (Exception e) {
+            AL.warn("Failed to close the console scrollback.", e);
+        }
+        scrollbackSubscriber = null;
+        scrollback = null;
+    }
+
+    /**
+     * Null, if the scrollback is disabled or wasn't opened yet.
+     */
+    @Nullable
+    public static ConsoleScrollback getConsoleScrollback() {
+        return scrollback;
+    }
+
+    /**
+     * Starts checking the servers console lines against the provided triggers.
+     *
+     * @param definitions see {@link com.osiris.autoplug.client.minecraft.console.triggers.ConsoleTrigger} for the format.
+     */
+    public static synchronized void startConsoleTriggers(@NotNull List<String> definitions) {
+        if (triggerEngine != null) return;
+        ConsoleTriggerEngine engine = ConsoleTriggerEngine.fromDefinitions(definitions);
+        // The matching is fast and the actions don't block, thus it's fine to never skip a line
+        CONSOLE_BUS.subscribe("Console-Triggers", OverflowPolicy.BLOCK, engine);
+        triggerEngine = engine;
+        AL.debug(Server.class, "Started console triggers: " + engine.getTriggers().size());
+    }
+
+    /**
+     * Null, if the triggers are disabled.
+     */
+    @Nullable
+    public static ConsoleTriggerEngine getConsoleTriggers() {
+        return triggerEngine;
+    }
+
+    /**
+     * Starts sampling the servers resource usage (CPU, RAM, threads, files, disk I/O).
+     * Does nothing if this system doesn't support it.
+     *
+     * @param intervalSeconds the time between samples. 0 disables the monitor.
+     * @param samples         the amount of samples to keep.
+     */
+    public static synchronized void startResourceMonitor(int intervalSeconds, int samples) {
+        if (intervalSeconds <= 0 || DEFAULT.getResourceMonitor() != null) return;
+        if (!ProcessResourceMonitor.isSupported()) {
+            AL.debug(Server.class, "Server resource monitor not supported on this system.");
+            return;
+        }
+        ProcessResourceMonitor monitor = new ProcessResourceMonitor(intervalSeconds * 1000L, samples);
+        monitor.start();
+        DEFAULT.setResourceMonitor(monitor);
+    }
+
+    /**
+     * Null, if the monitor is disabled or not supported on this system.
+     */
+    @Nullable
+    public static ProcessResourceMonitor getResourceMonitor() {
+        return DEFAULT.getResourceMonitor();
+    }
 
     public static void start() {
+        start(false);
+    }
+
+    /**
+     * @param quick skips the {@link BeforeServerStartupTasks} and the countdown.
+     *              Used to get a crashed server back up fast, see {@link CrashSupervisor}.
+     */
+    public static void start(boolean quick) {
 
         try {
             if (isRunning()) {
                 AL.warn("Server already running!");
             } else {
                 // Runs all processes before starting the server
-                new BeforeServerStartupTasks();
+                if (!quick) new BeforeServerStartupTasks();
+                // The server must not patch itself while the update is still being patched
+                PaperclipPrepatcher.awaitBackground();
 
                 if (GD.SERVER_PATH == null || !GD.SERVER_PATH.exists())
                     throw new Exception("Failed to find your server jar! " +
@@ -51,13 +198,15 @@ public final class Server {
 
                 AL.info("Starting server jar: " + GD.SERVER_PATH.getName());
                 AL.info("Note: AutoPlug has some own console server. For details enter .help or .h");
-                Thread.sleep(1000);
-                AL.info("Starting server in 3");
-                Thread.sleep(1000);
-                AL.info("Starting server in 2");
-                Thread.sleep(1000);
-                AL.info("Starting server in 1");
-                Thread.sleep(1000);
+                if (!quick) {
+                    Thread.sleep(1000);
+                    AL.info("Starting server in 3");
+                    Thread.sleep(1000);
+                    AL.info("Starting server in 2");
+                    Thread.sleep(1000);
+                    AL.info("Starting server in 1");
+                    Thread.sleep(1000);
+                }
                 createProcess(GD.SERVER_PATH.toPath().toString());
             }
 
@@ -86,9 +235,7 @@ public final class Server {
 
         if (isRunning()) {
             submitCommand("stop");
-            while (Server.isRunning())
-                Thread.sleep(1000);
-            NB_PIPED_IN = null;
+            LIFECYCLE.awaitExit();
         } else {
             AL.warn("Server not running!");
         }
@@ -103,15 +250,8 @@ public final class Server {
         AL.info("Killing server!");
         try {
 
-            if (isRunning()) {
-                process.destroy();
-            } else {
-                AL.warn("Server is not running!");
-            }
-
-            while (isRunning()) {
-                Thread.sleep(1000);
-            }
+            if (!isRunning()) AL.warn("Server is not running!");
+            DEFAULT.kill();
             AL.info("Server killed!");
             return true;
 
@@ -122,7 +262,7 @@ public final class Server {
     }
 
     public static boolean isRunning() {
-        return process != null && process.isAlive();
+        return DEFAULT.isRunning();
     }
 
     private static void createProcess(String path) throws IOException, DuplicateKeyException, DYReaderException, IllegalListException, DYWriterException, NotLoadedException, IllegalKeyException {
@@ -136,13 +276,14 @@ public final class Server {
             commands.add("java");
         }
 
-        // 2. Add all before-flags
-        if (config.server_flags_enabled.asBoolean()) {
-            List<String> list = config.server_flags_list.asStringList();
-            for (String s : list) {
-                commands.add("-" + s);
-            }
-        }
+        // 2. Add all before-flags and use or create the class data sharing archive
+        UpdaterConfig updaterConfig = new UpdaterConfig();
+        String build = updaterConfig.server_software.asString() + "-" + updaterConfig.server_version.asString()
+                + "-" + updaterConfig.build_id.asString();
+        DEFAULT.addFlags(commands, JvmFlagProfile.parse(config.server_flags_profile.asString()), config.server_flags_max_memory.asString(),
+                config.server_flags_large_pages.asBoolean(), config.server_flags_pre_touch.asBoolean(), config.server_flags_numa.asBoolean(),
+                config.server_flags_enabled.asBoolean() ? config.server_flags_list.asStringList() : new ArrayList<>(),
+                config.server_cds_enabled.asBoolean(), new File(path), build);
 
         // 3. Add the -jar command and server jar path
         commands.add("-jar");
@@ -171,71 +312,9 @@ public final class Server {
         // but messes input up, because there are 2 scanners on the same stream.
         // That's why we pause the current Terminal, which disables the user from entering console commands.
         // If AutoPlug-Plugin is installed the user can executed AutoPlug commands through in-game or console.
-        AL.debug(Server.class, "Starting server with commands: " + commands);
         //TERMINAL.pause(true);
-        ProcessBuilder processBuilder = new ProcessBuilder(commands); // The commands list contains all we need.
-        processBuilder.redirectErrorStream(true);
-        //processBuilder.inheritIO(); // BACK TO PIPED, BECAUSE OF MASSIVE ERRORS LIKE COMMANDS NOT BEEING EXECUTED, which affects the restarter
-        processBuilder.redirectInput(ProcessBuilder.Redirect.PIPE);
-        processBuilder.redirectOutput(ProcessBuilder.Redirect.PIPE);
-        process = processBuilder.start();
-
-        if (threadReadOutputStream == null) {
-            threadReadOutputStream = new Thread(() -> {
-                try {
-                    while (true) {
-                        InputStream in = process.getInputStream();
-                        if (isRunning() && in != null) {
-                            // Get Servers OutputStream, and forward it to a NonBlockingInputStream.
-                            // From there multiple listeners can be attached.
-                            NB_PIPED_IN = new NonBlockingPipedInputStream();
-                            OutputStream pipedOut = new PipedOutputStream(NB_PIPED_IN);
-                            NB_PIPED_IN.actionsOnWriteLineEvent.add(line -> {
-                                System.out.println(line);
-                            });
-                            int b = -1;
-                            while ((b = in.read()) != -1) {
-                                pipedOut.write(b);
-                            }
-                        }
-                        Thread.sleep(250);
-                    }
-                } catch (Exception e) {
-                    AL.warn(e);
-                }
-            });
-            threadReadOutputStream.start();
-        }
-
-        // Also create a thread which checks if the server is running or not.
-        // Resume the terminal if the server stopped running, to allow the use of AutoPlug-Commands
-        if (threadServerAliveChecker == null) {
-            threadServerAliveChecker = new Thread(() -> {
-                try {
-                    boolean lastIsRunningCheck = false;
-                    boolean currentIsRunningCheck;
-                    while (true) {
-                        Thread.sleep(2000);
-                        currentIsRunningCheck = Server.isRunning();
-                        if (!currentIsRunningCheck && lastIsRunningCheck) {
-                            AL.info("Minecraft server was stopped.");
-                            AL.info("To stop AutoPlug too, enter '.stop both'.");
-                            //TERMINAL.resume();
-                            try {
-                                if (NB_PIPED_IN != null) NB_PIPED_IN.close();
-                            } catch (Exception e) {
-                                AL.warn(e);
-                            }
-                            NB_PIPED_IN = null;
-                        }
-                        lastIsRunningCheck = currentIsRunningCheck;
-                    }
-                } catch (Exception e) {
-                    AL.warn("Thread for checking if MC-Server is alive was stopped due to an error.", e);
-                }
-            });
-            threadServerAliveChecker.start();
-        }
+        AL.info("Starting server with: " + String.join(" ", commands));
+        DEFAULT.start(commands);
     }
 
     private static boolean hasColorSupport(@NotNull String path) throws IOException {
@@ -250,24 +329,24 @@ public final class Server {
         return false;
     }
 
-    public static void submitCommand(@NotNull String command) throws IOException {
-        if (isRunning()) {
-            OutputStream os = process.getOutputStream();
-            // Since the command won't be executed if it doesn't end with a new line char we do the below:
-            if (command.contains(System.lineSeparator()))
-                os.write(command.getBytes(StandardCharsets.UTF_8));//TERMINAL.writer().write(command);
-            else
-                os.write((command + System.lineSeparator()).getBytes(StandardCharsets.UTF_8));//TERMINAL.writer().write(command + System.lineSeparator());
-            os.flush();
-        }
+    /**
+     * Queues the command to be written to the servers console and returns right away. <br>
+     * Commands get written in the order they were submitted, see {@link ServerCommandQueue} for details.
+     *
+     * @return a future which completes once the command was written,
+     * or completes exceptionally if the server isn't running.
+     */
+    @NotNull
+    public static CompletableFuture<ServerCommandQueue.Command> submitCommand(@NotNull String command) {
+        return DEFAULT.submitCommand(command);
     }
 
     public InputStream getInput() {
-        return process.getInputStream();
+        return DEFAULT.getProcess().getInputStream();
     }
 
     public OutputStream getOutput() {
-        return process.getOutputStream();
+        return DEFAULT.getProcess().getOutputStream();
     }
 
 }
@@ -0,0 +1,241 @@
+/*
+ * Copyright Osiris Team
+ * All rights reserved.
+ *
+ * This software is copyrighted work licensed under the terms of the
+ * AutoPlug License.  Please consult the file "LICENSE" for details.
+ */
+
+package com.osiris.autoplug.client.minecraft;
+
+import com.osiris.autoplug.core.logger.AL;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * The only writer of a server process's input stream. <br>
+ * Commands from all threads (user input, online console, scheduled restarts) get queued
+ * and are written by a single thread, in the order they were submitted.
+ * All commands that are waiting at that time get written as one batch with a single flush,
+ * so bursts (like restart warnings) don't contend on the process stream. <br>
+ * Submitting never blocks. The returned future completes once the command was written.
+ */
+public class ServerCommandQueue {
+    public static final int MAX_BATCH_SIZE = 256;
+    private final Command poison = new Command("");
+    @NotNull
+    private final OutputStream out;
+    @NotNull
+    private final LinkedBlockingQueue<Command> queue = new LinkedBlockingQueue<>();
+    @NotNull
+    private final Thread thread;
+    // Only used by the writer thread
+    private final List<Command> batch = new ArrayList<>(MAX_BATCH_SIZE);
+    private final ByteArrayOutputStream batchBytes = new ByteArrayOutputStream(1024);
+    private volatile boolean closed;
+    private volatile long batchesWritten;
+    private volatile long commandsWritten;
+
+    /**
+     * @param out the servers input stream (process.getOutputStream()).
+     */
+    public ServerCommandQueue(@NotNull OutputStream out) {
+        this.out = out;
+        this.thread = new Thread(this::run, "Server-Command-Writer");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Queues the command to be written to the server. <br>
+     * A line separator gets added, if the command doesn't contain one already.
+     *
+     * @return a future which completes once the command was written and flushed,
+     * or completes exceptionally if that failed or the queue was closed.
+     */
+    @NotNull
+    public CompletableFuture<Command> submit(@NotNull String command) {
+        Command c = new Command(command);
+        if (closed) {
+            c.future.completeExceptionally(new IllegalStateException("Command queue closed. Server not running?"));
+            return c.future;
+        }
+        queue.add(c);
+        if (closed) // Closed in the meantime, thus the writer may never see the command
+            failRemaining(new IllegalStateException("Command queue closed. Server not running?"));
+        return c.future;
+    }
+
+    private void run() {
+        try {
+            while (!closed) {
+                batch.add(queue.take());
+                queue.drainTo(batch, MAX_BATCH_SIZE - 1);
+                writeBatch();
+            }
+        } catch (InterruptedException ignored) {
+        } catch (Exception e) {
+            AL.warn("Failed to write commands to the server.", e);
+        } finally {
+            closed = true;
+            for (Command c : batch) {
+                c.future.completeExceptionally(new IllegalStateException("Command queue closed before the command was written."));
+            }
+            failRemaining(new IllegalStateException("Command queue closed before the command was written."));
+        }
+    }
+
+    private void writeBatch() {
+        batchBytes.reset();
+        int count = 0;
+        for (Command c : batch) {
+            if (c == poison) {
+                closed = true;
+                continue;
+            }
+            // Since the command won't be executed if it doesn't end with a new line char we do the below:
+            String line = c.command.contains(System.lineSeparator()) ? c.command : c.command + System.lineSeparator();
+            byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+            batchBytes.write(bytes, 0, bytes.length);
+            count++;
+        }
+        if (count == 0) {
+            batch.clear();
+            return;
+        }
+
+        try {
+            batchBytes.writeTo(out);
+            out.flush();
+            long writtenAt = System.currentTimeMillis();
+            long writtenNanos = System.nanoTime();
+            commandsWritten += count;
+            batchesWritten++;
+            for (Command c : batch) {
+                if (c == poison) continue;
+                c.writtenAt = writtenAt;
+                c.writtenNanos = writtenNanos;
+                c.batchSize = count;
+                c.future.complete(c);
+            }
+        } catch (IOException e) {
+            for (Command c : batch) {
+                c.future.completeExceptionally(e);
+            }
+        }
+        batch.clear();
+    }
+
+    private void failRemaining(@NotNull Exception e) {
+        Command c;
+        while ((c = queue.poll()) != null) {
+            c.future.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * Writes the already queued commands and stops the writer thread. <br>
+     * Commands submitted after this fail right away.
+     */
+    public void close() {
+        if (closed) return;
+        queue.add(poison);
+    }
+
+    /**
+     * Like {@link #close()}, but drops the queued commands. Used when the process is gone.
+     */
+    public void closeNow() {
+        closed = true;
+        thread.interrupt();
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * The amount of commands waiting to be written.
+     */
+    public int getQueueSize() {
+        return queue.size();
+    }
+
+    public long getCommandsWritten() {
+        return commandsWritten;
+    }
+
+    /**
+     * The amount of writes (and flushes) to the process. Less than {@link #getCommandsWritten()} if commands got batched.
+     */
+    public long getBatchesWritten() {
+        return batchesWritten;
+    }
+
+    /**
+     * A submitted command with its timestamps.
+     */
+    public static class Command {
+        @NotNull
+        private final String command;
+        private final long enqueuedAt = System.currentTimeMillis();
+        private final long enqueuedNanos = System.nanoTime();
+        @NotNull
+        private final CompletableFuture<Command> future = new CompletableFuture<>();
+        private volatile long writtenAt = -1;
+        private volatile long writtenNanos = -1;
+        private volatile int batchSize;
+
+        private Command(@NotNull String command) {
+            this.command = command;
+        }
+
+        @NotNull
+        public String getCommand() {
+            return command;
+        }
+
+        /**
+         * When this command was submitted, in milliseconds since epoch.
+         */
+        public long getEnqueuedAt() {
+            return enqueuedAt;
+        }
+
+        /**
+         * When this command was written and flushed, in milliseconds since epoch.
+         * -1 if it wasn't written yet.
+         */
+        public long getWrittenAt() {
+            return writtenAt;
+        }
+
+        /**
+         * The time between submitting and writing this command, in nanoseconds.
+         * -1 if it wasn't written yet.
+         */
+        public long getQueueNanos() {
+            return writtenNanos == -1 ? -1 : writtenNanos - enqueuedNanos;
+        }
+
+        /**
+         * The amount of commands written together with this one (including this one).
+         */
+        public int getBatchSize() {
+            return batchSize;
+        }
+
+        @NotNull
+        public CompletableFuture<Command> getFuture() {
+            return future;
+        }
+    }
+}
@@ -0,0 +1,315 @@
+/*
+ * Copyright Osiris Team
+ * All rights reserved.
+ *
+ * This software is copyrighted work licensed under the terms of the
+ * AutoPlug License.  Please consult the file "LICENSE" for details.
+ */
+
+package com.osiris.autoplug.client.minecraft;
+
+import com.osiris.autoplug.client.minecraft.console.ConsoleLineBus;
+import com.osiris.autoplug.client.minecraft.console.ConsoleOutputStream;
+import com.osiris.autoplug.client.minecraft.console.OverflowPolicy;
+import com.osiris.autoplug.client.minecraft.flags.CdsArchive;
+import com.osiris.autoplug.client.minecraft.flags.HostResources;
+import com.osiris.autoplug.client.minecraft.flags.JvmFlagProfile;
+import com.osiris.autoplug.client.minecraft.flags.JvmFlags;
+import com.osiris.autoplug.client.utils.StreamPump;
+import com.osiris.autoplug.core.logger.AL;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A single server process, supervised by AutoPlug. <br>
+ * Each instance has its own working directory, console pipeline, lifecycle and startup history
+ * (stored in its /autoplug-system directory), thus multiple servers can be run by one AutoPlug client. <br>
+ * The instance lives as long as AutoPlug does. Subscribers and listeners stay attached across restarts of the server. <br>
+ * The default instance is the one in AutoPlugs working directory, see {@link Server}.
+ * Additional instances are managed by {@link ServerInstances}.
+ */
+public class ServerInstance {
+    @NotNull
+    private final String name;
+    @NotNull
+    private final File workingDir;
+    @NotNull
+    private final ConsoleLineBus consoleBus;
+    @NotNull
+    private final ServerLifecycle lifecycle = new ServerLifecycle();
+    @NotNull
+    private final StartupProfiler startupProfiler;
+    @NotNull
+    private final CdsArchive cdsArchive;
+    @Nullable
+    private volatile Process process;
+    @Nullable
+    private volatile ServerCommandQueue commandQueue;
+    @Nullable
+    private volatile ProcessResourceMonitor resourceMonitor;
+
+    /**
+     * @param name            unique name of this instance. Used in logs and thread names.
+     * @param workingDir      the servers root directory.
+     * @param consoleCapacity the amount of console lines buffered for slow subscribers, see {@link ConsoleLineBus}.
+     */
+    public ServerInstance(@NotNull String name, @NotNull File workingDir, int consoleCapacity) {
+        this.name = name;
+        this.workingDir = workingDir;
+        this.consoleBus = new ConsoleLineBus(consoleCapacity);
+        this.startupProfiler = new StartupProfiler(
+                new File(workingDir + "/autoplug-system/startup-history.csv"),
+                new File(workingDir + "/autoplug-system/plugin-startup-times.csv"));
+        this.cdsArchive = new CdsArchive(new File(workingDir + "/autoplug-system/cds"));
+
+        // Both only take a quick look at each line, thus they share one thread
+        consoleBus.subscribe(threadName("Lifecycle"), OverflowPolicy.BLOCK, line -> {
+            lifecycle.onConsoleLine(line);
+            if (startupProfiler.isMeasuring())
+                startupProfiler.onConsoleLine(line, lifecycle.isReadyLine(line));
+        });
+        lifecycle.addListener((oldState, newState) -> {
+            if (newState == ServerLifecycle.State.EXITED) {
+                // The exit code gets set right after the listeners were notified
+                lifecycle.getExitFuture().thenAccept(cdsArchive::onExit);
+                startupProfiler.aborted();
+                ProcessResourceMonitor monitor = resourceMonitor;
+                if (monitor != null) monitor.unwatch();
+                ServerCommandQueue queue = commandQueue;
+                if (queue != null) queue.closeNow();
+            }
+        });
+    }
+
+    /**
+     * Builds the command to start a server jar. <br>
+     * Example: java -Xms2G -Xmx2G -jar paper.jar --nogui
+     *
+     * @param java      the java executable.
+     * @param flags     the java flags, without their leading hyphen.
+     * @param jar       path to the server jar.
+     * @param arguments the arguments for the server.
+     */
+    @NotNull
+    public static List<String> buildCommands(@NotNull String java, @NotNull List<String> flags,
+                                             @NotNull String jar, @NotNull List<String> arguments) {
+        List<String> commands = new ArrayList<>();
+        commands.add(java);
+        for (String s : flags) {
+            commands.add("-" + s);
+        }
+        commands.add("-jar");
+        commands.add(jar);
+        commands.addAll(arguments);
+        return commands;
+    }
+
+    /**
+     * Adds the java flags to the commands: the ones of the profile, or the manual ones,
+     * followed by the flag to use or create the class data sharing archive of this instance.
+     *
+     * @param commands    the commands so far, starting with the java executable.
+     * @param profile     null or {@link JvmFlagProfile#MANUAL} to only use the manual flags.
+     * @param maxMemory   the heap size for the profile, like 6G or auto, see {@link JvmFlags#parseSize(String)}.
+     * @param manualFlags the flags without their leading hyphen. Added to the profiles flags.
+     * @param cds         true to use class data sharing, see {@link CdsArchive}.
+     * @param jar         the server jar.
+     * @param build       the installed server build, part of the archives fingerprint.
+     */
+    public void addFlags(@NotNull List<String> commands, @Nullable JvmFlagProfile profile, @NotNull String maxMemory,
+                         boolean largePages, boolean preTouch, boolean numa, @NotNull List<String> manualFlags,
+                         boolean cds, @NotNull File jar, @NotNull String build) {
+        HostResources host = null;
+        if (profile != null && profile != JvmFlagProfile.MANUAL) {
+            host = HostResources.detect(commands.get(0));
+            JvmFlags flags = JvmFlags.build(profile, host, JvmFlags.parseSize(maxMemory), largePages, preTouch, numa, manualFlags);
+            AL.info("Using the '" + flags.getProfile().name().toLowerCase() + "' flags profile (Java " + host.getJavaVersion()
+                    + ", " + host.getCpus() + " CPUs, " + ProcessResourceMonitor.formatBytes(host.getAvailableMemoryBytes())
+                    + (host.isContainerLimited() ? " container limit" : " RAM") + "):");
+            for (JvmFlags.Flag f : flags.getFlags()) {
+                AL.info(" -" + f.getFlag() + " | " + f.getReason());
+                commands.add("-" + f.getFlag());
+            }
+        } else {
+            for (String s : manualFlags) {
+                commands.add("-" + s);
+            }
+        }
+
+        if (cds) {
+            try {
+                if (host == null) host = HostResources.detect(commands.get(0));
+                if (host.getJavaVersion() < CdsArchive.MIN_JAVA_VERSION) {
+                    AL.info("Class data sharing needs Java " + CdsArchive.MIN_JAVA_VERSION + " or newer, but the server runs on Java "
+                            + host.getJavaVersion() + ". Skipped it.");
+                } else {
+                    JvmFlags.Flag flag = cdsArchive.prepare(CdsArchive.fingerprint(host.getJavaRuntimeVersion(), jar, build,
+                            new File(workingDir + "/plugins")), startupProfiler);
+                    AL.info(" -" + flag.getFlag() + " | " + flag.getReason());
+                    commands.add("-" + flag.getFlag());
+                }
+            } catch (Exception e) {
+                AL.warn("Failed to set up class data sharing. Starting without it.", e);
+            }
+        }
+    }
+
+    /**
+     * Starts the server process with the provided commands, in the working directory of this instance.
+     * Its console output gets published to the {@link #getConsoleBus()}.
+     */
+    public synchronized void start(@NotNull List<String> commands) throws IOException {
+        if (isRunning()) throw new IllegalStateException("Server '" + name + "' is already running!");
+        AL.debug(this.getClass(), "Starting server '" + name + "' with commands: " + commands);
+        ProcessBuilder processBuilder = new ProcessBuilder(commands); // The commands list contains all we need.
+        processBuilder.directory(workingDir);
+        processBuilder.redirectErrorStream(true);
+        processBuilder.redirectInput(ProcessBuilder.Redirect.PIPE);
+        processBuilder.redirectOutput(ProcessBuilder.Redirect.PIPE);
+        startupProfiler.spawning();
+        Process p;
+        try {
+            p = processBuilder.start();
+        } catch (IOException e) {
+            startupProfiler.aborted();
+            throw e;
+        }
+        startupProfiler.spawned();
+        process = p;
+
+        lifecycle.starting(p);
+        commandQueue = new ServerCommandQueue(p.getOutputStream());
+        ProcessResourceMonitor monitor = resourceMonitor;
+        if (monitor != null) monitor.watch(p);
+
+        // Get Servers OutputStream, split it into lines and publish them to the console bus.
+        // From there multiple subscribers can read it, each at its own pace.
+        // The thread ends together with the process, when the end of its stream is reached.
+        Thread threadReadOutputStream = new Thread(() -> {
+            try {
+                ConsoleOutputStream consoleOut = new ConsoleOutputStream(consoleBus);
+                // Copies whole blocks instead of single bytes, see StreamPump for details
+                new StreamPump().pump(p.getInputStream(), consoleOut);
+                consoleOut.close();
+            } catch (Exception e) {
+                AL.warn(e);
+            }
+        }, threadName("Output-Reader"));
+        threadReadOutputStream.start();
+    }
+
+    /**
+     * Blocks until the server was stopped.
+     */
+    public void stop() throws InterruptedException {
+        if (!isRunning()) return;
+        submitCommand("stop");
+        lifecycle.awaitExit();
+    }
+
+    /**
+     * Blocks until the server was killed.
+     */
+    public void kill() throws InterruptedException {
+        Process p = process;
+        if (p != null && p.isAlive()) {
+            lifecycle.stopping();
+            p.destroy();
+        }
+        lifecycle.awaitExit();
+    }
+
+    public boolean isRunning() {
+        Process p = process;
+        return p != null && p.isAlive();
+    }
+
+    /**
+     * Queues the command to be written to the servers console and returns right away. <br>
+     * Commands get written in the order they were submitted, see {@link ServerCommandQueue} for details.
+     *
+     * @return a future which completes once the command was written,
+     * or completes exceptionally if the server isn't running.
+     */
+    @NotNull
+    public CompletableFuture<ServerCommandQueue.Command> submitCommand(@NotNull String command) {
+        ServerCommandQueue queue = commandQueue;
+        if (!isRunning() || queue == null) {
+            CompletableFuture<ServerCommandQueue.Command> future = new CompletableFuture<>();
+            future.completeExceptionally(new IllegalStateException("Server '" + name + "' not running!"));
+            return future;
+        }
+        if (command.trim().equalsIgnoreCase("stop"))
+            lifecycle.stopping();
+        return queue.submit(command);
+    }
+
+    /**
+     * The name for threads of this instance. The default instance keeps the plain names, like 'Server-Output-Reader'.
+     */
+    @NotNull
+    private String threadName(@NotNull String suffix) {
+        return name.equals(Server.DEFAULT_NAME) ? "Server-" + suffix : "Server-" + name + "-" + suffix;
+    }
+
+    @NotNull
+    public String getName() {
+        return name;
+    }
+
+    @NotNull
+    public File getWorkingDir() {
+        return workingDir;
+    }
+
+    @NotNull
+    public ConsoleLineBus getConsoleBus() {
+        return consoleBus;
+    }
+
+    @NotNull
+    public ServerLifecycle getLifecycle() {
+        return lifecycle;
+    }
+
+    @NotNull
+    public StartupProfiler getStartupProfiler() {
+        return startupProfiler;
+    }
+
+    @NotNull
+    public CdsArchive getCdsArchive() {
+        return cdsArchive;
+    }
+
+    /**
+     * Null, if the server was never started.
+     */
+    @Nullable
+    public Process getProcess() {
+        return process;
+    }
+
+    /**
+     * Null, if the resources of this instance aren't monitored.
+     */
+    @Nullable
+    public ProcessResourceMonitor getResourceMonitor() {
+        return resourceMonitor;
+    }
+
+    /**
+     * Sets the monitor to sample this instances process with. Starts watching right away, if the server is running.
+     */
+    public void setResourceMonitor(@Nullable ProcessResourceMonitor monitor) {
+        this.resourceMonitor = monitor;
+        Process p = process;
+        if (monitor != null && p != null && p.isAlive()) monitor.watch(p);
+    }
+}
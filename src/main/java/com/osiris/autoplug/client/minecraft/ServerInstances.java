@@ -0,0 +1,273 @@
+/*
+ * Copyright Osiris Team
+ * All rights reserved.
+ *
+ * This software is copyrighted work licensed under the terms of the
+ * AutoPlug License.  Please consult the file "LICENSE" for details.
+ */
+
+package com.osiris.autoplug.client.minecraft;
+
+import com.osiris.autoplug.client.configs.GeneralConfig;
+import com.osiris.autoplug.client.configs.InstanceConfig;
+import com.osiris.autoplug.client.configs.InstancesConfig;
+import com.osiris.autoplug.client.configs.RestarterConfig;
+import com.osiris.autoplug.client.minecraft.flags.JvmFlagProfile;
+import com.osiris.autoplug.client.tasks.InstanceStartupTasks;
+import com.osiris.autoplug.client.utils.GD;
+import com.osiris.autoplug.core.logger.AL;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Manages the additional servers, run by this AutoPlug client next to the default one (see {@link Server}). <br>
+ * All instances share a small pool of worker threads, which starts/stops them (limiting how many start at the same time)
+ * and runs their {@link InstanceStartupTasks} (backups and updates, with downloads shared by all instances),
+ * and a single scheduler thread, which samples their resource usage.
+ * Per instance only the threads of its console pipeline and process watcher remain,
+ * thus dozens of servers can be run by one client.
+ */
+public final class ServerInstances {
+    @NotNull
+    private static final List<ServerInstance> instances = new CopyOnWriteArrayList<>();
+    @NotNull
+    private static final List<ProcessResourceMonitor> monitors = new CopyOnWriteArrayList<>();
+    @Nullable
+    private static ExecutorService workers;
+    @Nullable
+    private static ScheduledExecutorService scheduler;
+    @Nullable
+    private static GeneralConfig generalConfig;
+
+    /**
+     * Creates the instances listed in the config and starts the ones with auto-start enabled.
+     * The resource monitor and crash restarter settings are the same as for the main server.
+     */
+    public static synchronized void load(@NotNull InstancesConfig config, @NotNull GeneralConfig generalConfig,
+                                         @NotNull RestarterConfig restarterConfig) {
+        if (workers != null) return;
+        ServerInstances.generalConfig = generalConfig;
+        AtomicInteger workerCount = new AtomicInteger();
+        workers = Executors.newFixedThreadPool(config.instances_parallel_starts.asInt(), r -> {
+            Thread t = new Thread(r, "Server-Instances-Worker-" + workerCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+
+        int monitorIntervalSeconds = generalConfig.server_resource_monitor_interval.asInt();
+        int monitorSamples = generalConfig.server_resource_monitor_samples.asInt();
+        int consoleBuffer = config.instances_console_buffer.asInt();
+        boolean monitor = monitorIntervalSeconds > 0 && ProcessResourceMonitor.isSupported();
+        for (String path : config.instances_list.asStringList()) {
+            File dir = new File(path);
+            if (!dir.isAbsolute()) dir = new File(GD.WORKING_DIR, path);
+            if (!dir.isDirectory()) {
+                AL.warn("Server instance directory '" + dir + "' doesn't exist. Skipped it!");
+                continue;
+            }
+            try {
+                InstanceConfig instanceConfig = new InstanceConfig(dir);
+                String name = instanceConfig.instance_name.asString();
+                if (get(name) != null) {
+                    AL.warn("There is already a server instance named '" + name + "'. Skipped the one in '" + dir + "'!");
+                    continue;
+                }
+                ServerInstance instance = new ServerInstance(name, dir, consoleBuffer);
+                instance.getLifecycle().addListener((oldState, newState) -> {
+                    if (newState == ServerLifecycle.State.READY)
+                        AL.info("Server '" + name + "' is ready.");
+                    else if (newState == ServerLifecycle.State.EXITED)
+                        AL.info("Server '" + name + "' was stopped.");
+                });
+                if (monitor) {
+                    ProcessResourceMonitor m = new ProcessResourceMonitor(monitorIntervalSeconds * 1000L, monitorSamples);
+                    instance.setResourceMonitor(m);
+                    monitors.add(m);
+                }
+                if (restarterConfig.crash_restarter_enabled.asBoolean())
+                    new CrashSupervisor(instance, restarterConfig, quick -> start(instance, quick).get()).start();
+                instances.add(instance);
+                if (instanceConfig.instance_auto_start.asBoolean()) start(instance);
+            } catch (Exception e) {
+                AL.warn("Failed to load the server instance in '" + dir + "'.", e);
+            }
+        }
+
+        if (!monitors.isEmpty()) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "Server-Instances-Resource-Monitor");
+                t.setDaemon(true);
+                return t;
+            });
+            scheduler.scheduleAtFixedRate(() -> {
+                for (ProcessResourceMonitor m : monitors) {
+                    try {
+                        m.tick();
+                    } catch (Exception e) {
+                        AL.warn("Failed to sample a servers resources.", e);
+                    }
+                }
+            }, monitorIntervalSeconds, monitorIntervalSeconds, TimeUnit.SECONDS);
+        }
+        AL.debug(ServerInstances.class, "Loaded " + instances.size() + " additional server instance(s).");
+    }
+
+    /**
+     * The instance with the provided name, including the default one, or null if there is none.
+     */
+    @Nullable
+    public static ServerInstance get(@NotNull String name) {
+        if (name.equals(Server.DEFAULT_NAME)) return Server.DEFAULT;
+        for (ServerInstance instance : instances) {
+            if (instance.getName().equals(name)) return instance;
+        }
+        return null;
+    }
+
+    /**
+     * All instances, starting with the default one.
+     */
+    @NotNull
+    public static List<ServerInstance> getAll() {
+        List<ServerInstance> all = new ArrayList<>(instances.size() + 1);
+        all.add(Server.DEFAULT);
+        all.addAll(instances);
+        return all;
+    }
+
+    /**
+     * The additional instances, without the default one.
+     */
+    @NotNull
+    public static List<ServerInstance> getAdditional() {
+        return new ArrayList<>(instances);
+    }
+
+    /**
+     * See {@link #start(ServerInstance, boolean)}.
+     */
+    @NotNull
+    public static CompletableFuture<Void> start(@NotNull ServerInstance instance) {
+        return start(instance, false);
+    }
+
+    /**
+     * Starts the instance on a worker thread. The worker waits until the server is ready,
+     * so no more than 'parallel-starts' servers are starting at the same time.
+     *
+     * @param quick true to skip the {@link InstanceStartupTasks}, for example when restarting after a crash.
+     */
+    @NotNull
+    public static CompletableFuture<Void> start(@NotNull ServerInstance instance, boolean quick) {
+        return submit(instance, "start", () -> {
+            if (!quick) new InstanceStartupTasks(instance).execute();
+            startNow(instance);
+            try {
+                instance.getLifecycle().getReadyFuture().get(10, TimeUnit.MINUTES);
+            } catch (ExecutionException | TimeoutException e) {
+                AL.warn("Server '" + instance.getName() + "' didn't get ready: " + e.getMessage());
+            }
+        });
+    }
+
+    @NotNull
+    public static CompletableFuture<Void> stop(@NotNull ServerInstance instance) {
+        return submit(instance, "stop", instance::stop);
+    }
+
+    @NotNull
+    public static CompletableFuture<Void> kill(@NotNull ServerInstance instance) {
+        return submit(instance, "kill", instance::kill);
+    }
+
+    @NotNull
+    public static CompletableFuture<Void> restart(@NotNull ServerInstance instance) {
+        return stop(instance).thenCompose(v -> start(instance));
+    }
+
+    /**
+     * Restarts all additional instances, that have 'restart-with-main' enabled.
+     * Gets called when the main server is restarted by the scheduler.
+     */
+    public static void restartAll() {
+        for (ServerInstance instance : instances) {
+            try {
+                if (new InstanceConfig(instance.getWorkingDir()).instance_restart_with_main.asBoolean())
+                    restart(instance);
+            } catch (Exception e) {
+                AL.warn("Failed to restart server '" + instance.getName() + "'.", e);
+            }
+        }
+    }
+
+    /**
+     * Stops all additional instances at once and waits until they exited. Used at shutdown.
+     */
+    public static void stopAll() throws InterruptedException {
+        for (ServerInstance instance : instances) {
+            if (instance.isRunning()) instance.submitCommand("stop");
+        }
+        for (ServerInstance instance : instances) {
+            if (!instance.getLifecycle().awaitExit(1, TimeUnit.MINUTES)) {
+                AL.warn("Server '" + instance.getName() + "' didn't stop within a minute. Killing it!");
+                instance.kill();
+            }
+        }
+    }
+
+    /**
+     * Reads the instances config and starts its server right away.
+     */
+    private static void startNow(@NotNull ServerInstance instance) throws Exception {
+        InstanceConfig config = new InstanceConfig(instance.getWorkingDir());
+        File jar = config.findServerJar();
+        if (jar == null)
+            throw new Exception("Failed to find the server jar of '" + instance.getName() + "'! " +
+                    "Please check its config, you may need to specify the jars name/path! " +
+                    "Searched dir: '" + instance.getWorkingDir() + "'");
+        AL.info("Starting server '" + instance.getName() + "' with jar: " + jar.getName());
+        List<String> commands = new ArrayList<>();
+        commands.add(config.instance_java_version.asString());
+        GeneralConfig general = Objects.requireNonNull(generalConfig);
+        String build = config.instance_server_software.asString() + "-" + config.instance_server_version.asString()
+                + "-" + config.instance_build_id.asString();
+        instance.addFlags(commands, JvmFlagProfile.parse(config.instance_flags_profile.asString()), config.instance_flags_max_memory.asString(),
+                general.server_flags_large_pages.asBoolean(), general.server_flags_pre_touch.asBoolean(), general.server_flags_numa.asBoolean(),
+                config.instance_flags_list.asStringList(), config.instance_cds_enabled.asBoolean(), jar, build);
+        commands.add("-jar");
+        commands.add(jar.getAbsolutePath());
+        commands.addAll(config.instance_arguments_list.asStringList());
+        instance.start(commands);
+    }
+
+    @NotNull
+    private static CompletableFuture<Void> submit(@NotNull ServerInstance instance, @NotNull String action, @NotNull Action runnable) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        ExecutorService w = workers;
+        if (w == null) {
+            future.completeExceptionally(new IllegalStateException("Server instances are not loaded!"));
+            return future;
+        }
+        w.execute(() -> {
+            try {
+                runnable.run();
+                future.complete(null);
+            } catch (Exception e) {
+                AL.warn("Failed to " + action + " server '" + instance.getName() + "'.", e);
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+
+    private interface Action {
+        void run() throws Exception;
+    }
+}
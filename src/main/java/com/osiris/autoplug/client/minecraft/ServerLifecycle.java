@@ -0,0 +1,208 @@
+/*
+ * Copyright Osiris Team
+ * All rights reserved.
+ *
+ * This software is copyrighted work licensed under the terms of the
+ * AutoPlug License.  Please consult the file "LICENSE" for details.
+ */
+
+package com.osiris.autoplug.client.minecraft;
+
+import com.osiris.autoplug.client.minecraft.console.ConsoleLine;
+import com.osiris.autoplug.core.logger.AL;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Tracks the state of the server process and notifies listeners about changes, right when they happen. <br>
+ * The process exit is detected by a watcher thread, blocked in {@link Process#waitFor()},
+ * and readiness is detected from the servers console output (see {@link #isReadyLine(ConsoleLine)}). <br>
+ * Lives as long as AutoPlug does. The futures get replaced each time a new server process is started,
+ * while the listeners stay registered across restarts.
+ */
+public class ServerLifecycle {
+    @NotNull
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    @NotNull
+    private volatile State state = State.EXITED;
+    @Nullable
+    private volatile Process process;
+    @NotNull
+    private volatile CompletableFuture<Void> readyFuture = new CompletableFuture<>();
+    @NotNull
+    private volatile CompletableFuture<Integer> exitFuture = CompletableFuture.completedFuture(0);
+    private volatile long startedAt;
+
+    /**
+     * Must be called right after the servers process was created.
+     * Switches to {@link State#STARTING} and starts watching the process for its exit.
+     */
+    public synchronized void starting(@NotNull Process process) {
+        this.process = process;
+        this.startedAt = System.currentTimeMillis();
+        this.readyFuture = new CompletableFuture<>();
+        CompletableFuture<Integer> exit = new CompletableFuture<>();
+        this.exitFuture = exit;
+        setState(State.STARTING);
+
+        Thread watcher = new Thread(() -> {
+            int exitCode = -1;
+            try {
+                exitCode = process.waitFor();
+            } catch (InterruptedException e) {
+                AL.warn("Stopped watching the server process, due to an interrupt.", e);
+            }
+            exited(process, exit, exitCode);
+        }, "Server-Exit-Watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    /**
+     * Switches to {@link State#STOPPING}, if the server is starting or ready.
+     */
+    public synchronized void stopping() {
+        if (state == State.STARTING || state == State.READY)
+            setState(State.STOPPING);
+    }
+
+    private synchronized void exited(@NotNull Process process, @NotNull CompletableFuture<Integer> exit, int exitCode) {
+        if (this.process == process) {
+            AL.debug(this.getClass(), "Server process exited with code " + exitCode + " after " + (System.currentTimeMillis() - startedAt) + "ms.");
+            setState(State.EXITED);
+            readyFuture.completeExceptionally(new IllegalStateException("Server exited with code " + exitCode + " before it was ready."));
+        }
+        exit.complete(exitCode);
+    }
+
+    /**
+     * Gets called for each line of the servers console output.
+     */
+    public void onConsoleLine(@NotNull ConsoleLine line) {
+        if (state == State.STARTING && isReadyLine(line)) {
+            synchronized (this) {
+                if (state != State.STARTING) return;
+                AL.debug(this.getClass(), "Server is ready after " + (System.currentTimeMillis() - startedAt) + "ms.");
+                setState(State.READY);
+            }
+            readyFuture.complete(null);
+        }
+    }
+
+    /**
+     * Detects the line the server prints, once it finished starting. <br>
+     * Example (Vanilla, Spigot, Paper): [12:00:00 INFO]: Done (3.141s)! For help, type "help" <br>
+     * Example (BungeeCord, Waterfall): [12:00:00 INFO]: Listening on /0.0.0.0:25577
+     */
+    public boolean isReadyLine(@NotNull ConsoleLine line) {
+        int i = line.indexOf("Done (", 0);
+        return (i != -1 && line.indexOf(")! For help", i) != -1)
+                || line.contains("Listening on /");
+    }
+
+    private void setState(@NotNull State newState) {
+        State oldState = this.state;
+        if (oldState == newState) return;
+        this.state = newState;
+        for (Listener l : listeners) {
+            try {
+                l.onStateChanged(oldState, newState);
+            } catch (Exception e) {
+                AL.warn("Server lifecycle listener failed.", e);
+            }
+        }
+    }
+
+    /**
+     * Blocks until the current server process exited.
+     * Returns right away if there is no running process.
+     *
+     * @return the exit code.
+     */
+    public int awaitExit() throws InterruptedException {
+        try {
+            return exitFuture.get();
+        } catch (ExecutionException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * @return true if the current server process exited in time.
+     */
+    public boolean awaitExit(long timeout, @NotNull TimeUnit unit) throws InterruptedException {
+        try {
+            exitFuture.get(timeout, unit);
+            return true;
+        } catch (TimeoutException e) {
+            return false;
+        } catch (ExecutionException e) {
+            return true;
+        }
+    }
+
+    /**
+     * Completes when the current server process printed its ready message.
+     * Completes exceptionally if the process exits before that.
+     */
+    @NotNull
+    public CompletableFuture<Void> getReadyFuture() {
+        return readyFuture;
+    }
+
+    /**
+     * Completes with the exit code, when the current server process exits.
+     * Already completed if there is no running process.
+     */
+    @NotNull
+    public CompletableFuture<Integer> getExitFuture() {
+        return exitFuture;
+    }
+
+    @NotNull
+    public State getState() {
+        return state;
+    }
+
+    public void addListener(@NotNull Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(@NotNull Listener listener) {
+        listeners.remove(listener);
+    }
+
+    public enum State {
+        /**
+         * The process was created, but the server isn't ready for players yet.
+         */
+        STARTING,
+        /**
+         * The server finished starting.
+         */
+        READY,
+        /**
+         * The server was told to stop and is shutting down.
+         */
+        STOPPING,
+        /**
+         * There is no running server process (the initial state).
+         */
+        EXITED
+    }
+
+    public interface Listener {
+        /**
+         * Gets run on the thread that caused the change,
+         * thus do the heavy stuff in another thread.
+         */
+        void onStateChanged(@NotNull State oldState, @NotNull State newState) throws Exception;
+    }
+}
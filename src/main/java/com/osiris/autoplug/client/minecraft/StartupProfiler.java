@@ -0,0 +1,381 @@
+/*
+ * Copyright Osiris Team
+ * All rights reserved.
+ *
+ * This software is copyrighted work licensed under the terms of the
+ * AutoPlug License.  Please consult the file "LICENSE" for details.
+ */
+
+package com.osiris.autoplug.client.minecraft;
+
+import com.osiris.autoplug.client.minecraft.console.ConsoleLine;
+import com.osiris.autoplug.core.logger.AL;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.LongSupplier;
+
+/**
+ * Measures the phases of each server start and keeps them in a small history file. <br>
+ * Phases (all relative to the moment before the process gets spawned): <br>
+ * spawn - until the process was created. <br>
+ * first output - until the first console line. <br>
+ * world loading - from "Preparing level" until the server is ready. <br>
+ * done - until the ready line (Done (x.xxxs)!...). <br>
+ * Each finished start gets compared against a rolling baseline (the median of the previous starts),
+ * to detect startup regressions, for example after a plugin update. <br>
+ * The time each plugin takes is measured too, see {@link PluginStartupTimes}.
+ */
+public class StartupProfiler {
+    public static final int MAX_HISTORY = 100;
+    public static final int BASELINE_RUNS = 10;
+    /**
+     * A start is a regression, if it is this much slower than the baseline...
+     */
+    public static final double REGRESSION_FACTOR = 1.2;
+    /**
+     * ...and at least this many milliseconds slower, to ignore noise on fast servers.
+     */
+    public static final long REGRESSION_MIN_MS = 1000;
+    @NotNull
+    private final File historyFile;
+    @NotNull
+    private final PluginStartupTimes pluginTimes;
+    @NotNull
+    private final LongSupplier clock;
+    @NotNull
+    private final List<Run> history = new ArrayList<>();
+    @Nullable
+    private volatile Run current;
+    @Nullable
+    private volatile Run last;
+    @NotNull
+    private volatile String nextTag = "";
+
+    /**
+     * @param historyFile       stores the phases of each start.
+     * @param pluginHistoryFile stores the time each plugin needed, see {@link PluginStartupTimes}.
+     */
+    public StartupProfiler(@NotNull File historyFile, @NotNull File pluginHistoryFile) {
+        this(historyFile, pluginHistoryFile, System::currentTimeMillis);
+    }
+
+    StartupProfiler(@NotNull File historyFile, @NotNull File pluginHistoryFile, @NotNull LongSupplier clock) {
+        this.historyFile = historyFile;
+        this.pluginTimes = new PluginStartupTimes(pluginHistoryFile);
+        this.clock = clock;
+        load();
+    }
+
+    /**
+     * Call right before the process gets spawned.
+     */
+    public void spawning() {
+        pluginTimes.reset();
+        current = new Run(clock.getAsLong(), nextTag);
+        nextTag = "";
+    }
+
+    /**
+     * Marks the next start with the provided tag, to compare starts with different settings later.
+     * Example: 'cds' for starts using the class data sharing archive.
+     */
+    public void setNextTag(@NotNull String tag) {
+        this.nextTag = tag;
+    }
+
+    /**
+     * Call right after the process was spawned.
+     */
+    public void spawned() {
+        Run r = current;
+        if (r != null) r.spawnMs = clock.getAsLong() - r.startedAt;
+    }
+
+    /**
+     * True, if a start is being measured right now.
+     */
+    public boolean isMeasuring() {
+        return current != null;
+    }
+
+    /**
+     * Call if the process exited, before it was ready. Discards the current measurement.
+     */
+    public void aborted() {
+        if (current != null)
+            AL.debug(this.getClass(), "Discarded startup measurement, because the server stopped before it was ready.");
+        current = null;
+        pluginTimes.abort();
+    }
+
+    /**
+     * Gets called for each line of the servers console output.
+     *
+     * @param isReadyLine true if this is the line telling that the server finished starting.
+     */
+    public void onConsoleLine(@NotNull ConsoleLine line, boolean isReadyLine) {
+        Run r = current;
+        if (r == null) return;
+        long time = clock.getAsLong();
+        long now = time - r.startedAt;
+        pluginTimes.onConsoleLine(line, time);
+        if (r.firstOutputMs < 0) r.firstOutputMs = now;
+        if (r.worldStartMs < 0 && line.contains("Preparing level")) r.worldStartMs = now;
+        if (isReadyLine) {
+            r.doneMs = now;
+            r.reportedMs = parseReportedMs(line);
+            current = null;
+            finished(r);
+            pluginTimes.finish(r.startedAt, time);
+        }
+    }
+
+    /**
+     * Parses the x.xxx in "Done (x.xxxs)!".
+     *
+     * @return the milliseconds or -1 if not found.
+     */
+    static long parseReportedMs(@NotNull CharSequence line) {
+        String s = line.toString();
+        int start = s.indexOf("Done (");
+        if (start == -1) return -1;
+        start += "Done (".length();
+        int end = s.indexOf("s)", start);
+        if (end == -1) return -1;
+        try {
+            return Math.round(Double.parseDouble(s.substring(start, end).replace(',', '.')) * 1000);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private void finished(@NotNull Run run) {
+        long baseline;
+        synchronized (history) {
+            baseline = baseline();
+            history.add(run);
+            while (history.size() > MAX_HISTORY) history.remove(0);
+            save();
+        }
+        last = run;
+
+        String msg = "Server started in " + seconds(run.doneMs) + " (spawn " + seconds(run.spawnMs)
+                + ", first output " + seconds(run.firstOutputMs)
+                + (run.worldStartMs >= 0 ? ", world loading " + seconds(run.doneMs - run.worldStartMs) : "") + ").";
+        if (baseline < 0) AL.info(msg);
+        else if (isRegression(run.doneMs, baseline))
+            AL.warn(msg + " That's " + percentDiff(run.doneMs, baseline) + " slower than usual (" + seconds(baseline) + ")!"
+                    + " Did a recent update slow down your server? Enter .startups plugins for details.");
+        else AL.info(msg + " Usual: " + seconds(baseline) + ".");
+    }
+
+    /**
+     * The median duration of the last {@link #BASELINE_RUNS} starts, or -1 if there are none.
+     */
+    public long baseline() {
+        synchronized (history) {
+            if (history.isEmpty()) return -1;
+            List<Long> values = new ArrayList<>();
+            for (int i = Math.max(0, history.size() - BASELINE_RUNS); i < history.size(); i++) {
+                values.add(history.get(i).doneMs);
+            }
+            Collections.sort(values);
+            return values.get(values.size() / 2);
+        }
+    }
+
+    public static boolean isRegression(long ms, long baseline) {
+        return baseline >= 0 && ms > baseline * REGRESSION_FACTOR && ms - baseline >= REGRESSION_MIN_MS;
+    }
+
+    /**
+     * Prints the recent starts and the trend.
+     */
+    public void printReport(int amount) {
+        List<Run> runs = getHistory();
+        if (runs.isEmpty()) {
+            AL.info("No server starts measured yet.");
+            return;
+        }
+        AL.info("Last " + Math.min(amount, runs.size()) + " of " + runs.size() + " measured server starts:");
+        for (int i = Math.max(0, runs.size() - amount); i < runs.size(); i++) {
+            Run r = runs.get(i);
+            AL.info(new java.util.Date(r.startedAt) + " | total " + seconds(r.doneMs)
+                    + " | spawn " + seconds(r.spawnMs)
+                    + " | first output " + seconds(r.firstOutputMs)
+                    + " | world loading " + (r.worldStartMs >= 0 ? seconds(r.doneMs - r.worldStartMs) : "?")
+                    + (r.reportedMs >= 0 ? " | reported by server " + seconds(r.reportedMs) : "")
+                    + (r.tag.isEmpty() ? "" : " | " + r.tag));
+        }
+        printTrend();
+    }
+
+    /**
+     * Prints one line about the last start compared to the baseline before it.
+     */
+    public void printTrend() {
+        List<Run> runs = getHistory();
+        if (runs.isEmpty()) return;
+        Run latest = runs.get(runs.size() - 1);
+        if (runs.size() < 2) {
+            AL.info("Last server start took " + seconds(latest.doneMs) + ".");
+            return;
+        }
+        List<Long> before = new ArrayList<>();
+        for (int i = Math.max(0, runs.size() - 1 - BASELINE_RUNS); i < runs.size() - 1; i++) {
+            before.add(runs.get(i).doneMs);
+        }
+        Collections.sort(before);
+        long baseline = before.get(before.size() / 2);
+        String msg = "Last server start took " + seconds(latest.doneMs) + ", usual is " + seconds(baseline)
+                + " (" + percentDiff(latest.doneMs, baseline) + (latest.doneMs >= baseline ? " slower" : " faster") + ").";
+        if (isRegression(latest.doneMs, baseline)) AL.warn(msg + " Startup regression detected!");
+        else AL.info(msg);
+    }
+
+    @NotNull
+    private static String seconds(long ms) {
+        return ms < 0 ? "?" : String.format("%.1fs", ms / 1000.0);
+    }
+
+    @NotNull
+    private static String percentDiff(long ms, long baseline) {
+        if (baseline <= 0) return "?";
+        return Math.round(Math.abs(ms - baseline) * 100.0 / baseline) + "%";
+    }
+
+    private void load() {
+        if (!historyFile.exists()) return;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(historyFile), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty() || line.startsWith("#")) continue;
+                Run r = Run.parse(line);
+                if (r != null) history.add(r);
+            }
+            while (history.size() > MAX_HISTORY) history.remove(0);
+        } catch (Exception e) {
+            AL.warn("Failed to read the server startup history.", e);
+        }
+    }
+
+    private void save() {
+        try {
+            if (historyFile.getParentFile() != null) historyFile.getParentFile().mkdirs();
+            try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(historyFile), StandardCharsets.UTF_8))) {
+                writer.write("# started-at,spawn-ms,first-output-ms,world-start-ms,done-ms,reported-ms,tag\n");
+                for (Run r : history) {
+                    writer.write(r.toCsv());
+                    writer.write('\n');
+                }
+            }
+        } catch (Exception e) {
+            AL.warn("Failed to save the server startup history.", e);
+        }
+    }
+
+    /**
+     * A copy of the measured starts, oldest first.
+     */
+    @NotNull
+    public List<Run> getHistory() {
+        synchronized (history) {
+            return new ArrayList<>(history);
+        }
+    }
+
+    @NotNull
+    public PluginStartupTimes getPluginTimes() {
+        return pluginTimes;
+    }
+
+    /**
+     * The last start measured since AutoPlug started, or null.
+     */
+    @Nullable
+    public Run getLast() {
+        return last;
+    }
+
+    /**
+     * A single measured server start. The durations are in milliseconds, -1 if unknown.
+     */
+    public static class Run {
+        private final long startedAt;
+        @NotNull
+        private final String tag;
+        private long spawnMs = -1;
+        private long firstOutputMs = -1;
+        private long worldStartMs = -1;
+        private long doneMs = -1;
+        private long reportedMs = -1;
+
+        Run(long startedAt, @NotNull String tag) {
+            this.startedAt = startedAt;
+            this.tag = tag;
+        }
+
+        @Nullable
+        static Run parse(@NotNull String csv) {
+            String[] parts = csv.split(",");
+            if (parts.length < 6) return null;
+            try {
+                Run r = new Run(Long.parseLong(parts[0].trim()), parts.length > 6 ? parts[6].trim() : "");
+                r.spawnMs = Long.parseLong(parts[1].trim());
+                r.firstOutputMs = Long.parseLong(parts[2].trim());
+                r.worldStartMs = Long.parseLong(parts[3].trim());
+                r.doneMs = Long.parseLong(parts[4].trim());
+                r.reportedMs = Long.parseLong(parts[5].trim());
+                return r;
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+
+        @NotNull
+        String toCsv() {
+            return startedAt + "," + spawnMs + "," + firstOutputMs + "," + worldStartMs + "," + doneMs + "," + reportedMs + "," + tag;
+        }
+
+        public long getStartedAt() {
+            return startedAt;
+        }
+
+        /**
+         * Empty, if the start wasn't tagged. See {@link #setNextTag(String)}.
+         */
+        @NotNull
+        public String getTag() {
+            return tag;
+        }
+
+        public long getSpawnMs() {
+            return spawnMs;
+        }
+
+        public long getFirstOutputMs() {
+            return firstOutputMs;
+        }
+
+        public long getWorldStartMs() {
+            return worldStartMs;
+        }
+
+        public long getDoneMs() {
+            return doneMs;
+        }
+
+        /**
+         * The startup time the server printed itself (Done (x.xxxs)!).
+         */
+        public long getReportedMs() {
+            return reportedMs;
+        }
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright Osiris Team
+ * All rights reserved.
+ *
+ * This software is copyrighted work licensed under the terms of the
+ * AutoPlug License.  Please consult the file "LICENSE" for details.
+ */
+
+package com.osiris.autoplug.client.minecraft.console;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * A lightweight, reusable view of a single console line. <br>
+ * The characters live in a buffer owned by the {@link ConsoleLineBus}, which gets
+ * overwritten by later lines. Thus a {@link ConsoleLine} is only valid inside
+ * {@link ConsoleLineBus.LineListener#onLine(ConsoleLine)}. <br>
+ * Use the methods of this class to inspect the line without allocating anything and only call
+ * {@link #toString()} if you really need a {@link String} (for example to keep the line).
+ */
+public final class ConsoleLine implements CharSequence {
+    private static final char[] EMPTY = new char[0];
+    private static final int MIN_CAPACITY = 128;
+    @NotNull
+    private char[] chars = EMPTY;
+    private int length;
+    private long sequence = -1;
+
+    ConsoleLine() {
+    }
+
+    /**
+     * Creates a standalone line, that is not owned by any bus.
+     */
+    public static ConsoleLine of(@NotNull CharSequence line) {
+        ConsoleLine l = new ConsoleLine();
+        l.set(line, -1);
+        return l;
+    }
+
+    void set(@NotNull char[] src, int off, int len, long sequence) {
+        ensureCapacity(len);
+        System.arraycopy(src, off, chars, 0, len);
+        this.length = len;
+        this.sequence = sequence;
+    }
+
+    void set(@NotNull CharSequence src, long sequence) {
+        int len = src.length();
+        ensureCapacity(len);
+        if (src instanceof String)
+            ((String) src).getChars(0, len, chars, 0);
+        else
+            for (int i = 0; i < len; i++)
+                chars[i] = src.charAt(i);
+        this.length = len;
+        this.sequence = sequence;
+    }
+
+    /**
+     * Copies the provided line. <br>
+     * The source may get overwritten concurrently, thus read its fields only once
+     * and never copy more than its array holds. The caller detects a torn copy by its sequence.
+     */
+    void set(@NotNull ConsoleLine src) {
+        char[] srcChars = src.chars;
+        set(srcChars, 0, Math.min(src.length, srcChars.length), src.sequence);
+    }
+
+    private void ensureCapacity(int len) {
+        if (chars.length < len)
+            // Grows once per slot, after that lines of similar length cause no allocations
+            chars = new char[Math.max(MIN_CAPACITY, Math.max(len, chars.length + (chars.length >> 1)))];
+    }
+
+    /**
+     * The position of this line in the bus. -1 if this line is not from a bus.
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    public boolean isEmpty() {
+        return length == 0;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= length) throw new IndexOutOfBoundsException("Index: " + index + ", Length: " + length);
+        return chars[index];
+    }
+
+    /**
+     * Note that this creates a new {@link String}.
+     */
+    @NotNull
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        if (start < 0 || end > length || start > end)
+            throw new IndexOutOfBoundsException("Start: " + start + ", End: " + end + ", Length: " + length);
+        return new String(chars, start, end - start);
+    }
+
+    public boolean startsWith(@NotNull CharSequence prefix) {
+        return regionMatches(0, prefix);
+    }
+
+    public boolean endsWith(@NotNull CharSequence suffix) {
+        return regionMatches(length - suffix.length(), suffix);
+    }
+
+    public boolean contains(@NotNull CharSequence s) {
+        return indexOf(s, 0) != -1;
+    }
+
+    /**
+     * @return the index of the first occurrence of the provided sequence,
+     * starting the search at fromIndex, or -1 if there is no such occurrence.
+     */
+    public int indexOf(@NotNull CharSequence s, int fromIndex) {
+        int sLen = s.length();
+        if (sLen == 0) return Math.min(Math.max(fromIndex, 0), length);
+        char first = s.charAt(0);
+        int max = length - sLen;
+        for (int i = Math.max(fromIndex, 0); i <= max; i++) {
+            if (chars[i] == first && regionMatches(i, s))
+                return i;
+        }
+        return -1;
+    }
+
+    private boolean regionMatches(int offset, @NotNull CharSequence s) {
+        int sLen = s.length();
+        if (offset < 0 || offset + sLen > length) return false;
+        for (int i = 0; i < sLen; i++) {
+            if (chars[offset + i] != s.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Writes the characters of this line (without line separator) to the provided {@link Writer}.
+     */
+    public void writeTo(@NotNull Writer writer) throws IOException {
+        writer.write(chars, 0, length);
+    }
+
+    /**
+     * Note that this creates a new {@link String}.
+     */
+    @NotNull
+    @Override
+    public String toString() {
+        return new String(chars, 0, length);
+    }
+}
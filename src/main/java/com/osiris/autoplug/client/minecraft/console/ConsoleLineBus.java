@@ -0,0 +1,339 @@
+/*
+ * Copyright Osiris Team
+ * All rights reserved.
+ *
+ * This software is copyrighted work licensed under the terms of the
+ * AutoPlug License.  Please consult the file "LICENSE" for details.
+ */
+
+package com.osiris.autoplug.client.minecraft.console;
+
+import com.osiris.autoplug.core.logger.AL;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Distributes the servers console lines to multiple subscribers. <br>
+ * The lines are stored in a fixed size ring buffer, written by a single publisher.
+ * Each {@link Subscriber} has its own {@link Thread} and its own cursor into the ring,
+ * so a slow subscriber (like the online console) never stalls the others (like the local console). <br>
+ * What happens when a subscriber falls behind is decided by its {@link OverflowPolicy}. <br>
+ * Publishing and reading is lock-free. Waiting threads get parked and woken up by the other side. <br>
+ * The slots of the ring are {@link ConsoleLine}s, created once and reused, thus
+ * publishing and delivering lines allocates no memory once the buffers have grown to the usual line length.
+ */
+public class ConsoleLineBus {
+    private static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    private final int capacity;
+    private final int mask;
+    @NotNull
+    private final ConsoleLine[] ring;
+    @NotNull
+    private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+    /**
+     * Copy of {@link #subscribers} for the publisher, which loops over it by index,
+     * since iterating the list would allocate an iterator for each line.
+     */
+    @NotNull
+    private volatile Subscriber[] snapshot = new Subscriber[0];
+    /**
+     * Sequence of the last published line. -1 if nothing was published yet.
+     * Only written by the publisher.
+     */
+    private volatile long published = -1;
+    @Nullable
+    private volatile Thread publisherThread;
+    private volatile boolean publisherWaiting;
+
+    /**
+     * @param capacity the amount of lines the ring buffer can hold.
+     *                 Gets rounded up to the next power of two.
+     */
+    public ConsoleLineBus(int capacity) {
+        int c = 1;
+        while (c < capacity) c <<= 1;
+        this.capacity = c;
+        this.mask = c - 1;
+        this.ring = new ConsoleLine[c];
+        for (int i = 0; i < c; i++) {
+            ring[i] = new ConsoleLine();
+        }
+    }
+
+    /**
+     * Adds the line to the ring buffer and wakes up waiting subscribers. <br>
+     * The characters get copied into the ring, thus the provided array can be reused right after. <br>
+     * Must only be called by one thread at a time (the thread reading the servers output). <br>
+     * Only blocks if a {@link OverflowPolicy#BLOCK} subscriber is a whole ring behind.
+     */
+    public void publish(@NotNull char[] chars, int off, int len) {
+        long next = beforePublish();
+        ring[index(next)].set(chars, off, len, next);
+        afterPublish(next);
+    }
+
+    /**
+     * @see #publish(char[], int, int)
+     */
+    public void publish(@NotNull CharSequence line) {
+        long next = beforePublish();
+        ring[index(next)].set(line, next);
+        afterPublish(next);
+    }
+
+    private long beforePublish() {
+        long next = published + 1;
+        Subscriber[] subs = snapshot;
+        for (int i = 0; i < subs.length; i++) {
+            if (subs[i].policy == OverflowPolicy.BLOCK)
+                awaitRoom(subs[i], next);
+        }
+        return next;
+    }
+
+    private void afterPublish(long next) {
+        published = next;
+        Subscriber[] subs = snapshot;
+        for (int i = 0; i < subs.length; i++) {
+            subs[i].wakeUp();
+        }
+    }
+
+    private void awaitRoom(@NotNull Subscriber s, long next) {
+        if (next - s.cursor < capacity) return;
+        publisherThread = Thread.currentThread();
+        while (next - s.cursor >= capacity && !s.closed) {
+            publisherWaiting = true;
+            if (next - s.cursor >= capacity && !s.closed) // Check again, in case we missed the wake up
+                LockSupport.parkNanos(this, MAX_PARK_NANOS);
+            publisherWaiting = false;
+        }
+    }
+
+    /**
+     * Creates and starts a new {@link Subscriber}, which receives all lines published from now on.
+     *
+     * @param name     used for the subscribers thread and for debugging.
+     * @param policy   what to do if this subscriber can't keep up.
+     * @param listener gets run on the subscribers own thread for every line.
+     */
+    @NotNull
+    public Subscriber subscribe(@NotNull String name, @NotNull OverflowPolicy policy, @NotNull LineListener listener) {
+        Subscriber s = new Subscriber(name, policy, listener, published + 1);
+        subscribers.add(s);
+        updateSnapshot();
+        s.thread.start();
+        return s;
+    }
+
+    /**
+     * Closes all subscribers.
+     */
+    public void close() {
+        for (Subscriber s : subscribers) {
+            s.close();
+        }
+    }
+
+    @NotNull
+    public List<Subscriber> getSubscribers() {
+        return subscribers;
+    }
+
+    /**
+     * The total amount of lines published to this bus.
+     */
+    public long getPublishedCount() {
+        return published + 1;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Synchronized, thus the last update always sees the latest list.
+     */
+    private synchronized void updateSnapshot() {
+        snapshot = subscribers.toArray(new Subscriber[0]);
+    }
+
+    private int index(long sequence) {
+        return (int) (sequence & mask);
+    }
+
+    private void wakeUpPublisher() {
+        if (publisherWaiting) {
+            Thread t = publisherThread;
+            if (t != null) LockSupport.unpark(t);
+        }
+    }
+
+    public interface LineListener {
+        /**
+         * @param line only valid until this method returns.
+         *             Call {@link ConsoleLine#toString()} to keep it.
+         */
+        void onLine(@NotNull ConsoleLine line) throws Exception;
+    }
+
+    /**
+     * Reads the ring buffer at its own pace, on its own {@link Thread}.
+     */
+    public class Subscriber {
+        @NotNull
+        private final String name;
+        @NotNull
+        private final OverflowPolicy policy;
+        @NotNull
+        private final LineListener listener;
+        @NotNull
+        private final Thread thread;
+        /**
+         * Own copy of the current line, used by subscribers that may get overtaken by the publisher.
+         */
+        @NotNull
+        private final ConsoleLine view = new ConsoleLine();
+        /**
+         * Sequence of the next line to read.
+         * Only written by this subscribers thread.
+         */
+        private volatile long cursor;
+        private final long startSequence;
+        private volatile long dropped;
+        private volatile long delivered;
+        private volatile boolean waiting;
+        private volatile boolean closed;
+        private long pendingSkipped;
+
+        private Subscriber(@NotNull String name, @NotNull OverflowPolicy policy, @NotNull LineListener listener, long cursor) {
+            this.name = name;
+            this.policy = policy;
+            this.listener = listener;
+            this.cursor = cursor;
+            this.startSequence = cursor;
+            this.thread = new Thread(this::run, "ConsoleLineBus-" + name);
+            this.thread.setDaemon(true);
+        }
+
+        private void run() {
+            while (!closed) {
+                long pub = published;
+                if (cursor > pub) {
+                    waiting = true;
+                    if (cursor > published && !closed) // Check again, in case we missed the wake up
+                        LockSupport.parkNanos(this, MAX_PARK_NANOS);
+                    waiting = false;
+                    continue;
+                }
+
+                if (policy != OverflowPolicy.BLOCK && pub - cursor >= capacity) {
+                    // We were overtaken by the publisher, thus jump to the oldest line still in the ring
+                    skip(pub - capacity + 1 - cursor);
+                    continue;
+                }
+
+                ConsoleLine line = ring[index(cursor)];
+                if (policy != OverflowPolicy.BLOCK) {
+                    // The publisher never waits for us, thus copy the line before it gets overwritten
+                    view.set(line);
+                    if (published + 1 - cursor >= capacity) {
+                        // The slot may have been overwritten while we copied it
+                        skip(1);
+                        continue;
+                    }
+                    if (pendingSkipped > 0) {
+                        ConsoleLine summary = ConsoleLine.of("[AutoPlug] Skipped " + pendingSkipped + " line(s), because '" + name + "' couldn't keep up.");
+                        deliver(summary);
+                        pendingSkipped = 0;
+                    }
+                    line = view;
+                }
+                deliver(line);
+                cursor++;
+                wakeUpPublisher();
+            }
+        }
+
+        private void skip(long amount) {
+            dropped += amount;
+            if (policy == OverflowPolicy.SUMMARIZE)
+                pendingSkipped += amount;
+            cursor += amount;
+            wakeUpPublisher();
+        }
+
+        private void deliver(@NotNull ConsoleLine line) {
+            try {
+                listener.onLine(line);
+                delivered++;
+            } catch (Exception e) {
+                AL.warn("Console subscriber '" + name + "' failed to handle a line.", e);
+            }
+        }
+
+        private void wakeUp() {
+            if (waiting) LockSupport.unpark(thread);
+        }
+
+        /**
+         * Stops this subscribers thread and removes it from the bus.
+         */
+        public void close() {
+            closed = true;
+            subscribers.remove(this);
+            updateSnapshot();
+            LockSupport.unpark(thread);
+            wakeUpPublisher();
+            AL.debug(this.getClass(), "Closed console subscriber '" + name + "' (delivered: " + delivered + ", dropped: " + dropped + ").");
+        }
+
+        public boolean isClosed() {
+            return closed;
+        }
+
+        @NotNull
+        public String getName() {
+            return name;
+        }
+
+        @NotNull
+        public OverflowPolicy getPolicy() {
+            return policy;
+        }
+
+        /**
+         * The sequence of the first line this subscriber receives.
+         * All lines before it were published before it subscribed.
+         */
+        public long getStartSequence() {
+            return startSequence;
+        }
+
+        /**
+         * The amount of published lines, this subscriber hasn't read yet.
+         */
+        public long getLag() {
+            return Math.max(0, published + 1 - cursor);
+        }
+
+        /**
+         * The amount of lines this subscriber skipped, because it couldn't keep up.
+         */
+        public long getDropped() {
+            return dropped;
+        }
+
+        /**
+         * The amount of lines successfully handed to the listener.
+         */
+        public long getDelivered() {
+            return delivered;
+        }
+    }
+}
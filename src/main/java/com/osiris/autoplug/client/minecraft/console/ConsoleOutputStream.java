@@ -0,0 +1,126 @@
+/*
+ * Copyright Osiris Team
+ * All rights reserved.
+ *
+ * This software is copyrighted work licensed under the terms of the
+ * AutoPlug License.  Please consult the file "LICENSE" for details.
+ */
+
+package com.osiris.autoplug.client.minecraft.console;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.OutputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * Splits the bytes written to it into lines and
+ * publishes each complete line to a {@link ConsoleLineBus}. <br>
+ * Line separators (\n and \r\n) are not part of the published lines. <br>
+ * The bytes of the current line and the decoded characters are kept in buffers, which are reused for every line,
+ * thus no {@link String}s get created here. The buffers only grow, if a line is longer than every line before.
+ */
+public class ConsoleOutputStream extends OutputStream {
+    private static final int INITIAL_CAPACITY = 1024;
+    @NotNull
+    private final ConsoleLineBus bus;
+    @NotNull
+    private final CharsetDecoder decoder;
+    @NotNull
+    private ByteBuffer currentLine = ByteBuffer.allocate(INITIAL_CAPACITY);
+    @NotNull
+    private CharBuffer decoded = CharBuffer.allocate(INITIAL_CAPACITY);
+
+    public ConsoleOutputStream(@NotNull ConsoleLineBus bus) {
+        this(bus, Charset.defaultCharset());
+    }
+
+    public ConsoleOutputStream(@NotNull ConsoleLineBus bus, @NotNull Charset charset) {
+        this.bus = bus;
+        this.decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+
+    @Override
+    public void write(int b) {
+        if (b == '\n') publishLine();
+        else {
+            ensureRemaining(1);
+            currentLine.put((byte) b);
+        }
+    }
+
+    @Override
+    public void write(@NotNull byte[] b, int off, int len) {
+        int start = off;
+        int end = off + len;
+        for (int i = off; i < end; i++) {
+            if (b[i] == '\n') {
+                append(b, start, i - start);
+                publishLine();
+                start = i + 1;
+            }
+        }
+        append(b, start, end - start);
+    }
+
+    /**
+     * Publishes the remaining bytes as last line, if there are any.
+     */
+    @Override
+    public void close() {
+        if (currentLine.position() > 0) publishLine();
+    }
+
+    private void append(@NotNull byte[] b, int off, int len) {
+        ensureRemaining(len);
+        currentLine.put(b, off, len);
+    }
+
+    private void ensureRemaining(int len) {
+        if (currentLine.remaining() < len) {
+            ByteBuffer bigger = ByteBuffer.allocate(Math.max(currentLine.capacity() * 2, currentLine.position() + len));
+            ((Buffer) currentLine).flip();
+            bigger.put(currentLine);
+            currentLine = bigger;
+        }
+    }
+
+    private void publishLine() {
+        ((Buffer) currentLine).flip();
+        decoder.reset();
+        ((Buffer) decoded).clear();
+        while (true) {
+            CoderResult result = decoder.decode(currentLine, decoded, true);
+            if (result.isOverflow()) {
+                growDecoded();
+                continue;
+            }
+            if (decoder.flush(decoded).isOverflow()) {
+                growDecoded();
+                continue;
+            }
+            break;
+        }
+        ((Buffer) currentLine).clear();
+
+        int len = decoded.position();
+        char[] chars = decoded.array();
+        if (len > 0 && chars[len - 1] == '\r') len--;
+        bus.publish(chars, 0, len);
+    }
+
+    private void growDecoded() {
+        CharBuffer bigger = CharBuffer.allocate(decoded.capacity() * 2);
+        ((Buffer) decoded).flip();
+        bigger.put(decoded);
+        decoded = bigger;
+    }
+}
@@ -0,0 +1,434 @@
+/*
+ * Copyright Osiris Team
+ * All rights reserved.
+ *
+ * This software is copyrighted work licensed under the terms of the
+ * AutoPlug License.  Please consult the file "LICENSE" for details.
+ */
+
+package com.osiris.autoplug.client.minecraft.console;
+
+import com.osiris.autoplug.core.logger.AL;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.Buffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps the most recent console lines in a fixed size, memory-mapped ring file. <br>
+ * The lines live off-heap (in the OS page cache), thus even log storms don't bloat the heap,
+ * and they survive a restart of AutoPlug. Once the file is full, the oldest lines get overwritten. <br>
+ * <br>
+ * File layout: <br>
+ * [header] magic, version, data capacity, write position, line count <br>
+ * [index] one entry (offset, time) for the first line starting in each {@link #INDEX_INTERVAL} bytes of data <br>
+ * [data] records: length, time, sequence, UTF-8 bytes <br>
+ * <br>
+ * Offsets are logical (they only grow) and get mapped into the ring with modulo.
+ * The sparse index makes it possible to find the oldest valid line after a wrap-around,
+ * and to jump close to a point in time without reading everything before it.
+ */
+public class ConsoleScrollback implements Closeable {
+    public static final int INDEX_INTERVAL = 16 * 1024;
+    public static final int MAX_LINE_BYTES = 16 * 1024;
+    private static final int MAGIC = 0x41504342; // "APCB"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+    private static final int HEADER_WRITE_POS = 16;
+    private static final int HEADER_LINE_COUNT = 24;
+    private static final int INDEX_ENTRY_SIZE = 16;
+    private static final int RECORD_HEADER_SIZE = 4 + 8 + 8;
+
+    @NotNull
+    private final File file;
+    private final long capacity;
+    private final int indexSlots;
+    private final int dataStart;
+    @NotNull
+    private final RandomAccessFile raf;
+    @NotNull
+    private final MappedByteBuffer map;
+    // Reused buffers, thus appending a line allocates nothing
+    private final byte[] lineBuffer = new byte[MAX_LINE_BYTES];
+    private final byte[] recordHeader = new byte[RECORD_HEADER_SIZE];
+    private long writePos;
+    private long lineCount;
+
+    /**
+     * Opens the provided file, or creates it if needed.
+     * If the existing file has another capacity or is damaged, its history gets discarded.
+     *
+     * @param capacity the amount of bytes reserved for lines. The file is slightly bigger, because of the index.
+     */
+    public ConsoleScrollback(@NotNull File file, long capacity) throws IOException {
+        if (capacity < INDEX_INTERVAL || capacity > 1024L * 1024 * 1024)
+            throw new IllegalArgumentException("Capacity must be between " + INDEX_INTERVAL + " bytes and 1GB, but was " + capacity + " bytes.");
+        this.file = file;
+        this.capacity = capacity;
+        this.indexSlots = (int) (capacity / INDEX_INTERVAL) + 2;
+        this.dataStart = HEADER_SIZE + indexSlots * INDEX_ENTRY_SIZE;
+        long fileSize = dataStart + capacity;
+
+        if (file.getParentFile() != null) file.getParentFile().mkdirs();
+        boolean existed = file.exists() && file.length() == fileSize;
+        this.raf = new RandomAccessFile(file, "rw");
+        raf.setLength(fileSize);
+        this.map = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, fileSize);
+
+        if (existed && map.getInt(0) == MAGIC && map.getInt(4) == VERSION && map.getLong(8) == capacity
+                && map.getLong(HEADER_WRITE_POS) >= 0) {
+            this.writePos = map.getLong(HEADER_WRITE_POS);
+            this.lineCount = map.getLong(HEADER_LINE_COUNT);
+            AL.debug(this.getClass(), "Loaded console scrollback from '" + file.getName() + "' with " + lineCount + " lines written in total.");
+        } else
+            reset();
+    }
+
+    private void reset() {
+        writePos = 0;
+        lineCount = 0;
+        map.putInt(0, MAGIC);
+        map.putInt(4, VERSION);
+        map.putLong(8, capacity);
+        map.putLong(HEADER_WRITE_POS, 0);
+        map.putLong(HEADER_LINE_COUNT, 0);
+        for (int i = 0; i < indexSlots; i++) {
+            map.putLong(HEADER_SIZE + i * INDEX_ENTRY_SIZE, -1);
+            map.putLong(HEADER_SIZE + i * INDEX_ENTRY_SIZE + 8, -1);
+        }
+    }
+
+    /**
+     * Appends the line to the ring. Lines longer than {@link #MAX_LINE_BYTES} get truncated. <br>
+     * Must only be called by one thread at a time.
+     */
+    public synchronized void append(@NotNull CharSequence line, long sequence, long time) {
+        int len = encode(line, lineBuffer);
+        long start = writePos;
+
+        putLong(recordHeader, 4, time);
+        putLong(recordHeader, 12, sequence);
+        putInt(recordHeader, 0, len);
+        write(start, recordHeader, RECORD_HEADER_SIZE);
+        write(start + RECORD_HEADER_SIZE, lineBuffer, len);
+
+        long block = start / INDEX_INTERVAL;
+        if (!isIndexed(block)) {
+            int entry = indexEntry(block);
+            map.putLong(entry, start);
+            map.putLong(entry + 8, time);
+        }
+
+        writePos = start + RECORD_HEADER_SIZE + len;
+        lineCount++;
+        map.putLong(HEADER_WRITE_POS, writePos);
+        map.putLong(HEADER_LINE_COUNT, lineCount);
+    }
+
+    /**
+     * @return the last lines, oldest first.
+     */
+    @NotNull
+    public synchronized List<Line> readLast(int amount) {
+        if (amount <= 0) return new ArrayList<>();
+        long first = firstValidOffset();
+        long firstBlock = first / INDEX_INTERVAL;
+        long lastBlock = writePos / INDEX_INTERVAL;
+        // Go back in growing steps, until the range contains enough lines
+        long start = first;
+        for (long steps = 1; lastBlock - steps > firstBlock; steps *= 2) {
+            long candidate = firstIndexedOffsetFrom(lastBlock - steps, first);
+            if (countLines(candidate) >= amount) {
+                start = candidate;
+                break;
+            }
+        }
+
+        ArrayDeque<Line> lines = new ArrayDeque<>(amount);
+        read(start, Long.MIN_VALUE, line -> {
+            if (lines.size() == amount) lines.removeFirst();
+            lines.addLast(line);
+        });
+        return new ArrayList<>(lines);
+    }
+
+    /**
+     * @param time     the oldest time (milliseconds since epoch) to include.
+     * @param maxLines the maximum amount of lines to return. The newest ones are kept.
+     * @return the lines written since the provided time, oldest first.
+     */
+    @NotNull
+    public synchronized List<Line> readSince(long time, int maxLines) {
+        // Jump to the last indexed block that starts before the requested time
+        long first = firstValidOffset();
+        long start = first;
+        for (long block = first / INDEX_INTERVAL; block <= writePos / INDEX_INTERVAL; block++) {
+            if (!isIndexed(block)) continue;
+            long offset = indexOffset(block);
+            if (offset < first) continue;
+            if (indexTime(block) >= time) break;
+            start = offset;
+        }
+
+        ArrayDeque<Line> lines = new ArrayDeque<>();
+        read(start, time, line -> {
+            if (lines.size() == maxLines) lines.removeFirst();
+            lines.addLast(line);
+        });
+        return new ArrayList<>(lines);
+    }
+
+    /**
+     * Searches all lines for the provided text (case-sensitive). <br>
+     * The bytes get compared directly, thus only matching lines get decoded.
+     *
+     * @return the newest matches, oldest first.
+     */
+    @NotNull
+    public synchronized List<Line> search(@NotNull String text, int maxResults) {
+        byte[] query = text.getBytes(StandardCharsets.UTF_8);
+        ArrayDeque<Line> matches = new ArrayDeque<>();
+        long pos = firstValidOffset();
+        while (pos < writePos) {
+            read(pos, recordHeader, RECORD_HEADER_SIZE);
+            int len = getInt(recordHeader, 0);
+            read(pos + RECORD_HEADER_SIZE, lineBuffer, len);
+            if (indexOf(lineBuffer, len, query) != -1) {
+                if (matches.size() == maxResults) matches.removeFirst();
+                matches.addLast(new Line(getLong(recordHeader, 4), getLong(recordHeader, 12),
+                        new String(lineBuffer, 0, len, StandardCharsets.UTF_8)));
+            }
+            pos += RECORD_HEADER_SIZE + len;
+        }
+        return new ArrayList<>(matches);
+    }
+
+    private void read(long start, long minTime, @NotNull LineConsumer consumer) {
+        long pos = start;
+        while (pos < writePos) {
+            read(pos, recordHeader, RECORD_HEADER_SIZE);
+            int len = getInt(recordHeader, 0);
+            long time = getLong(recordHeader, 4);
+            if (time >= minTime) {
+                read(pos + RECORD_HEADER_SIZE, lineBuffer, len);
+                consumer.accept(new Line(time, getLong(recordHeader, 12), new String(lineBuffer, 0, len, StandardCharsets.UTF_8)));
+            }
+            pos += RECORD_HEADER_SIZE + len;
+        }
+    }
+
+    private long countLines(long start) {
+        long count = 0;
+        long pos = start;
+        while (pos < writePos) {
+            read(pos, recordHeader, 4);
+            pos += RECORD_HEADER_SIZE + getInt(recordHeader, 0);
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * The offset of the oldest line, that wasn't overwritten yet.
+     */
+    private long firstValidOffset() {
+        long lowest = writePos - capacity;
+        if (lowest <= 0) return 0; // Never wrapped around, thus the first line is still there
+        return firstIndexedOffsetFrom(lowest / INDEX_INTERVAL, lowest);
+    }
+
+    /**
+     * @return the offset of the first indexed line at or after the provided block, which is not older than lowest.
+     * Returns the write position if there is none.
+     */
+    private long firstIndexedOffsetFrom(long block, long lowest) {
+        for (long b = block; b <= writePos / INDEX_INTERVAL; b++) {
+            if (isIndexed(b) && indexOffset(b) >= lowest)
+                return indexOffset(b);
+        }
+        return writePos;
+    }
+
+    /**
+     * The index slot of a block gets reused by later blocks, thus
+     * the entry only belongs to this block, if its offset lies inside the block.
+     */
+    private boolean isIndexed(long block) {
+        long offset = indexOffset(block);
+        return offset >= 0 && offset / INDEX_INTERVAL == block;
+    }
+
+    private int indexEntry(long block) {
+        return HEADER_SIZE + (int) (block % indexSlots) * INDEX_ENTRY_SIZE;
+    }
+
+    private long indexOffset(long block) {
+        return map.getLong(indexEntry(block));
+    }
+
+    private long indexTime(long block) {
+        return map.getLong(indexEntry(block) + 8);
+    }
+
+    private void write(long offset, @NotNull byte[] src, int len) {
+        int physical = (int) (offset % capacity);
+        int first = (int) Math.min(len, capacity - physical);
+        ((Buffer) map).position(dataStart + physical);
+        map.put(src, 0, first);
+        if (first < len) { // Wrap around
+            ((Buffer) map).position(dataStart);
+            map.put(src, first, len - first);
+        }
+    }
+
+    private void read(long offset, @NotNull byte[] dst, int len) {
+        int physical = (int) (offset % capacity);
+        int first = (int) Math.min(len, capacity - physical);
+        ((Buffer) map).position(dataStart + physical);
+        map.get(dst, 0, first);
+        if (first < len) { // Wrap around
+            ((Buffer) map).position(dataStart);
+            map.get(dst, first, len - first);
+        }
+    }
+
+    /**
+     * Encodes the chars as UTF-8 into the provided buffer,
+     * without creating any objects. Stops at the last whole char that fits.
+     */
+    private static int encode(@NotNull CharSequence s, @NotNull byte[] out) {
+        int n = 0;
+        int len = s.length();
+        for (int i = 0; i < len; i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                if (n + 1 > out.length) break;
+                out[n++] = (byte) c;
+            } else if (c < 0x800) {
+                if (n + 2 > out.length) break;
+                out[n++] = (byte) (0xC0 | (c >> 6));
+                out[n++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < len && Character.isLowSurrogate(s.charAt(i + 1))) {
+                if (n + 4 > out.length) break;
+                int cp = Character.toCodePoint(c, s.charAt(++i));
+                out[n++] = (byte) (0xF0 | (cp >> 18));
+                out[n++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                out[n++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                out[n++] = (byte) (0x80 | (cp & 0x3F));
+            } else {
+                if (n + 3 > out.length) break;
+                if (Character.isSurrogate(c)) c = '?'; // Lone surrogate
+                out[n++] = (byte) (0xE0 | (c >> 12));
+                out[n++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                out[n++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        return n;
+    }
+
+    private static int indexOf(@NotNull byte[] bytes, int len, @NotNull byte[] query) {
+        if (query.length == 0) return 0;
+        int max = len - query.length;
+        outer:
+        for (int i = 0; i <= max; i++) {
+            for (int j = 0; j < query.length; j++) {
+                if (bytes[i + j] != query[j]) continue outer;
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    private static void putInt(@NotNull byte[] b, int off, int v) {
+        b[off] = (byte) (v >>> 24);
+        b[off + 1] = (byte) (v >>> 16);
+        b[off + 2] = (byte) (v >>> 8);
+        b[off + 3] = (byte) v;
+    }
+
+    private static void putLong(@NotNull byte[] b, int off, long v) {
+        putInt(b, off, (int) (v >>> 32));
+        putInt(b, off + 4, (int) v);
+    }
+
+    private static int getInt(@NotNull byte[] b, int off) {
+        return ((b[off] & 0xFF) << 24) | ((b[off + 1] & 0xFF) << 16) | ((b[off + 2] & 0xFF) << 8) | (b[off + 3] & 0xFF);
+    }
+
+    private static long getLong(@NotNull byte[] b, int off) {
+        return ((long) getInt(b, off) << 32) | (getInt(b, off + 4) & 0xFFFFFFFFL);
+    }
+
+    /**
+     * The total amount of lines ever written to this file, including the overwritten ones.
+     */
+    public synchronized long getLineCount() {
+        return lineCount;
+    }
+
+    public long getCapacity() {
+        return capacity;
+    }
+
+    @NotNull
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Writes the changes to disk and closes the file.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        map.force();
+        raf.close();
+    }
+
+    private interface LineConsumer {
+        void accept(@NotNull Line line);
+    }
+
+    /**
+     * A line read from the scrollback.
+     */
+    public static class Line {
+        private final long time;
+        private final long sequence;
+        @NotNull
+        private final String text;
+
+        public Line(long time, long sequence, @NotNull String text) {
+            this.time = time;
+            this.sequence = sequence;
+            this.text = text;
+        }
+
+        /**
+         * The time this line was written, in milliseconds since epoch.
+         */
+        public long getTime() {
+            return time;
+        }
+
+        /**
+         * The lines sequence in the {@link ConsoleLineBus}. Resets when AutoPlug restarts.
+         */
+        public long getSequence() {
+            return sequence;
+        }
+
+        @NotNull
+        public String getText() {
+            return text;
+        }
+    }
+}
@@ -0,0 +1,30 @@
+/*
+ * Copyright Osiris Team
+ * All rights reserved.
+ *
+ * This software is copyrighted work licensed under the terms of the
+ * AutoPlug License.  Please consult the file "LICENSE" for details.
+ */
+
+package com.osiris.autoplug.client.minecraft.console;
+
+/**
+ * Decides what happens when a {@link ConsoleLineBus.Subscriber}
+ * falls so far behind, that the ring buffer would overwrite lines it hasn't read yet.
+ */
+public enum OverflowPolicy {
+    /**
+     * The publisher waits until this subscriber has made room. No line gets lost. <br>
+     * Only use this for fast listeners, because a slow one slows down everything.
+     */
+    BLOCK,
+    /**
+     * The oldest unread lines get overwritten and silently skipped by this subscriber.
+     */
+    DROP_OLDEST,
+    /**
+     * Like {@link #DROP_OLDEST}, but the subscriber receives a single
+     * line, telling how many lines were skipped.
+     */
+    SUMMARIZE
+}
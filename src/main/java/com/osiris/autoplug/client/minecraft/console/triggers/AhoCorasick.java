@@ -0,0 +1,171 @@
+/*
+ * Copyright Osiris Team
+ * All rights reserved.
+ *
+ * This software is copyrighted work licensed under the terms of the
+ * AutoPlug License.  Please consult the file "LICENSE" for details.
+ */
+
+package com.osiris.autoplug.client.minecraft.console.triggers;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Finds all occurrences of many keywords in a text, in a single pass over the text. <br>
+ * The keywords get compiled into one automaton (a trie with failure links),
+ * thus the time needed per char stays the same, no matter how many keywords there are. <br>
+ * Immutable once created, thus it can be shared between threads. Matching allocates nothing.
+ */
+public class AhoCorasick {
+    private static final int[] NO_OUTPUT = new int[0];
+    // The transitions of each node, sorted by char for binary search
+    @NotNull
+    private final char[][] keys;
+    @NotNull
+    private final int[][] targets;
+    @NotNull
+    private final int[] fail;
+    /**
+     * The ids of the keywords ending exactly at this node.
+     */
+    @NotNull
+    private final int[][] output;
+    /**
+     * The nearest node on the failure chain that has an output, or 0 if there is none.
+     */
+    @NotNull
+    private final int[] outputLink;
+    private final int keywordCount;
+
+    /**
+     * @param keywords the id of a keyword is its index in this list. Empty keywords are ignored.
+     */
+    public AhoCorasick(@NotNull List<String> keywords) {
+        // 1. Build the trie
+        List<TreeMap<Character, Integer>> trie = new ArrayList<>();
+        List<List<Integer>> out = new ArrayList<>();
+        trie.add(new TreeMap<>());
+        out.add(new ArrayList<>());
+        for (int id = 0; id < keywords.size(); id++) {
+            String keyword = keywords.get(id);
+            if (keyword.isEmpty()) continue;
+            int node = 0;
+            for (int i = 0; i < keyword.length(); i++) {
+                Integer next = trie.get(node).get(keyword.charAt(i));
+                if (next == null) {
+                    next = trie.size();
+                    trie.add(new TreeMap<>());
+                    out.add(new ArrayList<>());
+                    trie.get(node).put(keyword.charAt(i), next);
+                }
+                node = next;
+            }
+            out.get(node).add(id);
+        }
+
+        // 2. Freeze into arrays
+        int size = trie.size();
+        keys = new char[size][];
+        targets = new int[size][];
+        output = new int[size][];
+        for (int n = 0; n < size; n++) {
+            TreeMap<Character, Integer> map = trie.get(n);
+            keys[n] = new char[map.size()];
+            targets[n] = new int[map.size()];
+            int i = 0;
+            for (Map.Entry<Character, Integer> e : map.entrySet()) {
+                keys[n][i] = e.getKey();
+                targets[n][i] = e.getValue();
+                i++;
+            }
+            List<Integer> o = out.get(n);
+            if (o.isEmpty()) output[n] = NO_OUTPUT;
+            else {
+                output[n] = new int[o.size()];
+                for (int j = 0; j < o.size(); j++) output[n][j] = o.get(j);
+            }
+        }
+
+        // 3. Failure and output links, breadth first
+        fail = new int[size];
+        outputLink = new int[size];
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        for (int child : targets[0]) {
+            queue.add(child);
+        }
+        while (!queue.isEmpty()) {
+            int node = queue.poll();
+            for (int i = 0; i < keys[node].length; i++) {
+                char c = keys[node][i];
+                int child = targets[node][i];
+                int f = fail[node];
+                int next;
+                while ((next = goTo(f, c)) < 0 && f != 0)
+                    f = fail[f];
+                fail[child] = next >= 0 && next != child ? next : 0;
+                outputLink[child] = output[fail[child]].length > 0 ? fail[child] : outputLink[fail[child]];
+                queue.add(child);
+            }
+        }
+        this.keywordCount = keywords.size();
+    }
+
+    private int goTo(int node, char c) {
+        char[] k = keys[node];
+        int low = 0;
+        int high = k.length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            char m = k[mid];
+            if (m < c) low = mid + 1;
+            else if (m > c) high = mid - 1;
+            else return targets[node][mid];
+        }
+        return -1;
+    }
+
+    /**
+     * Reports every occurrence of every keyword in the text, ordered by end position.
+     */
+    public void match(@NotNull CharSequence text, @NotNull MatchListener listener) {
+        int node = 0;
+        int len = text.length();
+        for (int i = 0; i < len; i++) {
+            char c = text.charAt(i);
+            int next;
+            while ((next = goTo(node, c)) < 0 && node != 0)
+                node = fail[node];
+            node = Math.max(next, 0);
+            for (int n = output[node].length > 0 ? node : outputLink[node]; n != 0; n = outputLink[n]) {
+                for (int id : output[n]) {
+                    listener.onMatch(id, i);
+                }
+            }
+        }
+    }
+
+    public int getKeywordCount() {
+        return keywordCount;
+    }
+
+    /**
+     * The amount of nodes in the automaton.
+     */
+    public int getSize() {
+        return keys.length;
+    }
+
+    public interface MatchListener {
+        /**
+         * @param keywordId the index of the keyword in the list provided to the constructor.
+         * @param endIndex  the index of the keywords last char in the text.
+         */
+        void onMatch(int keywordId, int endIndex);
+    }
+}
@@ -0,0 +1,267 @@
+/*
+ * Copyright Osiris Team
+ * All rights reserved.
+ *
+ * This software is copyrighted work licensed under the terms of the
+ * AutoPlug License.  Please consult the file "LICENSE" for details.
+ */
+
+package com.osiris.autoplug.client.minecraft.console.triggers;
+
+import com.osiris.autoplug.client.minecraft.Server;
+import com.osiris.autoplug.client.minecraft.ServerLifecycle;
+import com.osiris.autoplug.client.minecraft.console.ConsoleLine;
+import com.osiris.autoplug.core.logger.AL;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * A pattern and the action to run, when a console line matches it. <br>
+ * Defined by a single line, in this format: <br>
+ * {@code <literal|regex>:<pattern> -> <action>} or {@code <literal|regex>:<pattern> -> <action> -> cooldown:<seconds>} <br>
+ * Available actions: <br>
+ * command:&lt;command&gt; - Executes the command in the servers console. <br>
+ * restart - Restarts the server (only if it is running and not already restarting). <br>
+ * metric:&lt;name&gt; - Counts the matches under the provided name. <br>
+ * alert or alert:&lt;message&gt; - Logs a warning with the message, or the line itself. <br>
+ * The action runs at most once per cooldown, further matches within it are only counted.
+ * Restarts have a cooldown of {@link #RESTART_COOLDOWN_SECONDS} by default, all other actions none. <br>
+ * Examples: <br>
+ * {@code literal:Can't keep up! -> metric:cant-keep-up} <br>
+ * {@code regex:Exception in thread ".+" -> alert -> cooldown:60}
+ */
+public class ConsoleTrigger {
+    public static final long RESTART_COOLDOWN_SECONDS = 300;
+    private static final String SEPARATOR = " -> ";
+    /**
+     * True while a trigger restarts the server, thus a burst of matching lines restarts it only once.
+     */
+    private static final AtomicBoolean RESTARTING = new AtomicBoolean();
+    @NotNull
+    private final String definition;
+    @NotNull
+    private final String pattern;
+    @Nullable
+    private final Pattern regex;
+    @NotNull
+    private final Action action;
+    private final long cooldownMs;
+    private volatile long matches;
+    // Only used by the console thread
+    private long lastRunMs;
+
+    /**
+     * @param cooldownMs min time between two runs of the action, 0 to run it for every match.
+     */
+    public ConsoleTrigger(@NotNull String pattern, @Nullable Pattern regex, @NotNull Action action, long cooldownMs, @NotNull String definition) {
+        this.pattern = pattern;
+        this.regex = regex;
+        this.action = action;
+        this.cooldownMs = cooldownMs;
+        this.definition = definition;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the definition is invalid. The message explains why.
+     */
+    @NotNull
+    public static ConsoleTrigger parse(@NotNull String definition) {
+        String rest = definition;
+        long cooldownSeconds = -1;
+        int sep = rest.lastIndexOf(SEPARATOR);
+        if (sep != -1 && rest.substring(sep + SEPARATOR.length()).trim().startsWith("cooldown:")) {
+            String seconds = rest.substring(sep + SEPARATOR.length()).trim().substring("cooldown:".length());
+            try {
+                cooldownSeconds = Long.parseLong(seconds);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("The cooldown '" + seconds + "' is not a number of seconds.");
+            }
+            if (cooldownSeconds < 0) throw new IllegalArgumentException("The cooldown must not be negative.");
+            rest = rest.substring(0, sep);
+            sep = rest.lastIndexOf(SEPARATOR);
+        }
+        if (sep == -1)
+            throw new IllegalArgumentException("Missing '" + SEPARATOR.trim() + "' between the pattern and the action.");
+        String patternPart = rest.substring(0, sep);
+        String actionPart = rest.substring(sep + SEPARATOR.length()).trim();
+
+        String pattern;
+        Pattern regex = null;
+        if (patternPart.startsWith("literal:")) {
+            pattern = patternPart.substring("literal:".length());
+        } else if (patternPart.startsWith("regex:")) {
+            pattern = patternPart.substring("regex:".length());
+            try {
+                regex = Pattern.compile(pattern);
+            } catch (PatternSyntaxException e) {
+                throw new IllegalArgumentException("Invalid regex: " + e.getDescription());
+            }
+        } else
+            throw new IllegalArgumentException("The pattern must start with 'literal:' or 'regex:'.");
+        if (pattern.isEmpty())
+            throw new IllegalArgumentException("The pattern is empty.");
+
+        if (cooldownSeconds == -1) cooldownSeconds = actionPart.equals("restart") ? RESTART_COOLDOWN_SECONDS : 0;
+        return new ConsoleTrigger(pattern, regex, parseAction(actionPart), cooldownSeconds * 1000, definition);
+    }
+
+    @NotNull
+    private static Action parseAction(@NotNull String s) {
+        if (s.startsWith("command:")) {
+            String command = s.substring("command:".length());
+            if (command.isEmpty()) throw new IllegalArgumentException("The command is empty.");
+            return (engine, trigger, line) -> Server.submitCommand(command);
+        } else if (s.equals("restart")) {
+            return (engine, trigger, line) -> {
+                ServerLifecycle.State state = Server.LIFECYCLE.getState();
+                if (state != ServerLifecycle.State.STARTING && state != ServerLifecycle.State.READY) return;
+                // The lifecycle only changes once the restart thread stops the server, thus guard it here
+                if (!RESTARTING.compareAndSet(false, true)) return;
+                AL.info("Restarting server, because of the trigger '" + trigger.getDefinition() + "'.");
+                // Restarting blocks until the server is up again, thus never do it on the console thread
+                Thread t = new Thread(() -> {
+                    try {
+                        Server.restart();
+                    } finally {
+                        RESTARTING.set(false);
+                    }
+                }, "Trigger-Restart");
+                try {
+                    t.start();
+                } catch (Throwable e) {
+                    RESTARTING.set(false);
+                    throw e;
+                }
+            };
+        } else if (s.startsWith("metric:")) {
+            String name = s.substring("metric:".length());
+            if (name.isEmpty()) throw new IllegalArgumentException("The metric name is empty.");
+            return (engine, trigger, line) -> engine.incrementMetric(name);
+        } else if (s.equals("alert")) {
+            return (engine, trigger, line) -> AL.warn("[Trigger] " + line);
+        } else if (s.startsWith("alert:")) {
+            String message = s.substring("alert:".length());
+            return (engine, trigger, line) -> AL.warn("[Trigger] " + message);
+        } else
+            throw new IllegalArgumentException("Unknown action '" + s + "'. Available: command:<command>, restart, metric:<name>, alert, alert:<message>");
+    }
+
+    /**
+     * Finds a piece of text, that every match of the regex must contain. <br>
+     * Only the line parts outside of groups, classes and optional parts are considered,
+     * and nothing is returned for regexes with top level alternations or flags. <br>
+     * Example: {@code Exception in thread ".+"} returns {@code Exception in thread "}
+     *
+     * @return the longest required literal or an empty String if none could be found.
+     */
+    @NotNull
+    public static String requiredLiteral(@NotNull String regex) {
+        if (regex.startsWith("(?")) return "";
+        String longest = "";
+        StringBuilder current = new StringBuilder();
+        int depth = 0;
+        boolean inClass = false;
+        for (int i = 0; i < regex.length(); i++) {
+            char c = regex.charAt(i);
+            if (c == '\\') {
+                i++;
+                if (i >= regex.length()) break;
+                char escaped = regex.charAt(i);
+                if (!inClass && depth == 0 && !Character.isLetterOrDigit(escaped) && !isQuantified(regex, i + 1)) {
+                    current.append(escaped); // Escaped symbol, like \. or \[
+                    continue;
+                }
+                if (escaped == 'Q' || escaped == 'E') return ""; // Quoting is rarely used, keep it simple
+            } else if (inClass) {
+                if (c == ']') inClass = false;
+                continue;
+            } else if (c == '[') {
+                inClass = true;
+            } else if (c == '(') {
+                depth++;
+            } else if (c == ')') {
+                depth--;
+            } else if (c == '{') {
+                int end = regex.indexOf('}', i);
+                if (end != -1) i = end; // Skip quantifiers like {2,3}
+            } else if (c == '|') {
+                if (depth == 0) return ""; // Top level alternation, no single literal is required
+            } else if (depth == 0 && ".^$*+?{}".indexOf(c) == -1) {
+                if (isQuantified(regex, i + 1)) {
+                    // Like 'a?' or 'a*' which makes this char optional
+                    if (regex.charAt(i + 1) == '+') current.append(c);
+                } else {
+                    current.append(c);
+                    continue;
+                }
+            }
+            if (current.length() > longest.length()) longest = current.toString();
+            current.setLength(0);
+        }
+        if (current.length() > longest.length()) longest = current.toString();
+        return longest;
+    }
+
+    private static boolean isQuantified(@NotNull String regex, int index) {
+        if (index >= regex.length()) return false;
+        char c = regex.charAt(index);
+        return c == '?' || c == '*' || c == '+' || c == '{';
+    }
+
+    void onMatch(@NotNull ConsoleTriggerEngine engine, @NotNull ConsoleLine line) {
+        matches++;
+        if (cooldownMs > 0) {
+            long now = System.currentTimeMillis();
+            if (lastRunMs != 0 && now - lastRunMs < cooldownMs) return;
+            lastRunMs = now;
+        }
+        try {
+            action.run(engine, this, line);
+        } catch (Exception e) {
+            AL.warn("Failed to run the action of the trigger '" + definition + "'.", e);
+        }
+    }
+
+    @NotNull
+    public String getDefinition() {
+        return definition;
+    }
+
+    @NotNull
+    public String getPattern() {
+        return pattern;
+    }
+
+    /**
+     * Null if this trigger matches a literal.
+     */
+    @Nullable
+    public Pattern getRegex() {
+        return regex;
+    }
+
+    /**
+     * Min time between two runs of the action, 0 if there is none.
+     */
+    public long getCooldownMs() {
+        return cooldownMs;
+    }
+
+    /**
+     * The amount of lines that matched this trigger, including the ones within the cooldown.
+     */
+    public long getMatches() {
+        return matches;
+    }
+
+    public interface Action {
+        /**
+         * Gets run on the console thread, thus must return quickly.
+         */
+        void run(@NotNull ConsoleTriggerEngine engine, @NotNull ConsoleTrigger trigger, @NotNull ConsoleLine line) throws Exception;
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright Osiris Team
+ * All rights reserved.
+ *
+ * This software is copyrighted work licensed under the terms of the
+ * AutoPlug License.  Please consult the file "LICENSE" for details.
+ */
+
+package com.osiris.autoplug.client.minecraft.console.triggers;
+
+import com.osiris.autoplug.client.minecraft.console.ConsoleLine;
+import com.osiris.autoplug.client.minecraft.console.ConsoleLineBus;
+import com.osiris.autoplug.core.logger.AL;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+
+/**
+ * Checks each console line against all {@link ConsoleTrigger}s in a single pass. <br>
+ * The literal patterns, and a required literal of each regex (see {@link ConsoleTrigger#requiredLiteral(String)}),
+ * get compiled into one {@link AhoCorasick} automaton. A line is scanned once by the automaton
+ * and only the regexes whose literal was found get run. Regexes without a required literal run for every line. <br>
+ * Thus the time per line stays about the same, no matter how many triggers there are. <br>
+ * Not thread-safe, each line must be passed by the same thread (for example a {@link ConsoleLineBus.Subscriber}).
+ */
+public class ConsoleTriggerEngine implements ConsoleLineBus.LineListener {
+    @NotNull
+    private final ConsoleTrigger[] triggers;
+    @NotNull
+    private final AhoCorasick automaton;
+    /**
+     * The trigger index of each keyword in the automaton.
+     */
+    @NotNull
+    private final int[] keywordTrigger;
+    /**
+     * One reusable matcher per regex trigger, null for literal triggers.
+     */
+    @NotNull
+    private final Matcher[] matchers;
+    /**
+     * Regex triggers without a required literal, which must be checked for each line.
+     */
+    @NotNull
+    private final int[] alwaysCheck;
+    @NotNull
+    private final Map<String, AtomicLong> metrics = new ConcurrentHashMap<>();
+    // Reused for each line, thus matching allocates nothing
+    @NotNull
+    private final int[] candidateStamp;
+    @NotNull
+    private final int[] candidates;
+    private int candidateCount;
+    private int stamp;
+    @NotNull
+    private final AhoCorasick.MatchListener keywordListener = this::onKeyword;
+    private volatile long linesChecked;
+
+    public ConsoleTriggerEngine(@NotNull List<ConsoleTrigger> triggers) {
+        this.triggers = triggers.toArray(new ConsoleTrigger[0]);
+        this.matchers = new Matcher[this.triggers.length];
+        List<String> keywords = new ArrayList<>();
+        List<Integer> keywordTriggers = new ArrayList<>();
+        List<Integer> always = new ArrayList<>();
+        for (int i = 0; i < this.triggers.length; i++) {
+            ConsoleTrigger t = this.triggers[i];
+            String keyword;
+            if (t.getRegex() == null) {
+                keyword = t.getPattern();
+            } else {
+                matchers[i] = t.getRegex().matcher("");
+                keyword = ConsoleTrigger.requiredLiteral(t.getPattern());
+                if (keyword.isEmpty()) {
+                    always.add(i);
+                    continue;
+                }
+            }
+            keywords.add(keyword);
+            keywordTriggers.add(i);
+        }
+        this.automaton = new AhoCorasick(keywords);
+        this.keywordTrigger = new int[keywordTriggers.size()];
+        for (int i = 0; i < keywordTrigger.length; i++) keywordTrigger[i] = keywordTriggers.get(i);
+        this.alwaysCheck = new int[always.size()];
+        for (int i = 0; i < alwaysCheck.length; i++) alwaysCheck[i] = always.get(i);
+        this.candidateStamp = new int[this.triggers.length];
+        this.candidates = new int[this.triggers.length];
+    }
+
+    /**
+     * Parses the provided trigger definitions. Invalid ones get skipped (the config already warns about them).
+     */
+    @NotNull
+    public static ConsoleTriggerEngine fromDefinitions(@NotNull List<String> definitions) {
+        List<ConsoleTrigger> triggers = new ArrayList<>();
+        for (String definition : definitions) {
+            try {
+                triggers.add(ConsoleTrigger.parse(definition));
+            } catch (IllegalArgumentException e) {
+                AL.debug(ConsoleTriggerEngine.class, "Skipped invalid trigger '" + definition + "': " + e.getMessage());
+            }
+        }
+        return new ConsoleTriggerEngine(triggers);
+    }
+
+    @Override
+    public void onLine(@NotNull ConsoleLine line) {
+        linesChecked++;
+        if (++stamp == 0) { // Overflow, thus reset so that old stamps can't match
+            Arrays.fill(candidateStamp, 0);
+            stamp = 1;
+        }
+        candidateCount = 0;
+        automaton.match(line, keywordListener);
+        for (int i : alwaysCheck) {
+            addCandidate(i);
+        }
+        if (candidateCount == 0) return;
+
+        // Run the actions in the order the triggers were defined
+        Arrays.sort(candidates, 0, candidateCount);
+        for (int c = 0; c < candidateCount; c++) {
+            int i = candidates[c];
+            Matcher m = matchers[i];
+            if (m == null || m.reset(line).find())
+                triggers[i].onMatch(this, line);
+        }
+    }
+
+    private void onKeyword(int keywordId, int endIndex) {
+        addCandidate(keywordTrigger[keywordId]);
+    }
+
+    private void addCandidate(int trigger) {
+        if (candidateStamp[trigger] == stamp) return; // Already a candidate for this line
+        candidateStamp[trigger] = stamp;
+        candidates[candidateCount++] = trigger;
+    }
+
+    void incrementMetric(@NotNull String name) {
+        metrics.computeIfAbsent(name, n -> new AtomicLong()).incrementAndGet();
+    }
+
+    /**
+     * The counters of the metric actions (name and count).
+     */
+    @NotNull
+    public Map<String, AtomicLong> getMetrics() {
+        return metrics;
+    }
+
+    @NotNull
+    public List<ConsoleTrigger> getTriggers() {
+        return Arrays.asList(triggers);
+    }
+
+    public long getLinesChecked() {
+        return linesChecked;
+    }
+}
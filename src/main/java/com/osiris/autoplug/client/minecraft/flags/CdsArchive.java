@@ -0,0 +1,202 @@
+/*
+ * Copyright Osiris Team
+ * All rights reserved.
+ *
+ * This software is copyrighted work licensed under the terms of the
+ * AutoPlug License.  Please consult the file "LICENSE" for details.
+ */
+
+package com.osiris.autoplug.client.minecraft.flags;
+
+import com.osiris.autoplug.client.minecraft.StartupProfiler;
+import com.osiris.autoplug.core.logger.AL;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Manages the dynamic class data sharing (AppCDS) archive of the server. <br>
+ * The classes loaded during a start get written to an archive, when the server stops (training run).
+ * Later starts map that archive into memory, instead of loading and verifying each class from the jars again,
+ * which makes the start faster. <br>
+ * The archive belongs to a fingerprint of the java version, the server jar and the installed plugins.
+ * Once any of those change, the archive is deleted and the next start becomes a training run again. <br>
+ * Needs Java 13 or newer.
+ */
+public class CdsArchive {
+    public static final int MIN_JAVA_VERSION = 13;
+    public static final String TAG_TRAINING = "cds-training";
+    public static final String TAG_ARCHIVE = "cds";
+    @NotNull
+    private final File archive;
+    @NotNull
+    private final File trainingArchive;
+    @NotNull
+    private final File fingerprintFile;
+    @Nullable
+    private volatile String trainingFingerprint;
+
+    /**
+     * @param dir the directory to store the archive in.
+     */
+    public CdsArchive(@NotNull File dir) {
+        this.archive = new File(dir, "server.jsa");
+        this.trainingArchive = new File(dir, "server.jsa.training");
+        this.fingerprintFile = new File(dir, "server.jsa.fingerprint");
+    }
+
+    /**
+     * SHA-256 over everything the archive depends on. <br>
+     * The server jar is identified by its path, size and last modification, plus the build the server updater installed,
+     * the plugins by their file names, sizes and last modifications.
+     *
+     * @param javaVersion the vendor and full version of the java running the server.
+     * @param serverJar   the server jar.
+     * @param serverBuild the installed server build (software, version and build-id from the updater config).
+     * @param pluginsDir  the plugins directory. Can be missing (proxies, vanilla).
+     */
+    @NotNull
+    public static String fingerprint(@NotNull String javaVersion, @NotNull File serverJar, @NotNull String serverBuild,
+                                     @NotNull File pluginsDir) throws Exception {
+        List<String> lines = new ArrayList<>();
+        lines.add("java=" + javaVersion);
+        lines.add("jar=" + serverJar.getAbsolutePath() + "," + serverJar.length() + "," + serverJar.lastModified());
+        lines.add("build=" + serverBuild);
+        File[] plugins = pluginsDir.listFiles((dir, name) -> name.endsWith(".jar"));
+        if (plugins != null) {
+            List<String> pluginLines = new ArrayList<>();
+            for (File p : plugins) {
+                pluginLines.add("plugin=" + p.getName() + "," + p.length() + "," + p.lastModified());
+            }
+            Collections.sort(pluginLines);
+            lines.addAll(pluginLines);
+        }
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        for (String line : lines) {
+            digest.update(line.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) '\n');
+        }
+        StringBuilder hex = new StringBuilder();
+        for (byte b : digest.digest()) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * Returns the flag to use the archive, if it matches the fingerprint.
+     * Otherwise deletes the outdated archive and returns the flag to create a new one, when the server stops. <br>
+     * Call {@link #onExit(int)} once the server exited.
+     *
+     * @param fingerprint see {@link #fingerprint(String, File, String, File)}.
+     * @param profiler    to tag the start with, so starts with and without the archive can be compared.
+     */
+    @NotNull
+    public JvmFlags.Flag prepare(@NotNull String fingerprint, @NotNull StartupProfiler profiler) {
+        if (isValid(fingerprint)) {
+            trainingFingerprint = null;
+            profiler.setNextTag(TAG_ARCHIVE);
+            return new JvmFlags.Flag("XX:SharedArchiveFile=" + archive.getAbsolutePath(),
+                    "classes get mapped from the archive created at the training run, instead of loaded from the jars");
+        }
+        if (archive.exists()) AL.info("Server jar, plugins or java changed since the class data sharing archive was created. Creating a new one.");
+        delete();
+        archive.getParentFile().mkdirs();
+        trainingFingerprint = fingerprint;
+        profiler.setNextTag(TAG_TRAINING);
+        return new JvmFlags.Flag("XX:ArchiveClassesAtExit=" + trainingArchive.getAbsolutePath(),
+                "training run: the loaded classes get archived when the server stops, to speed up the next starts");
+    }
+
+    /**
+     * Completes the training run, if there was one.
+     * The JVM writes the archive while exiting, thus it only exists after a normal stop.
+     */
+    public void onExit(int exitCode) {
+        String fingerprint = trainingFingerprint;
+        if (fingerprint == null) return;
+        trainingFingerprint = null;
+        try {
+            if (exitCode != 0 || !trainingArchive.exists() || trainingArchive.length() == 0) {
+                AL.debug(this.getClass(), "No class data sharing archive was created (exit code " + exitCode + "). Retrying at the next start.");
+                Files.deleteIfExists(trainingArchive.toPath());
+                return;
+            }
+            Files.move(trainingArchive.toPath(), archive.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            Files.write(fingerprintFile.toPath(), fingerprint.getBytes(StandardCharsets.UTF_8));
+            AL.info("Created the class data sharing archive (" + (archive.length() / (1024 * 1024)) + "MB). The next server starts will use it.");
+        } catch (IOException e) {
+            AL.warn("Failed to save the class data sharing archive.", e);
+        }
+    }
+
+    /**
+     * True if the archive exists and belongs to the provided fingerprint.
+     */
+    public boolean isValid(@NotNull String fingerprint) {
+        try {
+            return archive.exists() && fingerprintFile.exists()
+                    && new String(Files.readAllBytes(fingerprintFile.toPath()), StandardCharsets.UTF_8).trim().equals(fingerprint);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    public void delete() {
+        for (File f : Arrays.asList(archive, trainingArchive, fingerprintFile)) {
+            if (f.exists() && !f.delete())
+                AL.warn("Failed to delete the outdated class data sharing file: " + f);
+        }
+    }
+
+    /**
+     * Prints the median startup time with and without the archive. Prints nothing, if the archive was never used.
+     */
+    public static void printReport(@NotNull List<StartupProfiler.Run> runs) {
+        List<Long> with = new ArrayList<>();
+        List<Long> without = new ArrayList<>();
+        boolean trained = false;
+        for (StartupProfiler.Run r : runs) {
+            if (r.getTag().equals(TAG_TRAINING)) trained = true;
+            if (r.getDoneMs() < 0) continue;
+            if (r.getTag().equals(TAG_ARCHIVE)) with.add(r.getDoneMs());
+            else without.add(r.getDoneMs());
+        }
+        if (with.isEmpty()) {
+            if (trained) AL.info("No server starts with the class data sharing archive measured yet.");
+            return;
+        }
+        long withMs = median(with);
+        String msg = "Class data sharing: median start " + String.format("%.1fs", withMs / 1000.0) + " with the archive (" + with.size() + " starts)";
+        if (without.isEmpty()) {
+            AL.info(msg + ", no starts without it to compare.");
+            return;
+        }
+        long withoutMs = median(without);
+        long diff = withoutMs - withMs;
+        AL.info(msg + ", " + String.format("%.1fs", withoutMs / 1000.0) + " without (" + without.size() + " starts). "
+                + (diff >= 0 ? "Saves " : "Costs ") + String.format("%.1fs", Math.abs(diff) / 1000.0)
+                + " (" + Math.round(Math.abs(diff) * 100.0 / withoutMs) + "%) per start.");
+    }
+
+    private static long median(@NotNull List<Long> values) {
+        List<Long> sorted = new ArrayList<>(values);
+        Collections.sort(sorted);
+        return sorted.get(sorted.size() / 2);
+    }
+
+    @NotNull
+    public File getArchive() {
+        return archive;
+    }
+}
@@ -0,0 +1,260 @@
+/*
+ * Copyright Osiris Team
+ * All rights reserved.
+ *
+ * This software is copyrighted work licensed under the terms of the
+ * AutoPlug License.  Please consult the file "LICENSE" for details.
+ */
+
+package com.osiris.autoplug.client.minecraft.flags;
+
+import com.osiris.autoplug.core.logger.AL;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The resources of the host (or container) the server runs on, used to pick the JVM flags. <br>
+ * Memory limits of containers are read from the cgroup files (v1 and v2),
+ * large pages and NUMA support from /proc and /sys. On other systems these are simply not available.
+ */
+public class HostResources {
+    /**
+     * cgroup v1 uses a huge number instead of 'max', for no limit.
+     */
+    private static final long CGROUP_UNLIMITED = Long.MAX_VALUE / 2;
+    /**
+     * Time given to the java executable, to print its properties.
+     */
+    static final long PROBE_TIMEOUT_MS = TimeUnit.SECONDS.toMillis(10);
+
+    private final long totalRamBytes;
+    private final long cgroupLimitBytes;
+    private final int cpus;
+    private final long hugePagesTotal;
+    @NotNull
+    private final String transparentHugePages;
+    private final int numaNodes;
+    private final int javaVersion;
+    @NotNull
+    private final String javaRuntimeVersion;
+
+    /**
+     * @param totalRamBytes        the hosts physical memory.
+     * @param cgroupLimitBytes     the containers memory limit or -1, if there is none.
+     * @param cpus                 the available processors.
+     * @param hugePagesTotal       the amount of reserved huge pages (HugePages_Total in /proc/meminfo).
+     * @param transparentHugePages the transparent huge pages mode (always, madvise or never).
+     * @param numaNodes            the amount of NUMA nodes.
+     * @param javaVersion          the feature version of the java used for the server (8, 11, 17...).
+     */
+    public HostResources(long totalRamBytes, long cgroupLimitBytes, int cpus, long hugePagesTotal,
+                         @NotNull String transparentHugePages, int numaNodes, int javaVersion) {
+        this(totalRamBytes, cgroupLimitBytes, cpus, hugePagesTotal, transparentHugePages, numaNodes, javaVersion, String.valueOf(javaVersion));
+    }
+
+    /**
+     * @param javaRuntimeVersion the vendor and full version of the java used for the server, like "Eclipse Adoptium 17.0.2+8".
+     */
+    public HostResources(long totalRamBytes, long cgroupLimitBytes, int cpus, long hugePagesTotal,
+                         @NotNull String transparentHugePages, int numaNodes, int javaVersion, @NotNull String javaRuntimeVersion) {
+        this.totalRamBytes = totalRamBytes;
+        this.cgroupLimitBytes = cgroupLimitBytes;
+        this.cpus = cpus;
+        this.hugePagesTotal = hugePagesTotal;
+        this.transparentHugePages = transparentHugePages;
+        this.numaNodes = numaNodes;
+        this.javaVersion = javaVersion;
+        this.javaRuntimeVersion = javaRuntimeVersion;
+    }
+
+    /**
+     * Detects the resources of this host.
+     *
+     * @param java the java executable the server gets started with.
+     */
+    @NotNull
+    public static HostResources detect(@NotNull String java) {
+        long ram = -1;
+        try {
+            ram = ((com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean()).getTotalPhysicalMemorySize();
+        } catch (Throwable e) {
+            AL.debug(HostResources.class, "Couldn't determine the total RAM: " + e.getMessage());
+        }
+        long limit = parseCgroupLimit(readFirstLine("/sys/fs/cgroup/memory.max"));
+        if (limit == -1) limit = parseCgroupLimit(readFirstLine("/sys/fs/cgroup/memory/memory.limit_in_bytes"));
+        if (limit != -1 && ram != -1 && limit >= ram) limit = -1; // Not really limited
+
+        long hugePages = 0;
+        String meminfo = readFile("/proc/meminfo");
+        if (meminfo != null) {
+            for (String line : meminfo.split("\n")) {
+                if (line.startsWith("HugePages_Total:")) {
+                    try {
+                        hugePages = Long.parseLong(line.substring(line.indexOf(':') + 1).trim());
+                    } catch (NumberFormatException ignored) {
+                    }
+                }
+            }
+        }
+        String thp = parseTransparentHugePages(readFirstLine("/sys/kernel/mm/transparent_hugepage/enabled"));
+
+        int numaNodes = 1;
+        File[] nodes = new File("/sys/devices/system/node").listFiles((dir, name) -> name.matches("node\\d+"));
+        if (nodes != null && nodes.length > 0) numaNodes = nodes.length;
+
+        Properties javaProperties = probeJava(java, PROBE_TIMEOUT_MS);
+        return new HostResources(ram, limit, Runtime.getRuntime().availableProcessors(), hugePages, thp, numaNodes,
+                parseJavaVersion(javaProperties.getProperty("java.specification.version")),
+                javaProperties.getProperty("java.vendor", "") + " " + javaProperties.getProperty("java.runtime.version", ""));
+    }
+
+    /**
+     * Parses the content of memory.max (v2) or memory.limit_in_bytes (v1).
+     *
+     * @return the limit in bytes, or -1 if there is none.
+     */
+    public static long parseCgroupLimit(@Nullable String value) {
+        if (value == null) return -1;
+        value = value.trim();
+        if (value.isEmpty() || value.equals("max")) return -1;
+        try {
+            long limit = Long.parseLong(value);
+            return limit <= 0 || limit >= CGROUP_UNLIMITED ? -1 : limit;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Parses /sys/kernel/mm/transparent_hugepage/enabled, where the active mode is in brackets.
+     * Example: always [madvise] never
+     */
+    @NotNull
+    public static String parseTransparentHugePages(@Nullable String value) {
+        if (value == null) return "never";
+        int start = value.indexOf('[');
+        int end = value.indexOf(']', start + 1);
+        if (start == -1 || end == -1) return "never";
+        return value.substring(start + 1, end);
+    }
+
+    /**
+     * Parses the java.specification.version property. Example: 1.8 -> 8, 17 -> 17
+     */
+    public static int parseJavaVersion(@NotNull String specVersion) {
+        String v = specVersion.trim();
+        if (v.startsWith("1.")) v = v.substring(2);
+        int dot = v.indexOf('.');
+        if (dot != -1) v = v.substring(0, dot);
+        return Integer.parseInt(v);
+    }
+
+    /**
+     * Asks the java executable for its system properties (java.specification.version, java.runtime.version...).
+     * Falls back to the properties of the java AutoPlug runs on.
+     */
+    @NotNull
+    static Properties probeJava(@NotNull String java, long timeoutMs) {
+        Properties properties = new Properties();
+        File output = null;
+        try {
+            // Written to a file instead of read from a pipe, so a hanging java can't block the read
+            output = File.createTempFile("autoplug-java-probe", ".txt");
+            Process p = new ProcessBuilder(java, "-XshowSettings:properties", "-version")
+                    .redirectErrorStream(true).redirectOutput(output).start();
+            if (!p.waitFor(timeoutMs, TimeUnit.MILLISECONDS)) {
+                p.destroyForcibly();
+                throw new Exception("Didn't exit within " + timeoutMs + "ms.");
+            }
+            for (String line : Files.readAllLines(output.toPath(), StandardCharsets.UTF_8)) {
+                int i = line.indexOf(" = ");
+                if (i != -1) properties.setProperty(line.substring(0, i).trim(), line.substring(i + 3).trim());
+            }
+        } catch (Exception e) {
+            AL.debug(HostResources.class, "Couldn't determine the version of '" + java + "': " + e.getMessage());
+        } finally {
+            if (output != null) output.delete();
+        }
+        if (properties.getProperty("java.specification.version") == null) return System.getProperties();
+        return properties;
+    }
+
+    @Nullable
+    private static String readFile(@NotNull String path) {
+        try {
+            File f = new File(path);
+            if (!f.exists()) return null;
+            return new String(Files.readAllBytes(f.toPath()), StandardCharsets.UTF_8);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    @Nullable
+    private static String readFirstLine(@NotNull String path) {
+        String s = readFile(path);
+        if (s == null) return null;
+        int i = s.indexOf('\n');
+        return i == -1 ? s : s.substring(0, i);
+    }
+
+    /**
+     * The memory usable by the server: The containers limit, or else the hosts RAM. -1 if unknown.
+     */
+    public long getAvailableMemoryBytes() {
+        return cgroupLimitBytes != -1 ? cgroupLimitBytes : totalRamBytes;
+    }
+
+    public boolean isContainerLimited() {
+        return cgroupLimitBytes != -1;
+    }
+
+    public boolean hasHugePages() {
+        return hugePagesTotal > 0;
+    }
+
+    public boolean hasTransparentHugePages() {
+        return transparentHugePages.equals("always") || transparentHugePages.equals("madvise");
+    }
+
+    public long getTotalRamBytes() {
+        return totalRamBytes;
+    }
+
+    public long getCgroupLimitBytes() {
+        return cgroupLimitBytes;
+    }
+
+    public int getCpus() {
+        return cpus;
+    }
+
+    public long getHugePagesTotal() {
+        return hugePagesTotal;
+    }
+
+    @NotNull
+    public String getTransparentHugePages() {
+        return transparentHugePages;
+    }
+
+    public int getNumaNodes() {
+        return numaNodes;
+    }
+
+    public int getJavaVersion() {
+        return javaVersion;
+    }
+
+    @NotNull
+    public String getJavaRuntimeVersion() {
+        return javaRuntimeVersion;
+    }
+}
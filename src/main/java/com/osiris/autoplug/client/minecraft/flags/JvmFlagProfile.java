@@ -0,0 +1,64 @@
+/*
+ * Copyright Osiris Team
+ * All rights reserved.
+ *
+ * This software is copyrighted work licensed under the terms of the
+ * AutoPlug License.  Please consult the file "LICENSE" for details.
+ */
+
+package com.osiris.autoplug.client.minecraft.flags;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * The sets of JVM flags, AutoPlug can start the server with. See {@link JvmFlags}.
+ */
+public enum JvmFlagProfile {
+    /**
+     * Only the flags from the general config.
+     */
+    MANUAL,
+    /**
+     * Picks one of the profiles below, based on the available memory and java version.
+     */
+    AUTO,
+    /**
+     * G1 tuned for Minecraft, see https://aikar.co/2018/07/02/tuning-the-jvm-g1gc-garbage-collector-flags-for-minecraft/
+     */
+    AIKAR,
+    /**
+     * ZGC, for big heaps with very short pauses. Needs Java 11 or newer (production ready since 15).
+     */
+    ZGC,
+    /**
+     * Low overhead flags for heaps smaller than 2GB.
+     */
+    SMALL;
+
+    public static final long SMALL_HEAP_BYTES = 2L * 1024 * 1024 * 1024;
+    public static final long BIG_HEAP_BYTES = 16L * 1024 * 1024 * 1024;
+
+    /**
+     * The profile with the provided name (case-insensitive), or null if there is none.
+     */
+    @Nullable
+    public static JvmFlagProfile parse(@NotNull String name) {
+        for (JvmFlagProfile p : values()) {
+            if (p.name().equalsIgnoreCase(name.trim())) return p;
+        }
+        return null;
+    }
+
+    /**
+     * Resolves {@link #AUTO} to the profile that fits the heap and java version best.
+     * Other profiles are returned as they are.
+     */
+    @NotNull
+    public JvmFlagProfile resolve(long heapBytes, int javaVersion) {
+        if (this != AUTO) return this;
+        if (heapBytes < SMALL_HEAP_BYTES) return SMALL;
+        if (heapBytes >= BIG_HEAP_BYTES && javaVersion >= 15) return ZGC;
+        return AIKAR;
+    }
+}
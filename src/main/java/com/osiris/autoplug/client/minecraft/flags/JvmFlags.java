@@ -0,0 +1,251 @@
+/*
+ * Copyright Osiris Team
+ * All rights reserved.
+ *
+ * This software is copyrighted work licensed under the terms of the
+ * AutoPlug License.  Please consult the file "LICENSE" for details.
+ */
+
+package com.osiris.autoplug.client.minecraft.flags;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Builds the JVM flags for a {@link JvmFlagProfile}, based on the {@link HostResources}. <br>
+ * Each flag comes with the reason it was added, so the final command line can be explained in the log.
+ * The flags are without their leading hyphen, like in the general config.
+ */
+public class JvmFlags {
+    private static final long MB = 1024L * 1024;
+    private static final long GB = 1024 * MB;
+    private static final long MIN_HEAP = 512 * MB;
+
+    @NotNull
+    private final List<Flag> flags = new ArrayList<>();
+    @NotNull
+    private final JvmFlagProfile profile;
+    private final long heapBytes;
+
+    private JvmFlags(@NotNull JvmFlagProfile profile, long heapBytes) {
+        this.profile = profile;
+        this.heapBytes = heapBytes;
+    }
+
+    /**
+     * @param profile       the wanted profile. {@link JvmFlagProfile#MANUAL} only returns the user flags.
+     * @param host          the detected resources.
+     * @param maxHeapBytes  the heap size set by the user, or -1 to calculate it from the available memory.
+     * @param largePages    use large pages, if the host has them.
+     * @param preTouch      touch the whole heap at startup.
+     * @param numa          use NUMA aware allocation, if the host has multiple nodes.
+     * @param userFlags     the flags from the general config. They come last, thus override the profiles flags,
+     *                      except for Xms/Xmx, which get calculated by the profile.
+     */
+    @NotNull
+    public static JvmFlags build(@NotNull JvmFlagProfile profile, @NotNull HostResources host, long maxHeapBytes,
+                                 boolean largePages, boolean preTouch, boolean numa, @NotNull List<String> userFlags) {
+        if (profile == JvmFlagProfile.MANUAL) {
+            JvmFlags result = new JvmFlags(profile, -1);
+            for (String f : userFlags) result.add(f, "from the general config");
+            return result;
+        }
+
+        String heapReason;
+        long heap;
+        if (maxHeapBytes > 0) {
+            heap = maxHeapBytes;
+            heapReason = "set in the general config";
+        } else {
+            heap = calculateHeap(host);
+            heapReason = host.isContainerLimited()
+                    ? "container limit " + toSize(host.getCgroupLimitBytes()) + " minus room for the JVM itself"
+                    : "host RAM " + toSize(host.getTotalRamBytes()) + " minus room for the system";
+        }
+        JvmFlagProfile resolved = profile.resolve(heap, host.getJavaVersion());
+        if (resolved == JvmFlagProfile.ZGC && host.getJavaVersion() < 11) resolved = JvmFlagProfile.AIKAR;
+        JvmFlags result = new JvmFlags(resolved, heap);
+
+        result.add("Xms" + toSize(heap), "same as Xmx, so the heap never has to grow");
+        result.add("Xmx" + toSize(heap), heapReason);
+        switch (resolved) {
+            case ZGC:
+                result.addZgc(host);
+                break;
+            case SMALL:
+                result.addSmall(host);
+                break;
+            default:
+                result.addAikar(heap);
+        }
+
+        if (preTouch)
+            result.add("XX:+AlwaysPreTouch", "allocates the whole heap at startup, instead of while playing");
+        if (largePages) {
+            if (host.hasHugePages())
+                result.add("XX:+UseLargePages", host.getHugePagesTotal() + " huge pages are reserved on this host");
+            else if (host.hasTransparentHugePages())
+                result.add("XX:+UseTransparentHugePages", "transparent huge pages are set to '" + host.getTransparentHugePages() + "' on this host");
+        }
+        // G1 supports NUMA since Java 14
+        if (numa && host.getNumaNodes() > 1 && (resolved != JvmFlagProfile.AIKAR || host.getJavaVersion() >= 14)
+                && !result.contains("XX:+UseSerialGC"))
+            result.add("XX:+UseNUMA", "this host has " + host.getNumaNodes() + " NUMA nodes");
+
+        for (String f : userFlags) {
+            if (f.startsWith("Xms") || f.startsWith("Xmx")) continue;
+            result.add(f, "from the general config");
+        }
+        return result;
+    }
+
+    /**
+     * The heap for the available memory. Containers only need room for the JVMs own memory (metaspace, threads, buffers),
+     * while a host also needs room for the system and other programs.
+     */
+    public static long calculateHeap(@NotNull HostResources host) {
+        long available = host.getAvailableMemoryBytes();
+        if (available <= 0) return 2 * GB; // Unknown, same as the old default
+        long reserved = host.isContainerLimited()
+                ? Math.max(384 * MB, available / 5)
+                : Math.max(GB, available / 4);
+        long heap = available - reserved;
+        heap = heap / (256 * MB) * (256 * MB); // Round down to nice numbers
+        return Math.max(MIN_HEAP, heap);
+    }
+
+    /**
+     * Parses sizes like 512M or 6G. Returns -1 for 'auto'.
+     */
+    public static long parseSize(@NotNull String size) {
+        String s = size.trim().toUpperCase();
+        if (s.equals("AUTO")) return -1;
+        if (s.endsWith("B")) s = s.substring(0, s.length() - 1);
+        long unit = 1;
+        char last = s.charAt(s.length() - 1);
+        if (last == 'G') unit = GB;
+        else if (last == 'M') unit = MB;
+        else if (last == 'K') unit = 1024;
+        if (unit != 1) s = s.substring(0, s.length() - 1);
+        return Long.parseLong(s.trim()) * unit;
+    }
+
+    /**
+     * Formats the size for Xms/Xmx, in megabytes or gigabytes.
+     */
+    @NotNull
+    public static String toSize(long bytes) {
+        if (bytes % GB == 0) return (bytes / GB) + "G";
+        return (bytes / MB) + "M";
+    }
+
+    private void addAikar(long heap) {
+        boolean big = heap >= 12 * GB;
+        String why = "Aikar's G1 flags" + (big ? " for heaps of 12GB and more" : "");
+        add("XX:+UseG1GC", "G1, tuned for Minecraft's allocation pattern");
+        add("XX:+ParallelRefProcEnabled", why);
+        add("XX:MaxGCPauseMillis=200", why);
+        add("XX:+UnlockExperimentalVMOptions", "needed for the G1 new size flags");
+        add("XX:+DisableExplicitGC", "plugins calling System.gc() cause long pauses");
+        add("XX:G1NewSizePercent=" + (big ? 40 : 30), why);
+        add("XX:G1MaxNewSizePercent=" + (big ? 50 : 40), why);
+        add("XX:G1HeapRegionSize=" + (big ? "16M" : "8M"), why);
+        add("XX:G1ReservePercent=" + (big ? 15 : 20), why);
+        add("XX:G1HeapWastePercent=5", why);
+        add("XX:G1MixedGCCountTarget=4", why);
+        add("XX:InitiatingHeapOccupancyPercent=" + (big ? 20 : 15), why);
+        add("XX:G1MixedGCLiveThresholdPercent=90", why);
+        add("XX:G1RSetUpdatingPauseTimePercent=5", why);
+        add("XX:SurvivorRatio=32", why);
+        add("XX:+PerfDisableSharedMem", "avoids stalls caused by writing GC statistics to disk");
+        add("XX:MaxTenuringThreshold=1", why);
+        add("Dusing.aikars.flags=https://mcflags.emc.gs", "marks the flags for server software that checks for them");
+        add("Daikars.new.flags=true", "marks the flags for server software that checks for them");
+    }
+
+    private void addZgc(@NotNull HostResources host) {
+        if (host.getJavaVersion() < 15)
+            add("XX:+UnlockExperimentalVMOptions", "ZGC is experimental before Java 15");
+        add("XX:+UseZGC", "pauses stay below a millisecond, even with a heap of " + toSize(heapBytes));
+        if (host.getJavaVersion() >= 21)
+            add("XX:+ZGenerational", "generational ZGC needs less CPU, available since Java 21");
+        add("XX:+DisableExplicitGC", "plugins calling System.gc() cause needless collections");
+        add("XX:+PerfDisableSharedMem", "avoids stalls caused by writing GC statistics to disk");
+    }
+
+    private void addSmall(@NotNull HostResources host) {
+        if (host.getCpus() <= 2) {
+            add("XX:+UseSerialGC", "the heap is small and only " + host.getCpus() + " CPU(s) are available, thus the simplest GC has the least overhead");
+        } else {
+            add("XX:+UseG1GC", "G1 with default settings works well for small heaps");
+            add("XX:MaxGCPauseMillis=100", "small heaps can be collected in short pauses");
+        }
+        add("XX:+DisableExplicitGC", "plugins calling System.gc() cause needless collections");
+        add("XX:+PerfDisableSharedMem", "avoids stalls caused by writing GC statistics to disk");
+    }
+
+    private void add(@NotNull String flag, @NotNull String reason) {
+        flags.add(new Flag(flag, reason));
+    }
+
+    public boolean contains(@NotNull String flag) {
+        for (Flag f : flags) {
+            if (f.flag.equals(flag)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * The flags without their leading hyphen.
+     */
+    @NotNull
+    public List<String> asList() {
+        List<String> list = new ArrayList<>(flags.size());
+        for (Flag f : flags) list.add(f.flag);
+        return list;
+    }
+
+    @NotNull
+    public List<Flag> getFlags() {
+        return flags;
+    }
+
+    /**
+     * The profile that was actually used. {@link JvmFlagProfile#AUTO} is resolved to a specific one.
+     */
+    @NotNull
+    public JvmFlagProfile getProfile() {
+        return profile;
+    }
+
+    /**
+     * The heap size, or -1 for {@link JvmFlagProfile#MANUAL}.
+     */
+    public long getHeapBytes() {
+        return heapBytes;
+    }
+
+    public static class Flag {
+        @NotNull
+        private final String flag;
+        @NotNull
+        private final String reason;
+
+        public Flag(@NotNull String flag, @NotNull String reason) {
+            this.flag = flag;
+            this.reason = reason;
+        }
+
+        @NotNull
+        public String getFlag() {
+            return flag;
+        }
+
+        @NotNull
+        public String getReason() {
+            return reason;
+        }
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright Osiris Team
+ * All rights reserved.
+ *
+ * This software is copyrighted work licensed under the terms of the
+ * AutoPlug License.  Please consult the file "LICENSE" for details.
+ */
+
+package com.osiris.autoplug.client.network.online;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Reads the output of a {@link CompressedOutputStream}. <br>
+ * Before waiting for more data from the other side, the paired output gets flushed,
+ * so a request that was written, but not flushed yet, never waits for its response forever.
+ */
+public class CompressedInputStream extends InflaterInputStream {
+    @NotNull
+    private final CompressionStats stats;
+    @Nullable
+    private final Flushable pairedOutput;
+    private long waitNanos;
+
+    /**
+     * @param pairedOutput the output of the same connection, or null.
+     */
+    public CompressedInputStream(@NotNull InputStream in, @NotNull CompressionStats stats, @Nullable Flushable pairedOutput) {
+        super(in, new Inflater(true), 8192);
+        this.stats = stats;
+        this.pairedOutput = pairedOutput;
+    }
+
+    @Override
+    public int read(@NotNull byte[] b, int off, int len) throws IOException {
+        long start = System.nanoTime();
+        int read = super.read(b, off, len);
+        if (read > 0) stats.add(read, 0, System.nanoTime() - start - waitNanos);
+        waitNanos = 0;
+        return read;
+    }
+
+    /**
+     * Unlike {@link InflaterInputStream#available()}, which returns 1 until the end of the stream,
+     * this returns 0 once everything flushed by the other side was read,
+     * thus readers that only read on while data is available (like {@link java.io.InputStreamReader}) don't block.
+     */
+    @Override
+    public int available() throws IOException {
+        if (inf.finished()) return 0;
+        if (!inf.needsInput()) return 1;
+        return in.available() > 0 ? 1 : 0;
+    }
+
+    /**
+     * Called when the inflater needs more compressed data.
+     */
+    @Override
+    protected void fill() throws IOException {
+        if (pairedOutput != null) pairedOutput.flush();
+        long start = System.nanoTime();
+        super.fill();
+        waitNanos += System.nanoTime() - start; // Waiting for the network isn't decompressing
+        stats.add(0, len, 0);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            super.close();
+        } finally {
+            inf.end();
+            stats.close();
+        }
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright Osiris Team
+ * All rights reserved.
+ *
+ * This software is copyrighted work licensed under the terms of the
+ * AutoPlug License.  Please consult the file "LICENSE" for details.
+ */
+
+package com.osiris.autoplug.client.network.online;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Deflate compressed output, where each {@link #flush()} sends everything written so far (sync flush),
+ * thus the other side can read it right away. <br>
+ * Unlike the plain socket stream, written data stays in this stream until flushed:
+ * Small writes (like the single bytes of a {@link java.io.DataOutputStream}) are collected in a buffer first,
+ * which only gets deflated once it's full, or on flush. The compression stats get updated per deflate, not per write.
+ * {@link CompressedInputStream} flushes its paired output before it waits for data,
+ * thus request/response protocols work without explicit flushes.
+ */
+public class CompressedOutputStream extends DeflaterOutputStream {
+    public static final int BUFFER_SIZE = 8192;
+    @NotNull
+    private final CompressionStats stats;
+    @NotNull
+    private final Counter counter;
+    @NotNull
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int buffered;
+    /**
+     * Uncompressed bytes given to the deflater, since the stats were last updated.
+     */
+    private long deflated;
+    private boolean dirty;
+    private boolean closed;
+
+    public CompressedOutputStream(@NotNull OutputStream out, @NotNull CompressionStats stats) {
+        this(new Counter(out), stats);
+    }
+
+    private CompressedOutputStream(@NotNull Counter counter, @NotNull CompressionStats stats) {
+        super(counter, new Deflater(Deflater.BEST_SPEED, true), BUFFER_SIZE, true);
+        this.counter = counter;
+        this.stats = stats;
+    }
+
+    @Override
+    public synchronized void write(int b) throws IOException {
+        if (buffered == buffer.length) {
+            long start = System.nanoTime();
+            long before = counter.count;
+            deflateBuffer();
+            updateStats(start, before);
+        }
+        buffer[buffered++] = (byte) b;
+        dirty = true;
+    }
+
+    @Override
+    public synchronized void write(@NotNull byte[] b, int off, int len) throws IOException {
+        if (len == 0) return;
+        dirty = true;
+        if (len <= buffer.length - buffered) {
+            System.arraycopy(b, off, buffer, buffered, len);
+            buffered += len;
+            return;
+        }
+        long start = System.nanoTime();
+        long before = counter.count;
+        deflateBuffer();
+        if (len >= buffer.length) {
+            super.write(b, off, len);
+            deflated += len;
+        } else {
+            System.arraycopy(b, off, buffer, 0, len);
+            buffered = len;
+        }
+        updateStats(start, before);
+    }
+
+    /**
+     * Sends the compressed data. Does nothing if nothing was written since the last flush,
+     * since each sync flush adds a few bytes.
+     */
+    @Override
+    public synchronized void flush() throws IOException {
+        if (!dirty) return;
+        long start = System.nanoTime();
+        long before = counter.count;
+        deflateBuffer();
+        super.flush();
+        dirty = false;
+        updateStats(start, before);
+    }
+
+    @Override
+    public synchronized void finish() throws IOException {
+        deflateBuffer();
+        super.finish();
+    }
+
+    private void deflateBuffer() throws IOException {
+        if (buffered == 0) return;
+        super.write(buffer, 0, buffered);
+        deflated += buffered;
+        buffered = 0;
+    }
+
+    private void updateStats(long start, long before) {
+        stats.add(deflated, counter.count - before, System.nanoTime() - start);
+        deflated = 0;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        try {
+            finish();
+        } catch (IOException ignored) {
+            // The other side may have closed the connection already
+        } finally {
+            def.end();
+            stats.close();
+        }
+        out.close();
+    }
+
+    /**
+     * Counts the compressed bytes.
+     */
+    private static class Counter extends FilterOutputStream {
+        private long count;
+
+        Counter(@NotNull OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(@NotNull byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
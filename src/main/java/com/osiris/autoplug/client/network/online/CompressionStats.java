@@ -0,0 +1,99 @@
+/*
+ * Copyright Osiris Team
+ * All rights reserved.
+ *
+ * This software is copyrighted work licensed under the terms of the
+ * AutoPlug License.  Please consult the file "LICENSE" for details.
+ */
+
+package com.osiris.autoplug.client.network.online;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts the bytes before and after compression and the time spent (de)compressing,
+ * for one direction of a compressed connection. <br>
+ * The stats of open connections are listed in {@link #getAll()}.
+ */
+public class CompressionStats {
+    @NotNull
+    private static final List<CompressionStats> ALL = new CopyOnWriteArrayList<>();
+    @NotNull
+    private final String name;
+    @NotNull
+    private final AtomicLong rawBytes = new AtomicLong();
+    @NotNull
+    private final AtomicLong compressedBytes = new AtomicLong();
+    @NotNull
+    private final AtomicLong nanos = new AtomicLong();
+
+    /**
+     * Creates the stats and adds them to {@link #getAll()}, until they get closed.
+     *
+     * @param name for example: CON_TYPE 2 out
+     */
+    public CompressionStats(@NotNull String name) {
+        this.name = name;
+        ALL.add(this);
+    }
+
+    @NotNull
+    public static List<CompressionStats> getAll() {
+        return new ArrayList<>(ALL);
+    }
+
+    void add(long raw, long compressed, long nanos) {
+        if (raw != 0) rawBytes.addAndGet(raw);
+        if (compressed != 0) compressedBytes.addAndGet(compressed);
+        if (nanos != 0) this.nanos.addAndGet(nanos);
+    }
+
+    /**
+     * Removes these stats from {@link #getAll()}.
+     */
+    public void close() {
+        ALL.remove(this);
+    }
+
+    @NotNull
+    public String getName() {
+        return name;
+    }
+
+    public long getRawBytes() {
+        return rawBytes.get();
+    }
+
+    public long getCompressedBytes() {
+        return compressedBytes.get();
+    }
+
+    /**
+     * The uncompressed size divided by the compressed size. 0 if nothing was transferred yet.
+     */
+    public double getRatio() {
+        long c = compressedBytes.get();
+        return c == 0 ? 0 : (double) rawBytes.get() / c;
+    }
+
+    /**
+     * The time spent compressing/decompressing, which is CPU time of the calling thread.
+     */
+    public long getMillis() {
+        return nanos.get() / 1_000_000;
+    }
+
+    /**
+     * Example: 2048KB -> 256KB (ratio 8.0), 35ms
+     */
+    @NotNull
+    public String getStats() {
+        return (getRawBytes() / 1024) + "KB -> " + (getCompressedBytes() / 1024) + "KB (ratio "
+                + String.format("%.1f", getRatio()) + "), " + getMillis() + "ms";
+    }
+}
@@ -0,0 +1,231 @@
+/*
+ * Copyright Osiris Team
+ * All rights reserved.
+ *
+ * This software is copyrighted work licensed under the terms of the
+ * AutoPlug License.  Please consult the file "LICENSE" for details.
+ */
+
+package com.osiris.autoplug.client.network.online;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.function.LongSupplier;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Decides which console lines get sent to the Online-Console. <br>
+ * First the include/exclude rules get checked: If there are include rules, a line must match at least one of them,
+ * and it must match none of the exclude rules. <br>
+ * Then repeated lines get collapsed: Once a line was sent, the same line (ignoring its timestamp) gets skipped
+ * for the collapse period and afterwards a single "repeated X times" line gets sent instead of the skipped ones.
+ * Only the fingerprints of the last few distinct lines are remembered (the window),
+ * thus memory stays the same, no matter how much gets logged. <br>
+ * During a spam storm this sends one line plus one summary per period and distinct message. <br>
+ * Summaries are sent once the next line arrives after the period, thus not while the console is completely silent. <br>
+ * Not thread-safe, meant to be used by the single thread that sends the lines.
+ */
+public class ConsoleSendFilter {
+    /**
+     * Lines are identified by their text after this prefix (the timestamp and level), if there is one.
+     */
+    private static final String PREFIX_END = "]: ";
+    private static final int MAX_PREFIX_LENGTH = 64;
+    private static final int MAX_EXCERPT_LENGTH = 100;
+    @NotNull
+    private final List<Pattern> includes = new ArrayList<>();
+    @NotNull
+    private final List<Pattern> excludes = new ArrayList<>();
+    private final long collapseMs;
+    private final int window;
+    @NotNull
+    private final LongSupplier clock;
+    @NotNull
+    private final LinkedHashMap<Long, Entry> recent;
+    private long lastSummariesAt;
+
+    private volatile long filtered;
+    private volatile long collapsed;
+
+    /**
+     * @param rules      in the format include:regex or exclude:regex.
+     * @param collapseMs time in which repetitions of a line get skipped. 0 to not collapse lines.
+     * @param window     the amount of distinct lines remembered.
+     * @throws IllegalArgumentException if a rule is invalid.
+     */
+    public ConsoleSendFilter(@NotNull List<String> rules, long collapseMs, int window) {
+        this(rules, collapseMs, window, System::currentTimeMillis);
+    }
+
+    ConsoleSendFilter(@NotNull List<String> rules, long collapseMs, int window, @NotNull LongSupplier clock) {
+        for (String rule : rules) {
+            parseRule(rule, includes, excludes);
+        }
+        this.collapseMs = collapseMs;
+        this.window = window;
+        this.clock = clock;
+        this.recent = new LinkedHashMap<>(16, 0.75f, true); // Least recently seen first
+    }
+
+    /**
+     * Validates the rule and adds its pattern to the matching list.
+     *
+     * @throws IllegalArgumentException if the rule is invalid.
+     */
+    public static void parseRule(@NotNull String rule, @NotNull List<Pattern> includes, @NotNull List<Pattern> excludes) {
+        int i = rule.indexOf(':');
+        if (i == -1) throw new IllegalArgumentException("Missing 'include:' or 'exclude:' in front of the regex.");
+        String type = rule.substring(0, i).trim();
+        Pattern pattern;
+        try {
+            pattern = Pattern.compile(rule.substring(i + 1));
+        } catch (PatternSyntaxException e) {
+            throw new IllegalArgumentException("Invalid regex: " + e.getDescription());
+        }
+        if (type.equals("include")) includes.add(pattern);
+        else if (type.equals("exclude")) excludes.add(pattern);
+        else throw new IllegalArgumentException("Unknown type '" + type + "', must be include or exclude.");
+    }
+
+    /**
+     * Sends the line, if it passes the rules and isn't a repetition.
+     * Sends the summaries of repeated lines, whose period is over, before it.
+     */
+    public void process(@NotNull CharSequence line, @NotNull Output out) throws IOException {
+        if (!matchesRules(line)) {
+            filtered++;
+            return;
+        }
+        if (collapseMs <= 0) {
+            out.write(line);
+            return;
+        }
+
+        long now = clock.getAsLong();
+        if (now - lastSummariesAt >= collapseMs) {
+            lastSummariesAt = now;
+            sendSummaries(now, out);
+        }
+        long fingerprint = fingerprint(line);
+        Entry e = recent.get(fingerprint);
+        if (e != null && now - e.sentAt < collapseMs) {
+            e.repeated++;
+            collapsed++;
+            return;
+        }
+        if (e == null) {
+            // Evicting an entry forgets its repetitions, thus send them first
+            if (recent.size() >= window) {
+                Iterator<Entry> it = recent.values().iterator();
+                Entry eldest = it.next();
+                if (eldest.repeated > 0) out.write(summary(eldest));
+                it.remove();
+            }
+            e = new Entry(excerpt(line));
+            recent.put(fingerprint, e);
+        } else if (e.repeated > 0) {
+            out.write(summary(e));
+        }
+        e.repeated = 0;
+        e.sentAt = now;
+        out.write(line);
+    }
+
+    /**
+     * Sends the summaries of lines that were repeated, but not for the entire period.
+     */
+    private void sendSummaries(long now, @NotNull Output out) throws IOException {
+        for (Entry e : recent.values()) {
+            if (e.repeated > 0 && now - e.sentAt >= collapseMs) {
+                out.write(summary(e));
+                e.repeated = 0;
+                e.sentAt = now;
+            }
+        }
+    }
+
+    private boolean matchesRules(@NotNull CharSequence line) {
+        if (!includes.isEmpty()) {
+            boolean included = false;
+            for (Pattern p : includes) {
+                if (p.matcher(line).find()) {
+                    included = true;
+                    break;
+                }
+            }
+            if (!included) return false;
+        }
+        for (Pattern p : excludes) {
+            if (p.matcher(line).find()) return false;
+        }
+        return true;
+    }
+
+    /**
+     * 64 bit FNV-1a hash of the line, without its prefix. Doesn't create a {@link String}.
+     */
+    static long fingerprint(@NotNull CharSequence line) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = textStart(line), len = line.length(); i < len; i++) {
+            hash ^= line.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    private static int textStart(@NotNull CharSequence line) {
+        if (line.length() == 0 || line.charAt(0) != '[') return 0;
+        int max = Math.min(line.length() - PREFIX_END.length(), MAX_PREFIX_LENGTH);
+        for (int i = 1; i <= max; i++) {
+            if (line.charAt(i) == ']' && line.charAt(i + 1) == ':' && line.charAt(i + 2) == ' ') return i + PREFIX_END.length();
+        }
+        return 0;
+    }
+
+    @NotNull
+    private static String excerpt(@NotNull CharSequence line) {
+        int start = textStart(line);
+        if (line.length() - start <= MAX_EXCERPT_LENGTH) return line.subSequence(start, line.length()).toString();
+        return line.subSequence(start, start + MAX_EXCERPT_LENGTH) + "...";
+    }
+
+    @NotNull
+    private static String summary(@NotNull Entry e) {
+        return "[AutoPlug] Previous line repeated " + e.repeated + " time(s): " + e.excerpt;
+    }
+
+    /**
+     * The amount of lines skipped by the include/exclude rules.
+     */
+    public long getFiltered() {
+        return filtered;
+    }
+
+    /**
+     * The amount of repeated lines, that were replaced by summaries.
+     */
+    public long getCollapsed() {
+        return collapsed;
+    }
+
+    public interface Output {
+        void write(@NotNull CharSequence line) throws IOException;
+    }
+
+    private static class Entry {
+        @NotNull
+        private final String excerpt;
+        private long sentAt;
+        private long repeated;
+
+        private Entry(@NotNull String excerpt) {
+            this.excerpt = excerpt;
+        }
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright Osiris Team
+ * All rights reserved.
+ *
+ * This software is copyrighted work licensed under the terms of the
+ * AutoPlug License.  Please consult the file "LICENSE" for details.
+ */
+
+package com.osiris.autoplug.client.network.online;
+
+import com.osiris.autoplug.core.logger.AL;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * A single thread serving the non-blocking connections to AutoPlug-Web (see {@link TlsConnection}),
+ * thus an idle connection doesn't need its own thread, waiting for data. <br>
+ * All servers run by this AutoPlug client share the {@link #get()} loop.
+ * Handlers and tasks run on the loop thread, thus must never block.
+ */
+public class EventLoop {
+    @Nullable
+    private static EventLoop DEFAULT;
+    @NotNull
+    private final Selector selector;
+    @NotNull
+    private final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    @NotNull
+    private final Thread thread;
+    private volatile boolean closed;
+
+    public EventLoop(@NotNull String name) throws IOException {
+        this.selector = Selector.open();
+        this.thread = new Thread(this::run, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * The loop shared by all connections to AutoPlug-Web, started on first use.
+     */
+    @NotNull
+    public static synchronized EventLoop get() throws IOException {
+        if (DEFAULT == null || DEFAULT.closed) DEFAULT = new EventLoop("AutoPlug-Web-IO");
+        return DEFAULT;
+    }
+
+    /**
+     * Runs the task on the loop thread, as soon as possible.
+     */
+    public void execute(@NotNull Runnable task) {
+        tasks.add(task);
+        if (!inLoop()) selector.wakeup();
+    }
+
+    /**
+     * Must be called on the loop thread.
+     */
+    @NotNull
+    SelectionKey register(@NotNull SelectableChannel channel, int ops, @NotNull Handler handler) throws ClosedChannelException {
+        return channel.register(selector, ops, handler);
+    }
+
+    public boolean inLoop() {
+        return Thread.currentThread() == thread;
+    }
+
+    /**
+     * The amount of registered connections.
+     */
+    public int getConnections() {
+        return selector.isOpen() ? selector.keys().size() : 0;
+    }
+
+    private void run() {
+        try {
+            while (!closed) {
+                runTasks();
+                selector.select();
+                Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    SelectionKey key = it.next();
+                    it.remove();
+                    if (!key.isValid()) continue;
+                    try {
+                        ((Handler) key.attachment()).onSelected(key);
+                    } catch (Exception e) {
+                        AL.warn("Error in " + thread.getName() + ".", e);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            AL.warn(thread.getName() + " stopped.", e);
+        } finally {
+            closed = true;
+            try {
+                selector.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            try {
+                task.run();
+            } catch (Exception e) {
+                AL.warn("Error in " + thread.getName() + ".", e);
+            }
+        }
+    }
+
+    /**
+     * Stops the loop, without closing the registered connections.
+     */
+    public void close() {
+        closed = true;
+        selector.wakeup();
+    }
+
+    interface Handler {
+        /**
+         * Called on the loop thread, once the channel is ready for one of its interest ops.
+         */
+        void onSelected(@NotNull SelectionKey key) throws IOException;
+    }
+}
@@ -0,0 +1,223 @@
+/*
+ * Copyright Osiris Team
+ * All rights reserved.
+ *
+ * This software is copyrighted work licensed under the terms of the
+ * AutoPlug License.  Please consult the file "LICENSE" for details.
+ */
+
+package com.osiris.autoplug.client.network.online;
+
+import com.osiris.autoplug.client.minecraft.console.ConsoleLine;
+import com.osiris.autoplug.core.logger.AL;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.CharArrayWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Packs lines into frames, that get written and flushed by a dedicated thread. <br>
+ * A frame gets flushed once the interval passed since its first line, or once it reached the max frame size,
+ * whichever comes first. Instead of one flush (and one TLS record) per line,
+ * a log storm then only causes a few flushes per second. <br>
+ * Writing a line only copies its chars into the {@link SendQueue}, thus the callers never wait for the network.
+ * If the writer thread can't keep up, the queue drops the oldest lines. <br>
+ * The lines per frame and the flush latency (time between the first line of a frame and its flush) are counted,
+ * to tune the interval and frame size.
+ */
+public class FrameWriter implements AutoCloseable {
+    @NotNull
+    private final Writer out;
+    private final long intervalNanos;
+    private final int maxFrameChars;
+    @NotNull
+    private final Thread thread;
+    /**
+     * Also the lock guarding the fields below.
+     */
+    @NotNull
+    private final SendQueue queue;
+    @NotNull
+    private final CharArrayWriter frame;
+    private long firstPendingAt;
+    private boolean flushNow;
+    private boolean closed;
+    @Nullable
+    private volatile IOException error;
+
+    // Counters, only written by the writer thread
+    private volatile long frames;
+    private volatile long lines;
+    private volatile long chars;
+    private volatile long maxLinesPerFrame;
+    private volatile long totalLatencyNanos;
+    private volatile long maxLatencyNanos;
+
+    /**
+     * @param name          name of the writer thread.
+     * @param out           where the frames get written to. Gets flushed after each frame.
+     * @param intervalMs    max time a line waits, before its frame gets flushed. 0 to flush as soon as possible.
+     * @param maxFrameChars a frame gets flushed once it has this many chars.
+     * @param queue         where the lines wait until they get written. Gets closed together with this writer.
+     */
+    public FrameWriter(@NotNull String name, @NotNull Writer out, long intervalMs, int maxFrameChars, @NotNull SendQueue queue) {
+        this.out = out;
+        this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(intervalMs);
+        this.maxFrameChars = maxFrameChars;
+        this.queue = queue;
+        this.frame = new CharArrayWriter(maxFrameChars);
+        this.thread = new Thread(this::run, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Adds the line to the queue.
+     */
+    public void writeLine(@NotNull ConsoleLine line) throws IOException {
+        write(line, false);
+    }
+
+    /**
+     * Adds the message to the queue.
+     *
+     * @param flushNow true to flush the frame right away, for example for user input.
+     */
+    public void write(@NotNull CharSequence message, boolean flushNow) throws IOException {
+        synchronized (queue) {
+            IOException e = error;
+            if (e != null) throw e;
+            if (closed) throw new IOException("Writer is closed.");
+            boolean wasEmpty = queue.isEmpty();
+            if (wasEmpty) firstPendingAt = System.nanoTime();
+            if (flushNow) this.flushNow = true;
+            queue.offer(message); // Wakes up the writer
+        }
+    }
+
+    private void run() {
+        try {
+            while (true) {
+                int frameLines;
+                long frameStartedAt;
+                synchronized (queue) {
+                    while (queue.isEmpty()) {
+                        if (closed) return;
+                        queue.wait();
+                    }
+                    long deadline = firstPendingAt + intervalNanos;
+                    while (!closed && !flushNow && queue.getChars() < maxFrameChars) {
+                        long wait = deadline - System.nanoTime();
+                        if (wait <= 0) break;
+                        TimeUnit.NANOSECONDS.timedWait(queue, wait);
+                    }
+                    frameStartedAt = firstPendingAt;
+                    frameLines = queue.drainTo(frame, maxFrameChars);
+                    // Lines that didn't fit are as old as this frame, thus get sent right after it
+                    if (queue.isEmpty()) flushNow = false;
+                }
+                frame.writeTo(out);
+                out.flush();
+                count(frameLines, frame.size(), System.nanoTime() - frameStartedAt);
+                frame.reset();
+            }
+        } catch (IOException e) {
+            error = e;
+            AL.debug(this.getClass(), thread.getName() + " stopped: " + e.getMessage());
+        } catch (InterruptedException ignored) {
+        } finally {
+            synchronized (queue) {
+                closed = true;
+                queue.notifyAll();
+            }
+        }
+    }
+
+    private void count(int frameLines, int frameChars, long latencyNanos) {
+        frames++;
+        lines += frameLines;
+        chars += frameChars;
+        if (frameLines > maxLinesPerFrame) maxLinesPerFrame = frameLines;
+        totalLatencyNanos += latencyNanos;
+        if (latencyNanos > maxLatencyNanos) maxLatencyNanos = latencyNanos;
+    }
+
+    /**
+     * Flushes the pending lines and stops the writer thread, but doesn't close the underlying writer.
+     * Waits up to the provided time for the last frame to be written.
+     * If the calling thread gets interrupted while waiting, the writer thread is stopped right away
+     * and the interrupt flag is restored.
+     */
+    public void close(long timeoutMs) {
+        synchronized (queue) {
+            closed = true;
+            queue.notifyAll();
+        }
+        try {
+            thread.join(timeoutMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (thread.isAlive()) thread.interrupt();
+        queue.close();
+    }
+
+    @Override
+    public void close() {
+        close(1000);
+    }
+
+    public boolean isClosed() {
+        synchronized (queue) {
+            return closed;
+        }
+    }
+
+    @NotNull
+    public SendQueue getQueue() {
+        return queue;
+    }
+
+    public long getFrames() {
+        return frames;
+    }
+
+    public long getLines() {
+        return lines;
+    }
+
+    public long getChars() {
+        return chars;
+    }
+
+    public double getAverageLinesPerFrame() {
+        long f = frames;
+        return f == 0 ? 0 : (double) lines / f;
+    }
+
+    public long getMaxLinesPerFrame() {
+        return maxLinesPerFrame;
+    }
+
+    public double getAverageFlushLatencyMs() {
+        long f = frames;
+        return f == 0 ? 0 : totalLatencyNanos / 1_000_000.0 / f;
+    }
+
+    public double getMaxFlushLatencyMs() {
+        return maxLatencyNanos / 1_000_000.0;
+    }
+
+    /**
+     * Example: 1200 lines in 60 frames (20.0 lines/frame, max 150), flush latency avg 48.2ms max 95.0ms, 96KB sent
+     */
+    @NotNull
+    public String getStats() {
+        return lines + " lines in " + frames + " frames (" + String.format("%.1f", getAverageLinesPerFrame()) + " lines/frame, max "
+                + maxLinesPerFrame + "), flush latency avg " + String.format("%.1f", getAverageFlushLatencyMs()) + "ms max "
+                + String.format("%.1f", getMaxFlushLatencyMs()) + "ms, " + (chars / 1024) + "KB sent";
+    }
+}
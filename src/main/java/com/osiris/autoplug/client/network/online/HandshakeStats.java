@@ -0,0 +1,96 @@
+/*
+ * Copyright Osiris Team
+ * All rights reserved.
+ *
+ * This software is copyrighted work licensed under the terms of the
+ * AutoPlug License.  Please consult the file "LICENSE" for details.
+ */
+
+package com.osiris.autoplug.client.network.online;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The TLS handshake times of one connection type, separated into full handshakes and resumed sessions. <br>
+ * The stats of all connection types are listed in {@link #getAll()} and stay until AutoPlug restarts.
+ */
+public class HandshakeStats {
+    @NotNull
+    private static final Map<Byte, HandshakeStats> ALL = new TreeMap<>();
+    private final byte conType;
+    private long fullCount;
+    private long fullNanos;
+    private long resumedCount;
+    private long resumedNanos;
+    @NotNull
+    private String lastProtocol = "";
+
+    HandshakeStats(byte conType) {
+        this.conType = conType;
+    }
+
+    /**
+     * The stats of the connection type, created if needed.
+     */
+    @NotNull
+    public static HandshakeStats of(byte conType) {
+        synchronized (ALL) {
+            return ALL.computeIfAbsent(conType, HandshakeStats::new);
+        }
+    }
+
+    /**
+     * Sorted by connection type.
+     */
+    @NotNull
+    public static List<HandshakeStats> getAll() {
+        synchronized (ALL) {
+            return new ArrayList<>(ALL.values());
+        }
+    }
+
+    public synchronized void add(long nanos, boolean resumed, @NotNull String protocol) {
+        if (resumed) {
+            resumedCount++;
+            resumedNanos += nanos;
+        } else {
+            fullCount++;
+            fullNanos += nanos;
+        }
+        lastProtocol = protocol;
+    }
+
+    public byte getConType() {
+        return conType;
+    }
+
+    public synchronized long getFullCount() {
+        return fullCount;
+    }
+
+    public synchronized long getResumedCount() {
+        return resumedCount;
+    }
+
+    public synchronized double getAverageFullMs() {
+        return fullCount == 0 ? 0 : fullNanos / 1_000_000.0 / fullCount;
+    }
+
+    public synchronized double getAverageResumedMs() {
+        return resumedCount == 0 ? 0 : resumedNanos / 1_000_000.0 / resumedCount;
+    }
+
+    /**
+     * Example: TLSv1.3, 1 full handshake (avg 210.4ms), 5 resumed (avg 61.2ms)
+     */
+    @NotNull
+    public synchronized String getStats() {
+        return lastProtocol + ", " + fullCount + " full handshake(s) (avg " + String.format("%.1f", getAverageFullMs()) + "ms), "
+                + resumedCount + " resumed (avg " + String.format("%.1f", getAverageResumedMs()) + "ms)";
+    }
+}
@@ -11,20 +11,26 @@ package com.osiris.autoplug.client.network.online;
 import com.osiris.autoplug.client.network.online.connections.OnlineConsoleReceiveConnection;
 import com.osiris.autoplug.client.network.online.connections.OnlineConsoleSendConnection;
 import com.osiris.autoplug.client.network.online.connections.PluginsUpdaterConnection;
+import com.osiris.autoplug.client.utils.Backoff;
 import com.osiris.autoplug.core.logger.AL;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
-import java.io.DataInputStream;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
 
 /**
  * This is the main connection to AutoPlugs online server/website.
- * It stays active all the time and sends/receives true/false values, regarding the users login status.
+ * It stays active all the time and receives the users login status (see {@link PresenceReader}).
  * When the user is logged in, it creates the secondary connections and holds them until the user logs out.
  * The main connection authenticates using the server_key.
  * If it receives a true boolean it means that the user is logged in and opens new connections.
+ * If AutoPlug-Web supports it, the login status and the secondary connections are channels of this connection (see {@link Multiplexer}). <br>
+ * Once nothing was received for a while, the connection counts as lost and gets established again,
+ * with an exponentially growing, randomized delay between the attempts (see {@link Backoff}).
  */
 public class MainConnection extends Thread {
 
@@ -37,6 +43,82 @@ public class MainConnection extends Thread {
     public static List<SecondaryConnection> LIST_SECONDARY_CONNECTIONS = new ArrayList<>();
 
     public static boolean isDone = false; // So that the log isn't a mess because of the processes which start right after this.
+    private static final CountDownLatch DONE_LATCH = new CountDownLatch(1);
+    @Nullable
+    private static volatile Multiplexer MUX;
+    /**
+     * The first reconnect happens within this time, thus a short outage is over quickly.
+     */
+    private static final long RECONNECT_MIN_DELAY_MS = 2000;
+    private static final long RECONNECT_MAX_DELAY_MS = 5 * 60 * 1000;
+
+    /**
+     * Blocks until the main connection was established, or failed to.
+     */
+    public static void awaitDone() throws InterruptedException {
+        DONE_LATCH.await();
+    }
+
+    private static void setDone() {
+        isDone = true;
+        DONE_LATCH.countDown();
+    }
+
+    /**
+     * The multiplexer carrying the secondary connections, or null if
+     * AutoPlug-Web doesn't support multiplexing or the main connection is down.
+     */
+    @Nullable
+    public static Multiplexer getMultiplexer() {
+        Multiplexer mux = MUX;
+        return mux != null && mux.isOpen() ? mux : null;
+    }
+
+    /**
+     * Returns the reader of the users login status, which uses the control channel, if multiplexed.
+     */
+    @NotNull
+    private static PresenceReader openPresence(@NotNull SecuredConnection auth) throws IOException {
+        auth.setTimeout(PresenceReader.HEARTBEAT_TIMEOUT_MS);
+        if (!auth.isMultiplexed()) {
+            MUX = null;
+            return new PresenceReader(auth.getInput(), null);
+        }
+        TlsConnection tls = auth.getTlsConnection();
+        Multiplexer mux = tls != null ? new Multiplexer("AutoPlug-Web", tls, true)
+                : new Multiplexer("AutoPlug-Web", auth.getInput(), auth.getOutput(), true);
+        MUX = mux;
+        AL.debug(MainConnection.class, "Secondary connections get multiplexed over the main connection.");
+        MultiplexedChannel control = mux.getControlChannel();
+        control.setReadTimeout(PresenceReader.HEARTBEAT_TIMEOUT_MS);
+        return new PresenceReader(control.getInput(), control.getOutput());
+    }
+
+    /**
+     * Closes the secondary connections and the main connection.
+     */
+    private static void closeAll(@Nullable SecuredConnection auth) {
+        try {
+            CON_CONSOLE_RECEIVE.close();
+        } catch (IOException e1) {
+            AL.warn(e1);
+        }
+
+        try {
+            CON_CONSOLE_SEND.close();
+        } catch (IOException e1) {
+            AL.warn(e1);
+        }
+
+        Multiplexer mux = MUX;
+        if (mux != null) mux.close();
+        MUX = null;
+        try {
+            if (auth != null) auth.close();
+        } catch (IOException e1) {
+            AL.debug(MainConnection.class, "Failed to close the main connection: " + e1.getMessage());
+        }
+    }
 
     @Override
     public void run() {
@@ -45,10 +127,7 @@ public class MainConnection extends Thread {
             AL.info("Authenticating server...");
             SecuredConnection auth = new SecuredConnection((byte) 0);
             AL.info("Authentication success!");
-            //Socket socket = auth.getSocket();
-            DataInputStream dis = new DataInputStream(auth.getInput());
-            //DataOutputStream dos = new DataOutputStream(auth.getOut());
-            boolean user_online;
+            PresenceReader presence = openPresence(auth);
 
                 /*
                 Create child connection objects, after main connection was established successfully.
@@ -65,7 +144,9 @@ public class MainConnection extends Thread {
             LIST_SECONDARY_CONNECTIONS.add(CON_PLUGINS_UPDATER);
 
 
-            isDone = true;
+            setDone();
+            // Full jitter spreads out the reconnects, when AutoPlug-Web restarts and all clients lose their connection at once
+            Backoff backoff = new Backoff(RECONNECT_MIN_DELAY_MS, RECONNECT_MAX_DELAY_MS, new Random(), true);
             boolean msgOnline = false; // Was the online message already send to log?
             boolean msgOffline = false;
             while (true) {
@@ -73,7 +154,9 @@ public class MainConnection extends Thread {
                 // In that case see the catch statement
                 try {
                     while (true) {
-                        user_online = dis.readBoolean();
+                        // Returns on each status change and heartbeat
+                        boolean user_online = presence.next();
+                        backoff.reset(); // Received something, thus the connection works
                         if (user_online) {
                             if (!msgOnline) {
                                 AL.debug(this.getClass(), "User is online!");
@@ -97,38 +180,40 @@ public class MainConnection extends Thread {
                             if (CON_CONSOLE_SEND.isConnected()) CON_CONSOLE_SEND.close();
                             //if (CON_PLUGINS_UPDATER.isConnected()) CON_PLUGINS_UPDATER.close(); Only is used at restarts!
                         }
-                        Thread.sleep(1000);
                     }
                 } catch (Exception e) {
-                    AL.warn("Lost connection to AutoPlug-Web! Reconnecting in 30 seconds...", e);
-
-                    // Close child connections
-                    try {
-                        CON_CONSOLE_RECEIVE.close();
-                    } catch (IOException e1) {
-                        AL.warn(e1);
-                    }
-
-                    try {
-                        CON_CONSOLE_SEND.close();
-                    } catch (IOException e1) {
-                        AL.warn(e1);
-                    }
-
-                    Thread.sleep(30000);
-                    try {
-                        AL.info("Authenticating server...");
-                        auth = new SecuredConnection((byte) 0);
-                        dis = new DataInputStream(auth.getInput());
-                        AL.info("Authentication success!");
-                    } catch (Exception exception) {
-                        AL.warn(e);
+                    closeAll(auth);
+                    msgOnline = false;
+                    msgOffline = false;
+                    Exception cause = e;
+                    while (true) {
+                        long delay = backoff.nextDelayMs();
+                        if (backoff.getAttempts() == 1)
+                            AL.warn("Lost connection to AutoPlug-Web! Reconnecting in " + formatDelay(delay) + "...", cause);
+                        else
+                            AL.warn("Failed to reconnect to AutoPlug-Web (attempt " + (backoff.getAttempts() - 1) + ")! Retrying in " + formatDelay(delay) + "...", cause);
+                        Thread.sleep(delay);
+                        try {
+                            AL.info("Authenticating server...");
+                            auth = new SecuredConnection((byte) 0);
+                            presence = openPresence(auth);
+                            AL.info("Authentication success!");
+                            break;
+                        } catch (Exception exception) {
+                            closeAll(auth);
+                            cause = exception;
+                        }
                     }
                 }
             }
         } catch (Exception e) {
             AL.warn(this.getClass(), e, "Connection issues!");
-            isDone = true;
+            setDone();
         }
     }
+
+    @NotNull
+    private static String formatDelay(long ms) {
+        return String.format("%.1f seconds", ms / 1000.0);
+    }
 }
@@ -0,0 +1,387 @@
+/*
+ * Copyright Osiris Team
+ * All rights reserved.
+ *
+ * This software is copyrighted work licensed under the terms of the
+ * AutoPlug License.  Please consult the file "LICENSE" for details.
+ */
+
+package com.osiris.autoplug.client.network.online;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.SocketTimeoutException;
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A logical connection inside a {@link Multiplexer}, with its own input and output stream. <br>
+ * Flow control: Each side may only send as many bytes, as the other side granted (the window).
+ * The receiver grants more, once the application read half of the window,
+ * thus a channel nobody reads from stalls only itself, not the other channels of the connection. <br>
+ * Written data gets collected into frames of up to {@link Multiplexer#MAX_FRAME_PAYLOAD} bytes and is sent once a frame is full,
+ * on flush, or while a read waits for data (like {@link CompressedInputStream} does), thus request/response protocols
+ * work without explicit flushes.
+ */
+public class MultiplexedChannel {
+    @NotNull
+    private final Multiplexer mux;
+    private final int id;
+    @NotNull
+    private final CompletableFuture<Byte> response = new CompletableFuture<>();
+    @NotNull
+    private final ArrayDeque<byte[]> received = new ArrayDeque<>();
+    @NotNull
+    private final InputStream input = new ChannelInput();
+    @NotNull
+    private final ChannelOutput output = new ChannelOutput();
+    // Guarded by this
+    private int firstOffset;
+    private int buffered;
+    private int unacknowledged;
+    private int sendWindow = Multiplexer.INITIAL_WINDOW;
+    private boolean localClosed;
+    private boolean remoteClosed;
+    @Nullable
+    private IOException error;
+    private int readTimeoutMs;
+
+    MultiplexedChannel(@NotNull Multiplexer mux, int id) {
+        this.mux = mux;
+        this.id = id;
+    }
+
+    /**
+     * Adds data sent by the other side.
+     *
+     * @throws IOException if the other side sent more than it was allowed to.
+     */
+    synchronized void receive(@NotNull byte[] data) throws IOException {
+        if (localClosed) return; // Was in flight while closing
+        if (buffered + data.length > Multiplexer.INITIAL_WINDOW)
+            throw new IOException("Channel " + id + " received more data than its flow control window allows.");
+        received.addLast(data);
+        buffered += data.length;
+        notifyAll();
+    }
+
+    synchronized void addSendWindow(int bytes) {
+        sendWindow += bytes;
+        notifyAll();
+    }
+
+    /**
+     * Called once the other side accepted or rejected the channel.
+     */
+    void setResponse(byte code) {
+        response.complete(code);
+    }
+
+    @NotNull
+    CompletableFuture<Byte> getResponseFuture() {
+        return response;
+    }
+
+    /**
+     * The other side closed the channel. Data received before can still be read.
+     */
+    synchronized void onRemoteClose() {
+        remoteClosed = true;
+        notifyAll();
+    }
+
+    /**
+     * The whole connection was lost.
+     */
+    synchronized void onError(@NotNull IOException e) {
+        error = e;
+        response.completeExceptionally(e);
+        notifyAll();
+    }
+
+    private int read(@NotNull byte[] b, int off, int len) throws IOException {
+        if (len == 0) return 0;
+        long deadline;
+        synchronized (this) {
+            deadline = readTimeoutMs > 0 ? System.currentTimeMillis() + readTimeoutMs : 0;
+        }
+        while (!awaitData(deadline)) {
+            // The other side may wait for the written data, before it sends anything
+            output.sendWithinWindow();
+        }
+        int n = 0;
+        int credit = 0;
+        synchronized (this) {
+            if (buffered == 0) {
+                if (localClosed) throw new IOException("Channel " + id + " is closed.");
+                if (error != null) throw error;
+                return -1; // Closed by the other side
+            }
+            while (n < len && !received.isEmpty()) {
+                byte[] first = received.peekFirst();
+                int count = Math.min(len - n, first.length - firstOffset);
+                System.arraycopy(first, firstOffset, b, off + n, count);
+                n += count;
+                firstOffset += count;
+                if (firstOffset == first.length) {
+                    received.pollFirst();
+                    firstOffset = 0;
+                }
+            }
+            buffered -= n;
+            unacknowledged += n;
+            // Granting in bigger steps saves frames
+            if (unacknowledged >= Multiplexer.INITIAL_WINDOW / 2 && !remoteClosed) {
+                credit = unacknowledged;
+                unacknowledged = 0;
+            }
+        }
+        if (credit > 0) mux.sendWindowUpdate(id, credit);
+        return n;
+    }
+
+    private void write(@NotNull byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            int n;
+            synchronized (this) {
+                while (sendWindow == 0 && !localClosed && !remoteClosed && error == null) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new IOException("Interrupted while writing channel " + id + ".");
+                    }
+                }
+                if (error != null) throw error;
+                if (localClosed) throw new IOException("Channel " + id + " is closed.");
+                if (remoteClosed) throw new IOException("Channel " + id + " was closed by the other side.");
+                n = Math.min(len, Math.min(sendWindow, Multiplexer.MAX_FRAME_PAYLOAD));
+                sendWindow -= n;
+            }
+            mux.sendData(id, b, off, n);
+            off += n;
+            len -= n;
+        }
+    }
+
+    /**
+     * Waits until there is data to read, the channel gets closed,
+     * or written data that wasn't flushed can be sent (see {@link ChannelOutput#sendWithinWindow()}).
+     *
+     * @return false if written data can be sent, otherwise true.
+     */
+    private synchronized boolean awaitData(long deadline) throws IOException {
+        while (buffered == 0 && !remoteClosed && !localClosed && error == null) {
+            if (sendWindow > 0 && output.hasPending()) return false;
+            long wait = 0;
+            if (deadline != 0) {
+                wait = deadline - System.currentTimeMillis();
+                if (wait <= 0) throw new SocketTimeoutException("Read timed out on channel " + id + ".");
+            }
+            try {
+                wait(wait);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while reading channel " + id + ".");
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Sends as much as the window currently allows, without waiting for more.
+     *
+     * @return the amount of bytes sent.
+     */
+    private int writeWithinWindow(@NotNull byte[] b, int off, int len) throws IOException {
+        int n;
+        synchronized (this) {
+            if (!isOpen()) return 0;
+            n = Math.min(len, Math.min(sendWindow, Multiplexer.MAX_FRAME_PAYLOAD));
+            sendWindow -= n;
+        }
+        if (n > 0) mux.sendData(id, b, off, n);
+        return n;
+    }
+
+    /**
+     * Closes the channel on both sides. The other channels of the connection stay open. <br>
+     * Written data that wasn't flushed is still sent, as far as the window allows.
+     * Closing the output stream instead waits until all of it was sent.
+     */
+    public void close() {
+        try {
+            output.sendWithinWindow();
+        } catch (IOException e) {
+            // Closing anyway
+        }
+        boolean notifyRemote;
+        synchronized (this) {
+            if (localClosed) return;
+            localClosed = true;
+            notifyRemote = !remoteClosed && error == null;
+            received.clear();
+            buffered = 0;
+            notifyAll();
+        }
+        mux.onChannelClosed(this, notifyRemote);
+    }
+
+    public synchronized boolean isOpen() {
+        return !localClosed && !remoteClosed && error == null;
+    }
+
+    /**
+     * The max time a read waits for data, before it throws a {@link SocketTimeoutException}. 0 to wait forever.
+     */
+    public synchronized void setReadTimeout(int ms) {
+        this.readTimeoutMs = ms;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * The response code of the other side, after opening this channel.
+     * 0 if accepted, otherwise the same codes as for a {@link SecuredConnection}.
+     */
+    public byte getResponse() {
+        Byte code = response.getNow(null);
+        return code == null ? -1 : code;
+    }
+
+    @NotNull
+    public InputStream getInput() {
+        return input;
+    }
+
+    @NotNull
+    public OutputStream getOutput() {
+        return output;
+    }
+
+    private class ChannelInput extends InputStream {
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            int n = MultiplexedChannel.this.read(b, 0, 1);
+            return n == -1 ? -1 : b[0] & 0xFF;
+        }
+
+        @Override
+        public int read(@NotNull byte[] b, int off, int len) throws IOException {
+            return MultiplexedChannel.this.read(b, off, len);
+        }
+
+        @Override
+        public int available() {
+            synchronized (MultiplexedChannel.this) {
+                return buffered;
+            }
+        }
+
+        @Override
+        public void close() {
+            MultiplexedChannel.this.close();
+        }
+    }
+
+    /**
+     * Collects the written data, until a frame is full or it gets flushed, see the class description. <br>
+     * Uses a lock instead of synchronized methods, since a reader must not wait for a writer
+     * that itself waits for the window, which only grows once the other side gets its response.
+     */
+    private class ChannelOutput extends OutputStream {
+        @NotNull
+        private final ReentrantLock lock = new ReentrantLock();
+        /**
+         * Created at the first write, since most channels only write a little or nothing.
+         */
+        @Nullable
+        private byte[] frame;
+        // Guarded by lock, volatile for hasPending()
+        private volatile int count;
+
+        @Override
+        public void write(int b) throws IOException {
+            lock.lock();
+            try {
+                if (frame == null) frame = new byte[Multiplexer.MAX_FRAME_PAYLOAD];
+                else if (count == frame.length) flush();
+                frame[count++] = (byte) b;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void write(@NotNull byte[] b, int off, int len) throws IOException {
+            lock.lock();
+            try {
+                if (frame == null) frame = new byte[Multiplexer.MAX_FRAME_PAYLOAD];
+                if (len > frame.length - count) {
+                    flush();
+                    if (len >= frame.length) {
+                        MultiplexedChannel.this.write(b, off, len);
+                        return;
+                    }
+                }
+                System.arraycopy(b, off, frame, count, len);
+                count += len;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            lock.lock();
+            try {
+                if (count == 0) return;
+                int n = count;
+                count = 0; // Dropped if sending fails, since the channel is broken then anyway
+                MultiplexedChannel.this.write(frame, 0, n);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * True if there is written data that wasn't sent yet and no writer is busy, which would send it itself.
+         */
+        boolean hasPending() {
+            return count > 0 && !lock.isLocked();
+        }
+
+        /**
+         * Sends the written data as far as the window allows, without waiting.
+         * Does nothing if another thread is writing right now.
+         */
+        void sendWithinWindow() throws IOException {
+            if (!lock.tryLock()) return;
+            try {
+                if (count == 0) return;
+                int n = writeWithinWindow(frame, 0, count);
+                count -= n;
+                if (count > 0) System.arraycopy(frame, n, frame, 0, count);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                if (isOpen()) flush();
+            } finally {
+                MultiplexedChannel.this.close();
+            }
+        }
+    }
+}
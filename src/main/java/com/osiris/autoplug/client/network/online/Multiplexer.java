@@ -0,0 +1,399 @@
+/*
+ * Copyright Osiris Team
+ * All rights reserved.
+ *
+ * This software is copyrighted work licensed under the terms of the
+ * AutoPlug License.  Please consult the file "LICENSE" for details.
+ */
+
+package com.osiris.autoplug.client.network.online;
+
+import com.osiris.autoplug.core.logger.AL;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.SocketTimeoutException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Carries multiple logical connections ({@link MultiplexedChannel}s) over a single authenticated connection,
+ * thus the secondary connections don't need their own TLS handshake and authentication. <br>
+ * Each frame is: channel-id (int), type (byte), payload-length (int), payload. <br>
+ * Channel 0 is always open and carries what the main connection sent before (the users login status).
+ * Opening another channel takes one round-trip: {@link #FRAME_OPEN} with the connection type,
+ * answered by {@link #FRAME_OPEN_RESULT} with the same response codes as an authentication. <br>
+ * The client uses odd channel ids and AutoPlug-Web even ones, thus both can open channels without clashes.
+ * Ids are never reused, thus late frames of a closed channel get ignored. <br>
+ * The frames get read by a thread of its own, or if it runs on a {@link TlsConnection}, by the shared {@link EventLoop}.
+ */
+public class Multiplexer implements AutoCloseable {
+    public static final byte FRAME_OPEN = 1;
+    public static final byte FRAME_OPEN_RESULT = 2;
+    public static final byte FRAME_DATA = 3;
+    public static final byte FRAME_WINDOW_UPDATE = 4;
+    public static final byte FRAME_CLOSE = 5;
+    public static final int CONTROL_CHANNEL = 0;
+    /**
+     * Bytes each side may send on a channel, before the other side grants more.
+     */
+    public static final int INITIAL_WINDOW = 256 * 1024;
+    public static final int MAX_FRAME_PAYLOAD = 16 * 1024;
+    public static final long OPEN_TIMEOUT_MS = 30000;
+
+    @NotNull
+    private final String name;
+    /**
+     * Null if the data comes from a {@link TlsConnection}.
+     */
+    @Nullable
+    private final InputStream in;
+    @Nullable
+    private final TlsConnection tls;
+    /**
+     * Also the lock for writing frames.
+     */
+    @NotNull
+    private final DataOutputStream out;
+    @NotNull
+    private final Map<Integer, MultiplexedChannel> channels = new ConcurrentHashMap<>();
+    @NotNull
+    private final AtomicInteger nextId;
+    @NotNull
+    private final MultiplexedChannel control;
+    @Nullable
+    private final Thread reader;
+    @Nullable
+    private volatile Acceptor acceptor;
+    private volatile boolean closed;
+
+    private volatile long framesIn;
+    private volatile long framesOut;
+    private volatile long bytesIn;
+    private volatile long bytesOut;
+    private volatile long opened;
+
+    // Frame decoding, only used by the reading thread
+    @NotNull
+    private final byte[] header = new byte[9];
+    private int headerPos;
+    @Nullable
+    private byte[] payload;
+    private int payloadPos;
+
+    /**
+     * Starts reading frames on its own thread.
+     *
+     * @param name   name of the connection, used for the reader thread.
+     * @param in     the authenticated connections input.
+     * @param out    the authenticated connections output.
+     * @param client true on the client side, false on the AutoPlug-Web side.
+     */
+    public Multiplexer(@NotNull String name, @NotNull InputStream in, @NotNull OutputStream out, boolean client) {
+        this(name, in, out, null, client);
+    }
+
+    /**
+     * Gets the frames passed by the connections event loop, thus needs no thread of its own.
+     *
+     * @param tls    the authenticated connection.
+     * @param client true on the client side, false on the AutoPlug-Web side.
+     */
+    public Multiplexer(@NotNull String name, @NotNull TlsConnection tls, boolean client) {
+        this(name, null, tls.getOutput(), tls, client);
+    }
+
+    private Multiplexer(@NotNull String name, @Nullable InputStream in, @NotNull OutputStream out, @Nullable TlsConnection tls, boolean client) {
+        this.name = name;
+        this.in = in;
+        this.tls = tls;
+        this.out = new DataOutputStream(new BufferedOutputStream(out, MAX_FRAME_PAYLOAD + 9));
+        this.nextId = new AtomicInteger(client ? 1 : 2);
+        this.control = new MultiplexedChannel(this, CONTROL_CHANNEL);
+        control.setResponse((byte) 0);
+        channels.put(CONTROL_CHANNEL, control);
+        if (tls != null) {
+            this.reader = null;
+            tls.setListener(new TlsConnection.Listener() {
+                @Override
+                public void onData(@NotNull byte[] b, int off, int len) throws IOException {
+                    feed(b, off, len);
+                }
+
+                @Override
+                public void onClosed(@NotNull IOException e) {
+                    onLost(e);
+                }
+            });
+        } else {
+            this.reader = new Thread(this::run, name + "-Multiplexer");
+            reader.setDaemon(true);
+            reader.start();
+        }
+    }
+
+    /**
+     * Opens a channel and waits for the other side to accept or reject it.
+     * Check {@link MultiplexedChannel#getResponse()}, a rejected channel is already closed.
+     *
+     * @param conType the connection type, like for a {@link SecuredConnection}, including its flags.
+     * @throws SocketTimeoutException if there was no response within {@link #OPEN_TIMEOUT_MS}.
+     */
+    @NotNull
+    public MultiplexedChannel openChannel(byte conType) throws IOException {
+        if (closed) throw new IOException("Connection '" + name + "' is closed.");
+        MultiplexedChannel channel = new MultiplexedChannel(this, nextId.getAndAdd(2));
+        channels.put(channel.getId(), channel); // Before sending, since the response may arrive right away
+        sendFrame(channel.getId(), FRAME_OPEN, new byte[]{conType}, 0, 1);
+        try {
+            byte code = channel.getResponseFuture().get(OPEN_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            if (code == 0) opened++;
+            else channels.remove(channel.getId());
+            return channel;
+        } catch (TimeoutException e) {
+            channel.close();
+            throw new SocketTimeoutException("No response for opening channel " + channel.getId() + " within " + OPEN_TIMEOUT_MS + "ms.");
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            channel.close();
+            throw new IOException("Interrupted while opening channel " + channel.getId() + ".");
+        }
+    }
+
+    private void run() {
+        IOException error = null;
+        try {
+            byte[] buffer = new byte[MAX_FRAME_PAYLOAD + header.length];
+            while (!closed) {
+                int n = in.read(buffer);
+                if (n == -1) throw new EOFException();
+                feed(buffer, 0, n);
+            }
+        } catch (IOException e) {
+            error = e;
+        } finally {
+            onLost(error != null ? error : new IOException("Connection '" + name + "' is closed."));
+        }
+    }
+
+    private void onLost(@NotNull IOException error) {
+        if (error instanceof EOFException) error = new EOFException("Connection '" + name + "' was closed by the other side.");
+        if (!closed) AL.debug(this.getClass(), name + " stopped: " + error.getMessage());
+        shutdown(error);
+    }
+
+    /**
+     * Decodes the frames in the received data. A frame can be split over multiple calls.
+     */
+    void feed(@NotNull byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            if (payload == null) {
+                int n = Math.min(header.length - headerPos, len);
+                System.arraycopy(b, off, header, headerPos, n);
+                headerPos += n;
+                off += n;
+                len -= n;
+                if (headerPos < header.length) return;
+                headerPos = 0;
+                int length = readInt(header, 5);
+                if (length < 0 || length > MAX_FRAME_PAYLOAD)
+                    throw new IOException("Invalid frame length " + length + " on channel " + readInt(header, 0) + ".");
+                payload = new byte[length];
+                payloadPos = 0;
+            } else {
+                int n = Math.min(payload.length - payloadPos, len);
+                System.arraycopy(b, off, payload, payloadPos, n);
+                payloadPos += n;
+                off += n;
+                len -= n;
+            }
+            if (payloadPos == payload.length) {
+                byte[] p = payload;
+                payload = null;
+                framesIn++;
+                bytesIn += p.length + header.length;
+                handleFrame(readInt(header, 0), header[4], p);
+            }
+        }
+    }
+
+    private static int readInt(@NotNull byte[] b, int off) {
+        return ((b[off] & 0xFF) << 24) | ((b[off + 1] & 0xFF) << 16) | ((b[off + 2] & 0xFF) << 8) | (b[off + 3] & 0xFF);
+    }
+
+    private void handleFrame(int id, byte type, @NotNull byte[] payload) throws IOException {
+        MultiplexedChannel channel = channels.get(id);
+        switch (type) {
+            case FRAME_OPEN:
+                if (payload.length != 1 || channel != null)
+                    throw new IOException("Invalid open frame for channel " + id + ".");
+                accept(id, payload[0]);
+                break;
+            case FRAME_OPEN_RESULT:
+                if (payload.length != 1) throw new IOException("Invalid open-result frame for channel " + id + ".");
+                if (channel != null) channel.setResponse(payload[0]);
+                break;
+            case FRAME_DATA:
+                if (channel != null) channel.receive(payload);
+                break;
+            case FRAME_WINDOW_UPDATE:
+                if (payload.length != 4) throw new IOException("Invalid window-update frame for channel " + id + ".");
+                if (channel != null) channel.addSendWindow(readInt(payload, 0));
+                break;
+            case FRAME_CLOSE:
+                if (channel != null) {
+                    channels.remove(id);
+                    channel.onRemoteClose();
+                }
+                break;
+            default:
+                throw new IOException("Unknown frame type " + type + " on channel " + id + ".");
+        }
+    }
+
+    /**
+     * Answers a channel opened by the other side. Unknown types get rejected with code 4,
+     * like the authentication does.
+     */
+    private void accept(int id, byte conType) throws IOException {
+        Acceptor acceptor = this.acceptor;
+        byte code = 4;
+        MultiplexedChannel channel = new MultiplexedChannel(this, id);
+        if (acceptor != null) {
+            channels.put(id, channel);
+            try {
+                code = acceptor.accept(channel, conType);
+            } catch (Exception e) {
+                AL.warn("Failed to accept channel " + id + " of type " + conType + ".", e);
+                code = 4;
+            }
+            if (code != 0) channels.remove(id);
+            else opened++;
+        }
+        channel.setResponse(code);
+        sendFrame(id, FRAME_OPEN_RESULT, new byte[]{code}, 0, 1);
+    }
+
+    void sendData(int id, @NotNull byte[] b, int off, int len) throws IOException {
+        sendFrame(id, FRAME_DATA, b, off, len);
+    }
+
+    void sendWindowUpdate(int id, int bytes) throws IOException {
+        sendFrame(id, FRAME_WINDOW_UPDATE, new byte[]{(byte) (bytes >>> 24), (byte) (bytes >>> 16), (byte) (bytes >>> 8), (byte) bytes}, 0, 4);
+    }
+
+    private void sendFrame(int id, byte type, @NotNull byte[] b, int off, int len) throws IOException {
+        synchronized (out) {
+            if (closed) throw new IOException("Connection '" + name + "' is closed.");
+            try {
+                out.writeInt(id);
+                out.writeByte(type);
+                out.writeInt(len);
+                out.write(b, off, len);
+                out.flush(); // One write to the socket per frame
+            } catch (IOException e) {
+                shutdown(e);
+                throw e;
+            }
+            framesOut++;
+            bytesOut += len + 9;
+        }
+    }
+
+    void onChannelClosed(@NotNull MultiplexedChannel channel, boolean notifyRemote) {
+        if (channels.remove(channel.getId()) == null || !notifyRemote || closed) return;
+        try {
+            sendFrame(channel.getId(), FRAME_CLOSE, new byte[0], 0, 0);
+        } catch (IOException e) {
+            AL.debug(this.getClass(), "Failed to close channel " + channel.getId() + ": " + e.getMessage());
+        }
+    }
+
+    private void shutdown(@NotNull IOException error) {
+        synchronized (out) {
+            if (closed && channels.isEmpty()) return;
+            closed = true;
+        }
+        for (MultiplexedChannel channel : channels.values()) {
+            channel.onError(error);
+        }
+        channels.clear();
+        try {
+            if (in != null) in.close();
+            if (tls != null) tls.close();
+        } catch (IOException ignored) {
+        }
+        try {
+            out.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    /**
+     * Closes all channels and the underlying connection.
+     */
+    @Override
+    public void close() {
+        shutdown(new IOException("Connection '" + name + "' is closed."));
+    }
+
+    /**
+     * Sets who accepts channels opened by the other side. Without one, all get rejected.
+     */
+    public void setAcceptor(@Nullable Acceptor acceptor) {
+        this.acceptor = acceptor;
+    }
+
+    public boolean isOpen() {
+        return !closed;
+    }
+
+    /**
+     * Channel 0, which is always open.
+     */
+    @NotNull
+    public MultiplexedChannel getControlChannel() {
+        return control;
+    }
+
+    /**
+     * The amount of open channels, without the control channel.
+     */
+    public int getOpenChannels() {
+        return Math.max(0, channels.size() - (channels.containsKey(CONTROL_CHANNEL) ? 1 : 0));
+    }
+
+    long getFramesOut() {
+        return framesOut;
+    }
+
+    /**
+     * Example: 2 channels open (5 opened in total), 1200 frames (96KB) out, 300 frames (12KB) in
+     */
+    @NotNull
+    public String getStats() {
+        return getOpenChannels() + " channels open (" + opened + " opened in total), " + framesOut + " frames ("
+                + (bytesOut / 1024) + "KB) out, " + framesIn + " frames (" + (bytesIn / 1024) + "KB) in";
+    }
+
+    public interface Acceptor {
+        /**
+         * Called by the reader thread, thus must not block. Use the channel on another thread.
+         *
+         * @return 0 to accept the channel, otherwise the code to reject it with.
+         */
+        byte accept(@NotNull MultiplexedChannel channel, byte conType) throws Exception;
+    }
+}
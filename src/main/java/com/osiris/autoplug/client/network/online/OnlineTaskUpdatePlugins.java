@@ -195,10 +195,8 @@ public class OnlineTaskUpdatePlugins {
                                 local_dos.writeInt(1);
 
                                 //Waiting for server to get closed
-                                while (Server.isRunning()) {
-                                    sleep(3000);
-                                    AL.info("Waiting for server to shutdown...");
-                                }
+                                AL.info("Waiting for server to shutdown...");
+                                Server.LIFECYCLE.awaitExit();
                                 //Server is now stopped, so we can transfer the plugins
                                 AL.info("Server closed! Transferring plugins...");
 
@@ -0,0 +1,103 @@
+/*
+ * Copyright Osiris Team
+ * All rights reserved.
+ *
+ * This software is copyrighted work licensed under the terms of the
+ * AutoPlug License.  Please consult the file "LICENSE" for details.
+ */
+
+package com.osiris.autoplug.client.network.online;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Reads the users login status from the main connection. <br>
+ * Without multiplexing AutoPlug-Web repeatedly sends the status as boolean, thus each boolean also is the heartbeat. <br>
+ * On the control channel of a multiplexed connection, AutoPlug-Web pushes the status only when it changes
+ * ({@link #OFFLINE}/{@link #ONLINE}) and sends a {@link #HEARTBEAT} in between, which gets answered with a heartbeat,
+ * thus both sides notice a dead connection. <br>
+ * The connection counts as lost, once nothing was received for {@link #HEARTBEAT_TIMEOUT_MS}.
+ * That timeout must be set on the socket or channel the input belongs to.
+ */
+public class PresenceReader {
+    public static final byte OFFLINE = 0;
+    public static final byte ONLINE = 1;
+    public static final byte HEARTBEAT = 2;
+    public static final int HEARTBEAT_TIMEOUT_MS = 30000;
+    @NotNull
+    private final DataInputStream in;
+    /**
+     * Null for the legacy boolean stream, which doesn't get answered.
+     */
+    @Nullable
+    private final DataOutputStream out;
+    private boolean online;
+    private volatile long lastMessageAt;
+    private volatile long heartbeats;
+
+    /**
+     * @param in  the connection or control channel input.
+     * @param out the control channel output, to answer heartbeats, or null for the legacy boolean stream.
+     */
+    public PresenceReader(@NotNull InputStream in, @Nullable OutputStream out) {
+        this.in = new DataInputStream(in);
+        this.out = out == null ? null : new DataOutputStream(out);
+    }
+
+    /**
+     * Blocks until the next status or heartbeat arrives and returns the current status.
+     * Heartbeats return the last status, thus the caller regularly gets the chance
+     * to check if its connections are still fine.
+     *
+     * @throws IOException if the connection was lost, or nothing was received within the timeout.
+     */
+    public boolean next() throws IOException {
+        if (out == null) {
+            online = in.readBoolean();
+        } else {
+            byte msg = in.readByte();
+            switch (msg) {
+                case OFFLINE:
+                    online = false;
+                    break;
+                case ONLINE:
+                    online = true;
+                    break;
+                case HEARTBEAT:
+                    heartbeats++;
+                    out.writeByte(HEARTBEAT);
+                    out.flush();
+                    break;
+                default:
+                    throw new IOException("Unknown presence message " + msg + ".");
+            }
+        }
+        lastMessageAt = System.currentTimeMillis();
+        return online;
+    }
+
+    public boolean isOnline() {
+        return online;
+    }
+
+    /**
+     * When the last message was received, in epoch millis. 0 if none was received yet.
+     */
+    public long getLastMessageAt() {
+        return lastMessageAt;
+    }
+
+    /**
+     * The amount of explicit heartbeats received. Always 0 for the legacy boolean stream.
+     */
+    public long getHeartbeats() {
+        return heartbeats;
+    }
+}
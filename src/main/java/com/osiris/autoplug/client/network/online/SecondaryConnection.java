@@ -8,19 +8,30 @@
 
 package com.osiris.autoplug.client.network.online;
 
+import com.osiris.autoplug.client.configs.WebConfig;
+import com.osiris.autoplug.client.minecraft.console.OverflowPolicy;
+import com.osiris.autoplug.core.logger.AL;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
 import java.io.*;
 import java.net.Socket;
+import java.net.SocketException;
 
 /**
  * This class was built to be extended.
  * Can only be created if the MainConnection already was established.
  * If not the server will reject the connection.
  * Also this connection needs to be authenticated using the server key.
- * Active when the user is logged in on the website.
+ * Active when the user is logged in on the website. <br>
+ * If the main connection is multiplexed, this becomes a channel of it (see {@link Multiplexer}),
+ * otherwise it opens its own {@link SecuredConnection}.
  */
 public class SecondaryConnection {
     private final byte auth_id; // Very important to identify the connection
     private Socket socket;
+    @Nullable
+    private MultiplexedChannel channel;
     private InputStream in;
     private OutputStream out;
     private DataInputStream dataIn;
@@ -31,7 +42,13 @@ public class SecondaryConnection {
     }
 
     public boolean open() throws Exception {
+        Multiplexer mux = MainConnection.getMultiplexer();
+        if (mux != null) {
+            openChannel(mux);
+            return true;
+        }
         SecuredConnection auth = new SecuredConnection(auth_id);
+        channel = null;
         socket = auth.getSocket();
         in = auth.getInput();
         out = auth.getOutput();
@@ -40,20 +57,87 @@ public class SecondaryConnection {
         return true;
     }
 
+    /**
+     * Opens a channel of the main connection, which takes a single round-trip.
+     * Asks for compression like {@link SecuredConnection} does.
+     */
+    private void openChannel(@NotNull Multiplexer mux) throws Exception {
+        boolean compress = SecuredConnection.isCompressionWanted();
+        MultiplexedChannel ch = mux.openChannel(compress ? (byte) (auth_id | SecuredConnection.COMPRESSION_FLAG) : auth_id);
+        if (compress && ch.getResponse() == 4) {
+            SecuredConnection.setCompressionUnsupported(SecuredConnection.AUTOPLUG_WEB, auth_id);
+            compress = false;
+            ch = mux.openChannel(auth_id);
+        }
+        SecuredConnection.checkResponse(auth_id, ch.getResponse());
+        AL.debug(this.getClass(), "[CON_TYPE: " + auth_id + "] Opened channel " + ch.getId() + " of the main connection.");
+        socket = null;
+        channel = ch;
+        if (compress) {
+            CompressedOutputStream compressedOut = new CompressedOutputStream(ch.getOutput(), new CompressionStats("CON_TYPE " + auth_id + " out"));
+            out = compressedOut;
+            in = new CompressedInputStream(ch.getInput(), new CompressionStats("CON_TYPE " + auth_id + " in"), compressedOut);
+        } else {
+            out = ch.getOutput();
+            in = ch.getInput();
+        }
+        dataIn = new DataInputStream(in);
+        dataOut = new DataOutputStream(out);
+    }
+
     public void close() throws IOException {
         if (in != null) in.close();
         if (out != null) out.close();
-        if (isConnected()) socket.close();
+        if (channel != null) channel.close();
+        else if (isConnected()) socket.close();
+    }
+
+    /**
+     * Sets the read timeout of the socket, or of the channel if multiplexed. 0 to wait forever.
+     */
+    public void setTimeout(int ms) throws SocketException {
+        if (channel != null) channel.setReadTimeout(ms);
+        else if (socket != null) socket.setSoTimeout(ms);
+    }
+
+    /**
+     * Creates a writer for a stream of lines to AutoPlug-Web.
+     * The lines wait in a bounded {@link SendQueue} and get sent in frames by their own thread (see {@link FrameWriter}),
+     * thus writing never waits for the network.
+     *
+     * @param name       name of the stream, used for the queue and thread.
+     * @param webConfig  contains the frame and queue limits.
+     * @param policy     what to do when the queue is full.
+     */
+    @NotNull
+    public FrameWriter createFrameWriter(@NotNull String name, @NotNull WebConfig webConfig, @NotNull OverflowPolicy policy) {
+        int frameChars = webConfig.online_console_send_frame_size.asInt() * 1024;
+        SendQueue queue = new SendQueue(name, webConfig.online_console_send_queue_lines.asInt(),
+                webConfig.online_console_send_queue_memory.asInt() * 1024L, policy);
+        return new FrameWriter(name + "-Writer", new BufferedWriter(new OutputStreamWriter(out), frameChars),
+                webConfig.online_console_send_frame_interval.asInt(), frameChars, queue);
     }
 
     public boolean isConnected() {
+        if (channel != null) return channel.isOpen();
         return socket != null && !socket.isClosed();
     }
 
+    /**
+     * True if this is a channel of the main connection.
+     */
+    public boolean isMultiplexed() {
+        return channel != null;
+    }
+
     public byte getAuthId() {
         return auth_id;
     }
 
+    /**
+     * Null if this is a channel of the main connection (see {@link #isMultiplexed()}).
+     */
+    @Nullable
     public Socket getSocket() {
         return socket;
     }
@@ -9,28 +9,65 @@
 package com.osiris.autoplug.client.network.online;
 
 import com.osiris.autoplug.client.configs.GeneralConfig;
+import com.osiris.autoplug.client.configs.WebConfig;
 import com.osiris.autoplug.client.network.online.connections.OnlineConsoleReceiveConnection;
 import com.osiris.autoplug.client.network.online.connections.OnlineConsoleSendConnection;
 import com.osiris.autoplug.client.network.online.connections.PluginsUpdaterConnection;
 import com.osiris.autoplug.client.utils.GD;
 import com.osiris.autoplug.core.logger.AL;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
-import javax.net.SocketFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSessionContext;
 import javax.net.ssl.SSLSocket;
-import javax.net.ssl.SSLSocketFactory;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 /**
  * Authenticates this client to the AutoPlug-Web server.
- * Must be extended by each connection.
+ * Must be extended by each connection. <br>
+ * Secondary connections ask for compression, by sending their connection type with the {@link #COMPRESSION_FLAG}.
+ * If AutoPlug-Web accepts, both sides wrap their streams in raw deflate streams (see {@link CompressedOutputStream}).
+ * The main connection asks for multiplexing the same way, with the {@link #MULTIPLEX_FLAG}.
+ * If AutoPlug-Web accepts, the secondary connections become channels of the main connection (see {@link Multiplexer}). <br>
+ * Older AutoPlug-Web versions reject the flagged type as unknown (code 4). Then the connection gets
+ * established again without the flag, which is remembered until AutoPlug restarts. <br>
+ * All connections share one {@link SSLContext}, thus reconnects resume the cached TLS session.
+ * The handshake times per connection type are in {@link HandshakeStats}. <br>
+ * The main connection can be non-blocking (see {@link TlsConnection}), then all connections
+ * multiplexed over it get served by a single thread. <br>
+ * Tests and benchmarks connect to a local stand-in of AutoPlug-Web instead (see {@link Endpoint}).
  */
 public class SecuredConnection {
+    public static final byte COMPRESSION_FLAG = 0x40;
+    public static final byte MULTIPLEX_FLAG = 0x20;
+    private static final int SESSION_CACHE_SIZE = 16;
+    private static final int SESSION_TIMEOUT_SECONDS = 24 * 60 * 60;
+    /**
+     * The real AutoPlug-Web, used by all connections of AutoPlug.
+     */
+    @NotNull
+    static final Endpoint AUTOPLUG_WEB = new Endpoint(GD.OFFICIAL_WEBSITE_IP, 35555, null);
+    private static SSLContext sslContext;
+    @NotNull
+    private final Endpoint endpoint;
     private final byte conType;
+    @NotNull
+    private final String serverKey;
+    private boolean compressed;
+    private boolean multiplexed;
+    private boolean nonBlocking;
+    @Nullable
+    private TlsConnection tls;
     private Socket socket;
     private InputStream input;
     private OutputStream output;
@@ -49,34 +86,68 @@ public class SecuredConnection {
      * @throws Exception if authentication fails. Details are in the message.
      */
     public SecuredConnection(byte con_type) throws Exception {
-        this.conType = con_type;
-        while (true) {
-            AL.debug(this.getClass(), "[CON_TYPE: " + con_type + "] Connecting to AutoPlug-Web...");
-            connect(GD.OFFICIAL_WEBSITE_IP, 35555);
+        this(con_type, new GeneralConfig().server_key.asString(), new WebConfig());
+    }
 
-            // DDOS protection
-            int punishment = dataIn.readInt();
-            if (punishment == 0) {
-                AL.debug(this.getClass(), "[CON_TYPE: " + con_type + "] Connected to AutoPlug-Web successfully!");
-                break;
-            }
+    private SecuredConnection(byte con_type, @NotNull String serverKey, @NotNull WebConfig webConfig) throws Exception {
+        this(AUTOPLUG_WEB, con_type, serverKey, webConfig.multiplex.asBoolean(), webConfig.compression.asBoolean(), webConfig.nio.asBoolean());
+    }
 
-            AL.debug(this.getClass(), "[CON_TYPE: " + con_type + "] Connection to AutoPlug-Web throttled! Retrying in " + punishment / 1000 + " second(s).");
-            Thread.sleep(punishment + 250); // + 250ms, just to be safe
+    /**
+     * Like {@link #SecuredConnection(byte)}, but without reading the configs,
+     * thus each simulated client of a load test can use its own server key.
+     *
+     * @param endpoint    the server to connect to, {@link #AUTOPLUG_WEB} or a local stand-in.
+     * @param multiplex   ask for multiplexing, only used by the main connection.
+     * @param compression ask for compression, only used by secondary connections.
+     * @param nonBlocking use a {@link TlsConnection}, only used by the main connection.
+     */
+    SecuredConnection(@NotNull Endpoint endpoint, byte con_type, @NotNull String serverKey,
+                      boolean multiplex, boolean compression, boolean nonBlocking) throws Exception {
+        this.endpoint = endpoint;
+        this.conType = con_type;
+        this.serverKey = serverKey;
+        byte flag = 0;
+        if (con_type == 0) {
+            this.nonBlocking = nonBlocking;
+            if (!endpoint.multiplexUnsupported && multiplex) flag = MULTIPLEX_FLAG;
+        } else if (!endpoint.compressionUnsupported && compression) flag = COMPRESSION_FLAG;
+        byte response = authenticate(flag);
+        if (flag != 0 && response == 4) {
+            if (flag == MULTIPLEX_FLAG) {
+                AL.debug(this.getClass(), "[CON_TYPE: " + con_type + "] AutoPlug-Web doesn't support multiplexing. Reconnecting without it.");
+                endpoint.multiplexUnsupported = true;
+            } else
+                setCompressionUnsupported(endpoint, con_type);
+            flag = 0;
+            close();
+            response = authenticate(flag);
         }
+        checkResponse(con_type, response);
+        AL.debug(this.getClass(), "[CON_TYPE: " + con_type + "] Authenticated server successfully!");
+        if (flag == COMPRESSION_FLAG) enableCompression();
+        multiplexed = flag == MULTIPLEX_FLAG;
+    }
 
-        DataInputStream dis = new DataInputStream(input);
-        DataOutputStream dos = new DataOutputStream(output);
+    /**
+     * True if compression is enabled and AutoPlug-Web didn't reject it yet.
+     */
+    static boolean isCompressionWanted() throws Exception {
+        return !AUTOPLUG_WEB.compressionUnsupported && new WebConfig().compression.asBoolean();
+    }
 
-        AL.debug(this.getClass(), "[CON_TYPE: " + con_type + "] Authenticating server with Server-Key...");
-        dos.writeUTF(new GeneralConfig().server_key.asString()); // Send server key
-        dos.writeByte(con_type); // Send connection type
+    static void setCompressionUnsupported(@NotNull Endpoint endpoint, byte con_type) {
+        AL.debug(SecuredConnection.class, "[CON_TYPE: " + con_type + "] AutoPlug-Web doesn't support compression. Reconnecting without it.");
+        endpoint.compressionUnsupported = true;
+    }
 
-        byte response = dis.readByte(); // Get response
+    /**
+     * @throws Exception if the response code of AutoPlug-Web is not 0. Details are in the message.
+     */
+    static void checkResponse(byte con_type, byte response) throws Exception {
         switch (response) {
             case 0:
-                AL.debug(this.getClass(), "[CON_TYPE: " + con_type + "] Authenticated server successfully!");
-                break;
+                return;
             case 1:
                 throw new Exception("[CON_TYPE: " + con_type + "] Authentication failed (code:" + response + "): No matching server key found! Register your server at " + GD.OFFICIAL_WEBSITE + " and get your server-key. Restart AutoPlug when done.");
             case 2:
@@ -92,27 +163,123 @@ public class SecuredConnection {
         }
     }
 
+    /**
+     * Connects and sends the server key and connection type.
+     *
+     * @param flag {@link #COMPRESSION_FLAG}, {@link #MULTIPLEX_FLAG} or 0.
+     * @return the response code of AutoPlug-Web.
+     */
+    private byte authenticate(byte flag) throws Exception {
+        byte con_type = conType;
+        while (true) {
+            AL.debug(this.getClass(), "[CON_TYPE: " + con_type + "] Connecting to AutoPlug-Web...");
+            connect(endpoint.host, endpoint.port);
+
+            // DDOS protection
+            int punishment = dataIn.readInt();
+            if (punishment == 0) {
+                AL.debug(this.getClass(), "[CON_TYPE: " + con_type + "] Connected to AutoPlug-Web successfully!");
+                break;
+            }
+
+            AL.debug(this.getClass(), "[CON_TYPE: " + con_type + "] Connection to AutoPlug-Web throttled! Retrying in " + punishment / 1000 + " second(s).");
+            close();
+            Thread.sleep(punishment + 250); // + 250ms, just to be safe
+        }
+
+        DataInputStream dis = new DataInputStream(input);
+        DataOutputStream dos = new DataOutputStream(output);
+
+        AL.debug(this.getClass(), "[CON_TYPE: " + con_type + "] Authenticating server with Server-Key" + (flag == COMPRESSION_FLAG ? " (asking for compression)" : flag == MULTIPLEX_FLAG ? " (asking for multiplexing)" : "") + "...");
+        dos.writeUTF(serverKey); // Send server key
+        dos.writeByte(con_type | flag); // Send connection type
+
+        return dis.readByte(); // Get response
+    }
+
+    /**
+     * Wraps the streams, after AutoPlug-Web accepted compression.
+     */
+    private void enableCompression() throws IOException {
+        CompressedOutputStream out = new CompressedOutputStream(socket.getOutputStream(), new CompressionStats("CON_TYPE " + conType + " out"));
+        output = out;
+        input = new CompressedInputStream(socket.getInputStream(), new CompressionStats("CON_TYPE " + conType + " in"), out);
+        dataIn = new DataInputStream(input);
+        dataOut = new DataOutputStream(output);
+        compressed = true;
+        AL.debug(this.getClass(), "[CON_TYPE: " + conType + "] Compression enabled.");
+    }
+
+    /**
+     * The context shared by all connections. Its session cache lets reconnects resume the previous TLS session,
+     * instead of doing a full handshake again.
+     */
+    @NotNull
+    static synchronized SSLContext getSslContext() throws Exception {
+        if (sslContext == null) {
+            SSLContext ctx = SSLContext.getInstance("TLS");
+            ctx.init(null, null, null);
+            SSLSessionContext sessions = ctx.getClientSessionContext();
+            sessions.setSessionCacheSize(SESSION_CACHE_SIZE);
+            sessions.setSessionTimeout(SESSION_TIMEOUT_SECONDS);
+            sslContext = ctx;
+        }
+        return sslContext;
+    }
+
+    /**
+     * TLSv1.3 and TLSv1.2, if supported by this java version (TLSv1.3 needs Java 11, or a recent Java 8 update).
+     */
+    @NotNull
+    static String[] selectProtocols(@NotNull String[] supported) {
+        List<String> supportedList = Arrays.asList(supported);
+        List<String> protocols = new ArrayList<>();
+        for (String p : new String[]{"TLSv1.3", "TLSv1.2"}) {
+            if (supportedList.contains(p)) protocols.add(p);
+        }
+        return protocols.toArray(new String[0]);
+    }
+
+    /**
+     * A resumed session was created by an earlier handshake, a new one during this handshake.
+     */
+    static boolean isResumed(@NotNull SSLSession session, long handshakeStartMs) {
+        return session.getCreationTime() < handshakeStartMs;
+    }
+
     /**
      * Connects to a server with SSL.
      * After this you can use the get methods.
+     * Tries to resume the last session with that server, which saves a round-trip and the key exchange.
      *
      * @param host Server ip-address.
      * @param port Server port.
      * @throws Exception
      */
     public void connect(String host, int port) throws Exception {
-        //SSLContext ctx = SSLContext.getInstance("TLSv1.3");
-        SocketFactory factory = SSLSocketFactory.getDefault();
-        socket = factory.createSocket(host, port);
+        if (nonBlocking) {
+            connectNonBlocking(host, port);
+            return;
+        }
+        SSLContext ctx = endpoint.getSslContext();
+        SSLSocket sslSocket = (SSLSocket) ctx.getSocketFactory().createSocket(host, port); // Host and port identify the session to resume
+        socket = sslSocket;
 
         //System.setProperty("javax.net.debug", "all");
-        ((SSLSocket) socket).setEnabledProtocols(
-                new String[]{"TLSv1.2"});
-        ((SSLSocket) socket).getSSLParameters().setEndpointIdentificationAlgorithm("HTTPS");
+        sslSocket.setEnabledProtocols(selectProtocols(sslSocket.getSupportedProtocols()));
+        sslSocket.getSSLParameters().setEndpointIdentificationAlgorithm("HTTPS");
 
         registerHandshakeCallback(socket);
 
-        ((SSLSocket) socket).startHandshake();
+        long startMs = System.currentTimeMillis();
+        long start = System.nanoTime();
+        sslSocket.startHandshake();
+        long nanos = System.nanoTime() - start;
+        SSLSession session = sslSocket.getSession();
+        boolean resumed = isResumed(session, startMs);
+        HandshakeStats.of(conType).add(nanos, resumed, session.getProtocol());
+        AL.debug(this.getClass(), "[CON_TYPE: " + conType + "] " + session.getProtocol() + " handshake took "
+                + String.format("%.1f", nanos / 1_000_000.0) + "ms (" + (resumed ? "resumed session" : "full handshake") + ").");
 
         socket.setSoTimeout(30000);
         input = socket.getInputStream();
@@ -121,6 +288,37 @@ public class SecuredConnection {
         dataOut = new DataOutputStream(output);
     }
 
+    /**
+     * Like {@link #connect(String, int)}, but served by the shared {@link EventLoop} (see {@link TlsConnection}).
+     */
+    private void connectNonBlocking(String host, int port) throws Exception {
+        tls = TlsConnection.connect(EventLoop.get(), endpoint.getSslContext(), host, port, 30000);
+        socket = null;
+        SSLSession session = tls.getSession();
+        boolean resumed = tls.isResumed();
+        HandshakeStats.of(conType).add(tls.getHandshakeNanos(), resumed, session.getProtocol());
+        AL.debug(this.getClass(), "[CON_TYPE: " + conType + "] Non-blocking " + session.getProtocol() + " handshake took "
+                + String.format("%.1f", tls.getHandshakeNanos() / 1_000_000.0) + "ms (" + (resumed ? "resumed session" : "full handshake") + ").");
+        tls.setReadTimeout(30000);
+        input = tls.getInput();
+        output = tls.getOutput();
+        dataIn = new DataInputStream(input);
+        dataOut = new DataOutputStream(output);
+    }
+
+    /**
+     * Sets the read timeout of the connection. 0 to wait forever.
+     */
+    public void setTimeout(int ms) throws IOException {
+        if (tls != null) tls.setReadTimeout(ms);
+        else if (socket != null) socket.setSoTimeout(ms);
+    }
+
+    public void close() throws IOException {
+        if (tls != null) tls.close();
+        else if (socket != null) socket.close();
+    }
+
     private void registerHandshakeCallback(@NotNull Socket socket) {
         ((SSLSocket) socket).addHandshakeCompletedListener(event -> {
                     AL.debug(SecuredConnection.class, "[CON_TYPE: " + conType + "] Handshake finished!");
@@ -131,6 +329,30 @@ public class SecuredConnection {
         );
     }
 
+    public boolean isCompressed() {
+        return compressed;
+    }
+
+    /**
+     * True if AutoPlug-Web accepted to carry the secondary connections over this one.
+     * Then the streams must be wrapped in a {@link Multiplexer}.
+     */
+    public boolean isMultiplexed() {
+        return multiplexed;
+    }
+
+    /**
+     * The non-blocking connection, or null if this uses a blocking socket.
+     */
+    @Nullable
+    public TlsConnection getTlsConnection() {
+        return tls;
+    }
+
+    /**
+     * Null if the connection is non-blocking (see {@link #getTlsConnection()}).
+     */
+    @Nullable
     public Socket getSocket() {
         return socket;
     }
@@ -150,4 +372,32 @@ public class SecuredConnection {
     public DataOutputStream getDataOut() {
         return dataOut;
     }
+
+    /**
+     * The server connections go to. Remembers which features that server rejected (see {@link #MULTIPLEX_FLAG}),
+     * as long as it is used, thus until AutoPlug restarts for {@link #AUTOPLUG_WEB}.
+     */
+    static final class Endpoint {
+        @NotNull
+        final String host;
+        final int port;
+        @Nullable
+        private final SSLContext sslContext;
+        volatile boolean compressionUnsupported;
+        volatile boolean multiplexUnsupported;
+
+        /**
+         * @param sslContext trusting the certificate of that server, or null for the context shared by all connections.
+         */
+        Endpoint(@NotNull String host, int port, @Nullable SSLContext sslContext) {
+            this.host = host;
+            this.port = port;
+            this.sslContext = sslContext;
+        }
+
+        @NotNull
+        SSLContext getSslContext() throws Exception {
+            return sslContext != null ? sslContext : SecuredConnection.getSslContext();
+        }
+    }
 }
@@ -0,0 +1,195 @@
+/*
+ * Copyright Osiris Team
+ * All rights reserved.
+ *
+ * This software is copyrighted work licensed under the terms of the
+ * AutoPlug License.  Please consult the file "LICENSE" for details.
+ */
+
+package com.osiris.autoplug.client.network.online;
+
+import com.osiris.autoplug.client.minecraft.console.OverflowPolicy;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * The bounded queue of lines, waiting to be sent to AutoPlug-Web. <br>
+ * Adding a line never blocks: Once the queue reached its line or memory limit, the oldest lines get dropped,
+ * thus a slow connection never slows down the Minecraft server. With {@link OverflowPolicy#SUMMARIZE}
+ * the next sent frame starts with a line, telling how many lines were skipped.
+ * {@link OverflowPolicy#BLOCK} is not supported. <br>
+ * The memory of a line is counted as 2 bytes per char. <br>
+ * All open queues are listed in {@link #getAll()}, to show their depth and drops.
+ */
+public class SendQueue {
+    @NotNull
+    private static final List<SendQueue> ALL = new CopyOnWriteArrayList<>();
+    @NotNull
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+    @NotNull
+    private final String name;
+    private final int maxLines;
+    private final long maxBytes;
+    @NotNull
+    private final OverflowPolicy policy;
+    @NotNull
+    private final ArrayDeque<char[]> lines = new ArrayDeque<>();
+    private long chars;
+    private long pendingSkipped;
+
+    private volatile long offered;
+    private volatile long sent;
+    private volatile long dropped;
+    private volatile int maxDepth;
+
+    /**
+     * Creates the queue and adds it to {@link #getAll()}, until it gets closed.
+     *
+     * @param maxLines the max amount of queued lines.
+     * @param maxBytes the max memory of the queued lines.
+     * @param policy   {@link OverflowPolicy#DROP_OLDEST} or {@link OverflowPolicy#SUMMARIZE}.
+     */
+    public SendQueue(@NotNull String name, int maxLines, long maxBytes, @NotNull OverflowPolicy policy) {
+        if (policy == OverflowPolicy.BLOCK)
+            throw new IllegalArgumentException("A send queue never blocks, use DROP_OLDEST or SUMMARIZE instead.");
+        this.name = name;
+        this.maxLines = maxLines;
+        this.maxBytes = maxBytes;
+        this.policy = policy;
+        ALL.add(this);
+    }
+
+    /**
+     * The open queues.
+     */
+    @NotNull
+    public static List<SendQueue> getAll() {
+        return new ArrayList<>(ALL);
+    }
+
+    /**
+     * Copies the line into the queue and drops the oldest lines, if needed to stay within the limits.
+     * Notifies threads waiting on this queue.
+     */
+    public synchronized void offer(@NotNull CharSequence line) {
+        int len = line.length();
+        char[] c = new char[len];
+        if (line instanceof String)
+            ((String) line).getChars(0, len, c, 0);
+        else
+            for (int i = 0; i < len; i++)
+                c[i] = line.charAt(i);
+
+        while (!lines.isEmpty() && (lines.size() >= maxLines || (chars + len) * 2 > maxBytes)) {
+            chars -= lines.pollFirst().length;
+            dropped++;
+            if (policy == OverflowPolicy.SUMMARIZE) pendingSkipped++;
+        }
+        lines.addLast(c);
+        chars += len;
+        offered++;
+        if (lines.size() > maxDepth) maxDepth = lines.size();
+        notifyAll();
+    }
+
+    /**
+     * Writes the oldest lines (each followed by a line separator) to the writer and removes them from the queue.
+     * Writes at least one line, if there is any, but stops before exceeding the provided amount of chars.
+     *
+     * @return the amount of lines written, including the summary of skipped lines.
+     */
+    public synchronized int drainTo(@NotNull Writer out, int maxChars) throws IOException {
+        int count = 0;
+        int written = 0;
+        if (pendingSkipped > 0) {
+            String summary = "[AutoPlug] Skipped " + pendingSkipped + " line(s), because the connection to AutoPlug-Web was too slow.";
+            out.write(summary);
+            out.write(LINE_SEPARATOR);
+            written += summary.length() + LINE_SEPARATOR.length();
+            pendingSkipped = 0;
+            count++;
+        }
+        while (!lines.isEmpty()) {
+            char[] c = lines.peekFirst();
+            if (count > 0 && written + c.length + LINE_SEPARATOR.length() > maxChars) break;
+            lines.pollFirst();
+            chars -= c.length;
+            out.write(c);
+            out.write(LINE_SEPARATOR);
+            written += c.length + LINE_SEPARATOR.length();
+            count++;
+        }
+        sent += count;
+        return count;
+    }
+
+    public synchronized boolean isEmpty() {
+        return lines.isEmpty() && pendingSkipped == 0;
+    }
+
+    /**
+     * The amount of queued lines.
+     */
+    public synchronized int getDepth() {
+        return lines.size();
+    }
+
+    /**
+     * The amount of queued chars, without line separators.
+     */
+    public synchronized long getChars() {
+        return chars;
+    }
+
+    public synchronized long getBytes() {
+        return chars * 2;
+    }
+
+    /**
+     * Removes this queue from {@link #getAll()}.
+     */
+    public void close() {
+        ALL.remove(this);
+    }
+
+    @NotNull
+    public String getName() {
+        return name;
+    }
+
+    @NotNull
+    public OverflowPolicy getPolicy() {
+        return policy;
+    }
+
+    public long getOffered() {
+        return offered;
+    }
+
+    public long getSent() {
+        return sent;
+    }
+
+    public long getDropped() {
+        return dropped;
+    }
+
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    /**
+     * Example: depth 12 lines (3KB, max 850 lines), 12000 added, 11988 sent, 0 dropped
+     */
+    @NotNull
+    public String getStats() {
+        return "depth " + getDepth() + " lines (" + (getBytes() / 1024) + "KB, max " + maxDepth + " lines), "
+                + offered + " added, " + sent + " sent, " + dropped + " dropped";
+    }
+}
@@ -0,0 +1,594 @@
+/*
+ * Copyright Osiris Team
+ * All rights reserved.
+ *
+ * This software is copyrighted work licensed under the terms of the
+ * AutoPlug License.  Please consult the file "LICENSE" for details.
+ */
+
+package com.osiris.autoplug.client.network.online;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLSession;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A non-blocking TLS connection, served by an {@link EventLoop} through an {@link SSLEngine}. <br>
+ * The encrypted data is read and written with direct buffers by the loop thread.
+ * Received data gets passed to the {@link Listener} straight from the decryption buffer,
+ * or until one is set, copied for the blocking {@link #getInput()}, which is used for the authentication. <br>
+ * Writes from any thread copy the data into a pooled buffer and queue it, the loop thread then encrypts and sends it
+ * and returns the buffer to the pool. Only one send task waits in the loop at a time, however many writes there are. <br>
+ * Without a listener, writers wait once {@link #MAX_PENDING_BYTES} are queued.
+ * With one, like the {@link Multiplexer}, they never wait for the network, since the listener may need the writers locks
+ * on the loop thread. There the queue is bounded by the flow control of the {@link Multiplexer} instead. <br>
+ * The handshake tasks of the engine run on the loop thread too, since they only take a few milliseconds.
+ */
+public class TlsConnection implements EventLoop.Handler {
+    /**
+     * The max amount of written, but not yet encrypted bytes, before writers wait (only without a {@link Listener}).
+     */
+    public static final long MAX_PENDING_BYTES = 1024 * 1024;
+    /**
+     * Writes up to this size use a pooled buffer. Fits a full {@link Multiplexer} frame.
+     */
+    static final int POOLED_BUFFER_SIZE = Multiplexer.MAX_FRAME_PAYLOAD + 9;
+    private static final int POOL_SIZE = 16;
+    @NotNull
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+    @NotNull
+    private final EventLoop loop;
+    @NotNull
+    private final SSLEngine engine;
+    @NotNull
+    private final InetSocketAddress address;
+    @NotNull
+    private final CompletableFuture<Void> handshake = new CompletableFuture<>();
+    @NotNull
+    private final ConcurrentLinkedQueue<ByteBuffer> pending = new ConcurrentLinkedQueue<>();
+    @NotNull
+    private final AtomicLong pendingBytes = new AtomicLong();
+    /**
+     * Empty buffers of {@link #POOLED_BUFFER_SIZE}, given back by the loop thread once sent.
+     */
+    @NotNull
+    private final ArrayBlockingQueue<ByteBuffer> pool = new ArrayBlockingQueue<>(POOL_SIZE);
+    @NotNull
+    private final AtomicBoolean sendScheduled = new AtomicBoolean();
+    @NotNull
+    private final Runnable sendTask = () -> {
+        sendScheduled.set(false); // Before sending, so writes from now on schedule again
+        try {
+            process(false);
+        } catch (IOException e) {
+            fail(e);
+        }
+    };
+    @NotNull
+    private final StreamInput input = new StreamInput();
+    @NotNull
+    private final OutputStream output = new StreamOutput();
+    @Nullable
+    private volatile Listener listener;
+    private volatile boolean closing;
+    private volatile boolean closed;
+    @Nullable
+    private volatile IOException error;
+
+    // Only used by the loop thread
+    private SocketChannel channel;
+    private SelectionKey key;
+    @NotNull
+    private ByteBuffer netIn;
+    @NotNull
+    private ByteBuffer netOut;
+    @NotNull
+    private ByteBuffer appIn;
+    private boolean handshakeStarted;
+    private boolean handshakeDone;
+    private long handshakeStartMs;
+    private long handshakeStartNanos;
+    private volatile long handshakeNanos;
+
+    private TlsConnection(@NotNull EventLoop loop, @NotNull SSLEngine engine, @NotNull InetSocketAddress address) {
+        this.loop = loop;
+        this.engine = engine;
+        this.address = address;
+        SSLSession session = engine.getSession();
+        this.netIn = ByteBuffer.allocateDirect(session.getPacketBufferSize());
+        this.netOut = ByteBuffer.allocateDirect(session.getPacketBufferSize());
+        this.appIn = ByteBuffer.allocate(session.getApplicationBufferSize());
+    }
+
+    /**
+     * Connects and waits for the TLS handshake to finish.
+     * Resumes the last session with that host and port, if the context still has it cached.
+     *
+     * @throws SocketTimeoutException if it took longer than the timeout.
+     */
+    @NotNull
+    public static TlsConnection connect(@NotNull EventLoop loop, @NotNull SSLContext ctx, @NotNull String host, int port,
+                                        long timeoutMs) throws IOException {
+        InetSocketAddress address = new InetSocketAddress(host, port); // Resolve here, not on the loop thread
+        SSLEngine engine = ctx.createSSLEngine(host, port);
+        engine.setUseClientMode(true);
+        engine.setEnabledProtocols(SecuredConnection.selectProtocols(engine.getSupportedProtocols()));
+        TlsConnection con = new TlsConnection(loop, engine, address);
+        loop.execute(con::start);
+        try {
+            con.handshake.get(timeoutMs, TimeUnit.MILLISECONDS);
+            return con;
+        } catch (TimeoutException e) {
+            con.close();
+            throw new SocketTimeoutException("Connecting to " + host + ":" + port + " took longer than " + timeoutMs + "ms.");
+        } catch (ExecutionException e) {
+            con.close();
+            throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            con.close();
+            throw new IOException("Interrupted while connecting to " + host + ":" + port + ".");
+        }
+    }
+
+    private void start() {
+        try {
+            channel = SocketChannel.open();
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+            boolean connected = channel.connect(address);
+            key = loop.register(channel, connected ? SelectionKey.OP_READ : SelectionKey.OP_CONNECT, this);
+            if (connected) beginHandshake();
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    private void beginHandshake() throws IOException {
+        handshakeStartMs = System.currentTimeMillis();
+        handshakeStartNanos = System.nanoTime();
+        engine.beginHandshake();
+        handshakeStarted = true;
+        process(false);
+    }
+
+    @Override
+    public void onSelected(@NotNull SelectionKey key) {
+        try {
+            if (key.isConnectable()) {
+                channel.finishConnect();
+                key.interestOps(SelectionKey.OP_READ);
+                beginHandshake();
+                return;
+            }
+            process(key.isReadable());
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    /**
+     * Reads, decrypts and delivers the received data, continues the handshake
+     * and encrypts and sends the queued data, as far as possible without blocking.
+     */
+    private void process(boolean readable) throws IOException {
+        if (closed || !handshakeStarted) return;
+        if (readable && channel.read(netIn) == -1)
+            throw new EOFException("Connection was closed by the other side.");
+        while (!closed) {
+            SSLEngineResult.HandshakeStatus hs = engine.getHandshakeStatus();
+            if (hs == SSLEngineResult.HandshakeStatus.NEED_TASK) {
+                Runnable task;
+                while ((task = engine.getDelegatedTask()) != null) task.run();
+                continue;
+            }
+            if (hs == SSLEngineResult.HandshakeStatus.NEED_WRAP
+                    || (handshakeDone && hs == SSLEngineResult.HandshakeStatus.NOT_HANDSHAKING && !pending.isEmpty())) {
+                if (!flushNet() || !wrap(hs == SSLEngineResult.HandshakeStatus.NEED_WRAP)) break;
+                continue;
+            }
+            if (!unwrap()) break;
+        }
+        if (closed) return;
+        flushNet();
+        if (key.isValid()) key.interestOps(SelectionKey.OP_READ | (netOut.position() > 0 ? SelectionKey.OP_WRITE : 0));
+    }
+
+    /**
+     * @return true if something was encrypted.
+     */
+    private boolean wrap(boolean handshaking) throws IOException {
+        ByteBuffer src = handshaking ? EMPTY : pending.peek();
+        if (src == null) return false;
+        SSLEngineResult result = engine.wrap(src, netOut);
+        switch (result.getStatus()) {
+            case OK:
+                break;
+            case BUFFER_OVERFLOW:
+                netOut = enlarge(netOut, engine.getSession().getPacketBufferSize());
+                return true;
+            case CLOSED:
+                throw new EOFException("TLS connection was closed.");
+            default:
+                throw new SSLException("Unexpected result while encrypting: " + result.getStatus());
+        }
+        if (!handshaking) {
+            if (!src.hasRemaining()) {
+                pending.poll();
+                if (src.capacity() == POOLED_BUFFER_SIZE) {
+                    ((Buffer) src).clear();
+                    pool.offer(src);
+                }
+            }
+            long before = pendingBytes.getAndAdd(-result.bytesConsumed());
+            if (before >= MAX_PENDING_BYTES && before - result.bytesConsumed() < MAX_PENDING_BYTES) {
+                synchronized (pendingBytes) {
+                    pendingBytes.notifyAll();
+                }
+            }
+        }
+        checkHandshakeDone(result);
+        return result.bytesConsumed() > 0 || result.bytesProduced() > 0;
+    }
+
+    /**
+     * @return true if something was decrypted, or more space is needed for it.
+     */
+    private boolean unwrap() throws IOException {
+        if (netIn.position() == 0) return false;
+        ((Buffer) netIn).flip();
+        SSLEngineResult result;
+        try {
+            result = engine.unwrap(netIn, appIn);
+        } finally {
+            netIn.compact();
+        }
+        deliver();
+        switch (result.getStatus()) {
+            case OK:
+                checkHandshakeDone(result);
+                return result.bytesConsumed() > 0 || result.bytesProduced() > 0;
+            case BUFFER_UNDERFLOW:
+                // Needs more data, thus make sure it fits
+                if (netIn.position() == netIn.capacity()) netIn = enlarge(netIn, engine.getSession().getPacketBufferSize());
+                return false;
+            case BUFFER_OVERFLOW:
+                appIn = ByteBuffer.allocate(Math.max(engine.getSession().getApplicationBufferSize(), appIn.capacity() * 2));
+                return true;
+            default:
+                throw new EOFException("Connection was closed by the other side.");
+        }
+    }
+
+    private void checkHandshakeDone(@NotNull SSLEngineResult result) {
+        if (handshakeDone || !handshakeStarted) return;
+        if (result.getHandshakeStatus() == SSLEngineResult.HandshakeStatus.FINISHED
+                || engine.getHandshakeStatus() == SSLEngineResult.HandshakeStatus.NOT_HANDSHAKING) {
+            handshakeDone = true;
+            handshakeNanos = System.nanoTime() - handshakeStartNanos;
+            handshake.complete(null);
+        }
+    }
+
+    private boolean flushNet() throws IOException {
+        if (netOut.position() == 0) return true;
+        ((Buffer) netOut).flip();
+        channel.write(netOut);
+        boolean empty = !netOut.hasRemaining();
+        netOut.compact();
+        return empty;
+    }
+
+    @NotNull
+    private static ByteBuffer enlarge(@NotNull ByteBuffer buffer, int minCapacity) {
+        ByteBuffer bigger = ByteBuffer.allocateDirect(Math.max(minCapacity, buffer.capacity() * 2));
+        ((Buffer) buffer).flip();
+        bigger.put(buffer);
+        return bigger;
+    }
+
+    private void deliver() throws IOException {
+        if (appIn.position() == 0) return;
+        ((Buffer) appIn).flip();
+        try {
+            Listener l = listener;
+            if (l != null) {
+                l.onData(appIn.array(), appIn.arrayOffset() + appIn.position(), appIn.remaining());
+            } else {
+                byte[] data = new byte[appIn.remaining()];
+                appIn.get(data);
+                input.add(data);
+            }
+        } finally {
+            ((Buffer) appIn).clear();
+        }
+    }
+
+    private void fail(@NotNull IOException e) {
+        if (closed) return;
+        closed = true;
+        error = e;
+        handshake.completeExceptionally(e);
+        try {
+            if (key != null) key.cancel();
+            if (channel != null) channel.close();
+        } catch (IOException ignored) {
+        }
+        input.onError(e);
+        synchronized (pendingBytes) {
+            pendingBytes.notifyAll();
+        }
+        Listener l = listener;
+        if (l != null) l.onClosed(e);
+    }
+
+    private void write(@NotNull byte[] b, int off, int len) throws IOException {
+        if (len == 0) return;
+        if (listener == null && !loop.inLoop()) awaitPendingBelowMax();
+        IOException e = error;
+        if (e != null) throw e;
+        if (closed || closing) throw new IOException("Connection is closed.");
+        ByteBuffer copy = null;
+        if (len <= POOLED_BUFFER_SIZE) {
+            copy = pool.poll();
+            if (copy == null) copy = ByteBuffer.allocate(POOLED_BUFFER_SIZE);
+        }
+        if (copy == null) copy = ByteBuffer.allocate(len);
+        copy.put(b, off, len);
+        ((Buffer) copy).flip();
+        pendingBytes.addAndGet(len);
+        pending.add(copy);
+        if (sendScheduled.compareAndSet(false, true)) loop.execute(sendTask);
+    }
+
+    private void awaitPendingBelowMax() throws IOException {
+        if (pendingBytes.get() < MAX_PENDING_BYTES) return;
+        synchronized (pendingBytes) {
+            while (pendingBytes.get() >= MAX_PENDING_BYTES && !closed) {
+                try {
+                    pendingBytes.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while waiting to write.");
+                }
+            }
+        }
+    }
+
+    /**
+     * Passes all received data to the listener on the loop thread, starting with the data buffered for {@link #getInput()},
+     * which can't be used anymore afterwards.
+     */
+    public void setListener(@NotNull Listener listener) {
+        loop.execute(() -> {
+            byte[] buffered = input.handOver();
+            this.listener = listener;
+            IOException e = error;
+            try {
+                if (buffered.length > 0) listener.onData(buffered, 0, buffered.length);
+            } catch (IOException ex) {
+                fail(ex);
+                return;
+            }
+            if (e != null) listener.onClosed(e);
+        });
+    }
+
+    /**
+     * Sends the TLS close message and closes the connection.
+     */
+    public void close() {
+        if (closing) return;
+        closing = true;
+        loop.execute(() -> {
+            if (closed) return;
+            try {
+                engine.closeOutbound();
+                if (channel != null && channel.isConnected()) {
+                    flushNet();
+                    engine.wrap(EMPTY, netOut);
+                    flushNet();
+                }
+            } catch (IOException ignored) {
+                // The other side may have closed the connection already
+            }
+            fail(new IOException("Connection is closed."));
+        });
+    }
+
+    public boolean isOpen() {
+        return !closed && !closing;
+    }
+
+    /**
+     * The blocking input, until a {@link Listener} is set.
+     */
+    @NotNull
+    public InputStream getInput() {
+        return input;
+    }
+
+    @NotNull
+    public OutputStream getOutput() {
+        return output;
+    }
+
+    /**
+     * The max time a read of {@link #getInput()} waits for data. 0 to wait forever.
+     */
+    public void setReadTimeout(int ms) {
+        input.setTimeout(ms);
+    }
+
+    @NotNull
+    public SSLSession getSession() {
+        return engine.getSession();
+    }
+
+    /**
+     * The amount of bytes written, but not yet encrypted.
+     */
+    public long getPendingBytes() {
+        return pendingBytes.get();
+    }
+
+    public long getHandshakeNanos() {
+        return handshakeNanos;
+    }
+
+    /**
+     * True if the handshake resumed an earlier session (see {@link SecuredConnection#isResumed(SSLSession, long)}).
+     */
+    public boolean isResumed() {
+        return SecuredConnection.isResumed(engine.getSession(), handshakeStartMs);
+    }
+
+    public interface Listener {
+        /**
+         * Called on the loop thread, thus must not block.
+         * The array gets reused afterwards, thus copy what is needed later.
+         */
+        void onData(@NotNull byte[] b, int off, int len) throws IOException;
+
+        /**
+         * Called on the loop thread, once the connection was closed or lost.
+         */
+        void onClosed(@NotNull IOException e);
+    }
+
+    private static class StreamInput extends InputStream {
+        @NotNull
+        private final ArrayDeque<byte[]> received = new ArrayDeque<>();
+        private int firstOffset;
+        @Nullable
+        private IOException error;
+        private boolean handedOver;
+        private int timeoutMs;
+
+        synchronized void add(@NotNull byte[] data) {
+            received.addLast(data);
+            notifyAll();
+        }
+
+        synchronized void onError(@NotNull IOException e) {
+            if (error == null) error = e;
+            notifyAll();
+        }
+
+        synchronized void setTimeout(int ms) {
+            timeoutMs = ms;
+        }
+
+        /**
+         * Returns the buffered data. Reads fail afterwards.
+         */
+        @NotNull
+        synchronized byte[] handOver() {
+            int size = -firstOffset;
+            for (byte[] b : received) size += b.length;
+            byte[] all = new byte[size];
+            int pos = 0;
+            for (byte[] b : received) {
+                int start = pos == 0 ? firstOffset : 0;
+                System.arraycopy(b, start, all, pos, b.length - start);
+                pos += b.length - start;
+            }
+            received.clear();
+            firstOffset = 0;
+            handedOver = true;
+            notifyAll();
+            return all;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+        }
+
+        @Override
+        public synchronized int read(@NotNull byte[] b, int off, int len) throws IOException {
+            if (len == 0) return 0;
+            long deadline = timeoutMs > 0 ? System.currentTimeMillis() + timeoutMs : 0;
+            while (received.isEmpty() && error == null && !handedOver) {
+                long wait = 0;
+                if (deadline != 0) {
+                    wait = deadline - System.currentTimeMillis();
+                    if (wait <= 0) throw new SocketTimeoutException("Read timed out.");
+                }
+                try {
+                    wait(wait);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while reading.");
+                }
+            }
+            if (handedOver) throw new IOException("The received data is passed to a listener instead.");
+            if (received.isEmpty()) {
+                if (error instanceof EOFException) return -1;
+                throw error;
+            }
+            int n = 0;
+            while (n < len && !received.isEmpty()) {
+                byte[] first = received.peekFirst();
+                int count = Math.min(len - n, first.length - firstOffset);
+                System.arraycopy(first, firstOffset, b, off + n, count);
+                n += count;
+                firstOffset += count;
+                if (firstOffset == first.length) {
+                    received.pollFirst();
+                    firstOffset = 0;
+                }
+            }
+            return n;
+        }
+
+        @Override
+        public synchronized int available() {
+            int size = -firstOffset;
+            for (byte[] b : received) size += b.length;
+            return Math.max(0, size);
+        }
+    }
+
+    private class StreamOutput extends OutputStream {
+        @Override
+        public void write(int b) throws IOException {
+            TlsConnection.this.write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(@NotNull byte[] b, int off, int len) throws IOException {
+            TlsConnection.this.write(b, off, len);
+        }
+
+        @Override
+        public void close() {
+            TlsConnection.this.close();
+        }
+    }
+}
@@ -35,12 +35,14 @@ public class OnlineConsoleReceiveConnection extends SecondaryConnection {
         if (thread == null)
             thread = new Thread(() -> {
                 try {
-                    getSocket().setSoTimeout(0);
+                    setTimeout(0);
                     DataInputStream dis = getDataIn();
                     while (true) {
                         String command = dis.readUTF();
-                        Server.submitCommand(command);
-                        AL.info("Executed Web-Command: " + command);
+                        Server.submitCommand(command).whenComplete((c, e) -> {
+                            if (e != null) AL.warn("Error executing Web-Command '" + command + "'! " + e.getMessage());
+                            else AL.info("Executed Web-Command: " + command);
+                        });
                     }
                 } catch (Exception e) {
                     AL.warn(this.getClass(), e);
@@ -10,48 +10,133 @@ package com.osiris.autoplug.client.network.online.connections;
 
 import com.osiris.autoplug.client.configs.WebConfig;
 import com.osiris.autoplug.client.minecraft.Server;
+import com.osiris.autoplug.client.minecraft.console.ConsoleLine;
+import com.osiris.autoplug.client.minecraft.console.ConsoleLineBus;
+import com.osiris.autoplug.client.minecraft.console.ConsoleScrollback;
+import com.osiris.autoplug.client.minecraft.console.OverflowPolicy;
+import com.osiris.autoplug.client.network.online.ConsoleSendFilter;
+import com.osiris.autoplug.client.network.online.FrameWriter;
 import com.osiris.autoplug.client.network.online.SecondaryConnection;
-import com.osiris.autoplug.client.utils.NonBlockingPipedInputStream;
 import com.osiris.autoplug.core.logger.AL;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
-import java.io.BufferedWriter;
 import java.io.IOException;
-import java.io.OutputStreamWriter;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 
 /**
  * Read the InputStreams of AutoPlug and the Minecraft server and
  * send it to the AutoPlug server when the user is online.
- * Note that
+ * Note that the lines get sent in frames (see {@link FrameWriter}), thus they can arrive a few milliseconds later.
  */
 public class OnlineConsoleSendConnection extends SecondaryConnection {
     @Nullable
-    private static BufferedWriter bw;
-    private static final NonBlockingPipedInputStream.WriteLineEvent<String> action = line -> {
+    private static volatile FrameWriter writer;
+    private static final ConsoleSendFilter.Output output = line -> getWriter().write(line, false);
+    @Nullable
+    private static volatile ConsoleSendFilter filter;
+    private static final ConsoleLineBus.LineListener action = line -> {
         try {
-            send(line);
+            ConsoleSendFilter f = filter;
+            if (f != null) f.process(line, output);
+            else sendLine(line);
         } catch (Exception e) {
             AL.warn("Failed to send message to online console!", e);
         }
     };
+    @Nullable
+    private static ConsoleLineBus.Subscriber subscriber;
     private static Thread thread;
 
     public OnlineConsoleSendConnection() {
         super((byte) 2);  // Each connection has its own auth_id.
     }
 
-    public static synchronized void send(@NotNull String message) throws Exception {
-        if (!message.contains(System.lineSeparator())) {
-            bw.write(message + System.lineSeparator());
-        } else {
-            bw.write(message);
+    /**
+     * Sends the message right away, without waiting for the current frame to fill up.
+     */
+    public static void send(@NotNull String message) throws Exception {
+        getWriter().write(message, true);
+        AL.debug(OnlineConsoleSendConnection.class, "SENT LINE: " + message);
+    }
+
+    /**
+     * Writes the lines chars directly into the current frame,
+     * thus no {@link String} gets created for the line.
+     */
+    public static void sendLine(@NotNull ConsoleLine line) throws Exception {
+        getWriter().writeLine(line);
+    }
+
+    @NotNull
+    private static FrameWriter getWriter() throws IOException {
+        FrameWriter w = writer;
+        if (w == null) throw new IOException("Online-Console-SEND is not connected.");
+        return w;
+    }
+
+    /**
+     * The filter of the current connection, or null if not connected.
+     */
+    @Nullable
+    public static ConsoleSendFilter getFilter() {
+        return filter;
+    }
+
+    /**
+     * The frame writer of the current connection, or null if not connected.
+     */
+    @Nullable
+    public static FrameWriter getFrameWriter() {
+        return writer;
+    }
+
+    /**
+     * Sends the recent lines from the {@link ConsoleScrollback},
+     * so that the Online-Console doesn't start empty.
+     * Lines that the subscriber receives anyway get skipped.
+     */
+    private static void replay(@NotNull WebConfig webConfig, long startSequence, long subscribedAt) throws Exception {
+        ConsoleScrollback scrollback = Server.getConsoleScrollback();
+        int maxLines = webConfig.online_console_send_replay_lines.asInt();
+        if (scrollback == null || maxLines <= 0) return;
+
+        int minutes = webConfig.online_console_send_replay_minutes.asInt();
+        List<ConsoleScrollback.Line> lines = minutes > 0 ?
+                scrollback.readSince(System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(minutes), maxLines)
+                : scrollback.readLast(maxLines);
+        int count = 0;
+        for (ConsoleScrollback.Line line : lines) {
+            // Sequences restart with AutoPlug, thus only lines written after subscribing can be duplicates
+            if (line.getTime() >= subscribedAt && line.getSequence() >= startSequence) continue;
+            ConsoleSendFilter f = filter;
+            if (f != null) f.process(line.getText(), output);
+            else getWriter().write(line.getText(), false);
+            count++;
         }
-        bw.flush();
+        AL.debug(OnlineConsoleSendConnection.class, "Replayed " + count + " recent lines to the Online-Console.");
+    }
 
-        AL.debug(OnlineConsoleSendConnection.class, "SENT LINE: " + message);
+    /**
+     * Creates the filter from the config. Invalid rules get ignored (they were already reported when loading the config).
+     */
+    @NotNull
+    private static ConsoleSendFilter createFilter(@NotNull WebConfig webConfig) {
+        List<String> rules = new ArrayList<>();
+        for (String rule : webConfig.online_console_send_filter.asStringList()) {
+            try {
+                ConsoleSendFilter.parseRule(rule, new ArrayList<>(), new ArrayList<>());
+                rules.add(rule);
+            } catch (IllegalArgumentException ignored) {
+            }
+        }
+        return new ConsoleSendFilter(rules, TimeUnit.SECONDS.toMillis(webConfig.online_console_send_collapse_seconds.asInt()),
+                webConfig.online_console_send_collapse_window.asInt());
     }
 
     @Override
@@ -59,18 +144,35 @@ public class OnlineConsoleSendConnection extends SecondaryConnection {
         if (thread == null) {
             thread = new Thread(() -> {
                 try {
-                    if (new WebConfig().online_console_send.asBoolean()) {
+                    WebConfig webConfig = new WebConfig();
+                    if (webConfig.online_console_send.asBoolean()) {
                         super.open();
-                        if (bw == null) {
-                            getSocket().setSoTimeout(0);
-                            bw = new BufferedWriter(new OutputStreamWriter(getOut()));
-                            while (Server.NB_PIPED_IN == null)
-                                Thread.sleep(1000); // Wait until we got a server outputstream
-
-                            Server.NB_PIPED_IN.actionsOnWriteLineEvent.add(action);
+                        if (writer == null) {
+                            setTimeout(0);
+                            OverflowPolicy policy = OverflowPolicy.valueOf(webConfig.online_console_send_overflow_policy.asString());
+                            writer = createFrameWriter("Online-Console-SEND", webConfig, policy);
+                            filter = createFilter(webConfig);
+                            // Subscribe before replaying, so that no line gets lost in between.
+                            // New lines wait in the bus until the replay is done.
+                            CountDownLatch replayDone = new CountDownLatch(1);
+                            long subscribedAt = System.currentTimeMillis();
+                            // Runs on its own thread and only copies the lines into the send queue,
+                            // thus a slow connection never slows down the local console
+                            ConsoleLineBus.Subscriber sub = Server.CONSOLE_BUS.subscribe("Online-Console-SEND", policy, line -> {
+                                        replayDone.await();
+                                        action.onLine(line);
+                                    });
+                            subscriber = sub;
+                            AL.debug(this.getClass(), "Online-Console-SEND connected.");
+                            send("Online-Console-SEND connected at " + new Date() + ".");
+                            try {
+                                replay(webConfig, sub.getStartSequence(), subscribedAt);
+                            } catch (Exception e) {
+                                AL.warn("Failed to send recent lines to the Online-Console.", e);
+                            } finally {
+                                replayDone.countDown();
+                            }
                         }
-                        AL.debug(this.getClass(), "Online-Console-SEND connected.");
-                        send("Online-Console-SEND connected at " + new Date() + ".");
                     } else {
                         AL.debug(this.getClass(), "Online-Console-SEND functionality is disabled.");
                     }
@@ -88,10 +190,11 @@ public class OnlineConsoleSendConnection extends SecondaryConnection {
     public void close() throws IOException {
 
         try {
-            if (Server.NB_PIPED_IN != null)
-                Server.NB_PIPED_IN.actionsOnWriteLineEvent.remove(action);
+            if (subscriber != null)
+                subscriber.close();
         } catch (Exception ignored) {
         }
+        subscriber = null;
 
         try {
             if (thread != null && !thread.isInterrupted()) thread.interrupt();
@@ -101,12 +204,16 @@ public class OnlineConsoleSendConnection extends SecondaryConnection {
         thread = null;
 
         try {
-            if (bw != null)
-                bw.close();
+            FrameWriter w = writer;
+            if (w != null) {
+                w.close();
+                AL.debug(this.getClass(), "Online-Console-SEND sent " + w.getStats() + ". Queue: " + w.getQueue().getStats() + ".");
+            }
         } catch (Exception e) {
-            AL.warn("Failed to close writer.", e);
+            AL.warn("Failed to stop writer.", e);
         }
-        bw = null;
+        writer = null;
+        filter = null;
 
         try {
             super.close();
@@ -13,8 +13,6 @@ import com.osiris.autoplug.core.logger.AL;
 import com.osiris.betterthread.BetterThread;
 import com.osiris.betterthread.BetterThreadManager;
 
-import java.net.Socket;
-
 /**
  * This is a temporary connection, which gets closed after
  * finishing its tasks.
@@ -30,8 +28,7 @@ public class PluginsUpdaterConnection extends SecondaryConnection {
     public boolean open() throws Exception {
         super.open();
         try {
-            Socket socket = getSocket();
-            socket.setSoTimeout(0);
+            setTimeout(0);
         } catch (Exception e) {
             AL.warn(e);
         }
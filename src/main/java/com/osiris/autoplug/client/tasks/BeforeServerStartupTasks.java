@@ -10,6 +10,7 @@ package com.osiris.autoplug.client.tasks;
 
 import com.osiris.autoplug.client.configs.BackupConfig;
 import com.osiris.autoplug.client.configs.TasksConfig;
+import com.osiris.autoplug.client.minecraft.Server;
 import com.osiris.autoplug.client.network.online.MainConnection;
 import com.osiris.autoplug.client.network.online.connections.PluginsUpdaterConnection;
 import com.osiris.autoplug.client.tasks.backup.TaskPluginsBackup;
@@ -17,6 +18,7 @@ import com.osiris.autoplug.client.tasks.backup.TaskServerFilesBackup;
 import com.osiris.autoplug.client.tasks.backup.TaskWorldsBackup;
 import com.osiris.autoplug.client.tasks.scheduler.TaskCustomRestarter;
 import com.osiris.autoplug.client.tasks.scheduler.TaskDailyRestarter;
+import com.osiris.autoplug.client.tasks.updater.TaskStagedUpdatesInstaller;
 import com.osiris.autoplug.client.tasks.updater.plugins.TaskPluginsUpdater;
 import com.osiris.autoplug.client.tasks.updater.self.TaskSelfUpdater;
 import com.osiris.autoplug.client.tasks.updater.server.TaskServerUpdater;
@@ -42,8 +44,7 @@ public class BeforeServerStartupTasks {
             tasksConfig = new TasksConfig();
 
             // Wait until the main connection stuff is done, so the log isn't a mess
-            while (!MainConnection.isDone)
-                Thread.sleep(1000);
+            MainConnection.awaitDone();
 
             man = new BetterThreadManager();
             dis = new BetterThreadDisplayer(
@@ -69,6 +70,7 @@ public class BeforeServerStartupTasks {
             TaskDailyRestarter taskDailyRestarter = new TaskDailyRestarter("DailyRestarter", man);
             TaskCustomRestarter taskCustomRestarter = new TaskCustomRestarter("CustomRestarter", man);
 
+            TaskStagedUpdatesInstaller taskStagedUpdatesInstaller = new TaskStagedUpdatesInstaller("StagedUpdatesInstaller", man);
             TaskServerUpdater taskServerUpdater = new TaskServerUpdater("ServerUpdater", man);
             TaskPluginsUpdater taskPluginsUpdater = new TaskPluginsUpdater("PluginsUpdater", man, new PluginsUpdaterConnection());
 
@@ -76,16 +78,20 @@ public class BeforeServerStartupTasks {
             // Start processes
             selfUpdater.start();
 
-            while (!selfUpdater.isFinished()) // Wait until the self updater finishes
-                Thread.sleep(1000);
+            selfUpdater.join(); // Wait until the self updater finishes
 
             taskWorldsBackup.start();
             taskPluginsBackup.start();
             taskServerFilesBackup.start();
 
             // Wait till backup is done
-            while (!taskWorldsBackup.isFinished() || !taskPluginsBackup.isFinished() || !taskServerFilesBackup.isFinished())
-                Thread.sleep(1000);
+            taskWorldsBackup.join();
+            taskPluginsBackup.join();
+            taskServerFilesBackup.join();
+
+            // Install the updates, that were downloaded while the server was running, after the backups were made
+            taskStagedUpdatesInstaller.start();
+            taskStagedUpdatesInstaller.join();
 
             taskDailyRestarter.start();
             taskCustomRestarter.start();
@@ -94,13 +100,17 @@ public class BeforeServerStartupTasks {
             taskPluginsUpdater.start();
 
             // Wait until the rest is finished
-            while (!man.isFinished())
-                Thread.sleep(1000);
+            for (BetterThread t :
+                    man.getAll()) {
+                t.join();
+            }
 
             if (!tasksConfig.live_tasks.asBoolean())
                 printFinalStatus(man.getAll());
 
             printSummary(man.getAll());
+            // Trend of the previous starts, this start gets reported once the server is ready
+            Server.STARTUP_PROFILER.printTrend();
             printWarnings(man.getAllWarnings());
 
         } catch (Exception e) {
@@ -0,0 +1,196 @@
+/*
+ * Copyright Osiris Team
+ * All rights reserved.
+ *
+ * This software is copyrighted work licensed under the terms of the
+ * AutoPlug License.  Please consult the file "LICENSE" for details.
+ */
+
+package com.osiris.autoplug.client.tasks;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.osiris.autoplug.client.configs.BackupConfig;
+import com.osiris.autoplug.client.configs.InstanceConfig;
+import com.osiris.autoplug.client.configs.UpdaterConfig;
+import com.osiris.autoplug.client.minecraft.ServerInstance;
+import com.osiris.autoplug.client.tasks.updater.SharedDownloads;
+import com.osiris.autoplug.client.tasks.updater.plugins.DetailedPlugin;
+import com.osiris.autoplug.client.tasks.updater.plugins.PluginManager;
+import com.osiris.autoplug.client.tasks.updater.plugins.TaskPluginsUpdater;
+import com.osiris.autoplug.core.json.JsonTools;
+import com.osiris.autoplug.core.logger.AL;
+import net.lingala.zip4j.ZipFile;
+import org.apache.commons.io.FileUtils;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The tasks executed before an additional server instance starts (see {@link com.osiris.autoplug.client.minecraft.ServerInstances}),
+ * like the {@link BeforeServerStartupTasks} of the main server: <br>
+ * 1. Backs up its worlds and plugins. <br>
+ * 2. Updates its server jar. <br>
+ * 3. Updates its plugins, based on the results of the main servers plugins check. <br>
+ * The updater profiles and backup settings are the ones of the main server, the downloads are shared by all instances (see {@link SharedDownloads}).
+ * Failing tasks only get logged, since the server can still be started.
+ */
+public class InstanceStartupTasks {
+    @NotNull
+    private final ServerInstance instance;
+    @NotNull
+    private final String formattedDate = LocalDateTime.now().format(DateTimeFormatter.ofPattern("dd-MM-yyyy-HH.mm"));
+
+    public InstanceStartupTasks(@NotNull ServerInstance instance) {
+        this.instance = instance;
+    }
+
+    public void execute() throws Exception {
+        InstanceConfig config = new InstanceConfig(instance.getWorkingDir());
+        if (config.instance_backup.asBoolean()) {
+            try {
+                backup(new BackupConfig());
+            } catch (Exception e) {
+                AL.warn("Failed to back up server '" + instance.getName() + "'.", e);
+            }
+        }
+        UpdaterConfig updaterConfig = new UpdaterConfig();
+        if (config.instance_server_updater.asBoolean()) {
+            try {
+                updateServer(config, updaterConfig.server_updater_profile.asString());
+            } catch (Exception e) {
+                AL.warn("Failed to update server '" + instance.getName() + "'.", e);
+            }
+        }
+        if (config.instance_plugin_updater.asBoolean() && updaterConfig.plugin_updater.asBoolean()) {
+            try {
+                updatePlugins(updaterConfig.plugin_updater_profile.asString());
+            } catch (Exception e) {
+                AL.warn("Failed to update the plugins of server '" + instance.getName() + "'.", e);
+            }
+        }
+    }
+
+    private void backup(@NotNull BackupConfig config) throws Exception {
+        File dir = instance.getWorkingDir();
+        if (config.backup_worlds.asBoolean()) {
+            List<File> worlds = new ArrayList<>();
+            File[] files = dir.listFiles(f -> f.isDirectory() && f.getName().contains("world"));
+            if (files != null) for (File f : files) worlds.add(f);
+            backup(new File(dir + "/autoplug-backups/worlds"), "worlds-backup-", worlds,
+                    config.backup_worlds_max_days.asInt(), config.backup_worlds_cool_down.asInt());
+        }
+        if (config.backup_plugins.asBoolean()) {
+            List<File> plugins = new ArrayList<>();
+            File pluginsDir = new File(dir, "plugins");
+            if (pluginsDir.isDirectory()) plugins.add(pluginsDir);
+            backup(new File(dir + "/autoplug-backups/plugins"), "plugins-backup-", plugins,
+                    config.backup_plugins_max_days.asInt(), config.backup_plugins_cool_down.asInt());
+        }
+    }
+
+    /**
+     * @param coolDown minutes since the last backup, in which no new one gets created.
+     */
+    private void backup(@NotNull File backupsDir, @NotNull String prefix, @NotNull List<File> folders,
+                        int maxDays, int coolDown) throws Exception {
+        if (folders.isEmpty()) return;
+        backupsDir.mkdirs();
+        File[] zips = backupsDir.listFiles((d, n) -> n.startsWith(prefix) && n.endsWith(".zip"));
+        long now = System.currentTimeMillis();
+        long newest = 0;
+        if (zips != null)
+            for (File zip : zips) {
+                if (maxDays > 0 && zip.lastModified() < now - TimeUnit.DAYS.toMillis(maxDays)) FileUtils.deleteQuietly(zip);
+                else newest = Math.max(newest, zip.lastModified());
+            }
+        if (newest > now - TimeUnit.MINUTES.toMillis(coolDown)) {
+            AL.debug(this.getClass(), "Skipped " + prefix + " of '" + instance.getName() + "'. Cool-down still active.");
+            return;
+        }
+
+        ZipFile zip = new ZipFile(new File(backupsDir, prefix + formattedDate + ".zip"));
+        for (File folder : folders) {
+            zip.addFolder(folder);
+        }
+        AL.debug(this.getClass(), "Created " + prefix + " of '" + instance.getName() + "' to: " + zip.getFile());
+    }
+
+    private void updateServer(@NotNull InstanceConfig config, @NotNull String profile) throws Exception {
+        String software = config.instance_server_software.asString();
+        String version = config.instance_server_version.asString();
+        int buildId = config.instance_build_id.asInt();
+        String address = "https://papermc.io/api/v2/projects/" + software + "/versions/" + version;
+        JsonArray builds = new JsonTools().getJsonObject(address).getAsJsonArray("builds");
+        int latestBuildId = builds.get(builds.size() - 1).getAsInt();
+        if (latestBuildId <= buildId) return;
+
+        if (profile.equals("NOTIFY")) {
+            AL.info("Server '" + instance.getName() + "' has an update available (" + buildId + " -> " + latestBuildId + ")!");
+            return;
+        }
+        JsonObject application = new JsonTools().getJsonObject(address + "/builds/" + latestBuildId)
+                .getAsJsonObject("downloads").getAsJsonObject("application");
+        String url = address + "/builds/" + latestBuildId + "/downloads/" + application.get("name").getAsString();
+        File download = SharedDownloads.download(url, software + "-" + version + "-" + latestBuildId + ".jar",
+                application.get("sha256").getAsString()).get(30, TimeUnit.MINUTES);
+        if (profile.equals("MANUAL")) {
+            AL.info("Server '" + instance.getName() + "' has an update available (" + buildId + " -> " + latestBuildId + "), downloaded to: " + download);
+            return;
+        }
+
+        File jar = config.findServerJar();
+        if (jar == null) jar = new File(instance.getWorkingDir(), software + "-latest.jar");
+        FileUtils.copyFile(download, jar);
+        config.instance_build_id.setValues("" + latestBuildId);
+        config.save();
+        AL.info("Server '" + instance.getName() + "' was updated (" + buildId + " -> " + latestBuildId + ").");
+    }
+
+    private void updatePlugins(@NotNull String profile) throws Exception {
+        List<CompletableFuture<?>> replacements = new ArrayList<>();
+        for (DetailedPlugin pl : new PluginManager().getPlugins(instance.getWorkingDir())) {
+            TaskPluginsUpdater.Latest latest = TaskPluginsUpdater.getLatest(pl.getName());
+            if (latest == null || latest.getVersion().equals(pl.getVersion())) continue;
+            if (profile.equals("NOTIFY")) {
+                AL.info("Plugin " + pl.getName() + " of server '" + instance.getName() + "' has an update available ("
+                        + pl.getVersion() + " -> " + latest.getVersion() + ")");
+                continue;
+            }
+            if (!latest.getType().equals(".jar") && !latest.getType().equals("external")) continue;
+            CompletableFuture<File> download = SharedDownloads.download(latest.getUrl(),
+                    pl.getName() + "-[" + latest.getVersion() + "].jar", null);
+            if (profile.equals("MANUAL")) {
+                replacements.add(download.thenAccept(file -> AL.info("Plugin " + pl.getName() + " of server '" + instance.getName()
+                        + "' has an update available (" + pl.getVersion() + " -> " + latest.getVersion() + "), downloaded to: " + file)));
+                continue;
+            }
+            replacements.add(download.thenAccept(file -> {
+                try {
+                    File oldPl = new File(pl.getInstallationPath());
+                    File dest = new File(oldPl.getParentFile(), pl.getName() + "-LATEST-[" + latest.getVersion() + "].jar");
+                    FileUtils.copyFile(file, dest);
+                    if (!oldPl.equals(dest) && !oldPl.delete()) throw new Exception("Failed to delete the old jar: " + oldPl);
+                    AL.info("Plugin " + pl.getName() + " of server '" + instance.getName() + "' was updated ("
+                            + pl.getVersion() + " -> " + latest.getVersion() + ").");
+                } catch (Exception e) {
+                    AL.warn("Failed to update plugin " + pl.getName() + " of server '" + instance.getName() + "'.", e);
+                }
+            }));
+        }
+        // The downloads run in parallel, the server starts once they are done
+        for (CompletableFuture<?> f : replacements) {
+            try {
+                f.get(30, TimeUnit.MINUTES);
+            } catch (Exception e) {
+                AL.warn("Failed to download a plugin update for server '" + instance.getName() + "'.", e);
+            }
+        }
+    }
+}
@@ -30,11 +30,10 @@ public class CustomRestartJob implements Job {
             List<String> commands = new RestarterConfig().c_restarter_commands.asStringList();
 
             for (String command : commands) {
-                try {
-                    Server.submitCommand(command);
-                } catch (Exception e) {
-                    AL.warn(e, "Error executing '" + command + "' command!");
-                }
+                // Returns right away, the commands get written in order by the servers command queue
+                Server.submitCommand(command).whenComplete((c, e) -> {
+                    if (e != null) AL.warn("Error executing '" + command + "' command! " + e.getMessage());
+                });
             }
 
             Thread.sleep(10000);
@@ -9,7 +9,9 @@
 package com.osiris.autoplug.client.tasks.scheduler;
 
 import com.osiris.autoplug.client.configs.RestarterConfig;
+import com.osiris.autoplug.client.minecraft.ProcessResourceMonitor;
 import com.osiris.autoplug.client.minecraft.Server;
+import com.osiris.autoplug.client.minecraft.ServerInstances;
 import com.osiris.autoplug.core.logger.AL;
 import com.osiris.dyml.exceptions.*;
 import org.jetbrains.annotations.NotNull;
@@ -25,22 +27,25 @@ public class RestartJob implements Job {
     public void execute(JobExecutionContext context) throws JobExecutionException {
         try {
             AL.info("Executing scheduled restart in 10sec...");
+            ProcessResourceMonitor monitor = Server.getResourceMonitor();
+            if (monitor != null && monitor.getSummary() != null)
+                AL.info("Server resources before restart: " + monitor.getSummary());
 
             //Before restarting execute server
             List<String> commands = new RestarterConfig().restarter_commands.asStringList();
 
             for (String command : commands) {
-                try {
-                    Server.submitCommand(command);
-                } catch (Exception e) {
-                    AL.warn(e, "Error executing '" + command + "' command!");
-                }
+                // Returns right away, the commands get written in order by the servers command queue
+                Server.submitCommand(command).whenComplete((c, e) -> {
+                    if (e != null) AL.warn("Error executing '" + command + "' command! " + e.getMessage());
+                });
             }
 
 
             Thread.sleep(10000);
             //Restart the server
             Server.restart();
+            ServerInstances.restartAll();
         } catch (@NotNull InterruptedException | IOException | DuplicateKeyException | DYReaderException
                 | IllegalListException | DYWriterException | NotLoadedException | IllegalKeyException e) {
             AL.warn("Error while executing restart!", e);
@@ -0,0 +1,97 @@
+/*
+ * Copyright Osiris Team
+ * All rights reserved.
+ *
+ * This software is copyrighted work licensed under the terms of the
+ * AutoPlug License.  Please consult the file "LICENSE" for details.
+ */
+
+package com.osiris.autoplug.client.tasks.updater;
+
+import com.osiris.autoplug.client.minecraft.Server;
+import com.osiris.autoplug.client.minecraft.ServerLifecycle;
+import com.osiris.autoplug.client.network.online.connections.PluginsUpdaterConnection;
+import com.osiris.autoplug.client.tasks.updater.plugins.TaskPluginsUpdater;
+import com.osiris.autoplug.client.tasks.updater.self.TaskSelfUpdater;
+import com.osiris.autoplug.client.tasks.updater.server.TaskServerUpdater;
+import com.osiris.autoplug.core.logger.AL;
+import com.osiris.betterthread.BetterThread;
+import com.osiris.betterthread.BetterThreadManager;
+import com.osiris.betterthread.BetterWarning;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the updaters while the server is running, when staged updates are enabled. <br>
+ * The first check happens once the server is ready, then every interval.
+ * Found updates get downloaded, verified and staged, see {@link StagedUpdates}.
+ */
+public class BackgroundUpdater {
+    private final long intervalMs;
+    @NotNull
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "Background-Updater");
+        t.setDaemon(true);
+        return t;
+    });
+    private volatile long lastCheck;
+
+    public BackgroundUpdater(int intervalHours) {
+        this.intervalMs = TimeUnit.HOURS.toMillis(intervalHours);
+    }
+
+    public void start() {
+        Server.LIFECYCLE.addListener((oldState, newState) -> {
+            if (newState == ServerLifecycle.State.READY) executor.execute(this::checkIfDue);
+        });
+        executor.scheduleWithFixedDelay(this::checkIfDue, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void checkIfDue() {
+        if (Server.LIFECYCLE.getState() != ServerLifecycle.State.READY) return;
+        if (System.currentTimeMillis() - lastCheck < intervalMs) return;
+        check();
+    }
+
+    /**
+     * Runs the updaters and waits until they are done.
+     */
+    public void check() {
+        lastCheck = System.currentTimeMillis();
+        AL.info("Checking for updates in the background...");
+        try {
+            BetterThreadManager man = new BetterThreadManager();
+            TaskSelfUpdater selfUpdater = new TaskSelfUpdater("Self-Updater", man);
+            selfUpdater.start();
+            selfUpdater.join();
+
+            new TaskServerUpdater("ServerUpdater", man).start();
+            new TaskPluginsUpdater("PluginsUpdater", man, new PluginsUpdaterConnection()).start();
+            // The updaters start the downloads as separate tasks, thus the list may grow while waiting
+            for (int i = 0; i < man.getAll().size(); i++) {
+                man.getAll().get(i).join();
+            }
+
+            for (BetterThread t : man.getAll()) {
+                AL.debug(this.getClass(), "[" + t.getName() + "] " + t.getStatus());
+                for (String s : t.getSummary()) {
+                    AL.info(s);
+                }
+            }
+            for (BetterWarning w : man.getAllWarnings()) {
+                AL.warn(w.getException(), w.getExtraInfo());
+            }
+            int staged = StagedUpdates.get().getAll().size();
+            if (staged > 0)
+                AL.info(staged + " update(s) are staged and get installed at the next restart.");
+            else
+                AL.info("Finished checking for updates in the background.");
+        } catch (InterruptedException ignored) {
+        } catch (Exception e) {
+            AL.warn("Failed to check for updates in the background.", e);
+        }
+    }
+}
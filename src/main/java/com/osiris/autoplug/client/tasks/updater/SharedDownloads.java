@@ -0,0 +1,143 @@
+/*
+ * Copyright Osiris Team
+ * All rights reserved.
+ *
+ * This software is copyrighted work licensed under the terms of the
+ * AutoPlug License.  Please consult the file "LICENSE" for details.
+ */
+
+package com.osiris.autoplug.client.tasks.updater;
+
+import com.osiris.autoplug.client.utils.GD;
+import com.osiris.autoplug.core.logger.AL;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import org.apache.commons.io.FileUtils;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Downloads the updates of the additional server instances (see {@link com.osiris.autoplug.client.minecraft.ServerInstances})
+ * into /autoplug-downloads, on a small pool of threads shared by all instances. <br>
+ * Instances that need the same file (same server build, or same plugin version) share one download,
+ * and a file that was already downloaded by another instance isn't downloaded again.
+ */
+public final class SharedDownloads {
+    /**
+     * The amount of downloads running at the same time.
+     */
+    public static final int THREADS = 3;
+    @NotNull
+    private static final Map<String, CompletableFuture<File>> downloads = new ConcurrentHashMap<>();
+    @NotNull
+    private static final OkHttpClient client = new OkHttpClient();
+    @NotNull
+    private static final ExecutorService executor;
+
+    static {
+        AtomicInteger count = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(THREADS, r -> {
+            Thread t = new Thread(r, "Shared-Downloads-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    private SharedDownloads() {
+    }
+
+    /**
+     * The directory the files get downloaded to.
+     */
+    @NotNull
+    public static File getDir() {
+        return new File(GD.WORKING_DIR + "/autoplug-downloads");
+    }
+
+    /**
+     * Downloads the file, or returns the download of it, that is already running or finished.
+     *
+     * @param url      the download-url.
+     * @param fileName the files name in {@link #getDir()}. Must be unique for the files content, for example by containing its version.
+     * @param sha256   null, or the expected hash of the file. The download fails if it doesn't match.
+     * @return completes with the downloaded file.
+     */
+    @NotNull
+    public static CompletableFuture<File> download(@NotNull String url, @NotNull String fileName, @Nullable String sha256) {
+        File dest = new File(getDir(), fileName);
+        CompletableFuture<File> future = downloads.compute(dest.getAbsolutePath(), (key, existing) -> {
+            // Also downloads it again, if the file was deleted in the meantime
+            if (existing != null && (!existing.isDone() || dest.exists())) return existing;
+            return CompletableFuture.supplyAsync(() -> {
+                try {
+                    return downloadNow(url, dest, sha256);
+                } catch (Exception e) {
+                    throw new CompletionException(e);
+                }
+            }, executor);
+        });
+        // A failed download gets retried by the next instance that needs it
+        future.whenComplete((file, e) -> {
+            if (e != null) downloads.remove(dest.getAbsolutePath(), future);
+        });
+        return future;
+    }
+
+    @NotNull
+    private static File downloadNow(@NotNull String url, @NotNull File dest, @Nullable String sha256) throws Exception {
+        if (dest.exists() && dest.length() > 0 && (sha256 == null || sha256.equals(sha256(dest)))) {
+            AL.debug(SharedDownloads.class, "Using already downloaded " + dest.getName());
+            return dest;
+        }
+        AL.debug(SharedDownloads.class, "Downloading " + dest.getName() + " from: " + url);
+        Request request = new Request.Builder().url(url)
+                .header("User-Agent", "AutoPlug Client/" + new Random().nextInt() + " - https://autoplug.online")
+                .build();
+        // Written to a temporary file first, so no one uses a half downloaded file
+        File tmp = new File(dest.getParentFile(), dest.getName() + ".part");
+        dest.getParentFile().mkdirs();
+        try (Response response = client.newCall(request).execute()) {
+            if (response.code() != 200)
+                throw new Exception("Download failed! Code: " + response.code() + " Message: " + response.message() + " Url: " + url);
+            ResponseBody body = response.body();
+            if (body == null)
+                throw new Exception("Download failed because of empty response body!");
+            try (InputStream in = body.byteStream()) {
+                Files.copy(in, tmp.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        if (sha256 != null && !sha256.equals(sha256(tmp))) {
+            tmp.delete();
+            throw new Exception("Downloaded " + dest.getName() + " is broken (SHA-256 hash doesn't match)!");
+        }
+        if (dest.exists()) dest.delete();
+        if (!tmp.renameTo(dest))
+            throw new IOException("Failed to move " + tmp + " to " + dest);
+        return dest;
+    }
+
+    @NotNull
+    private static String sha256(@NotNull File file) throws Exception {
+        byte[] hash = MessageDigest.getInstance("SHA-256").digest(FileUtils.readFileToByteArray(file));
+        StringBuilder hex = new StringBuilder(2 * hash.length);
+        for (byte b : hash) {
+            String s = Integer.toHexString(0xff & b);
+            if (s.length() == 1) hex.append('0');
+            hex.append(s);
+        }
+        return hex.toString();
+    }
+}
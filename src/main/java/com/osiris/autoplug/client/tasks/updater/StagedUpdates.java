@@ -0,0 +1,289 @@
+/*
+ * Copyright Osiris Team
+ * All rights reserved.
+ *
+ * This software is copyrighted work licensed under the terms of the
+ * AutoPlug License.  Please consult the file "LICENSE" for details.
+ */
+
+package com.osiris.autoplug.client.tasks.updater;
+
+import com.osiris.autoplug.client.utils.GD;
+import com.osiris.autoplug.core.logger.AL;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The staging area for updates, that were downloaded and verified while the server was running. <br>
+ * The files wait in /autoplug-staging and get installed at the next restart, before the server starts,
+ * which only means moving files around and takes a few milliseconds. <br>
+ * Installing happens in two steps: First each staged file gets moved next to its destination (as .autoplug-new file),
+ * then each of those gets renamed to its final name. If the first step fails for any file, nothing gets installed,
+ * so the server never starts with only half of the updates. A file that fails the second step gets moved back,
+ * thus stays staged for the next restart.
+ */
+public class StagedUpdates {
+    private static final String SEPARATOR = "|";
+    private static StagedUpdates instance;
+    @NotNull
+    private final File dir;
+    @NotNull
+    private final File manifest;
+    @NotNull
+    private final List<Entry> entries = new ArrayList<>();
+
+    public StagedUpdates(@NotNull File dir) {
+        this.dir = dir;
+        this.manifest = new File(dir, "staged-updates.txt");
+        load();
+    }
+
+    /**
+     * The staging area in the working directory.
+     */
+    @NotNull
+    public static synchronized StagedUpdates get() {
+        if (instance == null) instance = new StagedUpdates(new File(GD.WORKING_DIR + "/autoplug-staging"));
+        return instance;
+    }
+
+    /**
+     * Moves the verified download into the staging area. Replaces an already staged update for the same type and name.
+     *
+     * @param type       what gets updated.
+     * @param name       the name of the plugin/server software.
+     * @param version    the version of the download. For the server this is the build-id.
+     * @param downloaded the downloaded and verified file.
+     * @param target     where the file should be installed.
+     * @param replaced   the file to delete once installed (for example the old plugin jar with a different name). Can be null.
+     */
+    public synchronized void stage(@NotNull Type type, @NotNull String name, @NotNull String version,
+                                   @NotNull File downloaded, @NotNull File target, @Nullable File replaced) throws IOException {
+        if (!dir.exists()) dir.mkdirs();
+        Entry old = find(type, name);
+        if (old != null) {
+            entries.remove(old);
+            old.staged.delete();
+        }
+        File staged = new File(dir, type.name().toLowerCase() + "-" + name.replaceAll("[^a-zA-Z0-9._-]", "_") + "-" + version + ".jar");
+        move(downloaded, staged);
+        entries.add(new Entry(type, name, version, staged, target, replaced));
+        save();
+        AL.debug(this.getClass(), "Staged " + type + " update " + name + " (" + version + "): " + staged + " -> " + target);
+    }
+
+    /**
+     * Installs all staged updates, except {@link Type#SELF}, which must be installed by restarting AutoPlug. <br>
+     * See the class description for details.
+     *
+     * @return the installed updates. Empty if there were none, or installing failed.
+     */
+    @NotNull
+    public synchronized List<Entry> install() {
+        List<Entry> toInstall = new ArrayList<>();
+        for (Entry e : entries) {
+            if (e.type != Type.SELF) toInstall.add(e);
+        }
+        if (toInstall.isEmpty()) return toInstall;
+
+        // 1. Move each file next to its destination
+        List<File> prepared = new ArrayList<>();
+        try {
+            for (Entry e : toInstall) {
+                File tmp = new File(e.target.getAbsoluteFile().getParentFile(), e.target.getName() + ".autoplug-new");
+                if (!e.staged.exists()) throw new FileNotFoundException("Staged file is missing: " + e.staged);
+                tmp.getParentFile().mkdirs();
+                move(e.staged, tmp);
+                prepared.add(tmp);
+            }
+        } catch (Exception ex) {
+            AL.warn("Failed to install the staged updates. Nothing was changed.", ex);
+            // Move back what was already moved
+            for (int i = 0; i < prepared.size(); i++) {
+                try {
+                    move(prepared.get(i), toInstall.get(i).staged);
+                } catch (IOException ignored) {
+                }
+            }
+            return new ArrayList<>();
+        }
+
+        // 2. Rename into place, which is atomic on the same file system
+        List<Entry> installed = new ArrayList<>();
+        for (int i = 0; i < toInstall.size(); i++) {
+            Entry e = toInstall.get(i);
+            try {
+                move(prepared.get(i), e.target);
+                if (e.replaced != null && !e.replaced.getAbsoluteFile().equals(e.target.getAbsoluteFile()) && e.replaced.exists())
+                    e.replaced.delete();
+                installed.add(e);
+                entries.remove(e);
+            } catch (Exception ex) {
+                AL.warn("Failed to install the staged update for " + e.name + " (" + e.version + ").", ex);
+                // Move it back, thus it gets installed at the next restart and doesn't block the other updates
+                try {
+                    move(prepared.get(i), e.staged);
+                } catch (IOException ex2) {
+                    AL.warn("Failed to move the update for " + e.name + " back into the staging area. Removed it.", ex2);
+                    entries.remove(e);
+                    prepared.get(i).delete();
+                }
+            }
+        }
+        save();
+        return installed;
+    }
+
+    /**
+     * Moves the staged file of this entry to its destination and removes the entry.
+     */
+    public synchronized void installSingle(@NotNull Entry entry) throws IOException {
+        entry.target.getAbsoluteFile().getParentFile().mkdirs();
+        move(entry.staged, entry.target);
+        entries.remove(entry);
+        save();
+    }
+
+    /**
+     * Removes the entry without installing it. The staged file gets deleted.
+     */
+    public synchronized void remove(@NotNull Entry entry) {
+        if (entries.remove(entry)) {
+            entry.staged.delete();
+            save();
+        }
+    }
+
+    /**
+     * Moves the file, atomically if possible and replaces the destination.
+     */
+    private static void move(@NotNull File from, @NotNull File to) throws IOException {
+        try {
+            Files.move(from.toPath(), to.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) { // Different file systems
+            Files.move(from.toPath(), to.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    @Nullable
+    public synchronized Entry find(@NotNull Type type, @NotNull String name) {
+        for (Entry e : entries) {
+            if (e.type == type && e.name.equals(name)) return e;
+        }
+        return null;
+    }
+
+    @NotNull
+    public synchronized List<Entry> getAll() {
+        return new ArrayList<>(entries);
+    }
+
+    public synchronized boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    private void load() {
+        if (!manifest.exists()) return;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(manifest), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty() || line.startsWith("#")) continue;
+                String[] parts = line.split("\\" + SEPARATOR, -1);
+                if (parts.length < 6) continue;
+                try {
+                    Entry e = new Entry(Type.valueOf(parts[0]), parts[1], parts[2], new File(parts[3]), new File(parts[4]),
+                            parts[5].isEmpty() ? null : new File(parts[5]));
+                    if (e.staged.exists()) entries.add(e);
+                } catch (IllegalArgumentException ignored) {
+                }
+            }
+        } catch (Exception e) {
+            AL.warn("Failed to read the staged updates.", e);
+        }
+    }
+
+    private void save() {
+        try {
+            if (!dir.exists()) dir.mkdirs();
+            // Written next to the manifest and then moved over it, thus a crash never leaves half a manifest
+            File tmp = new File(dir, manifest.getName() + ".tmp");
+            try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tmp), StandardCharsets.UTF_8))) {
+                writer.write("# type|name|version|staged-file|target-file|replaced-file\n");
+                for (Entry e : entries) {
+                    writer.write(e.type + SEPARATOR + e.name + SEPARATOR + e.version + SEPARATOR + e.staged.getAbsolutePath()
+                            + SEPARATOR + e.target.getAbsolutePath() + SEPARATOR + (e.replaced == null ? "" : e.replaced.getAbsolutePath()) + "\n");
+                }
+            }
+            move(tmp, manifest);
+        } catch (Exception e) {
+            AL.warn("Failed to save the staged updates.", e);
+        }
+    }
+
+    public enum Type {
+        SELF, SERVER, PLUGIN
+    }
+
+    public static class Entry {
+        @NotNull
+        private final Type type;
+        @NotNull
+        private final String name;
+        @NotNull
+        private final String version;
+        @NotNull
+        private final File staged;
+        @NotNull
+        private final File target;
+        @Nullable
+        private final File replaced;
+
+        Entry(@NotNull Type type, @NotNull String name, @NotNull String version,
+              @NotNull File staged, @NotNull File target, @Nullable File replaced) {
+            this.type = type;
+            this.name = name;
+            this.version = version;
+            this.staged = staged;
+            this.target = target;
+            this.replaced = replaced;
+        }
+
+        @NotNull
+        public Type getType() {
+            return type;
+        }
+
+        @NotNull
+        public String getName() {
+            return name;
+        }
+
+        @NotNull
+        public String getVersion() {
+            return version;
+        }
+
+        @NotNull
+        public File getStaged() {
+            return staged;
+        }
+
+        @NotNull
+        public File getTarget() {
+            return target;
+        }
+
+        @Nullable
+        public File getReplaced() {
+            return replaced;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright Osiris Team
+ * All rights reserved.
+ *
+ * This software is copyrighted work licensed under the terms of the
+ * AutoPlug License.  Please consult the file "LICENSE" for details.
+ */
+
+package com.osiris.autoplug.client.tasks.updater;
+
+import com.osiris.autoplug.client.Main;
+import com.osiris.autoplug.client.configs.UpdaterConfig;
+import com.osiris.autoplug.client.tasks.updater.server.PaperclipPrepatcher;
+import com.osiris.betterthread.BetterThread;
+import com.osiris.betterthread.BetterThreadManager;
+import com.osiris.betterthread.BetterWarning;
+
+import java.util.List;
+
+/**
+ * Installs the updates, that were staged while the server was running. See {@link StagedUpdates}.
+ */
+public class TaskStagedUpdatesInstaller extends BetterThread {
+
+    public TaskStagedUpdatesInstaller(String name, BetterThreadManager manager) {
+        super(name, manager);
+    }
+
+    @Override
+    public void runAtStart() throws Exception {
+        super.runAtStart();
+        StagedUpdates staged = StagedUpdates.get();
+        if (staged.isEmpty()) {
+            skip("Skipped. No staged updates.");
+            return;
+        }
+
+        // AutoPlug itself first, since that restarts AutoPlug, which then installs the rest
+        StagedUpdates.Entry self = staged.find(StagedUpdates.Type.SELF, "AutoPlug-Client");
+        if (self != null) {
+            setStatus("Installing staged AutoPlug update (" + self.getVersion() + ")...");
+            // Same as the self-updater does it: The new jar gets started from /autoplug-downloads and replaces the old one
+            staged.installSingle(self);
+            Main.startJar(self.getTarget().getAbsolutePath());
+            System.exit(0);
+            return;
+        }
+
+        long start = System.currentTimeMillis();
+        setStatus("Installing " + staged.getAll().size() + " staged update(s)...");
+        List<StagedUpdates.Entry> installed = staged.install();
+        for (StagedUpdates.Entry e : installed) {
+            if (e.getType() == StagedUpdates.Type.SERVER) {
+                // Like a regular server update, the build-id changes only once the new jar is in place
+                UpdaterConfig config = new UpdaterConfig();
+                config.build_id.setValues(e.getVersion());
+                config.save();
+                try {
+                    PaperclipPrepatcher.installStaged();
+                } catch (Exception ex) {
+                    getWarnings().add(new BetterWarning(this, ex, "Failed to install the patched server files. The server will patch itself at its start."));
+                }
+            }
+            getSummary().add("Installed staged " + e.getType().name().toLowerCase() + " update " + e.getName() + " (" + e.getVersion() + ").");
+        }
+        if (!staged.isEmpty()) {
+            getWarnings().add(new BetterWarning(this, new Exception("Failed to install " + staged.getAll().size() + " staged update(s)."),
+                    "They stay in /autoplug-staging and installing gets retried at the next restart."));
+            finish("Installed " + installed.size() + " staged update(s), " + staged.getAll().size() + " failed.", false);
+        } else
+            finish("Installed " + installed.size() + " staged update(s) in " + (System.currentTimeMillis() - start) + "ms.");
+    }
+}
@@ -28,8 +28,6 @@ public class PluginManager {
 
     @NotNull
     public List<DetailedPlugin> getPlugins() {
-        List<DetailedPlugin> plugins = new ArrayList<>();
-
         FileManager fm = new FileManager();
 
         // Get a list of all jar files in the /plugins dir
@@ -37,6 +35,29 @@ public class PluginManager {
 
         // Location where each plugin.yml file will be extracted to
         File ymlFile = new File(System.getProperty("user.dir") + "/autoplug-system/plugin.yml");
+        return getPlugins(plJarFiles, ymlFile);
+    }
+
+    /**
+     * The plugins of another server, for example an additional server instance.
+     *
+     * @param serverDir the servers root directory, containing its /plugins directory.
+     */
+    @NotNull
+    public List<DetailedPlugin> getPlugins(@NotNull File serverDir) {
+        List<File> plJarFiles = new ArrayList<>();
+        File[] jars = new File(serverDir, "plugins").listFiles((dir, name) -> name.endsWith(".jar"));
+        if (jars != null) plJarFiles.addAll(Arrays.asList(jars));
+
+        // Each server has its own file, since the instances get updated at the same time
+        File ymlFile = new File(serverDir + "/autoplug-system/plugin.yml");
+        ymlFile.getParentFile().mkdirs();
+        return getPlugins(plJarFiles, ymlFile);
+    }
+
+    @NotNull
+    private List<DetailedPlugin> getPlugins(@NotNull List<File> plJarFiles, @NotNull File ymlFile) {
+        List<DetailedPlugin> plugins = new ArrayList<>();
         byte[] buffer = new byte[1024];
         FileInputStream fis;
 
@@ -8,6 +8,7 @@
 
 package com.osiris.autoplug.client.tasks.updater.plugins;
 
+import com.osiris.autoplug.client.tasks.updater.StagedUpdates;
 import com.osiris.autoplug.client.utils.GD;
 import com.osiris.autoplug.core.logger.AL;
 import com.osiris.betterthread.BetterThread;
@@ -23,9 +24,10 @@ import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.util.Random;
+import java.util.zip.ZipFile;
 
 /**
- * See {@link #TaskPluginDownload(String, BetterThreadManager, String, String, String, String, File, File)} for details.
+ * See {@link #TaskPluginDownload(String, BetterThreadManager, String, String, String, String, File, File, boolean)} for details.
  */
 public class TaskPluginDownload extends BetterThread {
     private final String plName;
@@ -34,6 +36,7 @@ public class TaskPluginDownload extends BetterThread {
     private final String profile;
     private final File finalDest;
     private final File deleteDest;
+    private final boolean stage;
     private File downloadDest;
 
     public TaskPluginDownload(String name, BetterThreadManager manager,
@@ -42,6 +45,12 @@ public class TaskPluginDownload extends BetterThread {
         this(name, manager, plName, plLatestVersion, url, profile, finalDest, null);
     }
 
+    public TaskPluginDownload(String name, BetterThreadManager manager,
+                              String plName, String plLatestVersion,
+                              String url, String profile, File finalDest, File deleteDest) {
+        this(name, manager, plName, plLatestVersion, url, profile, finalDest, deleteDest, false);
+    }
+
     /**
      * Performs a plugin installation/download according to the users profile.
      *
@@ -53,10 +62,11 @@ public class TaskPluginDownload extends BetterThread {
      * @param profile         the users plugin updater profile. NOTIFY, MANUAL or AUTOMATIC.
      * @param finalDest       the final download destination.
      * @param deleteDest      the file that should be deleted on a successful download. If null nothing gets deleted.
+     * @param stage           if true, the download doesn't get installed, but staged for the next restart. See {@link StagedUpdates}.
      */
     public TaskPluginDownload(String name, BetterThreadManager manager,
                               String plName, String plLatestVersion,
-                              String url, String profile, File finalDest, File deleteDest) {
+                              String url, String profile, File finalDest, File deleteDest, boolean stage) {
         super(name, manager);
         this.plName = plName;
         this.plLatestVersion = plLatestVersion;
@@ -64,6 +74,7 @@ public class TaskPluginDownload extends BetterThread {
         this.profile = profile;
         this.finalDest = finalDest;
         this.deleteDest = deleteDest;
+        this.stage = stage;
     }
 
     @Override
@@ -78,6 +89,15 @@ public class TaskPluginDownload extends BetterThread {
             return;
         } else if (profile.equals("MANUAL")) {
             download();
+        } else if (stage) {
+            download();
+            // There is no checksum for plugins, thus at least make sure that it's a plugin jar
+            try (ZipFile jar = new ZipFile(downloadDest)) {
+                if (jar.getEntry("plugin.yml") == null && jar.getEntry("bungee.yml") == null)
+                    throw new Exception("Downloaded update for " + plName + " is not a plugin jar (missing plugin.yml). Nothing changed!");
+            }
+            StagedUpdates.get().stage(StagedUpdates.Type.PLUGIN, plName, plLatestVersion, downloadDest, finalDest, deleteDest);
+            setStatus("Staged update for " + plName + ", it gets installed at the next restart.");
         } else {
             download();
             if (finalDest.exists()) finalDest.delete();
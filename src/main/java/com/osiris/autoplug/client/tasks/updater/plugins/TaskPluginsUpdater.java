@@ -12,6 +12,7 @@ import com.osiris.autoplug.client.configs.PluginsConfig;
 import com.osiris.autoplug.client.configs.UpdaterConfig;
 import com.osiris.autoplug.client.minecraft.Server;
 import com.osiris.autoplug.client.network.online.connections.PluginsUpdaterConnection;
+import com.osiris.autoplug.client.tasks.updater.StagedUpdates;
 import com.osiris.autoplug.client.utils.GD;
 import com.osiris.betterthread.BetterThread;
 import com.osiris.betterthread.BetterThreadManager;
@@ -19,6 +20,7 @@ import com.osiris.betterthread.BetterWarning;
 import com.osiris.dyml.DYModule;
 import com.osiris.dyml.exceptions.DuplicateKeyException;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
@@ -26,8 +28,16 @@ import java.io.File;
 import java.net.Socket;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class TaskPluginsUpdater extends BetterThread {
+    /**
+     * The results of the last check, by plugin name. The web only allows one check every few hours,
+     * thus the additional server instances update their plugins based on these, see {@link #getLatest(String)}.
+     */
+    @NotNull
+    private static final Map<String, Latest> latestPlugins = new ConcurrentHashMap<>();
     private final PluginsUpdaterConnection con;
     private final String notifyProfile = "NOTIFY";
     private final String manualProfile = "MANUAL";
@@ -40,6 +50,10 @@ public class TaskPluginsUpdater extends BetterThread {
     private DataOutputStream online_dos;
     private int updatesAvailable = 0;
     private int updatesDownloaded = 0;
+    /**
+     * True if the server is running, then updates can only be staged and get installed at the next restart.
+     */
+    private boolean stage;
 
     public TaskPluginsUpdater(String name, BetterThreadManager manager, PluginsUpdaterConnection con) {
         super(name, manager);
@@ -69,7 +83,13 @@ public class TaskPluginsUpdater extends BetterThread {
                 skip();
                 return;
             }
-            if (Server.isRunning()) throw new Exception("Cannot perform plugins update while server is running!");
+            stage = Server.isRunning();
+            if (stage && !updaterConfig.staged_updates.asBoolean())
+                throw new Exception("Cannot perform plugins update while server is running!");
+            if (!stage && updaterConfig.staged_updates.asBoolean()) {
+                skip("Skipped. Staged updates are enabled, thus updates get checked while the server is running.");
+                return;
+            }
             if (!con.isConnected()) con.open(); // Throws exception if auth failed
 
             online_socket = con.getSocket();
@@ -249,7 +269,17 @@ public class TaskPluginsUpdater extends BetterThread {
 
     }
 
+    /**
+     * The latest version of the plugin, found by the last plugins check of this session,
+     * or null if it wasn't checked (yet), or isn't installed on the main server.
+     */
+    @Nullable
+    public static Latest getLatest(@NotNull String pluginName) {
+        return latestPlugins.get(pluginName);
+    }
+
     private void doDownloadLogic(@NotNull DetailedPlugin pl, byte code, @NotNull String type, String latest, String url, @NotNull String resultSpigotId, @NotNull String resultBukkitId) {
+        latestPlugins.put(pl.getName(), new Latest(type, latest, url));
         if (code == 0) {
             //getSummary().add("Plugin " +pl.getName()+ " is already on the latest version (" + pl.getVersion() + ")"); // Only for testing right now
         } else {
@@ -284,9 +314,14 @@ public class TaskPluginsUpdater extends BetterThread {
                                 .start();
                         updatesDownloaded++;
                     } else {
+                        StagedUpdates.Entry staged = StagedUpdates.get().find(StagedUpdates.Type.PLUGIN, pl.getName());
+                        if (stage && staged != null && staged.getVersion().equals(latest)) {
+                            getSummary().add("Plugin " + pl.getName() + " update (" + latest + ") is already staged for the next restart.");
+                            return;
+                        }
                         File oldPl = new File(pl.getInstallationPath());
                         File dest = new File(GD.WORKING_DIR + "/plugins/" + pl.getName() + "-LATEST-" + "[" + latest + "]" + ".jar");
-                        new TaskPluginDownload("PluginDownloader", getManager(), pl.getName(), latest, url, userProfile, dest, oldPl)
+                        new TaskPluginDownload("PluginDownloader", getManager(), pl.getName(), latest, url, userProfile, dest, oldPl, stage)
                                 .start();
                         updatesDownloaded++;
                     }
@@ -297,4 +332,37 @@ public class TaskPluginsUpdater extends BetterThread {
 
     }
 
+    public static class Latest {
+        @NotNull
+        private final String type;
+        @NotNull
+        private final String version;
+        @NotNull
+        private final String url;
+
+        public Latest(@NotNull String type, @NotNull String version, @NotNull String url) {
+            this.type = type;
+            this.version = version;
+            this.url = url;
+        }
+
+        /**
+         * The file type to download, .jar or external.
+         */
+        @NotNull
+        public String getType() {
+            return type;
+        }
+
+        @NotNull
+        public String getVersion() {
+            return version;
+        }
+
+        @NotNull
+        public String getUrl() {
+            return url;
+        }
+    }
+
 }
@@ -4,6 +4,7 @@ import com.google.gson.JsonObject;
 import com.osiris.autoplug.client.Main;
 import com.osiris.autoplug.client.configs.UpdaterConfig;
 import com.osiris.autoplug.client.minecraft.Server;
+import com.osiris.autoplug.client.tasks.updater.StagedUpdates;
 import com.osiris.autoplug.client.tasks.updater.server.TaskServerDownload;
 import com.osiris.autoplug.client.utils.GD;
 import com.osiris.autoplug.client.utils.UtilsJar;
@@ -24,6 +25,7 @@ public class TaskSelfUpdater extends BetterThread {
     private final String stableUpdateUrl = "https://raw.githubusercontent.com/Osiris-Team/AutoPlug-Releases/master/stable-builds/update.json";
     private final String betaUpdateUrl = "https://raw.githubusercontent.com/Osiris-Team/AutoPlug-Releases/master/beta-builds/update.json";
     private UpdaterConfig updaterConfig;
+    private boolean stage;
 
     public TaskSelfUpdater(BetterThreadManager manager) {
         super(manager);
@@ -42,7 +44,14 @@ public class TaskSelfUpdater extends BetterThread {
             skip();
             return;
         }
-        if (Server.isRunning()) throw new Exception("Cannot perform self update while server is running!");
+        // While the server is running, updates can only be staged and get installed at the next restart
+        stage = Server.isRunning();
+        if (stage && !updaterConfig.staged_updates.asBoolean())
+            throw new Exception("Cannot perform self update while server is running!");
+        if (!stage && updaterConfig.staged_updates.asBoolean()) {
+            skip("Skipped. Staged updates are enabled, thus updates get checked while the server is running.");
+            return;
+        }
 
         if (updaterConfig.self_updater_build.asString().equals("stable"))
             doUpdating(stableUpdateUrl);
@@ -123,10 +132,15 @@ public class TaskSelfUpdater extends BetterThread {
                         break;
                     }
                 }
+            } else if (stage && isAlreadyStaged(version)) {
+                setStatus("AUTOMATIC: Update found (" + currentVersion + " -> " + version + "), already staged for the next restart.");
+                setSuccess(true);
             } else {
                 setStatus("AUTOMATIC: Update found (" + currentVersion + " -> " + version + "), started download!");
-                if (installationFile.exists()) installationFile.delete();
-                installationFile.createNewFile();
+                if (!stage) {
+                    if (installationFile.exists()) installationFile.delete();
+                    installationFile.createNewFile();
+                }
 
                 // Download the file
                 File cache_dest = new File(GD.WORKING_DIR + "/autoplug-downloads/" + installationFile.getName());
@@ -140,7 +154,13 @@ public class TaskSelfUpdater extends BetterThread {
                     if (download.isFinished()) {
                         if (download.isSuccess()) {
                             setStatus("AutoPlug update downloaded. Checking hash...");
-                            if (download.compareWithSHA256(sha256)) {
+                            boolean valid = download.compareWithSHA256(sha256);
+                            if (valid && stage) {
+                                // Gets started from the same location at the next restart, see TaskStagedUpdatesInstaller
+                                StagedUpdates.get().stage(StagedUpdates.Type.SELF, "AutoPlug-Client", version, cache_dest, cache_dest, null);
+                                setStatus("AutoPlug update was staged and gets installed at the next restart (" + currentVersion + " -> " + version + ")!");
+                                setSuccess(true);
+                            } else if (valid) {
                                 setStatus("Installing AutoPlug update (" + currentVersion + " -> " + version + ")...");
                                 // Start that updated old jar and close this one
                                 Main.startJar(cache_dest.getAbsolutePath());
@@ -168,6 +188,11 @@ public class TaskSelfUpdater extends BetterThread {
 
     }
 
+    private boolean isAlreadyStaged(String version) {
+        StagedUpdates.Entry staged = StagedUpdates.get().find(StagedUpdates.Type.SELF, "AutoPlug-Client");
+        return staged != null && staged.getVersion().equals(version);
+    }
+
     /**
      * Example input: ./AutoPlug-Client.jar <br>
      * Output: (complete-path)/AutoPlug-Client.jar
@@ -0,0 +1,245 @@
+/*
+ * Copyright Osiris Team
+ * All rights reserved.
+ *
+ * This software is copyrighted work licensed under the terms of the
+ * AutoPlug License.  Please consult the file "LICENSE" for details.
+ */
+
+package com.osiris.autoplug.client.tasks.updater.server;
+
+import com.osiris.autoplug.client.utils.GD;
+import com.osiris.autoplug.core.logger.AL;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Paper and its forks are distributed as paperclip jars, which patch the vanilla server at their first start.
+ * That takes a while and normally happens in the restart window, right after an update. <br>
+ * This runs only the patch step (-Dpaperclip.patchonly=true) in a separate process, right after the update was downloaded,
+ * so the next start finds an already patched jar. <br>
+ * If the server is stopped, the patching runs in the background (see {@link #prepatchInBackground(File, File)})
+ * next to the other startup tasks, and the start only waits for it, if it isn't done yet (see {@link #awaitBackground()}). <br>
+ * Paperclip writes into the directory it runs in (cache/ for older, versions/ and libraries/ for newer versions).
+ * If the server is stopped, that's the servers directory. If it's running, it would overwrite the jar the server uses,
+ * thus the staged update gets patched in /autoplug-staging/paperclip, which gets merged into the servers directory
+ * when the update is installed. The previously downloaded vanilla jar and libraries are copied over, so they don't get downloaded again.
+ */
+public class PaperclipPrepatcher {
+    public static final String PATCH_ONLY_PROPERTY = "paperclip.patchonly";
+    /**
+     * The directories paperclip writes to.
+     */
+    public static final List<String> DIRS = Arrays.asList("cache", "versions", "libraries");
+    @Nullable
+    private static volatile CompletableFuture<Boolean> background;
+    @NotNull
+    private final String java;
+    private final long timeoutMs;
+
+    /**
+     * @param java      the java executable the server gets started with.
+     * @param timeoutMs the patch process gets killed after this time.
+     */
+    public PaperclipPrepatcher(@NotNull String java, long timeoutMs) {
+        this.java = java;
+        this.timeoutMs = timeoutMs;
+    }
+
+    /**
+     * Where staged server updates get patched. See the class description.
+     */
+    @NotNull
+    public static File getStagedDir() {
+        return new File(GD.WORKING_DIR + "/autoplug-staging/paperclip");
+    }
+
+    /**
+     * True if the jars main class is paperclip.
+     */
+    public static boolean isPaperclip(@NotNull File jar) {
+        try (JarFile jarFile = new JarFile(jar)) {
+            Manifest manifest = jarFile.getManifest();
+            if (manifest == null) return false;
+            String mainClass = manifest.getMainAttributes().getValue("Main-Class");
+            return mainClass != null && mainClass.toLowerCase().contains("paperclip");
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Runs the patch step of the jar in the provided directory and waits for it to finish.
+     * The output is logged as debug.
+     *
+     * @param jar the paperclip jar.
+     * @param dir the directory to run it in. If it's not the servers directory,
+     *            the vanilla jars from the servers cache/ and its libraries/ get copied into it first.
+     * @return true if patching succeeded.
+     */
+    public boolean prepatch(@NotNull File jar, @NotNull File dir) throws IOException, InterruptedException {
+        dir.mkdirs();
+        if (!dir.getCanonicalFile().equals(GD.WORKING_DIR.getCanonicalFile())) seed(GD.WORKING_DIR, dir);
+
+        List<String> commands = new ArrayList<>(Arrays.asList(java, "-D" + PATCH_ONLY_PROPERTY + "=true", "-jar", jar.getAbsolutePath()));
+        AL.debug(this.getClass(), "Patching '" + jar.getName() + "' in '" + dir + "' with: " + String.join(" ", commands));
+        Process process = new ProcessBuilder(commands).directory(dir).redirectErrorStream(true).start();
+        process.getOutputStream().close();
+        Thread output = new Thread(() -> {
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    AL.debug(PaperclipPrepatcher.class, "[paperclip] " + line);
+                }
+            } catch (IOException ignored) {
+            }
+        }, "Paperclip-Prepatch-Output");
+        output.setDaemon(true);
+        output.start();
+
+        if (!process.waitFor(timeoutMs, TimeUnit.MILLISECONDS)) {
+            process.destroyForcibly();
+            AL.warn("Patching '" + jar.getName() + "' took longer than " + (timeoutMs / 1000) + "s. Stopped it, the server will patch itself at its next start.");
+            return false;
+        }
+        output.join(1000);
+        if (process.exitValue() != 0) {
+            AL.warn("Patching '" + jar.getName() + "' failed with exit code " + process.exitValue()
+                    + ". The server will patch itself at its next start. Enable debug for details.");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Runs {@link #prepatch(File, File)} in a separate thread. The server must not be started,
+     * before it finished, thus call {@link #awaitBackground()} before starting the server.
+     *
+     * @return completes with the result of {@link #prepatch(File, File)}, or false if it failed with an exception.
+     */
+    @NotNull
+    public CompletableFuture<Boolean> prepatchInBackground(@NotNull File jar, @NotNull File dir) {
+        CompletableFuture<Boolean> future = new CompletableFuture<>();
+        background = future;
+        Thread thread = new Thread(() -> {
+            try {
+                future.complete(prepatch(jar, dir));
+            } catch (Exception e) {
+                AL.warn("Failed to patch '" + jar.getName() + "'. The server will patch itself at its next start.", e);
+                future.complete(false);
+            }
+        }, "Paperclip-Prepatch");
+        thread.setDaemon(true);
+        thread.start();
+        return future;
+    }
+
+    /**
+     * Blocks until the patching started by {@link #prepatchInBackground(File, File)} finished.
+     * Returns right away, if there is none, or it's already done.
+     */
+    public static void awaitBackground() throws InterruptedException {
+        CompletableFuture<Boolean> future = background;
+        if (future == null) return;
+        if (!future.isDone()) AL.info("Waiting for the server update to finish patching...");
+        try {
+            future.get();
+        } catch (ExecutionException ignored) {
+            // Never completes exceptionally
+        }
+        background = null;
+    }
+
+    /**
+     * Moves the files patched in the staging directory into the servers directory and deletes the staging directory.
+     * Does nothing if there is none. Call this only while the server is stopped.
+     */
+    public static void installStaged() throws IOException {
+        File staged = getStagedDir();
+        if (!staged.exists()) return;
+        merge(staged, GD.WORKING_DIR);
+        deleteRecursively(staged);
+    }
+
+    /**
+     * Moves the paperclip directories and their files from one directory into another, replacing existing files.
+     */
+    static void merge(@NotNull File from, @NotNull File to) throws IOException {
+        for (String name : DIRS) {
+            Path source = new File(from, name).toPath();
+            if (!Files.isDirectory(source)) continue;
+            Path target = new File(to, name).toPath();
+            List<Path> files;
+            try (Stream<Path> walk = Files.walk(source)) {
+                files = walk.filter(Files::isRegularFile).collect(Collectors.toList());
+            }
+            for (Path file : files) {
+                Path dest = target.resolve(source.relativize(file).toString());
+                Files.createDirectories(dest.getParent());
+                Files.move(file, dest, StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+    }
+
+    /**
+     * Copies what paperclip downloads from the servers directory into another directory:
+     * the vanilla jar, which older versions put into cache/, and libraries/ of newer versions.
+     * Both are the same for every build of a minecraft version. Existing files are skipped. <br>
+     * Copies instead of hard links, since the running server uses the originals.
+     */
+    static void seed(@NotNull File from, @NotNull File to) throws IOException {
+        File[] vanillaJars = new File(from, "cache").listFiles((d, name) -> name.startsWith("mojang_") && name.endsWith(".jar"));
+        if (vanillaJars != null) {
+            File cache = new File(to, "cache");
+            cache.mkdirs();
+            for (File f : vanillaJars) {
+                File dest = new File(cache, f.getName());
+                if (!dest.exists()) Files.copy(f.toPath(), dest.toPath());
+            }
+        }
+
+        Path libraries = new File(from, "libraries").toPath();
+        if (!Files.isDirectory(libraries)) return;
+        Path target = new File(to, "libraries").toPath();
+        List<Path> files;
+        try (Stream<Path> walk = Files.walk(libraries)) {
+            files = walk.filter(Files::isRegularFile).collect(Collectors.toList());
+        }
+        for (Path file : files) {
+            Path dest = target.resolve(libraries.relativize(file).toString());
+            if (Files.exists(dest)) continue;
+            Files.createDirectories(dest.getParent());
+            Files.copy(file, dest);
+        }
+    }
+
+    static void deleteRecursively(@Nullable File file) throws IOException {
+        if (file == null || !file.exists()) return;
+        List<Path> paths;
+        try (Stream<Path> walk = Files.walk(file.toPath())) {
+            paths = walk.sorted((a, b) -> b.getNameCount() - a.getNameCount()).collect(Collectors.toList());
+        }
+        for (Path p : paths) {
+            Files.deleteIfExists(p);
+        }
+    }
+}
@@ -9,8 +9,10 @@
 package com.osiris.autoplug.client.tasks.updater.server;
 
 import com.google.gson.JsonArray;
+import com.osiris.autoplug.client.configs.GeneralConfig;
 import com.osiris.autoplug.client.configs.UpdaterConfig;
 import com.osiris.autoplug.client.minecraft.Server;
+import com.osiris.autoplug.client.tasks.updater.StagedUpdates;
 import com.osiris.autoplug.client.utils.GD;
 import com.osiris.autoplug.core.json.JsonTools;
 import com.osiris.autoplug.core.logger.AL;
@@ -21,6 +23,7 @@ import org.apache.commons.io.FileUtils;
 import org.jetbrains.annotations.Nullable;
 
 import java.io.File;
+import java.util.concurrent.TimeUnit;
 
 public class TaskServerUpdater extends BetterThread {
     private UpdaterConfig updaterConfig;
@@ -37,7 +40,14 @@ public class TaskServerUpdater extends BetterThread {
             skip();
             return;
         }
-        if (Server.isRunning()) throw new Exception("Cannot perform update while server is running!");
+        // While the server is running, updates can only be staged and get installed at the next restart
+        boolean stage = Server.isRunning();
+        if (stage && !updaterConfig.staged_updates.asBoolean())
+            throw new Exception("Cannot perform update while server is running!");
+        if (!stage && updaterConfig.staged_updates.asBoolean()) {
+            skip("Skipped. Staged updates are enabled, thus updates get checked while the server is running.");
+            return;
+        }
 
         UpdaterConfig config = new UpdaterConfig();
         if (config.server_updater.asBoolean()) {
@@ -88,12 +98,17 @@ public class TaskServerUpdater extends BetterThread {
                             break;
                         }
                     }
+                } else if (stage && isAlreadyStaged(name, latest_build_id)) {
+                    setStatus("Update found (" + build_id + " -> " + latest_build_id + "), already staged for the next restart.");
+                    setSuccess(true);
                 } else {
                     setStatus("Update found (" + build_id + " -> " + latest_build_id + "), started download!");
                     File final_dest = GD.SERVER_PATH;
                     if (final_dest == null) final_dest = new File(GD.WORKING_DIR + "/" + name + "-latest.jar");
-                    if (final_dest.exists()) final_dest.delete();
-                    final_dest.createNewFile();
+                    if (!stage) {
+                        if (final_dest.exists()) final_dest.delete();
+                        final_dest.createNewFile();
+                    }
 
                     // Download the file
                     String build_hash = getLatestBuildHash(name, mc_version, latest_build_id);
@@ -110,11 +125,22 @@ public class TaskServerUpdater extends BetterThread {
                         if (download.isFinished()) {
                             if (download.isSuccess()) {
                                 setStatus("Server update downloaded. Checking hash...");
-                                if (download.compareWithSHA256(build_hash)) {
+                                boolean valid = download.compareWithSHA256(build_hash);
+                                if (valid && stage) {
+                                    // The build-id gets updated once it's installed, see TaskStagedUpdatesInstaller
+                                    StagedUpdates.get().stage(StagedUpdates.Type.SERVER, name, "" + latest_build_id, cache_dest, final_dest, null);
+                                    StagedUpdates.Entry staged = StagedUpdates.get().find(StagedUpdates.Type.SERVER, name);
+                                    PaperclipPrepatcher.deleteRecursively(PaperclipPrepatcher.getStagedDir());
+                                    if (staged != null) prepatch(staged.getStaged(), PaperclipPrepatcher.getStagedDir(), false);
+                                    setStatus("Server update was staged and gets installed at the next restart (" + build_id + " -> " + latest_build_id + ")!");
+                                    setSuccess(true);
+                                } else if (valid) {
                                     FileUtils.copyFile(cache_dest, final_dest);
-                                    setStatus("Server update was installed successfully (" + build_id + " -> " + latest_build_id + ")!");
                                     config.build_id.setValues("" + latest_build_id);
                                     config.save();
+                                    // Runs next to the other startup tasks, instead of after them, at the servers start
+                                    prepatch(final_dest, GD.WORKING_DIR, true);
+                                    setStatus("Server update was installed successfully (" + build_id + " -> " + latest_build_id + ")!");
                                     setSuccess(true);
                                 } else {
                                     setStatus("Downloaded server update is broken. Nothing changed!");
@@ -141,6 +167,36 @@ public class TaskServerUpdater extends BetterThread {
         finish();
     }
 
+    /**
+     * Runs the patch step of paperclip jars, see {@link PaperclipPrepatcher}.
+     * Failing isn't critical, since the server then simply patches itself at its next start.
+     *
+     * @param background true to not wait for it. The server start waits for it instead, see {@link PaperclipPrepatcher#awaitBackground()}.
+     */
+    private void prepatch(File jar, File dir, boolean background) {
+        if (!updaterConfig.server_updater_prepatch.asBoolean() || !PaperclipPrepatcher.isPaperclip(jar)) return;
+        try {
+            setStatus("Patching the server update in the background...");
+            long start = System.currentTimeMillis();
+            GeneralConfig generalConfig = new GeneralConfig();
+            PaperclipPrepatcher prepatcher = new PaperclipPrepatcher(generalConfig.server_java_version.asString(), TimeUnit.MINUTES.toMillis(10));
+            if (background) {
+                prepatcher.prepatchInBackground(jar, dir).thenAccept(success -> {
+                    if (success)
+                        AL.info("Patched the server update in " + ((System.currentTimeMillis() - start) / 1000) + "s, so the server doesn't have to.");
+                });
+            } else if (prepatcher.prepatch(jar, dir))
+                getSummary().add("Patched the server update in " + ((System.currentTimeMillis() - start) / 1000) + "s, so the next start doesn't have to.");
+        } catch (Exception e) {
+            getWarnings().add(new BetterWarning(this, e, "Failed to patch the server update. The server will patch itself at its next start."));
+        }
+    }
+
+    private boolean isAlreadyStaged(String name, int build_id) {
+        StagedUpdates.Entry staged = StagedUpdates.get().find(StagedUpdates.Type.SERVER, name);
+        return staged != null && staged.getVersion().equals("" + build_id);
+    }
+
     @Nullable
     private String getLatestBuildHash(String name, String mc_version, int latest_build_id) {
         String result = null;
@@ -0,0 +1,79 @@
+/*
+ * Copyright Osiris Team
+ * All rights reserved.
+ *
+ * This software is copyrighted work licensed under the terms of the
+ * AutoPlug License.  Please consult the file "LICENSE" for details.
+ */
+
+package com.osiris.autoplug.client.utils;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Random;
+
+/**
+ * Exponential backoff with jitter, for retrying something that keeps failing. <br>
+ * The delay doubles with each attempt, from the min delay up to the max delay.
+ * Each delay is randomly picked between half and all of that value,
+ * so that multiple clients/servers failing at the same time don't all retry at the same time. <br>
+ * With full jitter each delay is picked between 0 and that value instead, which spreads out
+ * the retries of many clients even more, at the cost of some retries happening right away.
+ */
+public class Backoff {
+    private final long minDelayMs;
+    private final long maxDelayMs;
+    @NotNull
+    private final Random random;
+    private final boolean fullJitter;
+    private int attempts;
+
+    public Backoff(long minDelayMs, long maxDelayMs) {
+        this(minDelayMs, maxDelayMs, new Random());
+    }
+
+    public Backoff(long minDelayMs, long maxDelayMs, @NotNull Random random) {
+        this(minDelayMs, maxDelayMs, random, false);
+    }
+
+    /**
+     * @param fullJitter true to pick the delays between 0 and the current ceiling, instead of between half and all of it.
+     */
+    public Backoff(long minDelayMs, long maxDelayMs, @NotNull Random random, boolean fullJitter) {
+        if (minDelayMs <= 0) throw new IllegalArgumentException("Min delay must be bigger than 0.");
+        if (maxDelayMs < minDelayMs) throw new IllegalArgumentException("Max delay must not be smaller than the min delay.");
+        this.minDelayMs = minDelayMs;
+        this.maxDelayMs = maxDelayMs;
+        this.random = random;
+        this.fullJitter = fullJitter;
+    }
+
+    /**
+     * The delay to wait before the next attempt. Counts as an attempt.
+     */
+    public synchronized long nextDelayMs() {
+        long delay = getCeilingMs(attempts);
+        attempts++;
+        long low = fullJitter ? 0 : delay / 2;
+        return low + (long) (random.nextDouble() * (delay - low + 1));
+    }
+
+    /**
+     * The highest possible delay before the provided attempt (counting from 0).
+     */
+    public long getCeilingMs(int attempt) {
+        if (attempt >= 62 || minDelayMs << attempt > maxDelayMs || minDelayMs << attempt <= 0) return maxDelayMs;
+        return minDelayMs << attempt;
+    }
+
+    /**
+     * Starts over at the min delay. Call this once the retried thing succeeded.
+     */
+    public synchronized void reset() {
+        attempts = 0;
+    }
+
+    public synchronized int getAttempts() {
+        return attempts;
+    }
+}
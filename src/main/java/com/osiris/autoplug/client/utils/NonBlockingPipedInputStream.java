@@ -4,11 +4,18 @@ import com.osiris.autoplug.core.logger.AL;
 import org.jetbrains.annotations.NotNull;
 
 import java.io.BufferedReader;
+import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
 import java.util.List;
 import java.util.concurrent.CopyOnWriteArrayList;
 
+/**
+ * Replaced by the {@link com.osiris.autoplug.client.minecraft.console.ConsoleLineBus},
+ * which doesn't run all listeners on a single thread.
+ */
+@Deprecated
 public class NonBlockingPipedInputStream extends PipedInputStream { // PipedInputStream
     @NotNull
     private final Thread thread;
@@ -25,7 +32,28 @@ public class NonBlockingPipedInputStream extends PipedInputStream { // PipedInpu
      * To listen for those events, add the action that should be run to the {@link #actionsOnWriteLineEvent} list.
      */
     public NonBlockingPipedInputStream() {
-        thread = new Thread(() -> {
+        thread = createThread();
+        thread.start();
+    }
+
+    /**
+     * Connects to the provided {@link PipedOutputStream} before starting the reading {@link Thread}.
+     * Otherwise the thread could start reading before the pipe is connected, which kills it. <br>
+     * See {@link #NonBlockingPipedInputStream()} for details.
+     *
+     * @param src      the stream that writes into this pipe.
+     * @param pipeSize the size of the pipes buffer. A bigger pipe lets the writer
+     *                 hand over bigger slices, before it has to wait for the reader.
+     */
+    public NonBlockingPipedInputStream(@NotNull PipedOutputStream src, int pipeSize) throws IOException {
+        super(src, pipeSize);
+        thread = createThread();
+        thread.start();
+    }
+
+    @NotNull
+    private Thread createThread() {
+        return new Thread(() -> {
             try {
                 BufferedReader reader = new BufferedReader(new InputStreamReader(this));
                 String line;
@@ -37,8 +65,6 @@ public class NonBlockingPipedInputStream extends PipedInputStream { // PipedInpu
                 AL.warn(e);
             }
         });
-        thread.start();
-
     }
 
     @NotNull
@@ -0,0 +1,79 @@
+/*
+ * Copyright Osiris Team
+ * All rights reserved.
+ *
+ * This software is copyrighted work licensed under the terms of the
+ * AutoPlug License.  Please consult the file "LICENSE" for details.
+ */
+
+package com.osiris.autoplug.client.utils;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Copies an {@link InputStream} into an {@link OutputStream} in large blocks,
+ * instead of byte by byte. <br>
+ * Each {@link InputStream#read(byte[])} returns whatever is currently available (up to the buffers size),
+ * which then gets handed downstream as a single slice and flushed, so that readers
+ * get woken up once per slice and not once per byte. <br>
+ * The buffer is allocated once and reused for the whole lifetime of the pump.
+ */
+public class StreamPump {
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+    @NotNull
+    private final byte[] buffer;
+    private volatile long bytesPumped;
+    private volatile long slicesPumped;
+
+    public StreamPump() {
+        this(DEFAULT_BUFFER_SIZE);
+    }
+
+    public StreamPump(int bufferSize) {
+        this.buffer = new byte[bufferSize];
+    }
+
+    /**
+     * Blocks until the end of the provided {@link InputStream} is reached.
+     *
+     * @param in  the source, for example the servers output.
+     * @param out the destination, which receives whole slices of the buffer.
+     * @return the amount of bytes copied.
+     * @throws IOException if reading or writing fails.
+     */
+    public long pump(@NotNull InputStream in, @NotNull OutputStream out) throws IOException {
+        long count = 0;
+        int len;
+        while ((len = in.read(buffer, 0, buffer.length)) != -1) {
+            if (len == 0) continue;
+            out.write(buffer, 0, len);
+            out.flush(); // Wakes up the reader once per slice
+            count += len;
+            bytesPumped += len;
+            slicesPumped++;
+        }
+        return count;
+    }
+
+    public int getBufferSize() {
+        return buffer.length;
+    }
+
+    /**
+     * The total amount of bytes copied by this pump.
+     */
+    public long getBytesPumped() {
+        return bytesPumped;
+    }
+
+    /**
+     * The total amount of slices (block reads) handed downstream.
+     */
+    public long getSlicesPumped() {
+        return slicesPumped;
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright Osiris Team
+ * All rights reserved.
+ *
+ * This software is copyrighted work licensed under the terms of the
+ * AutoPlug License.  Please consult the file "LICENSE" for details.
+ */
+
+package com.osiris.autoplug.client.minecraft;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+class CrashSupervisorTest {
+
+    @Test
+    void findsCause() {
+        Assertions.assertEquals(CrashSupervisor.Cause.EULA, CrashSupervisor.findCause(Arrays.asList(
+                "[12:00:00 INFO]: Loading libraries, please wait...",
+                "[12:00:00 WARN]: Failed to load eula.txt",
+                "[12:00:00 INFO]: You need to agree to the EULA in order to run the server. Go to eula.txt for more info.")));
+        Assertions.assertEquals(CrashSupervisor.Cause.OUT_OF_MEMORY, CrashSupervisor.findCause(Arrays.asList(
+                "java.lang.OutOfMemoryError: Java heap space", "\tat java.util.Arrays.copyOf(Arrays.java:3332)")));
+        Assertions.assertEquals(CrashSupervisor.Cause.MISSING_JAR, CrashSupervisor.findCause(Arrays.asList(
+                "Error: Unable to access jarfile paper.jar")));
+        Assertions.assertEquals(CrashSupervisor.Cause.UNKNOWN, CrashSupervisor.findCause(Arrays.asList("Something went wrong")));
+        Assertions.assertFalse(CrashSupervisor.Cause.UNSUPPORTED_JAVA.isRestartable());
+    }
+
+    @Test
+    void restartsUntilCrashLoop() throws Exception {
+        File dir = Files.createTempDirectory("crash-supervisor").toFile();
+        ServerInstance instance = new ServerInstance("crashy", dir, 64);
+        List<Boolean> restarts = new CopyOnWriteArrayList<>();
+        CrashSupervisor supervisor = new CrashSupervisor(instance, quick -> {
+            restarts.add(quick);
+            instance.start(ServerInstanceTest.fakeServerCommands("crash"));
+        }, 10, 40, 2, 60000, 60000, true);
+        supervisor.start();
+
+        instance.start(ServerInstanceTest.fakeServerCommands("crash"));
+        long until = System.currentTimeMillis() + 30000;
+        while (!supervisor.isGaveUp() && System.currentTimeMillis() < until) Thread.sleep(50);
+
+        Assertions.assertTrue(supervisor.isGaveUp());
+        Assertions.assertEquals(2, restarts.size());
+        Assertions.assertTrue(restarts.get(0)); // Crashed right away, thus the startup tasks get skipped
+        Assertions.assertTrue(supervisor.getLastLines().get(supervisor.getLastLines().size() - 1).contains("OutOfMemoryError"));
+        Assertions.assertFalse(instance.isRunning());
+    }
+
+    @Test
+    void failedRestartDoesntCountUserStarts() throws Exception {
+        File dir = Files.createTempDirectory("crash-supervisor").toFile();
+        ServerInstance instance = new ServerInstance("unstartable", dir, 64);
+        List<Boolean> restarts = new CopyOnWriteArrayList<>();
+        // Fails to start the server, without throwing an exception
+        CrashSupervisor supervisor = new CrashSupervisor(instance, restarts::add, 10, 40, 1, 60000, 60000, true);
+        supervisor.start();
+
+        for (int i = 1; i <= 2; i++) {
+            instance.start(ServerInstanceTest.fakeServerCommands("crash"));
+            long until = System.currentTimeMillis() + 30000;
+            while (restarts.size() < i && System.currentTimeMillis() < until) Thread.sleep(50);
+        }
+        // The second start was by the user, thus the first crash doesn't count anymore
+        Assertions.assertEquals(2, restarts.size());
+        Assertions.assertFalse(supervisor.isGaveUp());
+    }
+
+    @Test
+    void requestedStopIsNoCrash() throws Exception {
+        File dir = Files.createTempDirectory("crash-supervisor").toFile();
+        ServerInstance instance = new ServerInstance("stable", dir, 64);
+        List<Boolean> restarts = new CopyOnWriteArrayList<>();
+        CrashSupervisor supervisor = new CrashSupervisor(instance, restarts::add, 10, 40, 2, 60000, 60000, true);
+        supervisor.start();
+        instance.start(ServerInstanceTest.fakeServerCommands());
+        instance.getLifecycle().getReadyFuture().get();
+        instance.kill();
+        Thread.sleep(CrashSupervisor.ANALYZE_DELAY_MS + 200);
+        Assertions.assertTrue(restarts.isEmpty());
+        Assertions.assertFalse(supervisor.isGaveUp());
+    }
+}
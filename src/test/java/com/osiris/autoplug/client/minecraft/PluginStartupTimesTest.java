@@ -0,0 +1,95 @@
+/*
+ * Copyright Osiris Team
+ * All rights reserved.
+ *
+ * This software is copyrighted work licensed under the terms of the
+ * AutoPlug License.  Please consult the file "LICENSE" for details.
+ */
+
+package com.osiris.autoplug.client.minecraft;
+
+import com.osiris.autoplug.client.minecraft.console.ConsoleLine;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+
+class PluginStartupTimesTest {
+
+    private static PluginStartupTimes.Run simulateStart(PluginStartupTimes times, long startedAt, String worldEditVersion, long worldEditEnableMs) {
+        long now = startedAt;
+        times.reset();
+        times.onConsoleLine(ConsoleLine.of("[12:00:00 INFO]: Loading properties"), now);
+        times.onConsoleLine(ConsoleLine.of("[12:00:00 INFO]: [WorldEdit] Loading WorldEdit v" + worldEditVersion), now);
+        now += 200;
+        times.onConsoleLine(ConsoleLine.of("[12:00:00 INFO]: [LuckPerms] Loading server plugin LuckPerms v5.3.0"), now);
+        now += 300;
+        times.onConsoleLine(ConsoleLine.of("[12:00:01 INFO]: [LuckPerms] Enabling LuckPerms v5.3.0"), now);
+        now += 1000;
+        times.onConsoleLine(ConsoleLine.of("[12:00:01 INFO]: [LuckPerms] Some output while enabling"), now);
+        now += 1000;
+        times.onConsoleLine(ConsoleLine.of("[12:00:02 INFO]: [WorldEdit] Enabling WorldEdit v" + worldEditVersion), now);
+        now += worldEditEnableMs;
+        times.onConsoleLine(ConsoleLine.of("[12:00:03 INFO]: Preparing level \"world\""), now);
+        now += 5000; // World loading isn't a plugins fault
+        return times.finish(startedAt, now);
+    }
+
+    @Test
+    void attributesTimeToPlugins() throws Exception {
+        File file = File.createTempFile("plugin-startup-times", ".csv");
+        file.delete();
+        file.deleteOnExit();
+        PluginStartupTimes times = new PluginStartupTimes(file);
+        PluginStartupTimes.Run run = simulateStart(times, 1000, "7.2.0", 400);
+        Assertions.assertNotNull(run);
+        Assertions.assertEquals(2, run.getPlugins().size());
+
+        PluginStartupTimes.PluginTime worldEdit = run.get("WorldEdit");
+        Assertions.assertNotNull(worldEdit);
+        Assertions.assertEquals("7.2.0", worldEdit.getVersion());
+        Assertions.assertEquals(200L, worldEdit.getLoadMs());
+        Assertions.assertEquals(400L, worldEdit.getEnableMs());
+
+        PluginStartupTimes.PluginTime luckPerms = run.get("LuckPerms");
+        Assertions.assertNotNull(luckPerms);
+        Assertions.assertEquals(300L, luckPerms.getLoadMs());
+        Assertions.assertEquals(2000L, luckPerms.getEnableMs());
+    }
+
+    @Test
+    void keepsHistoryAndVersions() throws Exception {
+        File file = File.createTempFile("plugin-startup-times", ".csv");
+        file.delete();
+        file.deleteOnExit();
+        PluginStartupTimes times = new PluginStartupTimes(file);
+        simulateStart(times, 1000, "7.2.0", 400);
+        simulateStart(times, 2000, "7.2.0", 500);
+        simulateStart(times, 3000, "7.2.0", 400);
+
+        PluginStartupTimes reloaded = new PluginStartupTimes(file);
+        Assertions.assertEquals(3, reloaded.getHistory().size());
+        Assertions.assertEquals(600L, reloaded.baseline("WorldEdit"));
+        Assertions.assertEquals("7.2.0", reloaded.previousVersion("WorldEdit"));
+        Assertions.assertEquals(-1L, reloaded.baseline("Essentials"));
+
+        // The update made it slower
+        PluginStartupTimes.Run run = simulateStart(reloaded, 4000, "7.3.0", 5000);
+        Assertions.assertNotNull(run);
+        Assertions.assertTrue(StartupProfiler.isRegression(run.get("WorldEdit").getTotalMs(), 600));
+        Assertions.assertEquals("7.3.0", reloaded.previousVersion("WorldEdit"));
+    }
+
+    @Test
+    void abortedStartIsNotRecorded() throws Exception {
+        File file = File.createTempFile("plugin-startup-times", ".csv");
+        file.delete();
+        file.deleteOnExit();
+        PluginStartupTimes times = new PluginStartupTimes(file);
+        times.reset();
+        times.onConsoleLine(ConsoleLine.of("[12:00:00 INFO]: [WorldEdit] Loading WorldEdit v7.2.0"), 0);
+        times.abort();
+        Assertions.assertNull(times.finish(0, 100));
+        Assertions.assertTrue(times.getHistory().isEmpty());
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright Osiris Team
+ * All rights reserved.
+ *
+ * This software is copyrighted work licensed under the terms of the
+ * AutoPlug License.  Please consult the file "LICENSE" for details.
+ */
+
+package com.osiris.autoplug.client.minecraft;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+
+class ProcessResourceMonitorTest {
+
+    private static long ownPid() {
+        return Long.parseLong(ManagementFactory.getRuntimeMXBean().getName().split("@")[0]);
+    }
+
+    @Test
+    void samplesOwnProcess() throws Exception {
+        if (!ProcessResourceMonitor.isSupported()) return; // Not Linux
+        ProcessResourceMonitor monitor = new ProcessResourceMonitor(1000, 4);
+        monitor.open(ownPid());
+        Assertions.assertTrue(monitor.sample());
+        // Burn some CPU, so the second sample has something to show
+        long until = System.currentTimeMillis() + 200;
+        double x = 0;
+        while (System.currentTimeMillis() < until) x += Math.sqrt(x + 1);
+        Assertions.assertTrue(monitor.sample());
+
+        Assertions.assertEquals(2, monitor.getSize());
+        Assertions.assertTrue(monitor.getRssBytes(0) > 1024 * 1024, "RSS " + monitor.getRssBytes(0));
+        Assertions.assertTrue(monitor.getThreads(0) > 1);
+        Assertions.assertTrue(monitor.getOpenFds(0) > 3 || monitor.getOpenFds(0) == -1);
+        Assertions.assertTrue(monitor.getCpuPercent(0) >= 0);
+        Assertions.assertNotNull(monitor.getSummary());
+
+        // The ring only keeps the newest samples
+        for (int i = 0; i < 10; i++) monitor.sample();
+        Assertions.assertEquals(4, monitor.getSize());
+        Assertions.assertEquals(12L, monitor.getSampleCount());
+        Assertions.assertTrue(monitor.getTime(0) >= monitor.getTime(3));
+        monitor.open(-1);
+    }
+
+    @Test
+    void samplingIsAllocationFree() throws Exception {
+        if (!ProcessResourceMonitor.isSupported()) return;
+        com.sun.management.ThreadMXBean mx = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        ProcessResourceMonitor monitor = new ProcessResourceMonitor(1000, 64);
+        monitor.open(ownPid());
+        for (int i = 0; i < ProcessResourceMonitor.FD_COUNT_EVERY * 100; i++) monitor.sample(); // Warm up
+
+        long before = mx.getThreadAllocatedBytes(Thread.currentThread().getId());
+        for (int i = 0; i < ProcessResourceMonitor.FD_COUNT_EVERY - 1; i++) {
+            monitor.sample(); // Stops right before the next fd count
+        }
+        long allocated = mx.getThreadAllocatedBytes(Thread.currentThread().getId()) - before;
+        Assertions.assertTrue(allocated < 1024, "Allocated " + allocated + " bytes");
+        monitor.open(-1);
+    }
+
+    @Test
+    void exitedProcessStopsSampling() throws Exception {
+        if (!ProcessResourceMonitor.isSupported()) return;
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        Process p = new ProcessBuilder(java, "-version").redirectErrorStream(true).start();
+        long pid = ProcessResourceMonitor.pidOf(p);
+        Assertions.assertTrue(pid > 0);
+        p.waitFor();
+        ProcessResourceMonitor monitor = new ProcessResourceMonitor(1000, 4);
+        monitor.open(pid);
+        Assertions.assertFalse(monitor.sample());
+        Assertions.assertEquals(0, monitor.getSize());
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright Osiris Team
+ * All rights reserved.
+ *
+ * This software is copyrighted work licensed under the terms of the
+ * AutoPlug License.  Please consult the file "LICENSE" for details.
+ */
+
+package com.osiris.autoplug.client.minecraft;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+class ServerCommandQueueTest {
+
+    /**
+     * Like the servers input stream, where each flush takes a moment.
+     */
+    private static class SlowOutputStream extends ByteArrayOutputStream {
+        @Override
+        public void flush() throws IOException {
+            try {
+                Thread.sleep(1);
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+        }
+    }
+
+    @Test
+    void writesBurstsInOrderAndInBatches() throws Exception {
+        SlowOutputStream out = new SlowOutputStream();
+        ServerCommandQueue queue = new ServerCommandQueue(out);
+        int threads = 4;
+        int commandsPerThread = 500;
+        List<CompletableFuture<ServerCommandQueue.Command>> futures = new ArrayList<>();
+        List<Thread> submitters = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int id = t;
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < commandsPerThread; i++) {
+                    CompletableFuture<ServerCommandQueue.Command> f = queue.submit("say " + id + " " + i);
+                    synchronized (futures) {
+                        futures.add(f);
+                    }
+                }
+            });
+            submitters.add(thread);
+            thread.start();
+        }
+        for (Thread t : submitters) {
+            t.join();
+        }
+        for (CompletableFuture<ServerCommandQueue.Command> f : futures) {
+            ServerCommandQueue.Command c = f.get(10, TimeUnit.SECONDS);
+            Assertions.assertTrue(c.getWrittenAt() >= c.getEnqueuedAt());
+            Assertions.assertTrue(c.getQueueNanos() >= 0);
+        }
+
+        // Each thread's commands arrive in the order they were submitted
+        String[] lines = new String(out.toByteArray(), StandardCharsets.UTF_8).split(System.lineSeparator());
+        Assertions.assertEquals(threads * commandsPerThread, lines.length);
+        int[] next = new int[threads];
+        for (String line : lines) {
+            String[] parts = line.split(" ");
+            int id = Integer.parseInt(parts[1]);
+            Assertions.assertEquals(next[id]++, Integer.parseInt(parts[2]));
+        }
+
+        System.out.println("Wrote " + queue.getCommandsWritten() + " commands in " + queue.getBatchesWritten() + " batches.");
+        Assertions.assertEquals(threads * commandsPerThread, queue.getCommandsWritten());
+        Assertions.assertTrue(queue.getBatchesWritten() < queue.getCommandsWritten());
+        queue.close();
+    }
+
+    @Test
+    void closeWritesQueuedCommandsAndRejectsNewOnes() throws Exception {
+        SlowOutputStream out = new SlowOutputStream();
+        ServerCommandQueue queue = new ServerCommandQueue(out);
+        CompletableFuture<ServerCommandQueue.Command> before = queue.submit("stop");
+        queue.close();
+        Assertions.assertEquals("stop", before.get(10, TimeUnit.SECONDS).getCommand());
+        while (!queue.isClosed())
+            Thread.sleep(1);
+        Assertions.assertTrue(queue.submit("say too late").isCompletedExceptionally());
+        Assertions.assertEquals("stop" + System.lineSeparator(), new String(out.toByteArray(), StandardCharsets.UTF_8));
+    }
+}
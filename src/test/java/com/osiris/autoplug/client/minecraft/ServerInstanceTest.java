@@ -0,0 +1,96 @@
+/*
+ * Copyright Osiris Team
+ * All rights reserved.
+ *
+ * This software is copyrighted work licensed under the terms of the
+ * AutoPlug License.  Please consult the file "LICENSE" for details.
+ */
+
+package com.osiris.autoplug.client.minecraft;
+
+import com.osiris.autoplug.client.minecraft.console.OverflowPolicy;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+class ServerInstanceTest {
+
+    static List<String> fakeServerCommands(String... args) {
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        List<String> commands = new ArrayList<>(Arrays.asList(java, "-cp", System.getProperty("java.class.path"), FakeServer.class.getName()));
+        commands.addAll(Arrays.asList(args));
+        return commands;
+    }
+
+    @Test
+    void buildsCommands() {
+        Assertions.assertEquals(Arrays.asList("java", "-Xms1G", "-Xmx1G", "-jar", "paper.jar", "--nogui"),
+                ServerInstance.buildCommands("java", Arrays.asList("Xms1G", "Xmx1G"), "paper.jar", Arrays.asList("--nogui")));
+    }
+
+    @Test
+    void instancesRunSideBySide() throws Exception {
+        List<ServerInstance> instances = new ArrayList<>();
+        List<List<String>> lines = new ArrayList<>();
+        for (String name : Arrays.asList("lobby", "survival")) {
+            File dir = Files.createTempDirectory("instance-" + name).toFile();
+            ServerInstance instance = new ServerInstance(name, dir, 64);
+            List<String> received = new CopyOnWriteArrayList<>();
+            instance.getConsoleBus().subscribe("Test", OverflowPolicy.BLOCK, line -> received.add(line.toString()));
+            instances.add(instance);
+            lines.add(received);
+        }
+        for (ServerInstance instance : instances) {
+            instance.start(fakeServerCommands());
+        }
+        for (ServerInstance instance : instances) {
+            instance.getLifecycle().getReadyFuture().get(30, TimeUnit.SECONDS);
+            Assertions.assertEquals(ServerLifecycle.State.READY, instance.getLifecycle().getState());
+            Assertions.assertTrue(instance.isRunning());
+        }
+
+        // Each one runs in its own directory and has its own console
+        for (int i = 0; i < instances.size(); i++) {
+            ServerInstance instance = instances.get(i);
+            instance.submitCommand("say " + instance.getName()).get(10, TimeUnit.SECONDS);
+            instance.stop();
+            Assertions.assertFalse(instance.isRunning());
+            Assertions.assertEquals(ServerLifecycle.State.EXITED, instance.getLifecycle().getState());
+            Assertions.assertTrue(lines.get(i).contains("Working dir: " + instance.getWorkingDir().getCanonicalPath()), lines.get(i).toString());
+            Assertions.assertTrue(lines.get(i).contains("say " + instance.getName()), lines.get(i).toString());
+            Assertions.assertNotNull(instance.getStartupProfiler().getLast());
+            Assertions.assertTrue(new File(instance.getWorkingDir(), "autoplug-system/startup-history.csv").exists());
+        }
+        Assertions.assertFalse(lines.get(0).contains("say survival"));
+    }
+
+    /**
+     * Prints the ready line and echos its input, until it receives 'stop'.
+     * With the argument 'crash', it crashes right after starting.
+     */
+    public static class FakeServer {
+        public static void main(String[] args) throws Exception {
+            System.out.println("Working dir: " + new File(".").getCanonicalPath());
+            if (args.length > 0 && args[0].equals("crash")) {
+                System.out.println("Exception in thread \"Server thread\" java.lang.OutOfMemoryError: Java heap space");
+                System.exit(1);
+            }
+            System.out.println("[12:00:00 INFO]: Done (0.1s)! For help, type \"help\"");
+            BufferedReader in = new BufferedReader(new InputStreamReader(System.in));
+            String line;
+            while ((line = in.readLine()) != null) {
+                System.out.println(line);
+                if (line.equals("stop")) break;
+            }
+        }
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright Osiris Team
+ * All rights reserved.
+ *
+ * This software is copyrighted work licensed under the terms of the
+ * AutoPlug License.  Please consult the file "LICENSE" for details.
+ */
+
+package com.osiris.autoplug.client.minecraft;
+
+import com.osiris.autoplug.client.minecraft.console.ConsoleLine;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+class ServerLifecycleTest {
+
+    private static Process startJavaProcess() throws Exception {
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        return new ProcessBuilder(java, "-version").redirectErrorStream(true).start();
+    }
+
+    @Test
+    void detectsReadyAndExit() throws Exception {
+        ServerLifecycle lifecycle = new ServerLifecycle();
+        List<ServerLifecycle.State> states = new CopyOnWriteArrayList<>();
+        lifecycle.addListener((oldState, newState) -> states.add(newState));
+        Assertions.assertEquals(ServerLifecycle.State.EXITED, lifecycle.getState());
+        Assertions.assertTrue(lifecycle.getExitFuture().isDone());
+
+        Process process = startJavaProcess();
+        lifecycle.starting(process);
+        lifecycle.onConsoleLine(ConsoleLine.of("[12:00:00 INFO]: Preparing spawn area: 42%"));
+        Assertions.assertFalse(lifecycle.getReadyFuture().isDone());
+        lifecycle.onConsoleLine(ConsoleLine.of("[12:00:00 INFO]: Done (3.141s)! For help, type \"help\""));
+        Assertions.assertTrue(lifecycle.getReadyFuture().isDone());
+        lifecycle.stopping();
+
+        Assertions.assertTrue(lifecycle.awaitExit(30, TimeUnit.SECONDS));
+        Assertions.assertEquals(0, (int) lifecycle.getExitFuture().get());
+        Assertions.assertEquals(ServerLifecycle.State.EXITED, lifecycle.getState());
+        Assertions.assertEquals(4, states.size());
+        Assertions.assertEquals(ServerLifecycle.State.STARTING, states.get(0));
+        Assertions.assertEquals(ServerLifecycle.State.READY, states.get(1));
+        Assertions.assertEquals(ServerLifecycle.State.STOPPING, states.get(2));
+        Assertions.assertEquals(ServerLifecycle.State.EXITED, states.get(3));
+    }
+
+    /**
+     * The exit gets noticed within milliseconds, instead of within the old 1-2 second polling window.
+     */
+    @Test
+    void reactsToExitImmediately() throws Exception {
+        ServerLifecycle lifecycle = new ServerLifecycle();
+        Process process = startJavaProcess();
+        lifecycle.starting(process);
+        process.waitFor();
+        long exitedAt = System.nanoTime();
+        lifecycle.awaitExit();
+        long ms = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - exitedAt);
+        System.out.println("Exit detected after " + ms + "ms");
+        Assertions.assertTrue(ms < 500, "Took " + ms + "ms");
+        Assertions.assertTrue(lifecycle.getReadyFuture().isCompletedExceptionally());
+    }
+}
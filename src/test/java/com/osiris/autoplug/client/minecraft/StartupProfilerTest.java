@@ -0,0 +1,104 @@
+/*
+ * Copyright Osiris Team
+ * All rights reserved.
+ *
+ * This software is copyrighted work licensed under the terms of the
+ * AutoPlug License.  Please consult the file "LICENSE" for details.
+ */
+
+package com.osiris.autoplug.client.minecraft;
+
+import com.osiris.autoplug.client.minecraft.console.ConsoleLine;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.util.concurrent.atomic.AtomicLong;
+
+class StartupProfilerTest {
+
+    private static void simulateStart(StartupProfiler profiler, AtomicLong clock, long doneAfterMs) {
+        profiler.spawning();
+        clock.addAndGet(100);
+        profiler.spawned();
+        clock.addAndGet(400);
+        profiler.onConsoleLine(ConsoleLine.of("[12:00:00 INFO]: Starting minecraft server version 1.16.5"), false);
+        clock.addAndGet(1000);
+        profiler.onConsoleLine(ConsoleLine.of("[12:00:01 INFO]: Preparing level \"world\""), false);
+        clock.set(clock.get() + doneAfterMs - 1500);
+        profiler.onConsoleLine(ConsoleLine.of("[12:00:10 INFO]: Done (9.512s)! For help, type \"help\""), true);
+    }
+
+    @Test
+    void measuresPhasesAndKeepsHistory() throws Exception {
+        File file = File.createTempFile("startup-history", ".csv");
+        file.delete();
+        file.deleteOnExit();
+        File pluginFile = File.createTempFile("plugin-startup-times", ".csv");
+        pluginFile.delete();
+        pluginFile.deleteOnExit();
+        AtomicLong clock = new AtomicLong(1_000_000);
+        StartupProfiler profiler = new StartupProfiler(file, pluginFile, clock::get);
+        simulateStart(profiler, clock, 10000);
+
+        StartupProfiler.Run run = profiler.getLast();
+        Assertions.assertNotNull(run);
+        Assertions.assertFalse(profiler.isMeasuring());
+        Assertions.assertEquals(100L, run.getSpawnMs());
+        Assertions.assertEquals(500L, run.getFirstOutputMs());
+        Assertions.assertEquals(1500L, run.getWorldStartMs());
+        Assertions.assertEquals(10000L, run.getDoneMs());
+        Assertions.assertEquals(9512L, run.getReportedMs());
+
+        // Reloaded from the file
+        StartupProfiler reloaded = new StartupProfiler(file, pluginFile, clock::get);
+        Assertions.assertEquals(1, reloaded.getHistory().size());
+        Assertions.assertEquals(10000L, reloaded.getHistory().get(0).getDoneMs());
+    }
+
+    @Test
+    void abortedStartIsNotRecorded() throws Exception {
+        File file = File.createTempFile("startup-history", ".csv");
+        file.delete();
+        file.deleteOnExit();
+        File pluginFile = File.createTempFile("plugin-startup-times", ".csv");
+        pluginFile.delete();
+        pluginFile.deleteOnExit();
+        AtomicLong clock = new AtomicLong();
+        StartupProfiler profiler = new StartupProfiler(file, pluginFile, clock::get);
+        profiler.spawning();
+        profiler.spawned();
+        profiler.onConsoleLine(ConsoleLine.of("Error: Unable to access jarfile server.jar"), false);
+        profiler.aborted();
+        Assertions.assertTrue(profiler.getHistory().isEmpty());
+        Assertions.assertFalse(file.exists());
+    }
+
+    @Test
+    void baselineIsMedianOfRecentStarts() throws Exception {
+        File file = File.createTempFile("startup-history", ".csv");
+        file.delete();
+        file.deleteOnExit();
+        File pluginFile = File.createTempFile("plugin-startup-times", ".csv");
+        pluginFile.delete();
+        pluginFile.deleteOnExit();
+        AtomicLong clock = new AtomicLong();
+        StartupProfiler profiler = new StartupProfiler(file, pluginFile, clock::get);
+        for (long done : new long[]{20000, 21000, 19000, 60000, 20500}) {
+            simulateStart(profiler, clock, done);
+        }
+        // The single slow start doesn't move the baseline much
+        Assertions.assertEquals(20500L, profiler.baseline());
+        Assertions.assertTrue(StartupProfiler.isRegression(30000, profiler.baseline()));
+        Assertions.assertFalse(StartupProfiler.isRegression(22000, profiler.baseline()));
+        // Tiny servers: 0.5s vs 0.3s is 66% slower, but just noise
+        Assertions.assertFalse(StartupProfiler.isRegression(500, 300));
+    }
+
+    @Test
+    void parsesReportedTime() {
+        Assertions.assertEquals(9512L, StartupProfiler.parseReportedMs("[12:00:10 INFO]: Done (9.512s)! For help, type \"help\""));
+        Assertions.assertEquals(9512L, StartupProfiler.parseReportedMs("[12:00:10 INFO]: Done (9,512s)! For help"));
+        Assertions.assertEquals(-1L, StartupProfiler.parseReportedMs("Listening on /0.0.0.0:25577"));
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright Osiris Team
+ * All rights reserved.
+ *
+ * This software is copyrighted work licensed under the terms of the
+ * AutoPlug License.  Please consult the file "LICENSE" for details.
+ */
+
+package com.osiris.autoplug.client.minecraft.console;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+class ConsoleLineBusTest {
+
+    @Test
+    void slowSubscriberDoesNotStallOthers() throws InterruptedException {
+        ConsoleLineBus bus = new ConsoleLineBus(64);
+        final int lines = 10000;
+        List<String> local = new CopyOnWriteArrayList<>();
+        List<String> online = new CopyOnWriteArrayList<>();
+
+        ConsoleLineBus.Subscriber localSub = bus.subscribe("Local", OverflowPolicy.BLOCK, line -> local.add(line.toString()));
+        ConsoleLineBus.Subscriber onlineSub = bus.subscribe("Online", OverflowPolicy.SUMMARIZE, line -> {
+            online.add(line.toString());
+            Thread.sleep(5); // Like a slow network write
+        });
+
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < lines; i++) {
+            bus.publish("Line " + i);
+        }
+        while (localSub.getLag() > 0)
+            Thread.sleep(1);
+        long ms = System.currentTimeMillis() - start;
+
+        // The publisher and the local subscriber were not slowed down by the online subscriber (which would need 50 seconds)
+        Assertions.assertTrue(ms < 5000, "Took " + ms + "ms");
+        Assertions.assertEquals(lines, local.size());
+        for (int i = 0; i < lines; i++) {
+            Assertions.assertEquals("Line " + i, local.get(i));
+        }
+        Assertions.assertTrue(onlineSub.getDropped() > 0);
+        Assertions.assertTrue(online.stream().anyMatch(line -> line.startsWith("[AutoPlug] Skipped ")));
+
+        localSub.close();
+        onlineSub.close();
+        Assertions.assertTrue(bus.getSubscribers().isEmpty());
+    }
+
+    @Test
+    void blockingSubscriberGetsEverything() throws InterruptedException {
+        ConsoleLineBus bus = new ConsoleLineBus(16);
+        AtomicLong received = new AtomicLong();
+        ConsoleLineBus.Subscriber sub = bus.subscribe("Slow", OverflowPolicy.BLOCK, line -> {
+            if (received.incrementAndGet() % 100 == 0) Thread.sleep(1);
+        });
+        for (int i = 0; i < 5000; i++) {
+            bus.publish("Line " + i);
+        }
+        while (sub.getLag() > 0)
+            Thread.sleep(1);
+        Assertions.assertEquals(5000, received.get());
+        Assertions.assertEquals(0, sub.getDropped());
+        sub.close();
+    }
+
+    @Test
+    void consoleOutputStreamSplitsLines() throws InterruptedException {
+        ConsoleLineBus bus = new ConsoleLineBus(16);
+        List<String> lines = new CopyOnWriteArrayList<>();
+        ConsoleLineBus.Subscriber sub = bus.subscribe("Test", OverflowPolicy.BLOCK, line -> lines.add(line.toString()));
+        ConsoleOutputStream out = new ConsoleOutputStream(bus);
+        byte[] bytes = "first\r\nsec".getBytes();
+        out.write(bytes, 0, bytes.length);
+        bytes = "ond\nthird".getBytes();
+        out.write(bytes, 0, bytes.length);
+        out.close();
+        while (sub.getLag() > 0)
+            Thread.sleep(1);
+        Assertions.assertEquals(3, lines.size());
+        Assertions.assertEquals("first", lines.get(0));
+        Assertions.assertEquals("second", lines.get(1));
+        Assertions.assertEquals("third", lines.get(2));
+        sub.close();
+    }
+
+    @Test
+    void consoleOutputStreamDecodesUtf8() throws InterruptedException {
+        ConsoleLineBus bus = new ConsoleLineBus(16);
+        List<String> lines = new CopyOnWriteArrayList<>();
+        ConsoleLineBus.Subscriber sub = bus.subscribe("Test", OverflowPolicy.DROP_OLDEST, line -> lines.add(line.toString()));
+        ConsoleOutputStream out = new ConsoleOutputStream(bus, StandardCharsets.UTF_8);
+        byte[] bytes = "Grüße ✓\n".getBytes(StandardCharsets.UTF_8);
+        for (byte b : bytes) { // Multi-byte chars split across writes
+            out.write(b);
+        }
+        while (sub.getLag() > 0)
+            Thread.sleep(1);
+        Assertions.assertEquals("Grüße ✓", lines.get(0));
+        sub.close();
+    }
+
+    /**
+     * Pushes 50k lines through the decoding stage and the bus and
+     * checks that the publisher and the subscriber allocate (almost) nothing once warmed up.
+     */
+    @Test
+    void decodingAndDeliveringIsAllocationFree() throws Exception {
+        com.sun.management.ThreadMXBean mx = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        ConsoleLineBus bus = new ConsoleLineBus(1024);
+        AtomicLong matches = new AtomicLong();
+        AtomicLong subscriberAllocated = new AtomicLong();
+        ConsoleLineBus.Subscriber sub = bus.subscribe("Test", OverflowPolicy.BLOCK, line -> {
+            if (line.contains("Done (")) {
+                matches.incrementAndGet();
+                subscriberAllocated.set(mx.getThreadAllocatedBytes(Thread.currentThread().getId()));
+            }
+        });
+        ConsoleOutputStream out = new ConsoleOutputStream(bus, StandardCharsets.UTF_8);
+        byte[] block = new StringBuilder()
+                .append("[12:00:00 INFO]: Preparing spawn area: 42%\n")
+                .append("[12:00:00 INFO]: Done (3.14s)! For help, type \"help\"\n")
+                .toString().getBytes(StandardCharsets.UTF_8);
+
+        for (int i = 0; i < 10000; i++) { // Warm up, so that all buffers are grown
+            out.write(block, 0, block.length);
+        }
+        while (sub.getLag() > 0)
+            Thread.sleep(1);
+        long subscriberBefore = subscriberAllocated.get();
+        long publisherBefore = mx.getThreadAllocatedBytes(Thread.currentThread().getId());
+
+        for (int i = 0; i < 25000; i++) { // 50k lines
+            out.write(block, 0, block.length);
+        }
+        long publisherAllocated = mx.getThreadAllocatedBytes(Thread.currentThread().getId()) - publisherBefore;
+        while (sub.getLag() > 0)
+            Thread.sleep(1);
+        long subscriberAlloc = subscriberAllocated.get() - subscriberBefore;
+
+        System.out.println("Allocated while publishing 50k lines: " + publisherAllocated + " bytes (publisher), "
+                + subscriberAlloc + " bytes (subscriber)");
+        Assertions.assertEquals(35000, matches.get());
+        // Strings for 50k lines would be several megabytes, leave some room for the JVMs own allocations
+        Assertions.assertTrue(publisherAllocated < 64 * 1024, "Publisher allocated " + publisherAllocated + " bytes");
+        Assertions.assertTrue(subscriberAlloc < 64 * 1024, "Subscriber allocated " + subscriberAlloc + " bytes");
+        sub.close();
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright Osiris Team
+ * All rights reserved.
+ *
+ * This software is copyrighted work licensed under the terms of the
+ * AutoPlug License.  Please consult the file "LICENSE" for details.
+ */
+
+package com.osiris.autoplug.client.minecraft.console;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.List;
+
+class ConsoleScrollbackTest {
+    private static final long CAPACITY = ConsoleScrollback.INDEX_INTERVAL * 4;
+
+    private static File newFile() throws Exception {
+        File file = new File(Files.createTempDirectory("autoplug-scrollback").toFile(), "console-scrollback.bin");
+        file.deleteOnExit();
+        return file;
+    }
+
+    @Test
+    void keepsOnlyNewestLinesAfterWrapAround() throws Exception {
+        File file = newFile();
+        try (ConsoleScrollback scrollback = new ConsoleScrollback(file, CAPACITY)) {
+            for (int i = 0; i < 10000; i++) { // Much more than fits
+                scrollback.append("[12:00:00 INFO]: Line " + i, i, 1000 + i);
+            }
+            Assertions.assertEquals(10000, scrollback.getLineCount());
+            Assertions.assertEquals(CAPACITY + 64 + (CAPACITY / ConsoleScrollback.INDEX_INTERVAL + 2) * 16, file.length());
+
+            List<ConsoleScrollback.Line> last = scrollback.readLast(100);
+            Assertions.assertEquals(100, last.size());
+            for (int i = 0; i < 100; i++) {
+                Assertions.assertEquals("[12:00:00 INFO]: Line " + (9900 + i), last.get(i).getText());
+                Assertions.assertEquals(9900 + i, last.get(i).getSequence());
+            }
+
+            // More than the file holds, thus everything still there gets returned, without corrupted lines
+            List<ConsoleScrollback.Line> all = scrollback.readLast(100000);
+            Assertions.assertTrue(all.size() > 1000 && all.size() < 10000, "Size: " + all.size());
+            for (int i = 1; i < all.size(); i++) {
+                Assertions.assertEquals(all.get(i - 1).getSequence() + 1, all.get(i).getSequence());
+            }
+            Assertions.assertEquals(9999, all.get(all.size() - 1).getSequence());
+
+            List<ConsoleScrollback.Line> since = scrollback.readSince(1000 + 9950, 1000);
+            Assertions.assertEquals(50, since.size());
+            Assertions.assertEquals("[12:00:00 INFO]: Line 9950", since.get(0).getText());
+            Assertions.assertEquals(10, scrollback.readSince(1000 + 9950, 10).size());
+        }
+    }
+
+    @Test
+    void searchFindsNewestMatches() throws Exception {
+        try (ConsoleScrollback scrollback = new ConsoleScrollback(newFile(), CAPACITY)) {
+            for (int i = 0; i < 1000; i++) {
+                scrollback.append(i % 100 == 0 ? "[12:00:00 WARN]: Something went wrong ✗ " + i : "[12:00:00 INFO]: Line " + i, i, i);
+            }
+            List<ConsoleScrollback.Line> matches = scrollback.search("wrong ✗", 5);
+            Assertions.assertEquals(5, matches.size());
+            Assertions.assertEquals("[12:00:00 WARN]: Something went wrong ✗ 900", matches.get(4).getText());
+            Assertions.assertEquals("[12:00:00 WARN]: Something went wrong ✗ 500", matches.get(0).getText());
+            Assertions.assertEquals(0, scrollback.search("not there", 5).size());
+        }
+    }
+
+    @Test
+    void survivesRestart() throws Exception {
+        File file = newFile();
+        try (ConsoleScrollback scrollback = new ConsoleScrollback(file, CAPACITY)) {
+            for (int i = 0; i < 3000; i++) {
+                scrollback.append("Line " + i, i, i);
+            }
+        }
+        try (ConsoleScrollback scrollback = new ConsoleScrollback(file, CAPACITY)) {
+            Assertions.assertEquals(3000, scrollback.getLineCount());
+            Assertions.assertEquals("Line 2999", scrollback.readLast(1).get(0).getText());
+            scrollback.append("After restart", 0, 5000);
+            Assertions.assertEquals("After restart", scrollback.readLast(1).get(0).getText());
+        }
+        // Another capacity discards the old history
+        try (ConsoleScrollback scrollback = new ConsoleScrollback(file, CAPACITY * 2)) {
+            Assertions.assertEquals(0, scrollback.getLineCount());
+            Assertions.assertEquals(0, scrollback.readLast(10).size());
+        }
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright Osiris Team
+ * All rights reserved.
+ *
+ * This software is copyrighted work licensed under the terms of the
+ * AutoPlug License.  Please consult the file "LICENSE" for details.
+ */
+
+package com.osiris.autoplug.client.minecraft.console.triggers;
+
+import com.osiris.autoplug.client.minecraft.console.ConsoleLine;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+class ConsoleTriggerEngineTest {
+    private static final String[] LINES = {
+            "[12:00:00 INFO]: Preparing spawn area: 42%",
+            "[12:00:01 INFO]: Done (3.141s)! For help, type \"help\"",
+            "[12:00:02 WARN]: Can't keep up! Is the server overloaded? Running 2034ms or 40 ticks behind",
+            "[12:00:03 INFO]: Saved the game",
+            "[12:00:04 INFO]: Steve[/127.0.0.1:51234] logged in with entity id 123 at ([world]0.5, 64.0, 0.5)",
+            "[12:00:05 ERROR]: Exception in thread \"Server thread\" java.lang.NullPointerException",
+            "\tat net.minecraft.server.MinecraftServer.run(MinecraftServer.java:1234)"
+    };
+
+    @Test
+    void ahoCorasickFindsOverlappingKeywords() {
+        AhoCorasick ac = new AhoCorasick(Arrays.asList("he", "she", "his", "hers", ""));
+        List<String> found = new ArrayList<>();
+        ac.match("ushers", (id, end) -> found.add(id + "@" + end));
+        // "she" and "he" end at index 3, "hers" at index 5
+        Assertions.assertEquals(Arrays.asList("1@3", "0@3", "3@5"), found);
+    }
+
+    @Test
+    void findsRequiredLiteralsOfRegexes() {
+        Assertions.assertEquals("Exception in thread \"", ConsoleTrigger.requiredLiteral("Exception in thread \".+\""));
+        Assertions.assertEquals("] logged in with entity id ", ConsoleTrigger.requiredLiteral("\\w+\\[.+\\] logged in with entity id \\d+"));
+        Assertions.assertEquals("Can't keep up! ", ConsoleTrigger.requiredLiteral("Can't keep up! .*Running (\\d+)ms"));
+        Assertions.assertEquals("Done (", ConsoleTrigger.requiredLiteral("Done \\(\\d+\\.\\d+s\\)"));
+        Assertions.assertEquals("", ConsoleTrigger.requiredLiteral("foo|bar"));
+        Assertions.assertEquals("", ConsoleTrigger.requiredLiteral("(?i)done"));
+        Assertions.assertEquals("ab", ConsoleTrigger.requiredLiteral("abc?d{2,3}"));
+    }
+
+    @Test
+    void runsMatchingTriggersOncePerLine() {
+        ConsoleTriggerEngine engine = ConsoleTriggerEngine.fromDefinitions(Arrays.asList(
+                "literal:Can't keep up! -> metric:lag",
+                "literal:Saved the game -> metric:saves",
+                "regex:Exception in thread \".+\" -> metric:exceptions",
+                "regex:\\w+\\[.+\\] logged in with entity id \\d+ -> metric:joins",
+                "regex:Done \\(\\d+s\\) -> metric:never", // Literal matches, but the regex doesn't
+                "regex:^\\tat  -> metric:stacktrace",
+                "literal:e -> metric:contains-e", // Many occurrences per line, still counted once per line
+                "invalid trigger"));
+        Assertions.assertEquals(7, engine.getTriggers().size());
+        for (String line : LINES) {
+            engine.onLine(ConsoleLine.of(line));
+        }
+        Assertions.assertEquals(1, engine.getMetrics().get("lag").get());
+        Assertions.assertEquals(1, engine.getMetrics().get("saves").get());
+        Assertions.assertEquals(1, engine.getMetrics().get("exceptions").get());
+        Assertions.assertEquals(1, engine.getMetrics().get("joins").get());
+        Assertions.assertEquals(1, engine.getMetrics().get("stacktrace").get());
+        Assertions.assertEquals(7, engine.getMetrics().get("contains-e").get());
+        Assertions.assertNull(engine.getMetrics().get("never"));
+        Assertions.assertEquals(7, engine.getLinesChecked());
+    }
+
+    @Test
+    void cooldownLimitsActionRuns() {
+        ConsoleTriggerEngine engine = ConsoleTriggerEngine.fromDefinitions(Arrays.asList(
+                "literal:Can't keep up! -> metric:lag -> cooldown:60",
+                "literal:Can't keep up! -> metric:lag-all",
+                "literal:Can't keep up! -> metric:invalid -> cooldown:soon"));
+        Assertions.assertEquals(2, engine.getTriggers().size());
+        Assertions.assertEquals(60000, engine.getTriggers().get(0).getCooldownMs());
+        Assertions.assertEquals(ConsoleTrigger.RESTART_COOLDOWN_SECONDS * 1000, ConsoleTrigger.parse("literal:Out of memory -> restart").getCooldownMs());
+        for (int i = 0; i < 5; i++) {
+            engine.onLine(ConsoleLine.of(LINES[2]));
+        }
+        Assertions.assertEquals(1, engine.getMetrics().get("lag").get());
+        Assertions.assertEquals(5, engine.getMetrics().get("lag-all").get());
+        Assertions.assertEquals(5, engine.getTriggers().get(0).getMatches());
+    }
+
+    /**
+     * Benchmark (run as a test, since the build has no JMH setup):
+     * the time per line must stay about flat, when the amount of triggers grows from 10 to 2000.
+     */
+    @Test
+    void matchingStaysFlatAsPatternCountGrows() {
+        int[] counts = {10, 100, 1000, 2000};
+        double[] nsPerLine = new double[counts.length];
+        ConsoleLine[] lines = new ConsoleLine[LINES.length];
+        for (int i = 0; i < LINES.length; i++) lines[i] = ConsoleLine.of(LINES[i]);
+
+        for (int c = 0; c < counts.length; c++) {
+            List<String> definitions = new ArrayList<>();
+            for (int i = 0; i < counts[c]; i++) {
+                if (i % 2 == 0) definitions.add("literal:Plugin-" + i + " failed to load -> metric:p" + i);
+                else definitions.add("regex:Player" + i + " issued server command: /\\w+ -> metric:r" + i);
+            }
+            ConsoleTriggerEngine engine = ConsoleTriggerEngine.fromDefinitions(definitions);
+            for (int i = 0; i < 200000; i++) { // Warm up
+                engine.onLine(lines[i % lines.length]);
+            }
+            int iterations = 500000;
+            long start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                engine.onLine(lines[i % lines.length]);
+            }
+            nsPerLine[c] = (System.nanoTime() - start) / (double) iterations;
+            System.out.println(counts[c] + " triggers: " + String.format("%.0f", nsPerLine[c]) + " ns/line");
+        }
+        // A per-pattern scan would be ~200x slower for 2000 than for 10 patterns
+        Assertions.assertTrue(nsPerLine[counts.length - 1] < nsPerLine[0] * 5,
+                "Not flat: " + Arrays.toString(nsPerLine));
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright Osiris Team
+ * All rights reserved.
+ *
+ * This software is copyrighted work licensed under the terms of the
+ * AutoPlug License.  Please consult the file "LICENSE" for details.
+ */
+
+package com.osiris.autoplug.client.minecraft.flags;
+
+import com.osiris.autoplug.client.minecraft.StartupProfiler;
+import com.osiris.autoplug.client.minecraft.console.ConsoleLine;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+
+class CdsArchiveTest {
+
+    @Test
+    void fingerprintChangesWithPlugins() throws Exception {
+        File dir = Files.createTempDirectory("cds-server").toFile();
+        File jar = new File(dir, "paper.jar");
+        Files.write(jar.toPath(), new byte[]{1, 2, 3});
+        File plugins = new File(dir, "plugins");
+        plugins.mkdirs();
+        String before = CdsArchive.fingerprint("Eclipse Adoptium 17.0.2+8", jar, "paper-1.18.2-300", plugins);
+        Assertions.assertEquals(before, CdsArchive.fingerprint("Eclipse Adoptium 17.0.2+8", jar, "paper-1.18.2-300", plugins));
+
+        Files.write(new File(plugins, "Essentials.jar").toPath(), new byte[]{4});
+        String withPlugin = CdsArchive.fingerprint("Eclipse Adoptium 17.0.2+8", jar, "paper-1.18.2-300", plugins);
+        Assertions.assertNotEquals(before, withPlugin);
+        Assertions.assertNotEquals(withPlugin, CdsArchive.fingerprint("Eclipse Adoptium 17.0.3+7", jar, "paper-1.18.2-300", plugins));
+        Assertions.assertNotEquals(withPlugin, CdsArchive.fingerprint("Eclipse Adoptium 17.0.2+8", jar, "paper-1.18.2-301", plugins));
+    }
+
+    @Test
+    void trainsThenUsesArchive() throws Exception {
+        File dir = Files.createTempDirectory("cds").toFile();
+        StartupProfiler profiler = new StartupProfiler(new File(dir, "startup-history.csv"), new File(dir, "plugin-startup-times.csv"));
+        CdsArchive cds = new CdsArchive(new File(dir, "cds"));
+
+        JvmFlags.Flag flag = cds.prepare("a", profiler);
+        Assertions.assertTrue(flag.getFlag().startsWith("XX:ArchiveClassesAtExit="), flag.getFlag());
+        start(profiler);
+        Assertions.assertEquals(CdsArchive.TAG_TRAINING, profiler.getLast().getTag());
+
+        // Crashed, thus the JVM didn't write the archive
+        cds.onExit(1);
+        Assertions.assertFalse(cds.isValid("a"));
+        flag = cds.prepare("a", profiler);
+        Assertions.assertTrue(flag.getFlag().startsWith("XX:ArchiveClassesAtExit="), flag.getFlag());
+
+        // Stopped normally
+        File training = new File(flag.getFlag().substring(flag.getFlag().indexOf('=') + 1));
+        Files.write(training.toPath(), new byte[]{1});
+        cds.onExit(0);
+        Assertions.assertTrue(cds.isValid("a"));
+        Assertions.assertFalse(training.exists());
+        flag = cds.prepare("a", profiler);
+        Assertions.assertEquals("XX:SharedArchiveFile=" + cds.getArchive().getAbsolutePath(), flag.getFlag());
+        start(profiler);
+        Assertions.assertEquals(CdsArchive.TAG_ARCHIVE, profiler.getLast().getTag());
+
+        // Tags survive a reload of the history
+        StartupProfiler reloaded = new StartupProfiler(new File(dir, "startup-history.csv"), new File(dir, "plugin-startup-times.csv"));
+        Assertions.assertEquals(2, reloaded.getHistory().size());
+        Assertions.assertEquals(CdsArchive.TAG_TRAINING, reloaded.getHistory().get(0).getTag());
+        Assertions.assertEquals(CdsArchive.TAG_ARCHIVE, reloaded.getHistory().get(1).getTag());
+        CdsArchive.printReport(reloaded.getHistory());
+
+        // Something changed
+        flag = cds.prepare("b", profiler);
+        Assertions.assertTrue(flag.getFlag().startsWith("XX:ArchiveClassesAtExit="), flag.getFlag());
+        Assertions.assertFalse(cds.getArchive().exists());
+    }
+
+    private static void start(StartupProfiler profiler) {
+        profiler.spawning();
+        profiler.spawned();
+        profiler.onConsoleLine(ConsoleLine.of("[12:00:00 INFO]: Done (0.1s)! For help, type \"help\""), true);
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright Osiris Team
+ * All rights reserved.
+ *
+ * This software is copyrighted work licensed under the terms of the
+ * AutoPlug License.  Please consult the file "LICENSE" for details.
+ */
+
+package com.osiris.autoplug.client.minecraft.flags;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+class JvmFlagsTest {
+    private static final long GB = 1024L * 1024 * 1024;
+    private static final List<String> NO_FLAGS = new ArrayList<>();
+
+    @Test
+    void calculatesHeapFromContainerLimit() {
+        HostResources container = new HostResources(64 * GB, 4 * GB, 2, 0, "never", 1, 17);
+        JvmFlags flags = JvmFlags.build(JvmFlagProfile.AUTO, container, -1, false, false, false, NO_FLAGS);
+        Assertions.assertEquals(JvmFlagProfile.AIKAR, flags.getProfile());
+        Assertions.assertTrue(flags.contains("Xmx3G"), flags.asList().toString()); // 4G - 20%, rounded down
+        Assertions.assertTrue(flags.contains("Xms3G"));
+        Assertions.assertTrue(flags.contains("XX:+UseG1GC"));
+        Assertions.assertTrue(flags.contains("XX:G1HeapRegionSize=8M"));
+    }
+
+    @Test
+    void picksProfileByHeapAndJava() {
+        HostResources bigHost = new HostResources(64 * GB, -1, 32, 0, "never", 1, 17);
+        Assertions.assertEquals(JvmFlagProfile.ZGC, JvmFlags.build(JvmFlagProfile.AUTO, bigHost, -1, false, false, false, NO_FLAGS).getProfile());
+        HostResources bigHostOldJava = new HostResources(64 * GB, -1, 32, 0, "never", 1, 8);
+        JvmFlags flags = JvmFlags.build(JvmFlagProfile.AUTO, bigHostOldJava, -1, false, false, false, NO_FLAGS);
+        Assertions.assertEquals(JvmFlagProfile.AIKAR, flags.getProfile());
+        Assertions.assertTrue(flags.contains("Xmx48G")); // 64G - 25%
+        Assertions.assertTrue(flags.contains("XX:G1HeapRegionSize=16M"));
+        // Explicit ZGC on Java 8 isn't possible
+        Assertions.assertEquals(JvmFlagProfile.AIKAR, JvmFlags.build(JvmFlagProfile.ZGC, bigHostOldJava, -1, false, false, false, NO_FLAGS).getProfile());
+
+        HostResources tiny = new HostResources(GB + GB / 2, -1, 1, 0, "never", 1, 17);
+        JvmFlags small = JvmFlags.build(JvmFlagProfile.AUTO, tiny, -1, false, false, false, NO_FLAGS);
+        Assertions.assertEquals(JvmFlagProfile.SMALL, small.getProfile());
+        Assertions.assertTrue(small.contains("Xmx512M"));
+        Assertions.assertTrue(small.contains("XX:+UseSerialGC"));
+    }
+
+    @Test
+    void addsHostFeaturesAndUserFlags() {
+        HostResources host = new HostResources(128 * GB, -1, 64, 0, "madvise", 2, 21);
+        JvmFlags flags = JvmFlags.build(JvmFlagProfile.ZGC, host, JvmFlags.parseSize("24G"), true, true, true,
+                Arrays.asList("Xmx2G", "Dfile.encoding=UTF-8"));
+        List<String> list = flags.asList();
+        Assertions.assertTrue(list.contains("Xmx24G"));
+        Assertions.assertFalse(list.contains("Xmx2G"));
+        Assertions.assertTrue(list.contains("XX:+ZGenerational"));
+        Assertions.assertTrue(list.contains("XX:+UseTransparentHugePages"));
+        Assertions.assertTrue(list.contains("XX:+AlwaysPreTouch"));
+        Assertions.assertTrue(list.contains("XX:+UseNUMA"));
+        Assertions.assertEquals("Dfile.encoding=UTF-8", list.get(list.size() - 1));
+        for (JvmFlags.Flag f : flags.getFlags()) Assertions.assertFalse(f.getReason().isEmpty());
+
+        JvmFlags manual = JvmFlags.build(JvmFlagProfile.MANUAL, host, -1, true, true, true, Arrays.asList("Xms2G", "Xmx2G"));
+        Assertions.assertEquals(Arrays.asList("Xms2G", "Xmx2G"), manual.asList());
+    }
+
+    @Test
+    void parsesHostFiles() {
+        Assertions.assertEquals(-1L, HostResources.parseCgroupLimit("max"));
+        Assertions.assertEquals(-1L, HostResources.parseCgroupLimit("9223372036854771712"));
+        Assertions.assertEquals(4294967296L, HostResources.parseCgroupLimit("4294967296\n"));
+        Assertions.assertEquals("madvise", HostResources.parseTransparentHugePages("always [madvise] never"));
+        Assertions.assertEquals(8, HostResources.parseJavaVersion("1.8"));
+        Assertions.assertEquals(17, HostResources.parseJavaVersion("17"));
+        Assertions.assertEquals(512L * 1024 * 1024, JvmFlags.parseSize("512M"));
+        Assertions.assertEquals(-1L, JvmFlags.parseSize("auto"));
+    }
+
+    @Test
+    void probeOfHangingJavaTimesOut() throws Exception {
+        Assumptions.assumeFalse(System.getProperty("os.name").toLowerCase().contains("win"));
+        File java = File.createTempFile("hanging-java", ".sh");
+        Files.write(java.toPath(), "#!/bin/sh\necho 'java.specification.version = 99'\nsleep 60\n".getBytes(StandardCharsets.UTF_8));
+        java.setExecutable(true);
+        long start = System.currentTimeMillis();
+        Properties properties = HostResources.probeJava(java.getAbsolutePath(), 500);
+        Assertions.assertTrue(System.currentTimeMillis() - start < 10000);
+        // Falls back to the properties of the current java
+        Assertions.assertEquals(System.getProperty("java.specification.version"), properties.getProperty("java.specification.version"));
+        java.delete();
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright Osiris Team
+ * All rights reserved.
+ *
+ * This software is copyrighted work licensed under the terms of the
+ * AutoPlug License.  Please consult the file "LICENSE" for details.
+ */
+
+package com.osiris.autoplug.client.network.online;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+class CompressedStreamsTest {
+
+    @Test
+    void requestResponseWithoutExplicitFlush() throws Exception {
+        try (ServerSocket server = new ServerSocket(0)) {
+            // Echos each string in upper case, like a request/response protocol
+            CompletableFuture<Void> echo = CompletableFuture.runAsync(() -> {
+                try (Socket s = server.accept()) {
+                    CompressedOutputStream out = new CompressedOutputStream(s.getOutputStream(), new CompressionStats("server out"));
+                    DataInputStream in = new DataInputStream(new CompressedInputStream(s.getInputStream(), new CompressionStats("server in"), out));
+                    DataOutputStream dos = new DataOutputStream(out);
+                    for (int i = 0; i < 3; i++) {
+                        dos.writeUTF(in.readUTF().toUpperCase());
+                    }
+                    dos.flush();
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            });
+
+            try (Socket s = new Socket("localhost", server.getLocalPort())) {
+                CompressionStats outStats = new CompressionStats("client out");
+                CompressedOutputStream out = new CompressedOutputStream(s.getOutputStream(), outStats);
+                DataInputStream in = new DataInputStream(new CompressedInputStream(s.getInputStream(), new CompressionStats("client in"), out));
+                DataOutputStream dos = new DataOutputStream(out);
+                StringBuilder big = new StringBuilder();
+                for (int i = 0; i < 200; i++) big.append("[12:00:00 WARN]: Could not pass event PlayerMoveEvent to SpammyPlugin\n");
+                for (String request : new String[]{"hello", "plugin list", big.toString()}) {
+                    dos.writeUTF(request); // No flush, reading the response flushes it
+                    Assertions.assertEquals(request.toUpperCase(), in.readUTF());
+                }
+                Assertions.assertTrue(outStats.getRatio() > 5, outStats.getStats());
+                Assertions.assertTrue(CompressionStats.getAll().contains(outStats));
+                out.close();
+                Assertions.assertFalse(CompressionStats.getAll().contains(outStats));
+            }
+            echo.get(10, TimeUnit.SECONDS);
+        }
+    }
+
+    @Test
+    void readerDoesntWaitForMoreThanWasFlushed() throws Exception {
+        try (ServerSocket server = new ServerSocket(0);
+             Socket client = new Socket("localhost", server.getLocalPort());
+             Socket s = server.accept()) {
+            client.setSoTimeout(10000);
+            Writer writer = new OutputStreamWriter(new CompressedOutputStream(s.getOutputStream(), new CompressionStats("server out")));
+            BufferedReader reader = new BufferedReader(new InputStreamReader(new CompressedInputStream(client.getInputStream(), new CompressionStats("client in"), null)));
+            writer.write("[12:00:00 INFO]: Done (3.2s)!\n");
+            writer.flush();
+            Assertions.assertEquals("[12:00:00 INFO]: Done (3.2s)!", reader.readLine());
+        }
+    }
+
+    @Test
+    void singleByteWritesGetBuffered() throws Exception {
+        ByteArrayOutputStream sent = new ByteArrayOutputStream();
+        CompressionStats stats = new CompressionStats("single bytes");
+        CompressedOutputStream out = new CompressedOutputStream(sent, stats);
+        byte[] expected = new byte[3 * CompressedOutputStream.BUFFER_SIZE + 100];
+        for (int i = 0; i < expected.length; i++) {
+            expected[i] = (byte) (i % 7);
+            out.write(expected[i]);
+        }
+        // Only full buffers were deflated so far
+        Assertions.assertEquals(3L * CompressedOutputStream.BUFFER_SIZE, stats.getRawBytes());
+        out.flush();
+        Assertions.assertEquals((long) expected.length, stats.getRawBytes());
+
+        DataInputStream in = new DataInputStream(new CompressedInputStream(new ByteArrayInputStream(sent.toByteArray()), new CompressionStats("in"), null));
+        byte[] received = new byte[expected.length];
+        in.readFully(received);
+        Assertions.assertArrayEquals(expected, received);
+        out.close();
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright Osiris Team
+ * All rights reserved.
+ *
+ * This software is copyrighted work licensed under the terms of the
+ * AutoPlug License.  Please consult the file "LICENSE" for details.
+ */
+
+package com.osiris.autoplug.client.network.online;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+class ConsoleSendFilterTest {
+
+    @Test
+    void appliesIncludeAndExcludeRules() throws Exception {
+        ConsoleSendFilter filter = new ConsoleSendFilter(Arrays.asList("include:WARN|ERROR", "exclude:SpammyPlugin"), 0, 16);
+        List<String> sent = new ArrayList<>();
+        for (String line : Arrays.asList("[12:00:00 INFO]: Hello", "[12:00:00 WARN]: Low TPS",
+                "[12:00:00 WARN]: [SpammyPlugin] Something", "[12:00:00 ERROR]: Crash")) {
+            filter.process(line, l -> sent.add(l.toString()));
+        }
+        Assertions.assertEquals(Arrays.asList("[12:00:00 WARN]: Low TPS", "[12:00:00 ERROR]: Crash"), sent);
+        Assertions.assertEquals(2L, filter.getFiltered());
+    }
+
+    @Test
+    void rejectsInvalidRules() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new ConsoleSendFilter(Collections.singletonList("include:(["), 0, 16));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new ConsoleSendFilter(Collections.singletonList("skip:abc"), 0, 16));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new ConsoleSendFilter(Collections.singletonList("abc"), 0, 16));
+    }
+
+    @Test
+    void collapsesRepeatedLines() throws Exception {
+        AtomicLong clock = new AtomicLong(1_000_000);
+        ConsoleSendFilter filter = new ConsoleSendFilter(Collections.emptyList(), 10_000, 16, clock::get);
+        List<String> sent = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            clock.addAndGet(5);
+            // Same message, different timestamps
+            filter.process("[12:00:0" + (i % 10) + " WARN]: Could not pass event to SpammyPlugin", l -> sent.add(l.toString()));
+            if (i % 100 == 0) filter.process("[12:00:00 INFO]: Player joined " + i, l -> sent.add(l.toString()));
+        }
+        Assertions.assertEquals(11, sent.size(), sent.toString()); // 1 warning and 10 joins
+        Assertions.assertEquals(999L, filter.getCollapsed());
+
+        // After the period, the summary gets sent before the next line
+        clock.addAndGet(10_000);
+        filter.process("[12:01:00 INFO]: Saved the game", l -> sent.add(l.toString()));
+        Assertions.assertEquals("[AutoPlug] Previous line repeated 999 time(s): Could not pass event to SpammyPlugin", sent.get(11));
+        Assertions.assertEquals("[12:01:00 INFO]: Saved the game", sent.get(12));
+    }
+
+    @Test
+    void windowIsBounded() throws Exception {
+        AtomicLong clock = new AtomicLong(1_000_000);
+        ConsoleSendFilter filter = new ConsoleSendFilter(Collections.emptyList(), 10_000, 2, clock::get);
+        List<String> sent = new ArrayList<>();
+        filter.process("a", l -> sent.add(l.toString()));
+        filter.process("a", l -> sent.add(l.toString()));
+        filter.process("b", l -> sent.add(l.toString()));
+        filter.process("c", l -> sent.add(l.toString())); // Evicts a, thus its repetition gets reported
+        filter.process("a", l -> sent.add(l.toString()));
+        Assertions.assertEquals(Arrays.asList("a", "b", "[AutoPlug] Previous line repeated 1 time(s): a", "c", "a"), sent);
+    }
+}
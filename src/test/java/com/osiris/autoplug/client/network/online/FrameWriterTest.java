@@ -0,0 +1,95 @@
+/*
+ * Copyright Osiris Team
+ * All rights reserved.
+ *
+ * This software is copyrighted work licensed under the terms of the
+ * AutoPlug License.  Please consult the file "LICENSE" for details.
+ */
+
+package com.osiris.autoplug.client.network.online;
+
+import com.osiris.autoplug.client.minecraft.console.ConsoleLine;
+import com.osiris.autoplug.client.minecraft.console.OverflowPolicy;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.StringWriter;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class FrameWriterTest {
+
+    private static class CountingWriter extends StringWriter {
+        final AtomicInteger flushes = new AtomicInteger();
+
+        @Override
+        public void flush() {
+            super.flush();
+            flushes.incrementAndGet();
+        }
+    }
+
+    @Test
+    void batchesLinesWithinInterval() throws Exception {
+        CountingWriter out = new CountingWriter();
+        FrameWriter writer = new FrameWriter("Test-Writer", out, 500, 64 * 1024, new SendQueue("Test", 10_000, 1024 * 1024, OverflowPolicy.DROP_OLDEST));
+        for (int i = 0; i < 100; i++) {
+            writer.writeLine(ConsoleLine.of("[12:00:00 INFO]: line " + i));
+        }
+        writer.close();
+        Assertions.assertTrue(out.flushes.get() <= 2, "flushes: " + out.flushes.get());
+        Assertions.assertEquals(100L, writer.getLines());
+        Assertions.assertTrue(out.toString().startsWith("[12:00:00 INFO]: line 0" + System.lineSeparator()));
+        Assertions.assertTrue(out.toString().endsWith("[12:00:00 INFO]: line 99" + System.lineSeparator()));
+    }
+
+    @Test
+    void flushesFullFramesEarly() throws Exception {
+        CountingWriter out = new CountingWriter();
+        FrameWriter writer = new FrameWriter("Test-Writer", out, 60_000, 100, new SendQueue("Test", 10_000, 1024 * 1024, OverflowPolicy.DROP_OLDEST));
+        for (int i = 0; i < 10; i++) {
+            writer.write("0123456789012345678901234567890123456789", false);
+            Thread.sleep(20);
+        }
+        long start = System.currentTimeMillis();
+        while (writer.getChars() < 300 && System.currentTimeMillis() - start < 10_000) Thread.sleep(10);
+        Assertions.assertTrue(writer.getFrames() >= 3, writer.getStats());
+        Assertions.assertTrue(writer.getMaxLinesPerFrame() <= 4, writer.getStats());
+        writer.close();
+        Assertions.assertEquals(10L, writer.getLines());
+    }
+
+    @Test
+    void flushesUserInputRightAway() throws Exception {
+        CountingWriter out = new CountingWriter();
+        FrameWriter writer = new FrameWriter("Test-Writer", out, 60_000, 64 * 1024, new SendQueue("Test", 10_000, 1024 * 1024, OverflowPolicy.DROP_OLDEST));
+        writer.write("list", true);
+        long start = System.currentTimeMillis();
+        while (writer.getFrames() == 0 && System.currentTimeMillis() - start < 10_000) Thread.sleep(10);
+        Assertions.assertEquals("list" + System.lineSeparator(), out.toString());
+        Assertions.assertTrue(System.currentTimeMillis() - start < 10_000);
+        writer.close();
+    }
+
+    @Test
+    void slowConnectionNeverBlocksCallers() throws Exception {
+        StringWriter out = new StringWriter() {
+            @Override
+            public void flush() {
+                try {
+                    Thread.sleep(500);
+                } catch (InterruptedException ignored) {
+                }
+            }
+        };
+        SendQueue queue = new SendQueue("Test", 100, 1024 * 1024, OverflowPolicy.SUMMARIZE);
+        FrameWriter writer = new FrameWriter("Test-Writer", out, 0, 1024, queue);
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < 10_000; i++) {
+            writer.writeLine(ConsoleLine.of("[12:00:00 INFO]: line " + i));
+        }
+        Assertions.assertTrue(System.currentTimeMillis() - start < 400, "took " + (System.currentTimeMillis() - start) + "ms");
+        Assertions.assertTrue(queue.getDropped() > 0);
+        Assertions.assertTrue(queue.getMaxDepth() <= 100);
+        writer.close(10);
+    }
+}
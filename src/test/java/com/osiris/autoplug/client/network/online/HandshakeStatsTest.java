@@ -0,0 +1,40 @@
+/*
+ * Copyright Osiris Team
+ * All rights reserved.
+ *
+ * This software is copyrighted work licensed under the terms of the
+ * AutoPlug License.  Please consult the file "LICENSE" for details.
+ */
+
+package com.osiris.autoplug.client.network.online;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+class HandshakeStatsTest {
+
+    @Test
+    void separatesFullAndResumedHandshakes() {
+        HandshakeStats stats = HandshakeStats.of((byte) 100);
+        Assertions.assertSame(stats, HandshakeStats.of((byte) 100));
+        Assertions.assertTrue(HandshakeStats.getAll().contains(stats));
+        stats.add(TimeUnit.MILLISECONDS.toNanos(200), false, "TLSv1.3");
+        stats.add(TimeUnit.MILLISECONDS.toNanos(40), true, "TLSv1.3");
+        stats.add(TimeUnit.MILLISECONDS.toNanos(60), true, "TLSv1.3");
+        Assertions.assertEquals(1L, stats.getFullCount());
+        Assertions.assertEquals(2L, stats.getResumedCount());
+        Assertions.assertEquals(200.0, stats.getAverageFullMs(), 0.001);
+        Assertions.assertEquals(50.0, stats.getAverageResumedMs(), 0.001);
+        Assertions.assertTrue(stats.getStats().startsWith("TLSv1.3, 1 full handshake(s)"), stats.getStats());
+    }
+
+    @Test
+    void prefersTls13() {
+        Assertions.assertArrayEquals(new String[]{"TLSv1.3", "TLSv1.2"},
+                SecuredConnection.selectProtocols(new String[]{"TLSv1", "TLSv1.1", "TLSv1.2", "TLSv1.3"}));
+        Assertions.assertArrayEquals(new String[]{"TLSv1.2"},
+                SecuredConnection.selectProtocols(new String[]{"SSLv3", "TLSv1", "TLSv1.2"}));
+    }
+}
@@ -0,0 +1,385 @@
+/*
+ * Copyright Osiris Team
+ * All rights reserved.
+ *
+ * This software is copyrighted work licensed under the terms of the
+ * AutoPlug License.  Please consult the file "LICENSE" for details.
+ */
+
+package com.osiris.autoplug.client.network.online;
+
+import com.osiris.autoplug.client.minecraft.console.OverflowPolicy;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Drives simulated clients against a {@link LocalWebServer} and records latency and throughput. <br>
+ * Each client does what a real one does, with its own server key:
+ * authenticates its main connection (see {@link SecuredConnection}), waits for the user to come online (see {@link PresenceReader}),
+ * opens the online console connections, sends console lines through a {@link FrameWriter}
+ * (which the server sends back as commands, to measure the round-trip) and checks its plugins. <br>
+ * Run {@link #main(String[])} for a benchmark: {@code [clients] [lines per client] [plugins per client] [multiplex]}.
+ */
+public class LoadHarness {
+    @NotNull
+    private final LocalWebServer server;
+    private final int clients;
+    private int linesPerClient = 100;
+    private int pluginsPerClient = 20;
+    private boolean multiplex = true;
+    private boolean compression = true;
+    private boolean nonBlocking = true;
+    private long timeoutMs = 120000;
+
+    public LoadHarness(@NotNull LocalWebServer server, int clients) {
+        this.server = server;
+        this.clients = clients;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+        try (LocalWebServer server = new LocalWebServer()) {
+            LoadHarness harness = new LoadHarness(server, clients);
+            if (args.length > 1) harness.setLinesPerClient(Integer.parseInt(args[1]));
+            if (args.length > 2) harness.setPluginsPerClient(Integer.parseInt(args[2]));
+            if (args.length > 3 && !Boolean.parseBoolean(args[3])) harness.setMultiplex(false).setNonBlocking(false);
+            Result result = harness.run();
+            System.out.println(result);
+            System.out.println("Server: " + server.getStats());
+            for (HandshakeStats stats : HandshakeStats.getAll())
+                System.out.println("TLS CON_TYPE " + stats.getConType() + ": " + stats.getStats());
+        }
+        System.exit(0);
+    }
+
+    public LoadHarness setLinesPerClient(int linesPerClient) {
+        this.linesPerClient = linesPerClient;
+        return this;
+    }
+
+    public LoadHarness setPluginsPerClient(int pluginsPerClient) {
+        this.pluginsPerClient = pluginsPerClient;
+        return this;
+    }
+
+    /**
+     * Ask for multiplexing, true by default. Without, each client opens a connection per secondary connection.
+     */
+    public LoadHarness setMultiplex(boolean multiplex) {
+        this.multiplex = multiplex;
+        return this;
+    }
+
+    public LoadHarness setCompression(boolean compression) {
+        this.compression = compression;
+        return this;
+    }
+
+    /**
+     * Serve the main connections by the shared {@link EventLoop}, true by default.
+     */
+    public LoadHarness setNonBlocking(boolean nonBlocking) {
+        this.nonBlocking = nonBlocking;
+        return this;
+    }
+
+    /**
+     * The max time for all clients to finish.
+     */
+    public LoadHarness setTimeout(long ms) {
+        this.timeoutMs = ms;
+        return this;
+    }
+
+    /**
+     * Registers the clients at the server, starts them all at once and waits for them to finish.
+     */
+    @NotNull
+    public Result run() throws Exception {
+        server.setConsoleListener((session, line) -> session.sendCommand(line)); // Echo
+        for (int p = 0; p < pluginsPerClient; p++)
+            server.addPlugin("Plugin" + p, "1." + (p % 2), p % 3 == 0 ? 1000 + p : 0, p % 3 == 1 ? 2000 + p : 0);
+
+        Result result = new Result();
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(clients);
+        for (int c = 0; c < clients; c++) {
+            String key = "load-test-key-" + c;
+            server.addKey(key, true);
+            server.setOnline(key, true);
+            Thread t = new Thread(() -> {
+                try {
+                    start.await();
+                    runClient(key, result);
+                } catch (Throwable e) {
+                    result.failures.add(key + ": " + e);
+                } finally {
+                    done.countDown();
+                }
+            }, "LoadHarness-" + key);
+            t.setDaemon(true);
+            t.start();
+        }
+        long startNanos = System.nanoTime();
+        start.countDown();
+        if (!done.await(timeoutMs, TimeUnit.MILLISECONDS))
+            result.failures.add((done.getCount()) + " client(s) didn't finish within " + timeoutMs + "ms.");
+        result.nanos = System.nanoTime() - startNanos;
+        result.clients = clients;
+        return result;
+    }
+
+    private void runClient(@NotNull String key, @NotNull Result result) throws Exception {
+        long start = System.nanoTime();
+        SecuredConnection main = new SecuredConnection(server.getEndpoint(), (byte) 0, key, multiplex, false, nonBlocking);
+        result.connect.add(System.nanoTime() - start);
+        Multiplexer mux = null;
+        List<AutoCloseable> resources = new ArrayList<>();
+        try {
+            PresenceReader presence;
+            main.setTimeout(PresenceReader.HEARTBEAT_TIMEOUT_MS);
+            if (main.isMultiplexed()) {
+                TlsConnection tls = main.getTlsConnection();
+                mux = tls != null ? new Multiplexer(key, tls, true) : new Multiplexer(key, main.getInput(), main.getOutput(), true);
+                MultiplexedChannel control = mux.getControlChannel();
+                control.setReadTimeout(PresenceReader.HEARTBEAT_TIMEOUT_MS);
+                presence = new PresenceReader(control.getInput(), control.getOutput());
+            } else
+                presence = new PresenceReader(main.getInput(), null);
+            while (!presence.next()) ;
+
+            Streams receive = open(mux, key, (byte) 1, result);
+            resources.add(receive);
+            Streams send = open(mux, key, (byte) 2, result);
+            resources.add(send);
+            runConsole(key, receive, send, result);
+            Streams plugins = open(mux, key, (byte) 3, result);
+            resources.add(plugins);
+            runPluginsCheck(plugins, result);
+        } finally {
+            for (AutoCloseable c : resources) {
+                try {
+                    c.close();
+                } catch (Exception ignored) {
+                }
+            }
+            if (mux != null) mux.close();
+            main.close();
+        }
+    }
+
+    /**
+     * Opens a secondary connection like {@link SecondaryConnection} does: a channel if multiplexed,
+     * otherwise its own connection.
+     */
+    @NotNull
+    private Streams open(@Nullable Multiplexer mux, @NotNull String key, byte type, @NotNull Result result) throws Exception {
+        long start = System.nanoTime();
+        Streams streams;
+        if (mux == null) {
+            SecuredConnection con = new SecuredConnection(server.getEndpoint(), type, key, false, compression, false);
+            streams = new Streams(con.getInput(), con.getOutput(), con::close);
+        } else {
+            MultiplexedChannel ch = mux.openChannel(compression ? (byte) (type | SecuredConnection.COMPRESSION_FLAG) : type);
+            SecuredConnection.checkResponse(type, ch.getResponse());
+            ch.setReadTimeout(30000);
+            if (compression) {
+                CompressedOutputStream out = new CompressedOutputStream(ch.getOutput(), new CompressionStats("Load " + type + " out"));
+                streams = new Streams(new CompressedInputStream(ch.getInput(), new CompressionStats("Load " + type + " in"), out), out, ch::close);
+            } else
+                streams = new Streams(ch.getInput(), ch.getOutput(), ch::close);
+        }
+        result.open.add(System.nanoTime() - start);
+        return streams;
+    }
+
+    private void runConsole(@NotNull String key, @NotNull Streams receive, @NotNull Streams send, @NotNull Result result) throws Exception {
+        SendQueue queue = new SendQueue(key, linesPerClient + 1, Long.MAX_VALUE, OverflowPolicy.SUMMARIZE);
+        FrameWriter writer = new FrameWriter(key + "-Writer", new BufferedWriter(new OutputStreamWriter(send.out), 16 * 1024), 10, 16 * 1024, queue);
+        try {
+            for (int i = 0; i < linesPerClient; i++)
+                writer.write("[12:00:00 INFO]: Line " + i + " sent at " + System.nanoTime(), false);
+            DataInputStream in = new DataInputStream(receive.in);
+            for (int i = 0; i < linesPerClient; i++) {
+                String command = in.readUTF();
+                long sentAt = Long.parseLong(command.substring(command.lastIndexOf(' ') + 1));
+                result.consoleRoundTrip.add(System.nanoTime() - sentAt);
+                result.lines.incrementAndGet();
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * The plugins check of {@link com.osiris.autoplug.client.tasks.updater.plugins.TaskPluginsUpdater},
+     * with the plugins sorted into the same categories.
+     */
+    private void runPluginsCheck(@NotNull Streams streams, @NotNull Result result) throws Exception {
+        DataInputStream in = new DataInputStream(streams.in);
+        DataOutputStream out = new DataOutputStream(streams.out);
+        long msLeft = in.readLong();
+        if (msLeft != 0) throw new IOException("Plugins check cool-down still active (" + msLeft + "ms).");
+        // Same order as the server catalogue: spigot id, bukkit id, unknown
+        List<Integer> spigot = new ArrayList<>();
+        List<Integer> bukkit = new ArrayList<>();
+        List<Integer> unknown = new ArrayList<>();
+        for (int p = 0; p < pluginsPerClient; p++) {
+            if (p % 3 == 0) spigot.add(p);
+            else if (p % 3 == 1) bukkit.add(p);
+            else unknown.add(p);
+        }
+        out.writeInt(pluginsPerClient);
+        out.writeInt(spigot.size());
+        out.writeInt(bukkit.size());
+        out.writeInt(0);
+        out.writeInt(unknown.size());
+        for (List<Integer> category : Arrays.asList(spigot, bukkit, unknown)) {
+            for (int p : category) {
+                long start = System.nanoTime();
+                out.writeUTF("Plugin" + p);
+                out.writeUTF("1.0");
+                out.writeUTF("Author");
+                if (category == spigot) out.writeInt(1000 + p);
+                else if (category == bukkit) out.writeInt(2000 + p);
+                out.flush();
+                byte code = in.readByte();
+                if (code == 0 || code == 1) {
+                    in.readUTF(); // Type
+                    String latest = in.readUTF();
+                    in.readUTF(); // Url
+                    in.readUTF(); // Spigot id
+                    in.readUTF(); // Bukkit id
+                    if ((code == 1) == latest.equals("1.0"))
+                        throw new IOException("Wrong code " + code + " for Plugin" + p + " (latest " + latest + ").");
+                } else
+                    throw new IOException("Plugin" + p + " check failed with code " + code + ".");
+                result.pluginCheck.add(System.nanoTime() - start);
+            }
+        }
+    }
+
+    private static class Streams implements AutoCloseable {
+        @NotNull
+        private final InputStream in;
+        @NotNull
+        private final OutputStream out;
+        @NotNull
+        private final AutoCloseable closer;
+
+        private Streams(@NotNull InputStream in, @NotNull OutputStream out, @NotNull AutoCloseable closer) {
+            this.in = in;
+            this.out = out;
+            this.closer = closer;
+        }
+
+        @Override
+        public void close() throws Exception {
+            closer.close();
+        }
+    }
+
+    /**
+     * Durations in nanoseconds, summarized in milliseconds.
+     */
+    public static class Latencies {
+        private long[] values = new long[1024];
+        private int count;
+
+        public synchronized void add(long nanos) {
+            if (count == values.length) values = Arrays.copyOf(values, count * 2);
+            values[count++] = nanos;
+        }
+
+        public synchronized int getCount() {
+            return count;
+        }
+
+        /**
+         * @param percentile between 0 and 100.
+         */
+        public synchronized double getPercentileMs(double percentile) {
+            if (count == 0) return 0;
+            long[] sorted = Arrays.copyOf(values, count);
+            Arrays.sort(sorted);
+            int index = (int) Math.ceil(percentile / 100 * count) - 1;
+            return sorted[Math.max(0, Math.min(count - 1, index))] / 1_000_000.0;
+        }
+
+        public synchronized double getAverageMs() {
+            if (count == 0) return 0;
+            long sum = 0;
+            for (int i = 0; i < count; i++) sum += values[i];
+            return sum / 1_000_000.0 / count;
+        }
+
+        @Override
+        public synchronized String toString() {
+            return count + "x avg " + String.format("%.2f", getAverageMs()) + "ms, p50 " + String.format("%.2f", getPercentileMs(50))
+                    + "ms, p99 " + String.format("%.2f", getPercentileMs(99)) + "ms, max " + String.format("%.2f", getPercentileMs(100)) + "ms";
+        }
+    }
+
+    public static class Result {
+        /**
+         * Authentication of the main connection, including the TLS handshake.
+         */
+        public final Latencies connect = new Latencies();
+        /**
+         * Opening a secondary connection or channel.
+         */
+        public final Latencies open = new Latencies();
+        /**
+         * From writing a console line, until receiving it back as command.
+         */
+        public final Latencies consoleRoundTrip = new Latencies();
+        /**
+         * Checking a single plugin.
+         */
+        public final Latencies pluginCheck = new Latencies();
+        @NotNull
+        public final AtomicLong lines = new AtomicLong();
+        @NotNull
+        public final List<String> failures = new CopyOnWriteArrayList<>();
+        public int clients;
+        public long nanos;
+
+        public double getSeconds() {
+            return nanos / 1_000_000_000.0;
+        }
+
+        public double getLinesPerSecond() {
+            return lines.get() / getSeconds();
+        }
+
+        public double getPluginChecksPerSecond() {
+            return pluginCheck.getCount() / getSeconds();
+        }
+
+        @Override
+        public String toString() {
+            return clients + " clients in " + String.format("%.2f", getSeconds()) + "s, " + failures.size() + " failed" + (failures.isEmpty() ? "" : " " + failures) + "\n"
+                    + "  connect:            " + connect + "\n"
+                    + "  open:               " + open + "\n"
+                    + "  console round-trip: " + consoleRoundTrip + "\n"
+                    + "  plugin check:       " + pluginCheck + "\n"
+                    + "  throughput:         " + String.format("%.0f", getLinesPerSecond()) + " console lines/s, "
+                    + String.format("%.0f", getPluginChecksPerSecond()) + " plugin checks/s";
+        }
+    }
+}
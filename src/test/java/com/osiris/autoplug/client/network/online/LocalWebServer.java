@@ -0,0 +1,596 @@
+/*
+ * Copyright Osiris Team
+ * All rights reserved.
+ *
+ * This software is copyrighted work licensed under the terms of the
+ * AutoPlug License.  Please consult the file "LICENSE" for details.
+ */
+
+package com.osiris.autoplug.client.network.online;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.net.ssl.SSLServerSocket;
+import javax.net.ssl.SSLSocket;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A local stand-in for AutoPlug-Web, speaking the same protocol as the real server on port 35555,
+ * thus the network code can be tested and benchmarked without the internet (see {@link LoadHarness}). <br>
+ * Each connection gets the throttle int, then sends its server key and connection type
+ * and gets the response code, like {@link SecuredConnection} expects. <br>
+ * Main connections get the users login status (see {@link PresenceReader}), multiplexed or as legacy booleans.
+ * Secondary connections are served as separate connections or as channels:
+ * the online console (commands to the client, lines from the client) and the plugins check of the plugins updater. <br>
+ * Uses the self-signed certificate of {@link TestTls} and a thread per connection.
+ */
+public class LocalWebServer implements Closeable {
+    private static final byte TYPE_MASK = 0x1F;
+    @NotNull
+    private final SSLServerSocket serverSocket;
+    @NotNull
+    private final SecuredConnection.Endpoint endpoint;
+    /**
+     * Server key -> has a user account.
+     */
+    @NotNull
+    private final Map<String, Boolean> keys = new ConcurrentHashMap<>();
+    @NotNull
+    private final Map<String, Boolean> online = new ConcurrentHashMap<>();
+    @NotNull
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+    @NotNull
+    private final Map<String, Plugin> plugins = new ConcurrentHashMap<>();
+    @NotNull
+    private final Map<String, Long> lastPluginsCheck = new ConcurrentHashMap<>();
+    @NotNull
+    private final List<Socket> sockets = new ArrayList<>();
+    @NotNull
+    private final AtomicInteger throttleNext = new AtomicInteger();
+    @NotNull
+    private final AtomicLong connections = new AtomicLong();
+    @NotNull
+    private final AtomicLong throttled = new AtomicLong();
+    @NotNull
+    private final AtomicLong rejected = new AtomicLong();
+    @NotNull
+    private final AtomicLong linesReceived = new AtomicLong();
+    @NotNull
+    private final AtomicLong commandsSent = new AtomicLong();
+    @NotNull
+    private final AtomicLong pluginsChecked = new AtomicLong();
+    @NotNull
+    private final AtomicLong heartbeatsAnswered = new AtomicLong();
+    private volatile boolean multiplexSupported = true;
+    private volatile boolean compressionSupported = true;
+    private volatile int punishmentMs;
+    private volatile int heartbeatIntervalMs = 10000;
+    private volatile long pluginsCheckCooldownMs;
+    @Nullable
+    private volatile ConsoleListener consoleListener;
+    private volatile boolean closed;
+
+    /**
+     * Listens on a free port of localhost (see {@link #getPort()}).
+     */
+    public LocalWebServer() throws Exception {
+        this.serverSocket = (SSLServerSocket) TestTls.serverContext().getServerSocketFactory().createServerSocket(0, 1000);
+        this.endpoint = new SecuredConnection.Endpoint("localhost", getPort(), TestTls.clientContext());
+        Thread acceptor = new Thread(this::acceptAll, "LocalWebServer-Acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    /**
+     * Pass to {@link SecuredConnection} to connect to this server, instead of AutoPlug-Web.
+     */
+    @NotNull
+    public SecuredConnection.Endpoint getEndpoint() {
+        return endpoint;
+    }
+
+    /**
+     * @param hasAccount false to reject the key with code 5, like a key without user account.
+     */
+    public void addKey(@NotNull String serverKey, boolean hasAccount) {
+        keys.put(serverKey, hasAccount);
+    }
+
+    /**
+     * Sets the login status of the user owning this key, which gets pushed to its main connection right away.
+     */
+    public void setOnline(@NotNull String serverKey, boolean isOnline) throws IOException {
+        online.put(serverKey, isOnline);
+        Session session = sessions.get(serverKey);
+        if (session != null) session.sendPresence();
+    }
+
+    /**
+     * Adds a plugin to the catalogue, which answers plugin checks.
+     * Checked plugins that are missing in it get code 2 (not found).
+     *
+     * @param spigotId 0 if unknown.
+     * @param bukkitId 0 if unknown.
+     */
+    public void addPlugin(@NotNull String name, @NotNull String latestVersion, int spigotId, int bukkitId) {
+        plugins.put(name, new Plugin(latestVersion, spigotId, bukkitId));
+    }
+
+    /**
+     * The next connections get throttled, thus must wait and connect again.
+     */
+    public void throttleNext(int connections, int punishmentMs) {
+        this.punishmentMs = punishmentMs;
+        throttleNext.set(connections);
+    }
+
+    /**
+     * False to act like an older AutoPlug-Web, rejecting the flags of {@link SecuredConnection} with code 4.
+     */
+    public void setMultiplexSupported(boolean multiplexSupported) {
+        this.multiplexSupported = multiplexSupported;
+    }
+
+    public void setCompressionSupported(boolean compressionSupported) {
+        this.compressionSupported = compressionSupported;
+    }
+
+    /**
+     * How often the login status gets repeated. Multiplexed connections get a heartbeat instead.
+     */
+    public void setHeartbeatInterval(int ms) {
+        this.heartbeatIntervalMs = ms;
+    }
+
+    /**
+     * The minimum time between two plugin checks of the same key. 0 by default, AutoPlug-Web uses 4 hours.
+     */
+    public void setPluginsCheckCooldown(long ms) {
+        this.pluginsCheckCooldownMs = ms;
+    }
+
+    /**
+     * Gets each line sent to the online console.
+     */
+    public void setConsoleListener(@Nullable ConsoleListener consoleListener) {
+        this.consoleListener = consoleListener;
+    }
+
+    private void acceptAll() {
+        while (!closed) {
+            try {
+                SSLSocket socket = (SSLSocket) serverSocket.accept();
+                synchronized (sockets) {
+                    sockets.add(socket);
+                }
+                Thread t = new Thread(() -> serve(socket), "LocalWebServer-Connection");
+                t.setDaemon(true);
+                t.start();
+            } catch (IOException e) {
+                if (!closed) e.printStackTrace();
+            }
+        }
+    }
+
+    private void serve(@NotNull SSLSocket socket) {
+        try {
+            connections.incrementAndGet();
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+            int punishment = nextPunishment();
+            out.writeInt(punishment);
+            out.flush();
+            if (punishment != 0) {
+                throttled.incrementAndGet();
+                return;
+            }
+
+            String key = in.readUTF();
+            byte conType = in.readByte();
+            byte type = (byte) (conType & TYPE_MASK);
+            boolean multiplex = (conType & SecuredConnection.MULTIPLEX_FLAG) != 0;
+            boolean compress = (conType & SecuredConnection.COMPRESSION_FLAG) != 0;
+            byte code = checkKey(key, type);
+            if (code == 0) code = checkType(type, multiplex, compress);
+            Session session = null;
+            if (code == 0 && type == 0) {
+                session = new Session(key, socket, out);
+                if (sessions.putIfAbsent(key, session) != null) code = 2;
+            }
+            out.writeByte(code);
+            out.flush();
+            if (code != 0) {
+                rejected.incrementAndGet();
+                return;
+            }
+
+            if (type == 0) {
+                try {
+                    session.run(in, multiplex);
+                } finally {
+                    sessions.remove(key, session);
+                    session.close();
+                }
+            } else {
+                OutputStream o = out;
+                InputStream i = in;
+                if (compress) {
+                    CompressedOutputStream compressedOut = new CompressedOutputStream(out, new CompressionStats("Stand-in " + type + " out"));
+                    o = compressedOut;
+                    i = new CompressedInputStream(in, new CompressionStats("Stand-in " + type + " in"), compressedOut);
+                }
+                serveSecondary(sessions.get(key), type, i, o);
+            }
+        } catch (IOException ignored) {
+            // Client disconnected
+        } finally {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+            }
+            synchronized (sockets) {
+                sockets.remove(socket);
+            }
+        }
+    }
+
+    private int nextPunishment() {
+        return throttleNext.getAndUpdate(n -> Math.max(0, n - 1)) > 0 ? punishmentMs : 0;
+    }
+
+    /**
+     * The response codes of {@link SecuredConnection#checkResponse(byte, byte)}.
+     */
+    private byte checkKey(@NotNull String key, byte type) {
+        Boolean hasAccount = keys.get(key);
+        if (hasAccount == null) return 1;
+        if (!hasAccount) return 5;
+        if (type != 0 && !sessions.containsKey(key)) return 3;
+        return 0;
+    }
+
+    private byte checkType(byte type, boolean multiplex, boolean compress) {
+        if (type < 0 || type > 3) return 4;
+        if (multiplex && (type != 0 || !multiplexSupported)) return 4;
+        if (compress && (type == 0 || !compressionSupported)) return 4;
+        return 0;
+    }
+
+    /**
+     * Serves a separate secondary connection, or a channel, until it gets closed.
+     */
+    private void serveSecondary(@Nullable Session session, byte type, @NotNull InputStream in, @NotNull OutputStream out) throws IOException {
+        if (session == null) return; // Main connection was lost meanwhile
+        switch (type) {
+            case 1:
+                session.setCommandOutput(new DataOutputStream(out));
+                // The client only receives, thus this blocks until it closes the connection
+                while (in.read() != -1) ;
+                break;
+            case 2:
+                BufferedReader reader = new BufferedReader(new InputStreamReader(in));
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    linesReceived.incrementAndGet();
+                    ConsoleListener listener = consoleListener;
+                    if (listener != null) listener.onLine(session, line);
+                }
+                break;
+            case 3:
+                checkPlugins(session.key, new DataInputStream(in), new DataOutputStream(out));
+                break;
+        }
+    }
+
+    /**
+     * The plugins check, like {@link com.osiris.autoplug.client.tasks.updater.plugins.TaskPluginsUpdater} expects it.
+     */
+    private void checkPlugins(@NotNull String key, @NotNull DataInputStream in, @NotNull DataOutputStream out) throws IOException {
+        long now = System.currentTimeMillis();
+        Long last = lastPluginsCheck.get(key);
+        long msLeft = last == null ? 0 : Math.max(0, last + pluginsCheckCooldownMs - now);
+        out.writeLong(msLeft);
+        out.flush();
+        if (msLeft != 0) return;
+        lastPluginsCheck.put(key, now);
+
+        int size = in.readInt();
+        if (size == 0) return;
+        int spigot = in.readInt();
+        int bukkit = in.readInt();
+        int customLink = in.readInt();
+        int unknown = in.readInt();
+        for (int i = 0; i < size; i++) {
+            String name = in.readUTF();
+            String version = in.readUTF();
+            in.readUTF(); // Author
+            if (i < spigot) in.readInt(); // Spigot id
+            else if (i < spigot + bukkit) in.readInt(); // Bukkit id
+            else if (i < spigot + bukkit + customLink) {
+                in.readInt(); // Spigot id
+                in.readInt(); // Bukkit id
+            } else if (i >= spigot + bukkit + customLink + unknown)
+                throw new IOException("Got more plugins than announced.");
+
+            Plugin pl = plugins.get(name);
+            if (pl == null) {
+                out.writeByte(2);
+            } else {
+                out.writeByte(pl.latestVersion.equals(version) ? 0 : 1);
+                out.writeUTF(".jar");
+                out.writeUTF(pl.latestVersion);
+                out.writeUTF("https://localhost/plugins/" + name + "/" + pl.latestVersion + ".jar");
+                out.writeUTF(pl.spigotId == 0 ? "null" : String.valueOf(pl.spigotId));
+                out.writeUTF(pl.bukkitId == 0 ? "null" : String.valueOf(pl.bukkitId));
+            }
+            out.flush();
+            pluginsChecked.incrementAndGet();
+        }
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * The amount of accepted connections, including the throttled and rejected ones.
+     */
+    public long getConnections() {
+        return connections.get();
+    }
+
+    public long getThrottled() {
+        return throttled.get();
+    }
+
+    /**
+     * The amount of connections that got a response code other than 0.
+     */
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    /**
+     * The amount of connected main connections.
+     */
+    public int getSessions() {
+        return sessions.size();
+    }
+
+    @Nullable
+    public Session getSession(@NotNull String serverKey) {
+        return sessions.get(serverKey);
+    }
+
+    public long getLinesReceived() {
+        return linesReceived.get();
+    }
+
+    public long getCommandsSent() {
+        return commandsSent.get();
+    }
+
+    public long getPluginsChecked() {
+        return pluginsChecked.get();
+    }
+
+    public long getHeartbeatsAnswered() {
+        return heartbeatsAnswered.get();
+    }
+
+    @NotNull
+    public String getStats() {
+        return connections + " connections (" + throttled + " throttled, " + rejected + " rejected), " + getSessions() + " sessions, "
+                + linesReceived + " console lines in, " + commandsSent + " commands out, " + pluginsChecked + " plugins checked";
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        serverSocket.close();
+        synchronized (sockets) {
+            for (Socket socket : sockets) {
+                try {
+                    socket.close();
+                } catch (IOException ignored) {
+                }
+            }
+            sockets.clear();
+        }
+    }
+
+    public interface ConsoleListener {
+        /**
+         * Called by the thread of that connection, thus slows down only that client.
+         */
+        void onLine(@NotNull Session session, @NotNull String line) throws IOException;
+    }
+
+    private static class Plugin {
+        @NotNull
+        private final String latestVersion;
+        private final int spigotId;
+        private final int bukkitId;
+
+        private Plugin(@NotNull String latestVersion, int spigotId, int bukkitId) {
+            this.latestVersion = latestVersion;
+            this.spigotId = spigotId;
+            this.bukkitId = bukkitId;
+        }
+    }
+
+    /**
+     * The main connection of one client and the secondary connections opened by it.
+     */
+    public class Session {
+        @NotNull
+        private final String key;
+        @NotNull
+        private final SSLSocket socket;
+        @NotNull
+        private final DataOutputStream out;
+        @Nullable
+        private Multiplexer mux;
+        /**
+         * The login status, or the control channel if multiplexed.
+         */
+        @Nullable
+        private DataOutputStream presenceOut;
+        @Nullable
+        private DataOutputStream commandOut;
+
+        private Session(@NotNull String key, @NotNull SSLSocket socket, @NotNull DataOutputStream out) {
+            this.key = key;
+            this.socket = socket;
+            this.out = out;
+        }
+
+        /**
+         * Pushes the login status, until the connection gets lost.
+         */
+        private void run(@NotNull DataInputStream in, boolean multiplex) throws IOException {
+            if (!multiplex) {
+                synchronized (this) {
+                    presenceOut = out;
+                }
+                sendPresence();
+                socket.setSoTimeout(heartbeatIntervalMs);
+                while (!closed) {
+                    try {
+                        // The client never sends anything, thus this only notices it closing the connection
+                        if (in.read() == -1) return;
+                    } catch (SocketTimeoutException e) {
+                        sendPresence(); // Each boolean also is the heartbeat
+                    }
+                }
+                return;
+            }
+
+            Multiplexer m = new Multiplexer("Stand-in " + key, in, out, false);
+            m.setAcceptor((channel, conType) -> {
+                byte type = (byte) (conType & TYPE_MASK);
+                boolean compress = (conType & SecuredConnection.COMPRESSION_FLAG) != 0;
+                byte code = checkType(type, (conType & SecuredConnection.MULTIPLEX_FLAG) != 0, compress);
+                if (code == 0 && type == 0) code = 4; // Only secondary connections can be channels
+                if (code != 0) {
+                    rejected.incrementAndGet();
+                    return code;
+                }
+                Thread t = new Thread(() -> serveChannel(channel, type, compress), "LocalWebServer-Channel");
+                t.setDaemon(true);
+                t.start();
+                return 0;
+            });
+            MultiplexedChannel control = m.getControlChannel();
+            synchronized (this) {
+                mux = m;
+                presenceOut = new DataOutputStream(control.getOutput());
+            }
+            sendPresence();
+            control.setReadTimeout(heartbeatIntervalMs);
+            InputStream controlIn = control.getInput();
+            while (!closed) {
+                try {
+                    int b = controlIn.read();
+                    if (b == -1) return;
+                    if (b == PresenceReader.HEARTBEAT) heartbeatsAnswered.incrementAndGet();
+                } catch (SocketTimeoutException e) {
+                    synchronized (this) {
+                        presenceOut.writeByte(PresenceReader.HEARTBEAT);
+                        presenceOut.flush();
+                    }
+                }
+            }
+        }
+
+        private void serveChannel(@NotNull MultiplexedChannel channel, byte type, boolean compress) {
+            try {
+                OutputStream o = channel.getOutput();
+                InputStream i = channel.getInput();
+                if (compress) {
+                    CompressedOutputStream compressedOut = new CompressedOutputStream(o, new CompressionStats("Stand-in " + type + " out"));
+                    o = compressedOut;
+                    i = new CompressedInputStream(i, new CompressionStats("Stand-in " + type + " in"), compressedOut);
+                }
+                serveSecondary(this, type, i, o);
+            } catch (IOException ignored) {
+                // Client closed the channel or disconnected
+            } finally {
+                channel.close();
+            }
+        }
+
+        private synchronized void sendPresence() throws IOException {
+            if (presenceOut == null) return; // Sent once the session runs
+            boolean isOnline = online.getOrDefault(key, false);
+            if (mux != null) presenceOut.writeByte(isOnline ? PresenceReader.ONLINE : PresenceReader.OFFLINE);
+            else presenceOut.writeBoolean(isOnline);
+            presenceOut.flush();
+        }
+
+        private synchronized void setCommandOutput(@NotNull DataOutputStream commandOut) {
+            this.commandOut = commandOut;
+            notifyAll();
+        }
+
+        /**
+         * Sends a command to the online console of the client.
+         * Waits up to 10 seconds for the client to open the console receive connection.
+         */
+        public void sendCommand(@NotNull String command) throws IOException {
+            DataOutputStream o;
+            synchronized (this) {
+                long deadline = System.currentTimeMillis() + 10000;
+                while (commandOut == null) {
+                    long wait = deadline - System.currentTimeMillis();
+                    if (wait <= 0) throw new IOException("Client " + key + " didn't open the online console.");
+                    try {
+                        wait(wait);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new IOException("Interrupted while waiting for the online console of " + key + ".");
+                    }
+                }
+                o = commandOut;
+            }
+            synchronized (o) {
+                o.writeUTF(command);
+                o.flush();
+            }
+            commandsSent.incrementAndGet();
+        }
+
+        @NotNull
+        public String getKey() {
+            return key;
+        }
+
+        public synchronized boolean isMultiplexed() {
+            return mux != null;
+        }
+
+        private void close() {
+            Multiplexer m;
+            synchronized (this) {
+                m = mux;
+            }
+            if (m != null) m.close();
+        }
+    }
+}
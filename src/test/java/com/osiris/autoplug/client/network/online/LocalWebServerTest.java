@@ -0,0 +1,176 @@
+/*
+ * Copyright Osiris Team
+ * All rights reserved.
+ *
+ * This software is copyrighted work licensed under the terms of the
+ * AutoPlug License.  Please consult the file "LICENSE" for details.
+ */
+
+package com.osiris.autoplug.client.network.online;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.function.Executable;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+
+class LocalWebServerTest {
+
+    private static void assertRejected(String code, Executable executable) {
+        Exception e = Assertions.assertThrows(Exception.class, executable);
+        Assertions.assertTrue(e.getMessage().contains("(code:" + code + ")"), e.getMessage());
+    }
+
+    @Test
+    void authenticationCodes() throws Exception {
+        try (LocalWebServer server = new LocalWebServer()) {
+            server.addKey("key", true);
+            server.addKey("no-account", false);
+            assertRejected("1", () -> new SecuredConnection(server.getEndpoint(), (byte) 0, "unknown", true, false, true));
+            assertRejected("5", () -> new SecuredConnection(server.getEndpoint(), (byte) 0, "no-account", true, false, true));
+            assertRejected("3", () -> new SecuredConnection(server.getEndpoint(), (byte) 2, "key", false, false, false));
+
+            SecuredConnection main = new SecuredConnection(server.getEndpoint(), (byte) 0, "key", false, false, false);
+            assertRejected("2", () -> new SecuredConnection(server.getEndpoint(), (byte) 0, "key", false, false, false));
+            SecuredConnection console = new SecuredConnection(server.getEndpoint(), (byte) 2, "key", false, true, false);
+            Assertions.assertTrue(console.isCompressed());
+            console.close();
+            main.close();
+            Assertions.assertEquals(4L, server.getRejected());
+        }
+    }
+
+    @Test
+    void throttledConnectionRetries() throws Exception {
+        try (LocalWebServer server = new LocalWebServer()) {
+            server.addKey("key", true);
+            server.throttleNext(1, 300);
+            long start = System.currentTimeMillis();
+            SecuredConnection main = new SecuredConnection(server.getEndpoint(), (byte) 0, "key", true, false, true);
+            Assertions.assertTrue(System.currentTimeMillis() - start >= 300);
+            Assertions.assertEquals(1L, server.getThrottled());
+            Assertions.assertEquals(2L, server.getConnections());
+            main.close();
+        }
+    }
+
+    @Test
+    void olderServerWithoutMultiplexing() throws Exception {
+        try (LocalWebServer server = new LocalWebServer()) {
+            server.setMultiplexSupported(false);
+            server.setCompressionSupported(false);
+            server.setHeartbeatInterval(50);
+            server.addKey("key", true);
+            SecuredConnection main = new SecuredConnection(server.getEndpoint(), (byte) 0, "key", true, false, true);
+            Assertions.assertFalse(main.isMultiplexed());
+            main.setTimeout(10000);
+            PresenceReader presence = new PresenceReader(main.getInput(), null);
+            Assertions.assertFalse(presence.next());
+            server.setOnline("key", true);
+            while (!presence.next()) ;
+
+            SecuredConnection console = new SecuredConnection(server.getEndpoint(), (byte) 2, "key", false, true, false);
+            Assertions.assertFalse(console.isCompressed());
+            console.close();
+            main.close();
+        }
+    }
+
+    @Test
+    void presenceAndPluginsCheckOverChannels() throws Exception {
+        try (LocalWebServer server = new LocalWebServer()) {
+            server.setHeartbeatInterval(100);
+            server.setPluginsCheckCooldown(60000);
+            server.addKey("key", true);
+            server.addPlugin("Up-to-date", "2.0", 100, 0);
+            server.addPlugin("Outdated", "3.0", 0, 200);
+            SecuredConnection main = new SecuredConnection(server.getEndpoint(), (byte) 0, "key", true, false, true);
+            Assertions.assertTrue(main.isMultiplexed());
+            Multiplexer mux = new Multiplexer("test", main.getTlsConnection(), true);
+            MultiplexedChannel control = mux.getControlChannel();
+            control.setReadTimeout(10000);
+            PresenceReader presence = new PresenceReader(control.getInput(), control.getOutput());
+            Assertions.assertFalse(presence.next());
+            server.setOnline("key", true);
+            while (!presence.next()) ;
+            while (presence.getHeartbeats() == 0) presence.next();
+
+            MultiplexedChannel ch = mux.openChannel((byte) 3);
+            Assertions.assertEquals(0, ch.getResponse());
+            ch.setReadTimeout(10000);
+            DataInputStream in = new DataInputStream(ch.getInput());
+            DataOutputStream out = new DataOutputStream(ch.getOutput());
+            Assertions.assertEquals(0L, in.readLong());
+            out.writeInt(3);
+            out.writeInt(1); // Spigot id
+            out.writeInt(0); // Bukkit id
+            out.writeInt(1); // Custom link
+            out.writeInt(1); // Unknown
+            out.writeUTF("Up-to-date");
+            out.writeUTF("2.0");
+            out.writeUTF("Author");
+            out.writeInt(100);
+            Assertions.assertEquals(0, in.readByte());
+            Assertions.assertEquals(".jar", in.readUTF());
+            Assertions.assertEquals("2.0", in.readUTF());
+            in.readUTF();
+            Assertions.assertEquals("100", in.readUTF());
+            Assertions.assertEquals("null", in.readUTF());
+            out.writeUTF("Outdated");
+            out.writeUTF("1.0");
+            out.writeUTF("Author");
+            out.writeInt(0);
+            out.writeInt(200);
+            Assertions.assertEquals(1, in.readByte());
+            in.readUTF();
+            Assertions.assertEquals("3.0", in.readUTF());
+            in.readUTF();
+            in.readUTF();
+            Assertions.assertEquals("200", in.readUTF());
+            out.writeUTF("Missing");
+            out.writeUTF("1.0");
+            out.writeUTF("Author");
+            Assertions.assertEquals(2, in.readByte());
+            ch.close();
+
+            // The next check is within the cool-down
+            ch = mux.openChannel((byte) 3);
+            ch.setReadTimeout(10000);
+            Assertions.assertTrue(new DataInputStream(ch.getInput()).readLong() > 0);
+            Assertions.assertEquals(3L, server.getPluginsChecked());
+            mux.close();
+        }
+    }
+
+    /**
+     * Only a few clients, to check that the {@link LoadHarness} works. Run its main method for the actual load test.
+     */
+    @Test
+    void fewClients() throws Exception {
+        try (LocalWebServer server = new LocalWebServer()) {
+            LoadHarness.Result result = new LoadHarness(server, 5)
+                    .setLinesPerClient(20)
+                    .setPluginsPerClient(5)
+                    .run();
+            Assertions.assertTrue(result.failures.isEmpty(), result.toString());
+            Assertions.assertEquals(5 * 20L, result.lines.get());
+            Assertions.assertEquals(5 * 5, result.pluginCheck.getCount());
+            Assertions.assertEquals(5 * 3, result.open.getCount());
+        }
+    }
+
+    @Test
+    void fewClientsWithoutMultiplexing() throws Exception {
+        try (LocalWebServer server = new LocalWebServer()) {
+            LoadHarness.Result result = new LoadHarness(server, 3)
+                    .setMultiplex(false)
+                    .setNonBlocking(false)
+                    .setLinesPerClient(20)
+                    .setPluginsPerClient(5)
+                    .run();
+            Assertions.assertTrue(result.failures.isEmpty(), result.toString());
+            Assertions.assertEquals(3 * 20L, result.lines.get());
+        }
+    }
+}
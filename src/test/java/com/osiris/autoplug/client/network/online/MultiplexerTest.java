@@ -0,0 +1,204 @@
+/*
+ * Copyright Osiris Team
+ * All rights reserved.
+ *
+ * This software is copyrighted work licensed under the terms of the
+ * AutoPlug License.  Please consult the file "LICENSE" for details.
+ */
+
+package com.osiris.autoplug.client.network.online;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+class MultiplexerTest {
+
+    /**
+     * Connects a client and a server multiplexer over a local socket.
+     * The server echos channels of type 1 in upper case, accepts type 2 without reading it and rejects the others.
+     */
+    private static Multiplexer[] connect(ServerSocket server) throws Exception {
+        CompletableFuture<Socket> accepted = CompletableFuture.supplyAsync(() -> {
+            try {
+                return server.accept();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        Socket c = new Socket("localhost", server.getLocalPort());
+        Socket s = accepted.get(10, TimeUnit.SECONDS);
+        Multiplexer serverMux = new Multiplexer("test-server", s.getInputStream(), s.getOutputStream(), false);
+        serverMux.setAcceptor((channel, conType) -> {
+            if (conType == 2) return 0;
+            if (conType != 1) return 4;
+            Thread t = new Thread(() -> {
+                try {
+                    DataInputStream in = new DataInputStream(channel.getInput());
+                    DataOutputStream out = new DataOutputStream(channel.getOutput());
+                    while (true) out.writeUTF(in.readUTF().toUpperCase());
+                } catch (IOException ignored) {
+                }
+            });
+            t.setDaemon(true);
+            t.start();
+            return 0;
+        });
+        return new Multiplexer[]{new Multiplexer("test-client", c.getInputStream(), c.getOutputStream(), true), serverMux};
+    }
+
+    @Test
+    void openChannelsAndExchangeData() throws Exception {
+        try (ServerSocket server = new ServerSocket(0)) {
+            Multiplexer[] muxes = connect(server);
+            Multiplexer client = muxes[0];
+            MultiplexedChannel a = client.openChannel((byte) 1);
+            MultiplexedChannel b = client.openChannel((byte) 1);
+            Assertions.assertEquals(0, a.getResponse());
+            Assertions.assertNotEquals(a.getId(), b.getId());
+            Assertions.assertEquals(2, client.getOpenChannels());
+
+            DataOutputStream outA = new DataOutputStream(a.getOutput());
+            DataOutputStream outB = new DataOutputStream(b.getOutput());
+            DataInputStream inA = new DataInputStream(a.getInput());
+            DataInputStream inB = new DataInputStream(b.getInput());
+            outA.writeUTF("hello");
+            outB.writeUTF("world");
+            Assertions.assertEquals("WORLD", inB.readUTF());
+            Assertions.assertEquals("HELLO", inA.readUTF());
+
+            // Control channel is always open on both sides
+            DataOutputStream control = new DataOutputStream(muxes[1].getControlChannel().getOutput());
+            control.writeBoolean(true);
+            control.flush(); // Only read from the other side, thus nothing flushes it automatically
+            Assertions.assertTrue(new DataInputStream(client.getControlChannel().getInput()).readBoolean());
+
+            a.close();
+            Assertions.assertFalse(a.isOpen());
+            Assertions.assertEquals(1, client.getOpenChannels());
+            outB.writeUTF("still open");
+            Assertions.assertEquals("STILL OPEN", inB.readUTF());
+            client.close();
+            muxes[1].close();
+        }
+    }
+
+    @Test
+    void smallWritesGetCollectedIntoFrames() throws Exception {
+        try (ServerSocket server = new ServerSocket(0)) {
+            Multiplexer[] muxes = connect(server);
+            MultiplexedChannel channel = muxes[0].openChannel((byte) 2);
+            DataOutputStream out = new DataOutputStream(channel.getOutput());
+            long before = muxes[0].getFramesOut();
+            for (int i = 0; i < 1000; i++) out.writeInt(i); // 4000 single byte writes
+            Assertions.assertEquals(before, muxes[0].getFramesOut());
+            out.flush();
+            Assertions.assertEquals(before + 1, muxes[0].getFramesOut());
+            muxes[0].close();
+            muxes[1].close();
+        }
+    }
+
+    @Test
+    void unknownTypeGetsRejected() throws Exception {
+        try (ServerSocket server = new ServerSocket(0)) {
+            Multiplexer[] muxes = connect(server);
+            MultiplexedChannel rejected = muxes[0].openChannel((byte) (1 | SecuredConnection.COMPRESSION_FLAG));
+            Assertions.assertEquals(4, rejected.getResponse());
+            Assertions.assertEquals(0, muxes[0].getOpenChannels());
+            Assertions.assertThrows(Exception.class, () -> SecuredConnection.checkResponse((byte) 1, rejected.getResponse()));
+            muxes[0].close();
+            muxes[1].close();
+        }
+    }
+
+    @Test
+    void stalledChannelDoesNotBlockOthers() throws Exception {
+        try (ServerSocket server = new ServerSocket(0)) {
+            Multiplexer[] muxes = connect(server);
+            Multiplexer client = muxes[0];
+            MultiplexedChannel stalled = client.openChannel((byte) 2); // Nobody reads it
+            MultiplexedChannel echo = client.openChannel((byte) 1);
+
+            // Fills the window of the stalled channel, the rest waits for credit
+            CompletableFuture<Void> write = CompletableFuture.runAsync(() -> {
+                try {
+                    stalled.getOutput().write(new byte[Multiplexer.INITIAL_WINDOW + 1000]);
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            Thread.sleep(300);
+            Assertions.assertFalse(write.isDone());
+
+            DataOutputStream out = new DataOutputStream(echo.getOutput());
+            DataInputStream in = new DataInputStream(echo.getInput());
+            out.writeUTF("ping");
+            Assertions.assertEquals("PING", in.readUTF());
+
+            client.close();
+            Assertions.assertThrows(Exception.class, () -> write.get(10, TimeUnit.SECONDS));
+            muxes[1].close();
+        }
+    }
+
+    @Test
+    void flowControlCreditsAllowMoreThanTheWindow() throws Exception {
+        try (ServerSocket server = new ServerSocket(0)) {
+            Multiplexer[] muxes = connect(server);
+            CompletableFuture<MultiplexedChannel> serverSide = new CompletableFuture<>();
+            muxes[1].setAcceptor((channel, conType) -> {
+                serverSide.complete(channel);
+                return 0;
+            });
+            MultiplexedChannel channel = muxes[0].openChannel((byte) 3);
+            int size = Multiplexer.INITIAL_WINDOW * 4 + 123;
+            CompletableFuture<Void> write = CompletableFuture.runAsync(() -> {
+                try {
+                    byte[] data = new byte[size];
+                    for (int i = 0; i < size; i++) data[i] = (byte) i;
+                    channel.getOutput().write(data);
+                    channel.close();
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            InputStream in = serverSide.get(10, TimeUnit.SECONDS).getInput();
+            byte[] buffer = new byte[7000];
+            int total = 0;
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                for (int i = 0; i < n; i++) {
+                    Assertions.assertEquals((byte) (total + i), buffer[i]);
+                }
+                total += n;
+            }
+            Assertions.assertEquals(size, total);
+            write.get(10, TimeUnit.SECONDS);
+            muxes[0].close();
+            muxes[1].close();
+        }
+    }
+
+    @Test
+    void readTimeout() throws Exception {
+        try (ServerSocket server = new ServerSocket(0)) {
+            Multiplexer[] muxes = connect(server);
+            MultiplexedChannel channel = muxes[0].openChannel((byte) 2);
+            channel.setReadTimeout(50);
+            Assertions.assertThrows(SocketTimeoutException.class, () -> channel.getInput().read());
+            muxes[0].close();
+            Assertions.assertThrows(IOException.class, () -> channel.getInput().read());
+            muxes[1].close();
+        }
+    }
+}
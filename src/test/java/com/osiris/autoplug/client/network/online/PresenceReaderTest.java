@@ -0,0 +1,44 @@
+/*
+ * Copyright Osiris Team
+ * All rights reserved.
+ *
+ * This software is copyrighted work licensed under the terms of the
+ * AutoPlug License.  Please consult the file "LICENSE" for details.
+ */
+
+package com.osiris.autoplug.client.network.online;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+
+class PresenceReaderTest {
+
+    @Test
+    void legacyBooleans() throws Exception {
+        PresenceReader presence = new PresenceReader(new ByteArrayInputStream(new byte[]{0, 1, 1}), null);
+        Assertions.assertFalse(presence.next());
+        Assertions.assertTrue(presence.next());
+        Assertions.assertTrue(presence.next());
+        Assertions.assertTrue(presence.getLastMessageAt() > 0);
+        Assertions.assertThrows(EOFException.class, presence::next);
+    }
+
+    @Test
+    void heartbeatsGetAnsweredAndKeepTheStatus() throws Exception {
+        ByteArrayOutputStream answers = new ByteArrayOutputStream();
+        byte[] messages = {PresenceReader.ONLINE, PresenceReader.HEARTBEAT, PresenceReader.HEARTBEAT, PresenceReader.OFFLINE, 9};
+        PresenceReader presence = new PresenceReader(new ByteArrayInputStream(messages), answers);
+        Assertions.assertTrue(presence.next());
+        Assertions.assertTrue(presence.next());
+        Assertions.assertTrue(presence.next());
+        Assertions.assertFalse(presence.next());
+        Assertions.assertEquals(2L, presence.getHeartbeats());
+        Assertions.assertArrayEquals(new byte[]{PresenceReader.HEARTBEAT, PresenceReader.HEARTBEAT}, answers.toByteArray());
+        Assertions.assertThrows(IOException.class, presence::next); // Unknown message
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright Osiris Team
+ * All rights reserved.
+ *
+ * This software is copyrighted work licensed under the terms of the
+ * AutoPlug License.  Please consult the file "LICENSE" for details.
+ */
+
+package com.osiris.autoplug.client.network.online;
+
+import com.osiris.autoplug.client.minecraft.console.OverflowPolicy;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.StringWriter;
+
+class SendQueueTest {
+
+    @Test
+    void dropsOldestLinesOverLineLimit() throws Exception {
+        SendQueue queue = new SendQueue("Test", 3, 1024 * 1024, OverflowPolicy.DROP_OLDEST);
+        for (int i = 0; i < 5; i++) queue.offer("line " + i);
+        Assertions.assertEquals(3, queue.getDepth());
+        Assertions.assertEquals(2L, queue.getDropped());
+        StringWriter out = new StringWriter();
+        Assertions.assertEquals(3, queue.drainTo(out, 1024));
+        String sep = System.lineSeparator();
+        Assertions.assertEquals("line 2" + sep + "line 3" + sep + "line 4" + sep, out.toString());
+        Assertions.assertTrue(queue.isEmpty());
+        queue.close();
+    }
+
+    @Test
+    void summarizesLinesSkippedOverMemoryLimit() throws Exception {
+        // 10 chars are 20 bytes, thus only two fit
+        SendQueue queue = new SendQueue("Test", 1000, 40, OverflowPolicy.SUMMARIZE);
+        Assertions.assertTrue(SendQueue.getAll().contains(queue));
+        for (int i = 0; i < 4; i++) queue.offer("012345678" + i);
+        Assertions.assertEquals(2, queue.getDepth());
+        Assertions.assertEquals(40L, queue.getBytes());
+        StringWriter out = new StringWriter();
+        Assertions.assertEquals(3, queue.drainTo(out, 1024));
+        Assertions.assertTrue(out.toString().startsWith("[AutoPlug] Skipped 2 line(s)"), out.toString());
+        Assertions.assertTrue(out.toString().endsWith("0123456783" + System.lineSeparator()));
+        queue.close();
+        Assertions.assertFalse(SendQueue.getAll().contains(queue));
+    }
+
+    @Test
+    void drainsWithinFrameSize() throws Exception {
+        SendQueue queue = new SendQueue("Test", 1000, 1024 * 1024, OverflowPolicy.DROP_OLDEST);
+        for (int i = 0; i < 10; i++) queue.offer("0123456789");
+        StringWriter out = new StringWriter();
+        int lines = queue.drainTo(out, 40);
+        Assertions.assertTrue(lines >= 1 && out.toString().length() <= 40, out.toString());
+        Assertions.assertEquals(10 - lines, queue.getDepth());
+        queue.close();
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright Osiris Team
+ * All rights reserved.
+ *
+ * This software is copyrighted work licensed under the terms of the
+ * AutoPlug License.  Please consult the file "LICENSE" for details.
+ */
+
+package com.osiris.autoplug.client.network.online;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManagerFactory;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.security.KeyStore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A self-signed certificate for localhost, created once with the keytool of the running java,
+ * to test TLS connections without the real AutoPlug-Web.
+ */
+public class TestTls {
+    private static final char[] PASSWORD = "changeit".toCharArray();
+    private static KeyStore keyStore;
+
+    private static synchronized KeyStore getKeyStore() throws Exception {
+        if (keyStore == null) {
+            File dir = Files.createTempDirectory("autoplug-test-tls").toFile();
+            File file = new File(dir, "localhost.p12");
+            String keytool = System.getProperty("java.home") + File.separator + "bin" + File.separator + "keytool";
+            Process p = new ProcessBuilder(keytool, "-genkeypair", "-alias", "localhost", "-keyalg", "RSA", "-keysize", "2048",
+                    "-validity", "2", "-dname", "CN=localhost", "-ext", "SAN=dns:localhost,ip:127.0.0.1",
+                    "-storetype", "PKCS12", "-keystore", file.getAbsolutePath(),
+                    "-storepass", new String(PASSWORD), "-keypass", new String(PASSWORD))
+                    .redirectErrorStream(true).start();
+            if (!p.waitFor(60, TimeUnit.SECONDS) || p.exitValue() != 0)
+                throw new IllegalStateException("keytool failed to create the test certificate.");
+            KeyStore ks = KeyStore.getInstance("PKCS12");
+            try (InputStream in = new FileInputStream(file)) {
+                ks.load(in, PASSWORD);
+            }
+            file.delete();
+            dir.delete();
+            keyStore = ks;
+        }
+        return keyStore;
+    }
+
+    /**
+     * For the server side, with the localhost certificate.
+     */
+    public static SSLContext serverContext() throws Exception {
+        KeyManagerFactory kmf = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        kmf.init(getKeyStore(), PASSWORD);
+        SSLContext ctx = SSLContext.getInstance("TLS");
+        ctx.init(kmf.getKeyManagers(), null, null);
+        return ctx;
+    }
+
+    /**
+     * For the client side, trusting only the localhost certificate.
+     */
+    public static SSLContext clientContext() throws Exception {
+        TrustManagerFactory tmf = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+        tmf.init(getKeyStore());
+        SSLContext ctx = SSLContext.getInstance("TLS");
+        ctx.init(null, tmf.getTrustManagers(), null);
+        return ctx;
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright Osiris Team
+ * All rights reserved.
+ *
+ * This software is copyrighted work licensed under the terms of the
+ * AutoPlug License.  Please consult the file "LICENSE" for details.
+ */
+
+package com.osiris.autoplug.client.network.online;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLServerSocket;
+import javax.net.ssl.SSLSocket;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+class TlsConnectionTest {
+
+    /**
+     * Accepts connections and echos each string in upper case.
+     */
+    private static SSLServerSocket startEchoServer() throws Exception {
+        SSLServerSocket server = (SSLServerSocket) TestTls.serverContext().getServerSocketFactory().createServerSocket(0);
+        Thread t = new Thread(() -> {
+            while (!server.isClosed()) {
+                try {
+                    SSLSocket s = (SSLSocket) server.accept();
+                    Thread handler = new Thread(() -> {
+                        try {
+                            DataInputStream in = new DataInputStream(s.getInputStream());
+                            DataOutputStream out = new DataOutputStream(s.getOutputStream());
+                            while (true) out.writeUTF(in.readUTF().toUpperCase());
+                        } catch (IOException ignored) {
+                        }
+                    });
+                    handler.setDaemon(true);
+                    handler.start();
+                } catch (IOException ignored) {
+                }
+            }
+        });
+        t.setDaemon(true);
+        t.start();
+        return server;
+    }
+
+    @Test
+    void blockingStreamsAndSessionResumption() throws Exception {
+        EventLoop loop = new EventLoop("test-loop");
+        SSLContext ctx = TestTls.clientContext();
+        try (SSLServerSocket server = startEchoServer()) {
+            for (int i = 0; i < 2; i++) {
+                TlsConnection con = TlsConnection.connect(loop, ctx, "localhost", server.getLocalPort(), 10000);
+                con.setReadTimeout(10000);
+                DataOutputStream out = new DataOutputStream(con.getOutput());
+                DataInputStream in = new DataInputStream(con.getInput());
+                StringBuilder big = new StringBuilder();
+                for (int j = 0; j < 500; j++) big.append("[12:00:00 INFO]: Line number ").append(j).append('\n');
+                for (String msg : new String[]{"hello", big.toString()}) {
+                    out.writeUTF(msg);
+                    Assertions.assertEquals(msg.toUpperCase(), in.readUTF());
+                }
+                Assertions.assertTrue(con.getHandshakeNanos() > 0);
+                if (i == 1) Assertions.assertTrue(con.isResumed(), "Second connection didn't resume the session.");
+                con.close();
+            }
+            Assertions.assertTrue(ctx.getClientSessionContext().getIds().hasMoreElements(), "No session cached.");
+        } finally {
+            loop.close();
+        }
+    }
+
+    @Test
+    void writersWaitWhenTheOtherSideStopsReading() throws Exception {
+        EventLoop loop = new EventLoop("test-loop");
+        try (SSLServerSocket server = (SSLServerSocket) TestTls.serverContext().getServerSocketFactory().createServerSocket(0)) {
+            CompletableFuture<SSLSocket> accepted = CompletableFuture.supplyAsync(() -> {
+                try {
+                    SSLSocket s = (SSLSocket) server.accept();
+                    s.startHandshake(); // Then never reads
+                    return s;
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            TlsConnection con = TlsConnection.connect(loop, TestTls.clientContext(), "localhost", server.getLocalPort(), 10000);
+            accepted.get(10, TimeUnit.SECONDS);
+            CompletableFuture<Void> writer = CompletableFuture.runAsync(() -> {
+                try {
+                    byte[] chunk = new byte[8192];
+                    while (true) con.getOutput().write(chunk);
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            long deadline = System.currentTimeMillis() + 10000;
+            while (con.getPendingBytes() < TlsConnection.MAX_PENDING_BYTES && System.currentTimeMillis() < deadline)
+                Thread.sleep(10);
+            Thread.sleep(200);
+            Assertions.assertFalse(writer.isDone());
+            Assertions.assertTrue(con.getPendingBytes() < TlsConnection.MAX_PENDING_BYTES + 8192, con.getPendingBytes() + " bytes pending.");
+
+            con.close();
+            Assertions.assertThrows(Exception.class, () -> writer.get(10, TimeUnit.SECONDS));
+            accepted.get().close();
+        } finally {
+            loop.close();
+        }
+    }
+
+    @Test
+    void multiplexerOnEventLoop() throws Exception {
+        EventLoop loop = new EventLoop("test-loop");
+        try (SSLServerSocket server = (SSLServerSocket) TestTls.serverContext().getServerSocketFactory().createServerSocket(0)) {
+            CompletableFuture<Multiplexer> serverMux = CompletableFuture.supplyAsync(() -> {
+                try {
+                    SSLSocket s = (SSLSocket) server.accept();
+                    Multiplexer mux = new Multiplexer("test-server", s.getInputStream(), s.getOutputStream(), false);
+                    mux.setAcceptor((channel, conType) -> {
+                        Thread t = new Thread(() -> {
+                            try {
+                                InputStream in = channel.getInput();
+                                byte[] buffer = new byte[8192];
+                                int n;
+                                while ((n = in.read(buffer)) != -1) channel.getOutput().write(buffer, 0, n);
+                            } catch (IOException ignored) {
+                            }
+                        });
+                        t.setDaemon(true);
+                        t.start();
+                        return 0;
+                    });
+                    return mux;
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            TlsConnection con = TlsConnection.connect(loop, TestTls.clientContext(), "localhost", server.getLocalPort(), 10000);
+            Multiplexer client = new Multiplexer("test-client", con, true);
+            serverMux.get(10, TimeUnit.SECONDS);
+
+            // Two channels echo 1MB each at the same time
+            int size = 1024 * 1024;
+            CompletableFuture<?>[] transfers = new CompletableFuture<?>[2];
+            for (int c = 0; c < transfers.length; c++) {
+                MultiplexedChannel channel = client.openChannel((byte) 2);
+                Assertions.assertEquals(0, channel.getResponse());
+                byte seed = (byte) c;
+                CompletableFuture.runAsync(() -> {
+                    try {
+                        byte[] data = new byte[size];
+                        for (int i = 0; i < size; i++) data[i] = (byte) (i + seed);
+                        channel.getOutput().write(data);
+                    } catch (IOException e) {
+                        throw new RuntimeException(e);
+                    }
+                });
+                transfers[c] = CompletableFuture.runAsync(() -> {
+                    try {
+                        DataInputStream in = new DataInputStream(channel.getInput());
+                        byte[] echoed = new byte[size];
+                        in.readFully(echoed);
+                        for (int i = 0; i < size; i++) {
+                            if (echoed[i] != (byte) (i + seed)) throw new IllegalStateException("Wrong byte at " + i);
+                        }
+                    } catch (IOException e) {
+                        throw new RuntimeException(e);
+                    }
+                });
+            }
+            CompletableFuture.allOf(transfers).get(30, TimeUnit.SECONDS);
+
+            // Losing the connection reaches the channels
+            MultiplexedChannel channel = client.openChannel((byte) 2);
+            serverMux.get().close();
+            Assertions.assertThrows(IOException.class, () -> channel.getInput().read());
+            Assertions.assertFalse(client.isOpen());
+            Assertions.assertFalse(con.isOpen());
+        } finally {
+            loop.close();
+        }
+    }
+}
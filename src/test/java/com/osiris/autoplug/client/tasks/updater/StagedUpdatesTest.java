@@ -0,0 +1,130 @@
+/*
+ * Copyright Osiris Team
+ * All rights reserved.
+ *
+ * This software is copyrighted work licensed under the terms of the
+ * AutoPlug License.  Please consult the file "LICENSE" for details.
+ */
+
+package com.osiris.autoplug.client.tasks.updater;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+class StagedUpdatesTest {
+
+    private static File write(File file, String content) throws Exception {
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    private static String read(File file) throws Exception {
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void stagesAndInstalls() throws Exception {
+        File root = Files.createTempDirectory("staged-updates").toFile();
+        File staging = new File(root, "autoplug-staging");
+        File serverJar = write(new File(root, "paper.jar"), "old server");
+        File oldPlugin = write(new File(root, "plugins/WorldEdit-7.1.jar"), "old plugin");
+        File newPluginDest = new File(root, "plugins/WorldEdit-LATEST-[7.2].jar");
+
+        StagedUpdates updates = new StagedUpdates(staging);
+        updates.stage(StagedUpdates.Type.SERVER, "paper", "120", write(new File(root, "downloads/paper.jar"), "new server"), serverJar, null);
+        updates.stage(StagedUpdates.Type.PLUGIN, "WorldEdit", "7.2", write(new File(root, "downloads/we.jar"), "new plugin"), newPluginDest, oldPlugin);
+        // Nothing changed yet
+        Assertions.assertEquals("old server", read(serverJar));
+        Assertions.assertTrue(oldPlugin.exists());
+        Assertions.assertFalse(newPluginDest.exists());
+
+        // Survives a restart of AutoPlug
+        StagedUpdates reloaded = new StagedUpdates(staging);
+        Assertions.assertEquals(2, reloaded.getAll().size());
+        Assertions.assertEquals("120", reloaded.find(StagedUpdates.Type.SERVER, "paper").getVersion());
+
+        List<StagedUpdates.Entry> installed = reloaded.install();
+        Assertions.assertEquals(2, installed.size());
+        Assertions.assertTrue(reloaded.isEmpty());
+        Assertions.assertEquals("new server", read(serverJar));
+        Assertions.assertEquals("new plugin", read(newPluginDest));
+        Assertions.assertFalse(oldPlugin.exists());
+        Assertions.assertTrue(new StagedUpdates(staging).isEmpty());
+    }
+
+    @Test
+    void newerStageReplacesOlder() throws Exception {
+        File root = Files.createTempDirectory("staged-updates").toFile();
+        File target = new File(root, "paper.jar");
+        StagedUpdates updates = new StagedUpdates(new File(root, "autoplug-staging"));
+        updates.stage(StagedUpdates.Type.SERVER, "paper", "120", write(new File(root, "a.jar"), "120"), target, null);
+        updates.stage(StagedUpdates.Type.SERVER, "paper", "121", write(new File(root, "b.jar"), "121"), target, null);
+        Assertions.assertEquals(1, updates.getAll().size());
+        updates.install();
+        Assertions.assertEquals("121", read(target));
+    }
+
+    @Test
+    void installsNothingIfAFileIsMissing() throws Exception {
+        File root = Files.createTempDirectory("staged-updates").toFile();
+        File serverJar = write(new File(root, "paper.jar"), "old server");
+        File pluginJar = write(new File(root, "plugins/Essentials.jar"), "old plugin");
+        StagedUpdates updates = new StagedUpdates(new File(root, "autoplug-staging"));
+        updates.stage(StagedUpdates.Type.SERVER, "paper", "120", write(new File(root, "a.jar"), "new server"), serverJar, null);
+        updates.stage(StagedUpdates.Type.PLUGIN, "Essentials", "2.19", write(new File(root, "b.jar"), "new plugin"), pluginJar, null);
+        updates.find(StagedUpdates.Type.PLUGIN, "Essentials").getStaged().delete();
+
+        Assertions.assertTrue(updates.install().isEmpty());
+        Assertions.assertEquals("old server", read(serverJar));
+        Assertions.assertEquals("old plugin", read(pluginJar));
+        // The server update is still staged
+        Assertions.assertTrue(updates.find(StagedUpdates.Type.SERVER, "paper").getStaged().exists());
+    }
+
+    @Test
+    void selfUpdateIsNotInstalledWithTheRest() throws Exception {
+        File root = Files.createTempDirectory("staged-updates").toFile();
+        File target = new File(root, "autoplug-downloads/AutoPlug-Client.jar");
+        StagedUpdates updates = new StagedUpdates(new File(root, "autoplug-staging"));
+        updates.stage(StagedUpdates.Type.SELF, "AutoPlug-Client", "5.0", write(target, "new autoplug"), target, null);
+        Assertions.assertTrue(updates.install().isEmpty());
+        Assertions.assertFalse(target.exists());
+
+        updates.installSingle(updates.find(StagedUpdates.Type.SELF, "AutoPlug-Client"));
+        Assertions.assertEquals("new autoplug", read(target));
+        Assertions.assertTrue(updates.isEmpty());
+    }
+
+    @Test
+    void failedRenameStaysStaged() throws Exception {
+        File root = Files.createTempDirectory("staged-updates").toFile();
+        File staging = new File(root, "autoplug-staging");
+        File serverJar = write(new File(root, "paper.jar"), "old server");
+        File blocked = new File(root, "plugins/Blocked.jar");
+        write(new File(blocked, "file-in-the-way.txt"), ""); // A non-empty directory can't be replaced
+
+        StagedUpdates updates = new StagedUpdates(staging);
+        updates.stage(StagedUpdates.Type.SERVER, "paper", "120", write(new File(root, "downloads/paper.jar"), "new server"), serverJar, null);
+        updates.stage(StagedUpdates.Type.PLUGIN, "Blocked", "1.0", write(new File(root, "downloads/blocked.jar"), "new plugin"), blocked, null);
+
+        List<StagedUpdates.Entry> installed = updates.install();
+        Assertions.assertEquals(1, installed.size());
+        Assertions.assertEquals("new server", read(serverJar));
+        Assertions.assertFalse(new File(root, "plugins/Blocked.jar.autoplug-new").exists());
+        Assertions.assertFalse(new File(staging, "staged-updates.txt.tmp").exists());
+
+        // Still staged, thus the next install doesn't fail because of a missing file
+        StagedUpdates.Entry entry = new StagedUpdates(staging).find(StagedUpdates.Type.PLUGIN, "Blocked");
+        Assertions.assertNotNull(entry);
+        new File(blocked, "file-in-the-way.txt").delete();
+        blocked.delete();
+        Assertions.assertEquals(1, updates.install().size());
+        Assertions.assertEquals("new plugin", read(blocked));
+    }
+}
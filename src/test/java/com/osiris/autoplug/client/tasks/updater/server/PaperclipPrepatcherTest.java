@@ -0,0 +1,99 @@
+/*
+ * Copyright Osiris Team
+ * All rights reserved.
+ *
+ * This software is copyrighted work licensed under the terms of the
+ * AutoPlug License.  Please consult the file "LICENSE" for details.
+ */
+
+package com.osiris.autoplug.client.tasks.updater.server;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.CompletableFuture;
+import java.util.jar.Attributes;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+class PaperclipPrepatcherTest {
+
+    private static File jar(File dir, String name, String mainClass) throws Exception {
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        manifest.getMainAttributes().put(Attributes.Name.MAIN_CLASS, mainClass);
+        File jar = new File(dir, name);
+        new JarOutputStream(new FileOutputStream(jar), manifest).close();
+        return jar;
+    }
+
+    @Test
+    void detectsPaperclip() throws Exception {
+        File dir = Files.createTempDirectory("paperclip").toFile();
+        Assertions.assertTrue(PaperclipPrepatcher.isPaperclip(jar(dir, "paper.jar", "io.papermc.paperclip.Main")));
+        Assertions.assertTrue(PaperclipPrepatcher.isPaperclip(jar(dir, "old-paper.jar", "com.destroystokyo.paperclip.Paperclip")));
+        Assertions.assertFalse(PaperclipPrepatcher.isPaperclip(jar(dir, "spigot.jar", "org.bukkit.craftbukkit.bootstrap.Main")));
+        Assertions.assertFalse(PaperclipPrepatcher.isPaperclip(new File(dir, "missing.jar")));
+    }
+
+    @Test
+    void startWaitsForBackgroundPatching() throws Exception {
+        File dir = Files.createTempDirectory("paperclip").toFile();
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        CompletableFuture<Boolean> future = new PaperclipPrepatcher(java, 60000)
+                .prepatchInBackground(jar(dir, "paper.jar", "io.papermc.paperclip.Missing"), dir);
+        PaperclipPrepatcher.awaitBackground();
+        Assertions.assertTrue(future.isDone());
+        Assertions.assertFalse(future.get()); // The main class doesn't exist
+        PaperclipPrepatcher.awaitBackground(); // Returns right away, if there is nothing to wait for
+    }
+
+    @Test
+    void mergesPatchedFiles() throws Exception {
+        File staged = Files.createTempDirectory("paperclip-staged").toFile();
+        File server = Files.createTempDirectory("paperclip-server").toFile();
+        new File(staged, "versions/1.18.2").mkdirs();
+        Files.write(new File(staged, "versions/1.18.2/paper-1.18.2.jar").toPath(), "new".getBytes(StandardCharsets.UTF_8));
+        new File(staged, "libraries/com/google/guava").mkdirs();
+        Files.write(new File(staged, "libraries/com/google/guava/guava.jar").toPath(), "lib".getBytes(StandardCharsets.UTF_8));
+        Files.write(new File(staged, "prepatch.log").toPath(), "log".getBytes(StandardCharsets.UTF_8));
+        new File(server, "versions/1.18.2").mkdirs();
+        Files.write(new File(server, "versions/1.18.2/paper-1.18.2.jar").toPath(), "old".getBytes(StandardCharsets.UTF_8));
+        new File(server, "libraries/org/ow2").mkdirs();
+        Files.write(new File(server, "libraries/org/ow2/asm.jar").toPath(), "asm".getBytes(StandardCharsets.UTF_8));
+
+        PaperclipPrepatcher.merge(staged, server);
+        Assertions.assertEquals("new", new String(Files.readAllBytes(new File(server, "versions/1.18.2/paper-1.18.2.jar").toPath()), StandardCharsets.UTF_8));
+        Assertions.assertTrue(new File(server, "libraries/com/google/guava/guava.jar").exists());
+        Assertions.assertTrue(new File(server, "libraries/org/ow2/asm.jar").exists());
+        Assertions.assertFalse(new File(server, "prepatch.log").exists());
+
+        PaperclipPrepatcher.deleteRecursively(staged);
+        Assertions.assertFalse(staged.exists());
+    }
+
+    @Test
+    void seedsCacheAndLibraries() throws Exception {
+        File server = Files.createTempDirectory("paperclip-server").toFile();
+        File staged = Files.createTempDirectory("paperclip-staged").toFile();
+        new File(server, "cache").mkdirs();
+        Files.write(new File(server, "cache/mojang_1.18.2.jar").toPath(), "vanilla".getBytes(StandardCharsets.UTF_8));
+        Files.write(new File(server, "cache/patched_1.18.2.jar").toPath(), "old patched".getBytes(StandardCharsets.UTF_8));
+        new File(server, "libraries/com/google/guava").mkdirs();
+        Files.write(new File(server, "libraries/com/google/guava/guava.jar").toPath(), "guava".getBytes(StandardCharsets.UTF_8));
+        new File(staged, "libraries/org/ow2").mkdirs();
+        Files.write(new File(staged, "libraries/org/ow2/asm.jar").toPath(), "newer asm".getBytes(StandardCharsets.UTF_8));
+        new File(server, "libraries/org/ow2").mkdirs();
+        Files.write(new File(server, "libraries/org/ow2/asm.jar").toPath(), "asm".getBytes(StandardCharsets.UTF_8));
+
+        PaperclipPrepatcher.seed(server, staged);
+        Assertions.assertEquals("vanilla", new String(Files.readAllBytes(new File(staged, "cache/mojang_1.18.2.jar").toPath()), StandardCharsets.UTF_8));
+        Assertions.assertFalse(new File(staged, "cache/patched_1.18.2.jar").exists());
+        Assertions.assertEquals("guava", new String(Files.readAllBytes(new File(staged, "libraries/com/google/guava/guava.jar").toPath()), StandardCharsets.UTF_8));
+        Assertions.assertEquals("newer asm", new String(Files.readAllBytes(new File(staged, "libraries/org/ow2/asm.jar").toPath()), StandardCharsets.UTF_8));
+    }
+}
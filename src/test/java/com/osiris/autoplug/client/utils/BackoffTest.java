@@ -0,0 +1,60 @@
+/*
+ * Copyright Osiris Team
+ * All rights reserved.
+ *
+ * This software is copyrighted work licensed under the terms of the
+ * AutoPlug License.  Please consult the file "LICENSE" for details.
+ */
+
+package com.osiris.autoplug.client.utils;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+class BackoffTest {
+
+    @Test
+    void growsExponentiallyWithJitter() {
+        Backoff backoff = new Backoff(1000, 60000, new Random(42));
+        long[] ceilings = {1000, 2000, 4000, 8000, 16000, 32000, 60000, 60000};
+        for (long ceiling : ceilings) {
+            long delay = backoff.nextDelayMs();
+            Assertions.assertTrue(delay >= ceiling / 2 && delay <= ceiling, delay + " not within " + ceiling / 2 + "-" + ceiling);
+        }
+        Assertions.assertEquals(8, backoff.getAttempts());
+        Assertions.assertEquals(60000L, backoff.getCeilingMs(1000));
+
+        backoff.reset();
+        Assertions.assertTrue(backoff.nextDelayMs() <= 1000);
+    }
+
+    @Test
+    void delaysAreSpreadOut() {
+        Backoff backoff = new Backoff(1000, 1000, new Random(7));
+        long min = Long.MAX_VALUE, max = 0;
+        for (int i = 0; i < 1000; i++) {
+            long delay = backoff.nextDelayMs();
+            min = Math.min(min, delay);
+            max = Math.max(max, delay);
+        }
+        Assertions.assertTrue(min < 600, "min " + min);
+        Assertions.assertTrue(max > 900, "max " + max);
+    }
+
+    @Test
+    void fullJitterStartsAtZero() {
+        Backoff backoff = new Backoff(1000, 8000, new Random(3), true);
+        long min = Long.MAX_VALUE, max = 0;
+        for (int i = 0; i < 1000; i++) {
+            if (i % 10 == 0) backoff.reset();
+            long delay = backoff.nextDelayMs();
+            Assertions.assertTrue(delay <= backoff.getCeilingMs(backoff.getAttempts() - 1), String.valueOf(delay));
+            min = Math.min(min, delay);
+            max = Math.max(max, delay);
+        }
+        Assertions.assertTrue(min < 100, "min " + min);
+        Assertions.assertTrue(max > 7000, "max " + max);
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright Osiris Team
+ * All rights reserved.
+ *
+ * This software is copyrighted work licensed under the terms of the
+ * AutoPlug License.  Please consult the file "LICENSE" for details.
+ */
+
+package com.osiris.autoplug.client.utils;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
+
+class StreamPumpTest {
+    private static final int LINES = 200000;
+    private static final long TIMEOUT_MS = 60000;
+    private static final String LINE = "[12:00:00 INFO]: Preparing spawn area: 42% (chunk-loading storm test line)";
+
+    private static byte[] createServerOutput() {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < LINES; i++) {
+            builder.append(LINE).append(i).append('\n');
+        }
+        return builder.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Copies the same server output through the old byte-at-a-time loop and through
+     * the {@link StreamPump} and prints the throughput of both in MB/s.
+     */
+    @Test
+    void throughputBeforeAndAfter() throws Exception {
+        byte[] output = createServerOutput();
+        double mb = output.length / (1024.0 * 1024.0);
+
+        // Before: byte at a time, into the default sized pipe
+        long msBefore = measure(output, 1024, (in, out) -> {
+            int b;
+            while ((b = in.read()) != -1)
+                out.write(b);
+        });
+
+        // After: block reads into a reusable buffer, handed over as slices
+        long msAfter = measure(output, StreamPump.DEFAULT_BUFFER_SIZE, (in, out) -> new StreamPump().pump(in, out));
+
+        System.out.println("Copied " + String.format("%.1f", mb) + "MB (" + LINES + " lines):");
+        System.out.println("Byte-at-a-time: " + msBefore + "ms (" + String.format("%.1f", mb / (msBefore / 1000.0)) + " MB/s)");
+        System.out.println("StreamPump:     " + msAfter + "ms (" + String.format("%.1f", mb / (msAfter / 1000.0)) + " MB/s)");
+        // Generous headroom, since both timings depend on the load of the machine
+        Assertions.assertTrue(msAfter <= msBefore * 2, "StreamPump took " + msAfter + "ms, over twice as long as byte-at-a-time copying (" + msBefore + "ms)");
+    }
+
+    @Test
+    void pumpsEverything() throws Exception {
+        byte[] output = createServerOutput();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        StreamPump pump = new StreamPump(4096);
+        Assertions.assertEquals(output.length, pump.pump(new ByteArrayInputStream(output), out));
+        Assertions.assertArrayEquals(output, out.toByteArray());
+        Assertions.assertEquals(output.length, pump.getBytesPumped());
+        Assertions.assertTrue(pump.getSlicesPumped() >= output.length / 4096);
+    }
+
+    private long measure(byte[] output, int pipeSize, Copier copier) throws Exception {
+        AtomicLong readLines = new AtomicLong();
+        PipedOutputStream pipedOut = new PipedOutputStream();
+        NonBlockingPipedInputStream pipedIn = new NonBlockingPipedInputStream(pipedOut, pipeSize);
+        pipedIn.actionsOnWriteLineEvent.add(line -> readLines.incrementAndGet());
+
+        long start = System.currentTimeMillis();
+        copier.copy(new ByteArrayInputStream(output), pipedOut);
+        pipedOut.flush();
+        while (readLines.get() < LINES) { // Wait until the reader got every line
+            if (System.currentTimeMillis() - start > TIMEOUT_MS)
+                Assertions.fail("Reader got only " + readLines.get() + " of " + LINES + " lines within " + TIMEOUT_MS + "ms.");
+            Thread.sleep(1);
+        }
+        long ms = System.currentTimeMillis() - start;
+        pipedOut.close();
+        return Math.max(ms, 1);
+    }
+
+    private interface Copier {
+        void copy(InputStream in, OutputStream out) throws IOException;
+    }
+}